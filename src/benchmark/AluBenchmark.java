@@ -0,0 +1,81 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.CPU;
+import core.MOS6502;
+import exceptions.SimulationException;
+
+/*
+ * JMH benchmark of ADC/SBC heavy code, comparing the computed results with the 
+ * precomputed tables selected by CPU.setAluTables(), in binary and decimal mode.
+ *
+ * The program is an endless loop of ADC and SBC instructions ending in a JMP back to 
+ * 0x02, after the SED/CLD at 0x00 has selected the mode. The score is in steps per microsecond.
+ *
+ * Run with JMH (jmh-core and jmh-generator-annprocess on the classpath), e.g.
+ * java -cp <classpath> org.openjdk.jmh.Main benchmark.AluBenchmark
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AluBenchmark {
+
+	private static final int STEPS = 1024;
+
+	@Param({"binary", "decimal"})
+	public String mode;
+
+	@Param({"computed", "table"})
+	public String alu;
+
+	private CPU cpu;
+
+	@Setup
+	public void setUp() throws SimulationException
+	{
+		int[] program = {
+				mode.equals("decimal") ? 0xf8 : 0xd8, 0x00,  // SED / CLD
+				0x69, 0x19,  // ADC #$19
+				0x69, 0x27,  // ADC #$27
+				0xe9, 0x08,  // SBC #$08
+				0x69, 0x45,  // ADC #$45
+				0xe9, 0x33,  // SBC #$33
+				0xe9, 0x01,  // SBC #$01
+				0x69, 0x99,  // ADC #$99
+				0x4c, 0x02}; // JMP $02
+
+		MOS6502 machine = new MOS6502(false);
+		machine.setAluTables(alu.equals("table"));
+		machine.loadRAM(program);
+		machine.resetCPU();
+		cpu = machine.getCpu();
+		cpu.step(); //SED / CLD, also generates the tables before measuring
+		cpu.step();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(STEPS)
+	public int step() throws SimulationException
+	{
+		cpu.step(STEPS);
+		return cpu.getA();
+	}
+}
@@ -0,0 +1,92 @@
+package benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+/*
+ * Programs and helpers shared by the JMH benchmarks in this package.
+ *
+ * The loop programs are written in the simulation's assembly syntax and run on the
+ * lite machine. Each consists of an inner loop nested within an outer loop and ends
+ * with the END keyword.
+ */
+
+final class BenchmarkPrograms {
+
+	/*
+	 * DEX/BNE countdown, 16 x 255 iterations
+	 */
+	static final String[] COUNTDOWN = {"BEGIN",
+									   "LDY #10",
+									   "LDX #FF",
+									   "DEX",
+									   "BNE *-4",
+									   "DEY",
+									   "BNE *-0A",
+									   "END"};
+
+	/*
+	 * Fills 0x80 - 0xBF with its offset using indexed stores, 32 times
+	 */
+	static final String[] MEMORY_FILL = {"BEGIN",
+										 "LDY #20",
+										 "LDX #00",
+										 "TXA",
+										 "STA $80,X",
+										 "INX",
+										 "CPX #40",
+										 "BNE *-0A",
+										 "DEY",
+										 "BNE *-10",
+										 "END"};
+
+	/*
+	 * Pushes and pulls the accumulator 64 times, 32 times
+	 */
+	static final String[] STACK_LOOP = {"BEGIN",
+										"LDY #20",
+										"LDX #40",
+										"TXA",
+										"PHA",
+										"PLA",
+										"DEX",
+										"BNE *-0A",
+										"DEY",
+										"BNE *-10",
+										"END"};
+
+	/*
+	 * Stream used to discard the console output of the compiler and file readers
+	 */
+	static final PrintStream NULL_OUTPUT = new PrintStream(new OutputStream() {
+		public void write(int b) { }
+		public void write(byte[] b, int off, int len) { }
+	});
+
+	private BenchmarkPrograms()
+	{
+	}
+
+	/*
+	 * Returns the source of a straight line program of the given number of instruction
+	 * lines, cycling through load/store, arithmetic, logical, shift and flag instructions.
+	 * Large programs only fit into the lite machine's memory when lines <= 126.
+	 */
+	static String[] straightLineProgram(int lines)
+	{
+		String[] block = {"LDA #01", "STA $80", "LDX $80", "ADC #02", "AND #0F", "ORA $81,X",
+						  "ASL A", "ROR $82", "CLC", "CMP #05", "INY", "NOP"};
+
+		ArrayList<String> source = new ArrayList<String>();
+		source.add("BEGIN");
+		for(int i = 0; i < lines; i++)
+		{
+			source.add(block[i % block.length]);
+		}
+		source.add("END");
+		source.add("dc.b $80 $10");
+
+		return source.toArray(new String[source.size()]);
+	}
+}
@@ -0,0 +1,72 @@
+package benchmark;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import compiler.AssembledProgram;
+import compiler.Compiler;
+import exceptions.CompilerException;
+
+/*
+ * JMH benchmark of end-to-end assembly with the Compiler, from source text to the
+ * in-memory AssembledProgram, for a small and a large straight line program.
+ *
+ * The compiler's console output is discarded for the duration of the trial so that
+ * the score reflects the cost of building the trace strings and not the terminal.
+ *
+ * Run with JMH (jmh-core and jmh-generator-annprocess on the classpath), e.g.
+ * java -cp <classpath> org.openjdk.jmh.Main benchmark.CompilerBenchmark
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompilerBenchmark {
+
+	/*
+	 * Number of instruction lines in the program, 120 lines is close to the
+	 * largest program that fits into the lite machine's memory
+	 */
+	@Param({"10", "120"})
+	public int lines;
+
+	private String[] source;
+
+	private PrintStream console;
+
+	@Setup
+	public void setUp()
+	{
+		source = BenchmarkPrograms.straightLineProgram(lines);
+		console = System.out;
+		System.setOut(BenchmarkPrograms.NULL_OUTPUT);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		System.setOut(console);
+	}
+
+	@Benchmark
+	public AssembledProgram assemble() throws CompilerException
+	{
+		return new Compiler(source).getProgram();
+	}
+}
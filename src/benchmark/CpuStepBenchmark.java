@@ -0,0 +1,130 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import core.CPU;
+import core.MOS6502;
+import exceptions.SimulationException;
+
+/*
+ * JMH benchmark of CPU.step() for each instruction family, using each execution engine.
+ *
+ * Each family runs an endless loop of instructions from that family ending in a JMP
+ * back to 0x00, in quiet mode. The score is in steps per microsecond.
+ *
+ * Run with JMH (jmh-core and jmh-generator-annprocess on the classpath), e.g.
+ * java -cp <classpath> org.openjdk.jmh.Main benchmark.CpuStepBenchmark
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CpuStepBenchmark {
+
+	private static final int STEPS = 1024;
+
+	private static final int[] LOAD_STORE = {
+			0xa9, 0x01,  // LDA #$01
+			0x8d, 0x80,  // STA $80
+			0xae, 0x80,  // LDX $80
+			0x8e, 0x81,  // STX $81
+			0xac, 0x81,  // LDY $81
+			0x8c, 0x82,  // STY $82
+			0xbd, 0x80,  // LDA $80,X
+			0x4c, 0x00}; // JMP $00
+
+	private static final int[] ALU = {
+			0x69, 0x01,  // ADC #$01
+			0xe9, 0x01,  // SBC #$01
+			0x29, 0x0f,  // AND #$0F
+			0x09, 0x10,  // ORA #$10
+			0x49, 0xff,  // EOR #$FF
+			0xcd, 0x80,  // CMP $80
+			0xe0, 0x00,  // CPX #$00
+			0x4c, 0x00}; // JMP $00
+
+	private static final int[] SHIFT = {
+			0x0a, 0x00,  // ASL A
+			0x4a, 0x00,  // LSR A
+			0x2e, 0x80,  // ROL $80
+			0x6e, 0x80,  // ROR $80
+			0x0e, 0x81,  // ASL $81
+			0x4e, 0x81,  // LSR $81
+			0x2a, 0x00,  // ROL A
+			0x4c, 0x00}; // JMP $00
+
+	private static final int[] BRANCH = {
+			0x18, 0x00,  // CLC
+			0x90, 0x00,  // BCC $00 (taken)
+			0x38, 0x00,  // SEC
+			0x90, 0x00,  // BCC $00 (not taken)
+			0xd0, 0x00,  // BNE $00
+			0xf0, 0x00,  // BEQ $00
+			0x10, 0x00,  // BPL $00
+			0x4c, 0x00}; // JMP $00
+
+	private static final int[] STACK = {
+			0x48, 0x00,  // PHA
+			0x08, 0x00,  // PHP
+			0x28, 0x00,  // PLP
+			0x68, 0x00,  // PLA
+			0x20, 0x0c,  // JSR $0C
+			0x4c, 0x00,  // JMP $00
+			0x60, 0x00}; // RTS
+
+	@Param({"LOAD_STORE", "ALU", "SHIFT", "BRANCH", "STACK"})
+	public String family;
+
+	@Param({"switch", "table", "blocks"})
+	public String engine;
+
+	private CPU cpu;
+
+	@Setup
+	public void setUp()
+	{
+		MOS6502 machine = new MOS6502(false);
+		machine.setExecutionEngine(engine.equals("blocks") ? CPU.ENGINE_BLOCK_CACHE
+				: engine.equals("table") ? CPU.ENGINE_DISPATCH_TABLE : CPU.ENGINE_SWITCH);
+		machine.loadRAM(program(family));
+		machine.resetCPU();
+		cpu = machine.getCpu();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(STEPS)
+	public int step() throws SimulationException
+	{
+		cpu.step(STEPS);
+		return cpu.getA();
+	}
+
+	private static int[] program(String family)
+	{
+		switch(family)
+		{
+			case "LOAD_STORE": return LOAD_STORE;
+			case "ALU": return ALU;
+			case "SHIFT": return SHIFT;
+			case "BRANCH": return BRANCH;
+			case "STACK": return STACK;
+			default: throw new IllegalArgumentException("Unknown instruction family " + family);
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import core.CPU;
+import core.MOS6502;
+import exceptions.SimulationException;
+
+/*
+ * Measures the number of steps per second the simulation achieves with verbose
+ * tracing enabled and disabled, using both CPU execution engines.
+ * 
+ * The benchmark program is an endless loop of loads, stores, arithmetic and stack 
+ * operations. Console output produced by the verbose runs is sent to a discarding 
+ * stream so that the measurement reflects the cost of building the trace output 
+ * rather than the speed of the terminal.
+ * 
+ * Usage: ExecutionModeBenchmark [steps]
+ */
+
+public class ExecutionModeBenchmark {
+
+	private static final int[] PROGRAM = {
+			0xa2, 0x00,  // LDX #$00
+			0xe8, 0x00,  // INX
+			0x8e, 0x80,  // STX $80
+			0xad, 0x80,  // LDA $80
+			0x69, 0x01,  // ADC #$01
+			0x48, 0x00,  // PHA
+			0x68, 0x00,  // PLA
+			0x4c, 0x02}; // JMP $02
+	
+	public static void main(String[] args) throws SimulationException
+	{
+		int steps = 20000000;
+		
+		if(args.length > 0)
+		{
+			steps = Integer.parseInt(args[0]);
+		}
+		
+		PrintStream console = System.out;
+		
+		//Warm up both paths before measuring
+		run(true, CPU.ENGINE_SWITCH, steps / 10);
+		run(false, CPU.ENGINE_SWITCH, steps / 10);
+		run(false, CPU.ENGINE_DISPATCH_TABLE, steps / 10);
+		
+		console.println("Steps per run: " + steps);
+		console.println("Verbose, switch engine:        " + format(run(true, CPU.ENGINE_SWITCH, steps / 10)) + " steps/sec");
+		console.println("Quiet, switch engine:          " + format(run(false, CPU.ENGINE_SWITCH, steps)) + " steps/sec");
+		console.println("Quiet, dispatch table engine:  " + format(run(false, CPU.ENGINE_DISPATCH_TABLE, steps)) + " steps/sec");
+	}
+	
+	/*
+	 * Runs the benchmark program for the given number of steps, returns the 
+	 * achieved steps per second.
+	 */
+	private static double run(boolean verbose, int engine, int steps) throws SimulationException
+	{
+		PrintStream console = System.out;
+		
+		if(verbose)
+		{
+			System.setOut(new PrintStream(new OutputStream() {
+				public void write(int b) { }
+				public void write(byte[] b, int off, int len) { }
+			}));
+		}
+		
+		try
+		{
+			MOS6502 machine = new MOS6502(verbose);
+			machine.setExecutionEngine(engine);
+			machine.loadRAM(PROGRAM);
+			machine.resetCPU();
+			
+			CPU cpu = machine.getCpu();
+			
+			long start = System.nanoTime();
+			cpu.step(steps);
+			long elapsed = System.nanoTime() - start;
+			
+			return steps / (elapsed / 1e9);
+		}
+		finally
+		{
+			System.setOut(console);
+		}
+	}
+	
+	private static String format(double stepsPerSecond)
+	{
+		return String.format("%,15.0f", stepsPerSecond);
+	}
+}
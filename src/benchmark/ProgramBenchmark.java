@@ -0,0 +1,108 @@
+package benchmark;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import compiler.AssembledProgram;
+import compiler.Compiler;
+import core.CPU;
+import core.MOS6502;
+import exceptions.CompilerException;
+import exceptions.SimulationException;
+
+/*
+ * JMH benchmark of whole-program runs, from reset to the END keyword, for the loop
+ * programs held in BenchmarkPrograms. Each program is assembled once per trial and
+ * reloaded into the machine before every run. The score is the time per run.
+ *
+ * Runs step through CPU.step(int) in chunks, as the HeadlessRunner does. The "blocks" 
+ * engine is the block cache with block binding disabled, "bound" is the block cache 
+ * running bound operation chains whole (see CPU.setBlockBinding()) and "compiled" also 
+ * compiles hot blocks into JVM classes (see CPU.setBlockCompilation()).
+ *
+ * Run with JMH (jmh-core and jmh-generator-annprocess on the classpath), e.g.
+ * java -cp <classpath> org.openjdk.jmh.Main benchmark.ProgramBenchmark
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgramBenchmark {
+
+	@Param({"COUNTDOWN", "MEMORY_FILL", "STACK_LOOP"})
+	public String program;
+
+	@Param({"switch", "table", "blocks", "bound", "compiled"})
+	public String engine;
+
+	/*
+	 * Most steps run by a single call to CPU.step(int)
+	 */
+	private static final int STEP_CHUNK = 4096;
+
+	private MOS6502 machine;
+
+	private AssembledProgram assembled;
+
+	@Setup
+	public void setUp() throws CompilerException
+	{
+		PrintStream console = System.out;
+		System.setOut(BenchmarkPrograms.NULL_OUTPUT);
+		try
+		{
+			assembled = new Compiler(source(program)).getProgram();
+		}
+		finally
+		{
+			System.setOut(console);
+		}
+
+		machine = new MOS6502(false);
+		machine.setExecutionEngine(engine.equals("switch") ? CPU.ENGINE_SWITCH
+				: engine.equals("table") ? CPU.ENGINE_DISPATCH_TABLE : CPU.ENGINE_BLOCK_CACHE);
+		machine.setBlockBinding(engine.equals("bound") || engine.equals("compiled"));
+		machine.setBlockCompilation(engine.equals("compiled"));
+	}
+
+	@Benchmark
+	public long run() throws SimulationException
+	{
+		machine.loadProgram(assembled);
+		machine.resetCPU();
+
+		CPU cpu = machine.getCpu();
+		while(cpu.getCanStep())
+		{
+			cpu.step(STEP_CHUNK);
+		}
+
+		return cpu.getCycleCounter();
+	}
+
+	private static String[] source(String program)
+	{
+		switch(program)
+		{
+			case "COUNTDOWN": return BenchmarkPrograms.COUNTDOWN;
+			case "MEMORY_FILL": return BenchmarkPrograms.MEMORY_FILL;
+			case "STACK_LOOP": return BenchmarkPrograms.STACK_LOOP;
+			default: throw new IllegalArgumentException("Unknown program " + program);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import compiler.AssembledProgram;
+import compiler.Compiler;
+import compiler.OutputBinaryToFile;
+import core.ReadBinary;
+import exceptions.CompilerException;
+import exceptions.SimulationException;
+
+/*
+ * JMH benchmark of loading an assembled program with ReadBinary, comparing the text
+ * format (binary_output.txt) with the binary object format, plus decoding an object
+ * already held in memory.
+ *
+ * Both files are written to the temporary directory for the duration of the trial.
+ *
+ * Run with JMH (jmh-core and jmh-generator-annprocess on the classpath), e.g.
+ * java -cp <classpath> org.openjdk.jmh.Main benchmark.ReadBinaryBenchmark
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadBinaryBenchmark {
+
+	private File textFile;
+	private File objectFile;
+
+	private ByteBuffer object;
+
+	private PrintStream console;
+
+	@Setup
+	public void setUp() throws CompilerException, IOException
+	{
+		console = System.out;
+		System.setOut(BenchmarkPrograms.NULL_OUTPUT);
+
+		textFile = File.createTempFile("benchmark", ".txt");
+		objectFile = File.createTempFile("benchmark", ".obj");
+
+		Compiler compiler = new Compiler(BenchmarkPrograms.straightLineProgram(120));
+		compiler.setOutputFile(textFile.getPath());
+		compiler.writeBinaryToFile(false);
+		compiler.writeObjectToFile(objectFile.getPath());
+
+		object = OutputBinaryToFile.encodeObject(compiler.getProgram());
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		System.setOut(console);
+		textFile.delete();
+		objectFile.delete();
+	}
+
+	@Benchmark
+	public int[] readTextFile() throws SimulationException
+	{
+		return new ReadBinary(textFile.getPath()).getProgram();
+	}
+
+	@Benchmark
+	public AssembledProgram readObjectFile() throws SimulationException
+	{
+		return new ReadBinary(objectFile.getPath()).getAssembledProgram();
+	}
+
+	@Benchmark
+	public AssembledProgram decodeObject() throws SimulationException
+	{
+		return ReadBinary.decodeObject(object.duplicate());
+	}
+}
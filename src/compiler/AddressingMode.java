@@ -0,0 +1,90 @@
+package compiler;
+
+/*
+ * Addressing modes of the 6502 instruction set.
+ * 
+ * Each mode holds the name used by the InstructionTable (e.g. "absolute,X") and the 
+ * number used for the mode by the assembler, see the ADDR_ constants in AssemblyLine.
+ * The zero-page modes are only executed by the CPU, the assembler never outputs them
+ * and they therefore have no assembler number.
+ */
+
+public enum AddressingMode {
+
+	IMPLIED("implied", AssemblyLine.ADDR_IMP),
+	ACCUMULATOR("accumulator", AssemblyLine.ADDR_ACC),
+	IMMEDIATE("immediate", AssemblyLine.ADDR_IMMEDIATE),
+	RELATIVE("relative", AssemblyLine.ADDR_RELATIVE),
+	ABSOLUTE("absolute", AssemblyLine.ADDR_ABSOLUTE),
+	ABSOLUTE_X("absolute,X", AssemblyLine.ADDR_ABSOLUTE_X),
+	ABSOLUTE_Y("absolute,Y", AssemblyLine.ADDR_ABSOLUTE_Y),
+	INDIRECT("indirect", AssemblyLine.ADDR_INDIRECT),
+	INDEXED_INDIRECT("(indirect,X)", AssemblyLine.ADDR_INDEXED_INDIRECT),
+	INDIRECT_INDEXED("(indirect),Y", AssemblyLine.ADDR_INDIRECT_INDEXED),
+	ZERO_PAGE("zero page", 0),
+	ZERO_PAGE_X("zero page,X", 0),
+	ZERO_PAGE_Y("zero page,Y", 0);
+	
+	/*
+	 * Modes indexed by assembler number, see fromNumber()
+	 */
+	private static final AddressingMode[] BY_NUMBER = new AddressingMode[AssemblyLine.ADDR_INDIRECT_INDEXED + 1];
+	
+	static
+	{
+		for(AddressingMode mode : values())
+		{
+			if(mode.number != 0)
+				BY_NUMBER[mode.number] = mode;
+		}
+	}
+	
+	private final String name;
+	private final int number;
+	
+	private AddressingMode(String name, int number)
+	{
+		this.name = name;
+		this.number = number;
+	}
+	
+	/*
+	 * Returns the mode with the given assembler number, null if there is none
+	 */
+	public static AddressingMode fromNumber(int number)
+	{
+		if(number <= 0 || number >= BY_NUMBER.length)
+			return null;
+		
+		return BY_NUMBER[number];
+	}
+	
+	/*
+	 * Returns the mode with the given InstructionTable name, null if there is none
+	 */
+	public static AddressingMode fromName(String name)
+	{
+		for(AddressingMode mode : values())
+		{
+			if(mode.name.equals(name))
+				return mode;
+		}
+		
+		return null;
+	}
+	
+	public boolean isIndexedByY()
+	{
+		return this == ABSOLUTE_Y || this == INDIRECT_INDEXED || this == ZERO_PAGE_Y;
+	}
+	
+	public String getName()
+	{
+		return name;
+	}
+	
+	public int getNumber()
+	{
+		return number;
+	}
+}
@@ -0,0 +1,120 @@
+package compiler;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * The in-memory result of assembling a program.
+ * 
+ * Holds the program code as a byte[] image, ready to be loaded into RAM 
+ * starting at address 0x00. The image includes the BEGIN (0xEF 0xEF) and END 
+ * (0xFF 0xFF) keyword bytes so that it matches the contents of binary_output.txt.
+ * 
+ * Directive data (dc.b, dc.s, dc.v) is held separately as address:value pairs since 
+ * directives may write anywhere in memory, they are applied after the code is loaded.
+ * 
+ * The symbol table maps each branch label to the address of the instruction it labels.
+ * 
+ * The encoding records which instruction format the code uses. ENCODING_LITE programs use 
+ * 2 bytes per instruction for the 8-bit lite machine, ENCODING_FULL programs use 1-3 bytes 
+ * per instruction with little endian operands for the 16-bit full machine (see CPU.MODE_FULL).
+ */
+
+public class AssembledProgram {
+
+	public static final int ENCODING_LITE = 0;
+	public static final int ENCODING_FULL = 1;
+	
+	private final byte[] code;
+	
+	private final int[] directiveAddresses;
+	private final byte[] directiveValues;
+	
+	private final Map<String, Integer> symbols;
+	
+	private final int encoding;
+	
+	public AssembledProgram(byte[] code, int[] directiveAddresses, byte[] directiveValues, Map<String, Integer> symbols)
+	{
+		this(code, directiveAddresses, directiveValues, symbols, ENCODING_LITE);
+	}
+	
+	public AssembledProgram(byte[] code, int[] directiveAddresses, byte[] directiveValues, Map<String, Integer> symbols, int encoding)
+	{
+		this.encoding = encoding;
+		this.code = code;
+		this.directiveAddresses = directiveAddresses;
+		this.directiveValues = directiveValues;
+		this.symbols = Collections.unmodifiableMap(new LinkedHashMap<String, Integer>(symbols));
+	}
+	
+	/*
+	 * Returns a memory image of the given size holding the program code with
+	 * the directive data applied on top, as it would appear in RAM once loaded
+	 * into cleared memory.
+	 */
+	public byte[] toMemoryImage(int size)
+	{
+		byte[] image = new byte[size];
+		System.arraycopy(code, 0, image, 0, Math.min(code.length, size));
+		
+		for(int i = 0; i < directiveAddresses.length; i++)
+		{
+			if(directiveAddresses[i] < size)
+				image[directiveAddresses[i]] = directiveValues[i];
+		}
+		
+		return image;
+	}
+	
+	/*
+	 * Returns the address of the passed branch label, or -1 if the label does not exist
+	 */
+	public int getSymbolAddress(String label)
+	{
+		Integer address = symbols.get(label.toUpperCase());
+		return address == null ? -1 : address;
+	}
+	
+	
+	
+	/*
+	 * Getters
+	 */
+	
+	public byte[] getCode()
+	{
+		return code;
+	}
+	
+	public int getCodeLength()
+	{
+		return code.length;
+	}
+	
+	public int getEncoding()
+	{
+		return encoding;
+	}
+	
+	public int getDirectiveCount()
+	{
+		return directiveAddresses.length;
+	}
+	
+	public int[] getDirectiveAddresses()
+	{
+		return directiveAddresses;
+	}
+	
+	public byte[] getDirectiveValues()
+	{
+		return directiveValues;
+	}
+	
+	public Map<String, Integer> getSymbols()
+	{
+		return symbols;
+	}
+}
@@ -66,6 +66,12 @@ public class AssemblyLine {
 	 */
 	private String operandHEX;
 	
+	/*
+	 * Numeric value of the opcode and operand, as encoded into the assembled program
+	 */
+	private int opcodeValue;
+	private int operandValue;
+	
 	/*
 	 * Hexadecimal representation of branch label in HEXADECIMAL
 	 */
@@ -127,6 +133,14 @@ public class AssemblyLine {
 		return operandHEX;
 	}
 	
+	public int getOpcodeValue() {
+		return opcodeValue;
+	}
+	
+	public int getOperandValue() {
+		return operandValue;
+	}
+	
 	public String getBranchLabelHEX() {
 		return branchLabelHEX;
 	}
@@ -154,6 +168,14 @@ public class AssemblyLine {
 		this.operandHEX = operandHEX;
 	}
 	
+	public void setOpcodeValue(int opcodeValue) {
+		this.opcodeValue = opcodeValue;
+	}
+	
+	public void setOperandValue(int operandValue) {
+		this.operandValue = operandValue;
+	}
+	
 	public void setBranchLabelHEX(String branchLabelHEX) {
 		this.branchLabelHEX = branchLabelHEX;
 	}
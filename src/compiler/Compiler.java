@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -69,11 +70,6 @@ public class Compiler {
 	 */
 	private HashMap<Integer, String> branchTable;
 	
-	/*
-	 * InstructionTable object, holds a large array of Instruction objects for lookup purposes
-	 */
-	private InstructionTable insTable;
-	
 	/*
 	 * Current line of assembly file being accessed.
 	 */
@@ -88,37 +84,66 @@ public class Compiler {
 	 * String[] array holding the binary representation of the input assembly file
 	 * Each element in the array holds two 8-bit binary strings, the first representing the opcode and 
 	 * the second representing the operand
+	 * In the full encoding each element holds one to three 8-bit binary strings, the opcode followed 
+	 * by the operand bytes low byte first
 	 * 
 	 * This array does not include the binary represention of directive instructions
 	 */
 	private String[] binaryOutput;
 	
 	/*
-	 * String[] array holding the binary representation of any directive lines that 
-	 * are present in the assembly program. Each element holds two 8-bit binary strings, the
-	 * first representing the memory location where the data is to be stored, the second 
-	 * representing the data.
-	 * 
-	 * Directive instructions such as dc.b, dc.s, dc.v are identified by a '*' prefix 
-	 * before binary code
+	 * Data defined by any directive lines that are present in the assembly program, the 
+	 * memory location where each byte is to be stored and the byte itself. Only converted 
+	 * to binary strings for the binary output file, see getDirectiveBinaryOutput().
 	 */
-	private String[] directiveBinaryOutput;
+	private int[] directiveAddresses = new int[0];
+	private byte[] directiveValues = new byte[0];
 	
 	/*
 	 * int representing the line on which the end keyword is present
 	 */
 	private int endKeywordLine;
 	
+	/*
+	 * The assembled program held in memory, loaded directly into the simulation's RAM
+	 */
+	private AssembledProgram program;
 	
+	/*
+	 * Instruction encoding the program is assembled with, see AssembledProgram.ENCODING_ constants
+	 */
+	private int encoding = AssembledProgram.ENCODING_LITE;
 	
 	
 	
 	
+	/*
+	 * Assembles the passed program in memory without writing binary_output.txt, 
+	 * see getProgram() and writeBinaryToFile()
+	 */
 	public Compiler(String[] asmText) throws CompilerException
+	{
+		this(asmText, false);
+	}
+	
+	/*
+	 * Assembles the passed program, optionally exporting the binary output 
+	 * to the output file once assembly succeeds.
+	 */
+	public Compiler(String[] asmText, boolean writeOutputFile) throws CompilerException
+	{
+		this(asmText, writeOutputFile, AssembledProgram.ENCODING_LITE);
+	}
+	
+	/*
+	 * Assembles the passed program with the given instruction encoding. ENCODING_FULL 
+	 * allows 16-bit absolute addresses and lays out 1-3 byte instructions for the full 
+	 * machine, directive addresses remain limited to the zero page (0x00 - 0xFF).
+	 */
+	public Compiler(String[] asmText, boolean writeOutputFile, int encoding) throws CompilerException
 	{	
+		this.encoding = encoding;
 		
-		insTable = new InstructionTable();
-		//insTable.printTable();
 		branchTable = new HashMap<Integer, String>();
 		
 		assemblyText = asmText; //assemblyText is an array object whereby each element in the array corresponds to a single collective line in the asm file.
@@ -185,10 +210,11 @@ public class Compiler {
 			handleDirectives(); //Syntax check directive lines within program and construct binary output separate from rest of program
 			
 			printByteCode();
-			binaryOutput = constructBinaryOutput();
-			printBinaryOutput();
 			
-			writeBinaryToFile(false);
+			program = constructProgram();
+			
+			if(writeOutputFile)
+				writeBinaryToFile(false);
 			
 			System.out.println("[COMPILER] END ASSEMBLY - FILE SUCCESSFULLY COMPILED\n");
 			
@@ -479,16 +505,12 @@ public class Compiler {
 				System.out.println("Branch found: " + token);
 			}
 			
-			for(String symbol : insTable.getSymbols()) //iterate through instructionTable array of instruction mnemonics
+			if(InstructionTable.isMnemonic(token) && !tokenMatched) //if token is an instruction mnemonic, token is an instruction
 			{
-				if(token.matches(symbol) && !tokenMatched) //if token matches one of these mnemonic, token is an instruction
-				{
-					//handleToken()
-					tokenMatched = true;
-					instruction = token;
-					System.out.println("Instruction found: " + token);
-				}
-				
+				//handleToken()
+				tokenMatched = true;
+				instruction = token;
+				System.out.println("Instruction found: " + token);
 			}
 			
 			if(!tokenMatched) //anything else is an operand
@@ -721,28 +743,13 @@ public class Compiler {
 	{
 		System.out.println("\nCheck operands are valid for instructions:");
 		
-		String[] addressingModes = insTable.getAddressing();
-		String[] symbols = insTable.getSymbols();
-		
 		for(AssemblyLine asmLine : lineObjects)
 		{
 			String opcode = asmLine.getOpcode();
 			System.out.println("OPCODE IS OPCODE: " + opcode);
 			int addressingMode = asmLine.getAddressingMode();
 			
-			ArrayList<String> validAddressingModes = new ArrayList<String>(); //AL to hold the string representations of valid addressing modes for an instruction
-			ArrayList<Integer> validAddressingModesInt = new ArrayList<Integer>(); //AL to hold the integer representations of valid addressing modes for an instruction, same as above just int form
-			
-			for(int i = 0; i < symbols.length; i++)
-			{
-				if(opcode.equals(symbols[i])) //if there's a match between the opcode in asmLine and a symbol in the symbols[] array
-				{
-					validAddressingModes.add(addressingModes[i]);
-					String mode = addressingModes[i];
-					int modeNumber = convertModeToNumber(mode);
-					validAddressingModesInt.add(modeNumber);
-				}
-			}
+			AddressingMode[] validAddressingModes = InstructionTable.getAddressingModes(opcode); //Addressing modes supported by the instruction
 			
 			
 			/*
@@ -750,15 +757,15 @@ public class Compiler {
 			 */
 			System.out.println("\n" + opcode);
 			System.out.print("Valid addressing modes: ");
-			for(String str : validAddressingModes)
+			for(AddressingMode mode : validAddressingModes)
 			{
-				System.out.print(str + " ");
+				System.out.print(mode.getName() + " ");
 			}
 			
 			System.out.println("");
-			for(Integer i : validAddressingModesInt)
+			for(AddressingMode mode : validAddressingModes)
 			{
-				System.out.print(i.toString() + " ");
+				System.out.print(mode.getNumber() + " ");
 			}
 			System.out.println("");
 			/*
@@ -767,14 +774,7 @@ public class Compiler {
 			
 			System.out.println("Addressing Mode: " + addressingMode);
 			
-			boolean addressingModeValid = false;
-			for(Integer i : validAddressingModesInt)
-			{
-				if(addressingMode == i)
-				{
-					addressingModeValid = true;
-				}
-			}
+			boolean addressingModeValid = InstructionTable.getOpcode(opcode, AddressingMode.fromNumber(addressingMode)) != -1;
 			
 			if(addressingModeValid)
 			{
@@ -845,73 +845,12 @@ public class Compiler {
 		
 		DirectiveHandler dh = new DirectiveHandler(directiveLines);
 		dh.constructDirectiveOutput();
-		directiveBinaryOutput = dh.getDirectiveBinaryOutput();
+		directiveAddresses = dh.getDirectiveAddresses();
+		directiveValues = dh.getDirectiveValues();
 		
 		System.out.println("HANDLE DIRECTIVES END\n");
 	}
 	
-	/*
-	 * Utility method for checkValidOperands() method
-	 * Takes an addressing mode as a string input and returns a number associated with that addressing mode
-	 * List of addressing mode numbers is located in AssemblyLine class
-	 */
-	private int convertModeToNumber(String mode)
-	{
-		int returnNumber = 0;
-		
-		if(mode.equals("implied"))
-		{
-			returnNumber = 1;
-		}
-		
-		if(mode.equals("accumulator"))
-		{
-			returnNumber = 2;
-		}
-		
-		if(mode.equals("immediate"))
-		{
-			returnNumber = 3;
-		}
-		
-		if(mode.equals("relative"))
-		{
-			returnNumber = 4;
-		}
-		
-		if(mode.equals("absolute"))
-		{
-			returnNumber = 5;
-		}
-		
-		if(mode.equals("absolute,X"))
-		{
-			returnNumber = 6;
-		}
-		
-		if(mode.equals("absolute,Y"))
-		{
-			returnNumber = 7;
-		}
-		
-		if(mode.equals("indirect"))
-		{
-			returnNumber = 8;
-		}
-		
-		if(mode.equals("(indirect,X)"))
-		{
-			returnNumber = 9;
-		}
-		
-		if(mode.equals("(indirect),Y"))
-		{
-			returnNumber = 10;
-		}
-		
-		return returnNumber;
-	}
-	
 	
 	/*
 	 * Takes the contents of each AssemblyLine object and uses the instruction, operand and addressing mode to determine the hexadecimal
@@ -951,6 +890,8 @@ public class Compiler {
 			
 			asmLine.setOpcodeHEX(opcodeHex);
 			asmLine.setOperandHEX(operandHex);
+			asmLine.setOpcodeValue(Integer.parseInt(opcodeHex, 16)); //Parsed once here, read by constructProgram()
+			asmLine.setOperandValue(Integer.parseInt(operandHex, 16));
 		}
 	}
 	
@@ -1016,7 +957,7 @@ public class Compiler {
 		
 		System.out.println("");
 		
-		SyntaxChecker sc = new SyntaxChecker();
+		SyntaxChecker sc = new SyntaxChecker(encoding == AssembledProgram.ENCODING_FULL ? 0xFFFF : 0xFF);
 		boolean tokenHasError = false;
 		
 		int currentToken = 0;
@@ -1102,6 +1043,18 @@ public class Compiler {
 			
 			System.out.println("Hex opcode/operand: " + opcodeHex + " " + operandHex);
 			
+			if(encoding == AssembledProgram.ENCODING_FULL) //1-3 bytes per instruction
+			{
+				String instructionString = "";
+				for(int b : encodeLine(asmLine))
+				{
+					instructionString = instructionString.concat(" " + Utils.hexToBinary(Integer.toHexString(b)));
+				}
+				
+				binaryOut.add(instructionString.trim());
+				continue;
+			}
+			
 			String opcodeBinary = Utils.hexToBinary(opcodeHex);
 			String operandBinary = Utils.hexToBinary(operandHex);
 			
@@ -1126,10 +1079,84 @@ public class Compiler {
 		return binaryOutputArray;
 	}
 	
+	/*
+	 * Builds the in-memory AssembledProgram from the opcode and operand values of each line 
+	 * and the directive data. The program code is laid out exactly as constructBinaryOutput() 
+	 * lays out the binary strings, BEGIN bytes first, two bytes per line, END bytes last.
+	 * 
+	 * Each branch label is entered into the symbol table with the address of the line it labels.
+	 */
+	public AssembledProgram constructProgram()
+	{
+		byte[] code = new byte[lineObjects.length * 3 + 4]; //Trimmed to the actual length below
+		Map<String, Integer> symbols = new LinkedHashMap<String, Integer>();
+		
+		code[0] = (byte) 0xEF; //BEGIN keyword
+		code[1] = (byte) 0xEF;
+		
+		int address = 2;
+		for(AssemblyLine asmLine : lineObjects)
+		{
+			String label = asmLine.getBranchLabel();
+			if(!label.equals(""))
+			{
+				symbols.put(label.substring(1), address); //Labels are defined as _label, see determineBranches()
+			}
+			
+			for(int b : encodeLine(asmLine))
+			{
+				code[address++] = (byte) b;
+			}
+		}
+		
+		code[address] = (byte) 0xFF; //END keyword
+		code[address + 1] = (byte) 0xFF;
+		code = Arrays.copyOf(code, address + 2);
+		
+		return new AssembledProgram(code, directiveAddresses, directiveValues, symbols, encoding);
+	}
+	
+	/*
+	 * Returns the bytes of a single assembled line.
+	 * Lite encoding: opcode and operand, 2 bytes regardless of the addressing mode.
+	 * Full encoding: the number of bytes given by the InstructionTable for the opcode, 
+	 * 16-bit operands are stored little endian i.e. $1234 = 34 12
+	 */
+	private int[] encodeLine(AssemblyLine asmLine)
+	{
+		int opcode = asmLine.getOpcodeValue();
+		int operand = asmLine.getOperandValue();
+		
+		if(encoding != AssembledProgram.ENCODING_FULL)
+			return new int[] {opcode, operand & 0xFF};
+		
+		int length = InstructionTable.getLength(opcode);
+		
+		if(length == 3)
+			return new int[] {opcode, operand & 0xFF, (operand >> 8) & 0xFF};
+		if(length == 2)
+			return new int[] {opcode, operand & 0xFF};
+		
+		return new int[] {opcode};
+	}
+	
+	/*
+	 * Exports the binary output to the output file, see OutputBinaryToFile
+	 */
 	public void writeBinaryToFile(boolean outputType)
 	{
 		System.out.println("");
-		OutputBinaryToFile outputBinary = new OutputBinaryToFile(outputFilepath, binaryOutput, directiveBinaryOutput, outputType);
+		OutputBinaryToFile outputBinary = new OutputBinaryToFile(outputFilepath, getBinaryOutput(), getDirectiveBinaryOutput(), outputType);
+	}
+	
+	/*
+	 * Exports the assembled program to the passed file in the compact binary 
+	 * object format, see ObjectFormat
+	 */
+	public void writeObjectToFile(String filepath)
+	{
+		System.out.println("");
+		OutputBinaryToFile outputObject = new OutputBinaryToFile(filepath, program);
 	}
 	
 	public void setOutputFile(String outputFile)
@@ -1137,6 +1164,42 @@ public class Compiler {
 		this.outputFilepath = outputFile;
 	}
 	
+	/*
+	 * Binary output of the program, each element holds the opcode and operand of
+	 * a single line as two 8-bit binary strings. Includes the BEGIN and END keywords.
+	 * Only built when first asked for, the assembled program does not need it.
+	 */
+	public String[] getBinaryOutput()
+	{
+		if(binaryOutput == null)
+		{
+			binaryOutput = constructBinaryOutput();
+		}
+		return binaryOutput;
+	}
+	
+	/*
+	 * Binary output of the directive lines, each element holds a "*address *data" pair.
+	 * Built from the directive data on each call. Null if the program contains no directives.
+	 */
+	public String[] getDirectiveBinaryOutput()
+	{
+		return DirectiveHandler.toBinaryOutput(directiveAddresses, directiveValues);
+	}
+	
+	/*
+	 * The assembled program, ready to be loaded into the simulation with MOS6502.loadProgram()
+	 */
+	public AssembledProgram getProgram()
+	{
+		return program;
+	}
+	
+	public int getEncoding()
+	{
+		return encoding;
+	}
+	
 	
 	///////////////////
 	///PRINT METHODS///
@@ -1217,7 +1280,7 @@ public class Compiler {
 	public void printBinaryOutput()
 	{
 		System.out.println("Binary output:");
-		for(String str : binaryOutput)
+		for(String str : getBinaryOutput())
 		{
 			System.out.println(str);
 		}
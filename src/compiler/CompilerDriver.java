@@ -22,7 +22,7 @@ public class CompilerDriver {
 		
 		try
 		{
-			Compiler c = new Compiler(raf.getAssemblyText());
+			Compiler c = new Compiler(raf.getAssemblyText(), true);
 		}
 		catch(CompilerException e)
 		{
@@ -1,7 +1,6 @@
 package compiler;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -22,7 +21,12 @@ import util.Utils;
 public class DirectiveHandler {
 
 	String[] directiveLines;
-	String[] directiveBinaryOutput;
+	
+	/*
+	 * Address and value of each byte of directive data
+	 */
+	private final ArrayList<Integer> directiveAddresses = new ArrayList<Integer>();
+	private final ArrayList<Integer> directiveValues = new ArrayList<Integer>();
 	
 	int numberOfLines;
 	
@@ -50,11 +54,11 @@ public class DirectiveHandler {
 		{
 			determineDirectiveType(dLine);
 			checkDirectiveSyntax(dLine);
-			convertLineToBinary(dLine);
+			convertLineToData(dLine);
 		}
 		
 		System.out.println("");
-		printDirectiveBinaryOutputContents();
+		printDirectiveOutputContents();
 	}
 	
 	public void determineDirectiveType(String dLine) throws CompilerException
@@ -351,12 +355,12 @@ public class DirectiveHandler {
 	}
 	
 	
-	public void convertLineToBinary(String dLine) throws CompilerException
+	/*
+	 * Adds the address and value of each byte defined by the directive line to the directive output
+	 */
+	public void convertLineToData(String dLine) throws CompilerException
 	{
-		System.out.println("\nConvert Directive To Binary: " + dLine);
-		
-		//AL to temporarily store the binary strings created by this method
-		ArrayList<String> directiveBinaryAL = new ArrayList<String>(); 
+		System.out.println("\nConvert Directive To Data: " + dLine);
 		
 		String[] lineTokens = dLine.split(" ");
 		
@@ -367,30 +371,10 @@ public class DirectiveHandler {
 		{
 			System.out.println("Directive type: Byte");
 			
-			String location = lineTokens[1].replace("$", ""); //Remove $ symbol from location byte
-			String data = lineTokens[2].replace("$", ""); //Remove $ symbol from data byte
+			int location = Utils.HexToDec(lineTokens[1].replace("$", "")); //Remove $ symbol from location byte
+			int data = Utils.HexToDec(lineTokens[2].replace("$", "")); //Remove $ symbol from data byte
 			
-			System.out.println("Location (hex): " + location);
-			System.out.println("Data (hex): " + data);
-			
-			String locationBinary = Utils.hexToBinary(location);
-			String dataBinary = Utils.hexToBinary(data);
-			
-			System.out.println("Location (binary): " + locationBinary);
-			System.out.println("Data (binary): " + dataBinary);
-			
-			/*
-			 * If greater than ff, binary wrap around may occur, forcing the int to go from 8-bit to 32-bit
-			 * This prevents any binary strings greater than 8-bit from being processed
-			 */
-			if(locationBinary.length() > 8) 
-			{
-				throw new CompilerException("Line '" + dLine + "' cannot be processed as memory address will exceed 0xFF (255) \nAssembly halted.");
-			}
-			
-			String outputBinary = "*" + locationBinary + " *" + dataBinary;
-			
-			directiveBinaryAL.add(outputBinary);
+			addDirectiveByte(dLine, location, data);
 		}
 		
 		/*
@@ -401,49 +385,12 @@ public class DirectiveHandler {
 			System.out.println("Directive type: String");
 			
 			//Get starting location
-			String startingLocationHex = lineTokens[1].replace("$", ""); //Remove $ symbol from location byte
-			int startingLocationDec = Utils.HexToDec(startingLocationHex);
-			
-			System.out.println("Starting location (Hex): " + startingLocationHex);
-			System.out.println("Starting location (Dec): " + startingLocationDec + "\n");
+			int currentLocation = Utils.HexToDec(lineTokens[1].replace("$", "")); //Remove $ symbol from location byte
 			
-			//Get the string to be processed 
-			String stringToSplit = lineTokens[2];
-			
-			//Split the string into individual characters
-			char[] splitString = stringToSplit.toCharArray();
-			
-			
-			
-			//For each character, convert to ascii value, then convert to binary along with location to be stored at 
-			int currentLocation = startingLocationDec;
-			for(char character : splitString)
+			//Store the ascii value of each character of the string, from the starting location onwards
+			for(char character : lineTokens[2].toCharArray())
 			{
-				System.out.println(currentLocation + " : " + character);
-				
-				String currentLocationHex = Utils.DecToHex(currentLocation); //Convert current location from int to hex 
-				String currentLocationBinary = Utils.hexToBinary(currentLocationHex); //Convert current location from hex to binary
-				
-				int asciiValueDec = (int) character; //Convert character to asciiValue in decimal
-				String asciiValueHex = Utils.DecToHex(asciiValueDec); //Convert ascii value decimal to hexadecimal
-				String asciiValueBinary = Utils.hexToBinary(asciiValueHex); //Convert hexadecimal ascii value to binary
-				
-				System.out.println("Hex values: " + currentLocationHex + " " + asciiValueHex);
-				System.out.println("Binary values: " + currentLocationBinary + " " + asciiValueBinary);
-				
-				/*
-				 * If greater than ff, binary wrap around may occur, forcing the int to go from 8-bit to 32-bit
-				 * This prevents any binary strings greater than 8-bit from being processed
-				 */
-				if(currentLocationBinary.length() > 8) 
-				{
-					throw new CompilerException("Line '" + dLine + "' cannot be processed as memory address will exceed 0xFF (255) \nAssembly halted.");
-				}
-				
-				String outputBinary = "*" + currentLocationBinary + " *" + asciiValueBinary;
-				
-				directiveBinaryAL.add(outputBinary);
-				
+				addDirectiveByte(dLine, currentLocation, character);
 				currentLocation++;
 			}
 		}
@@ -455,112 +402,84 @@ public class DirectiveHandler {
 		{
 			System.out.println("Directive type: Value array");
 			
-			String startingLocationHex = lineTokens[1].replace("$", ""); //Remove $ symbol from location byte
-			int startingLocationDec = Utils.HexToDec(startingLocationHex);
-			int numValues = (lineTokens.length - 2);
-			
-			System.out.println("Starting location (Hex): " + startingLocationHex);
-			System.out.println("Starting location (Dec): " + startingLocationDec + "\n");
+			int currentLocation = Utils.HexToDec(lineTokens[1].replace("$", "")); //Remove $ symbol from location byte
 			
-			ArrayList<String> dataValues = new ArrayList<String>(); 
-			//Get data values - iterate through lineTokens array, missing the first two tokens 
+			//Data values - iterate through lineTokens array, missing the first two tokens 
 			for(int i = 2; i < lineTokens.length; i++)
 			{
-				dataValues.add(lineTokens[i]);
-			}
-			
-			System.out.println("Data Values AL contents:");
-			for(String value : dataValues)
-			{
-				System.out.println(value);
-			}
-			
-			/*
-			 * For each data value, convert location and data to binary, output to directiveBinaryAL, then increment location
-			 */
-			int currentLocation = startingLocationDec;
-			for(String data : dataValues)
-			{
-				String currentLocationHex = Utils.DecToHex(currentLocation); //Convert current location from int to hex 
-				String currentLocationBinary = Utils.hexToBinary(currentLocationHex); //Convert current location from hex to binary
-				
-				data = data.replace("$", "");
-				String dataBinary = Utils.hexToBinary(data); //Remove $ then convert the current value from hex to binary
-				
-				System.out.println("Hex values: " + currentLocationHex + " " + data);
-				System.out.println("Binary values: " + currentLocationBinary + " " + dataBinary);
-				
-				/*
-				 * If greater than ff, binary wrap around may occur, forcing the int to go from 8-bit to 32-bit
-				 * This prevents any binary strings greater than 8-bit from being processed
-				 */
-				if(currentLocationBinary.length() > 8) 
-				{
-					throw new CompilerException("Line '" + dLine + "' cannot be processed as memory address will exceed 0xFF (255) \nAssembly halted.");
-				}
-				
-				String outputBinary = "*" + currentLocationBinary + " *" + dataBinary;
-				
-				directiveBinaryAL.add(outputBinary);
-				
+				addDirectiveByte(dLine, currentLocation, Utils.HexToDec(lineTokens[i].replace("$", "")));
 				currentLocation++; //increment current location
 			}
-			
-		
 		}
-		
-		System.out.println("\ndirectiveBinaryAL contents:");
-		for(String str : directiveBinaryAL)
-		{
-			System.out.println(str);
-		}
-		
-		
+	}
+	
+	private void addDirectiveByte(String dLine, int location, int data) throws CompilerException
+	{
+		System.out.println(Utils.byteToHex(location) + " : " + Utils.byteToHex(data));
 		
 		/*
-		 * To add the output onto the directiveBinaryOutput array, the array must be first converted to an AL so 
-		 * the size of the final array can be changed. The array is converted to an AL, new values are added, then 
-		 * the AL is converted back into an array.
+		 * Directive data is written to the zero page, the location must not be incremented past 0xFF
 		 */
+		if(location > 0xFF) 
+		{
+			throw new CompilerException("Line '" + dLine + "' cannot be processed as memory address will exceed 0xFF (255) \nAssembly halted.");
+		}
 		
-		//Check if directiveBinaryOutput array has been instantiated, if not create array with new values
-		//If yes, convert to AL, add new values, then convert back to array
-		if(directiveBinaryOutput == null)
+		directiveAddresses.add(location);
+		directiveValues.add(data);
+	}
+	
+	public void printDirectiveOutputContents()
+	{
+		System.out.println("Print directive output contents:");
+		for(int i = 0; i < directiveAddresses.size(); i++)
 		{
-			directiveBinaryOutput = directiveBinaryAL.toArray(new String[directiveBinaryAL.size()]);
+			System.out.println(Utils.byteToHex(directiveAddresses.get(i)) + " : " + Utils.byteToHex(directiveValues.get(i)));
 		}
-		else
+	}
+	
+	/*
+	 * Memory addresses of the directive data, in the order the directives define them
+	 */
+	public int[] getDirectiveAddresses()
+	{
+		int[] addresses = new int[directiveAddresses.size()];
+		for(int i = 0; i < addresses.length; i++)
 		{
-			ArrayList<String> directiveBinaryOutputAL = new ArrayList<String>(Arrays.asList(directiveBinaryOutput)); 
-			
-			//Add all values into the arraylist
-			for(String binaryStr : directiveBinaryAL)
-			{
-				directiveBinaryOutputAL.add(binaryStr);
-			}
-					
-			//Convert AL back into array with new values
-			directiveBinaryOutput = directiveBinaryOutputAL.toArray(new String[directiveBinaryAL.size()]);
+			addresses[i] = directiveAddresses.get(i);
 		}
-		
-		System.out.println("\ndirectiveBinaryAL converted to array.\n");
+		return addresses;
 	}
 	
-	public void printDirectiveBinaryOutputContents()
+	/*
+	 * Values of the directive data, one per address
+	 */
+	public byte[] getDirectiveValues()
 	{
-		System.out.println("Print DirectiveBinaryOutput contents:");
-		if(directiveBinaryOutput != null)
+		byte[] values = new byte[directiveValues.size()];
+		for(int i = 0; i < values.length; i++)
 		{
-			for(String str : directiveBinaryOutput)
-			{
-				System.out.println(str);
-			}
+			values[i] = (byte) (int) directiveValues.get(i);
 		}
+		return values;
 	}
 	
-	public String[] getDirectiveBinaryOutput()
+	/*
+	 * Builds the text export of directive data, each element holds the address and the value 
+	 * as 8-bit binary strings with a '*' prefix, e.g. "*10010000 *00101011". Returns null if 
+	 * there is no directive data.
+	 */
+	public static String[] toBinaryOutput(int[] addresses, byte[] values)
 	{
-		return directiveBinaryOutput;
+		if(addresses.length == 0)
+			return null;
+		
+		String[] output = new String[addresses.length];
+		for(int i = 0; i < output.length; i++)
+		{
+			output[i] = "*" + Utils.hexToBinary(Utils.byteToHex(addresses[i])) + " *" + Utils.hexToBinary(Utils.byteToHex(values[i]));
+		}
+		return output;
 	}
 }
 
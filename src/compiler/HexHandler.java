@@ -28,8 +28,6 @@ public class HexHandler {
 	 */
 	private String[] branchLocations; 
 	
-	private InstructionTable insTable;
-	
 	private String branchLabel;
 	private String instruction;
 	private String operand;
@@ -43,7 +41,6 @@ public class HexHandler {
 	public HexHandler(HashMap<Integer, String> branchTable)
 	{
 		System.out.println("\n---HEXHANDLER---");
-		insTable = new InstructionTable();
 		
 		this.branchTable = branchTable;
 		branchTableSize = branchTable.size();
@@ -115,21 +112,16 @@ public class HexHandler {
 	
 	public void convertInstructionToHex()
 	{
-		String[] symbolAddress = insTable.getSymbolAddress(); //Array holding string pairs of instruction symbol and addressing mode
-		String[] opcodes = insTable.getOpcodes();
-		
 		String addressingModeStr = convertModeToString(addressingMode); //convert addressingmode int to string representation
 		String instructionAddressPair = instruction.concat(" " + addressingModeStr); //concat instruction mnemonic with addressing mode string
 		
 		System.out.println("InstructionAddress pair: " + instructionAddressPair);
 		
-		for(int i = 0; i < symbolAddress.length; i++)
+		int opcode = InstructionTable.getOpcode(instruction, AddressingMode.fromNumber(addressingMode));
+		if(opcode != -1)
 		{
-			if(instructionAddressPair.equals(symbolAddress[i]))
-			{
-				opcodeHex = opcodes[i];
-				System.out.println(instructionAddressPair + " is equivalent to opcode: " + opcodeHex);
-			}
+			opcodeHex = Utils.byteToHex(opcode);
+			System.out.println(instructionAddressPair + " is equivalent to opcode: " + opcodeHex);
 		}
 	}
 	
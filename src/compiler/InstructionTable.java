@@ -1,34 +1,131 @@
 package compiler;
 
+import java.util.Arrays;
+
+/*
+ * Table of the instructions supported by the assembler and the simulator.
+ * 
+ * The instructions are listed below as parallel String arrays. When the class is loaded 
+ * they are decoded once into primitive arrays indexed by opcode (mnemonic, addressing mode,
+ * length, base cycles, page-cross penalty and legality), so the static getters below are
+ * single array reads instead of scans with hex string comparisons.
+ * 
+ * Mnemonics are looked up through a perfect hash: the three letters of a mnemonic are
+ * packed 5 bits each into a 15-bit key (see mnemonicKey()), which is unique for every 
+ * three letter string and indexes straight into MNEMONIC_IDS.
+ */
 
 public class InstructionTable {
 	
 	Instruction[] instructions;
 
-	String[] addressing = {
+	static final String[] addressing = {
 			"immediate", "absolute", "absolute,X", "absolute,Y", "(indirect,X)", "(indirect),Y", "immediate", "absolute", "absolute,X", "absolute,Y", "(indirect,X)", "(indirect),Y", "accumulator", "absolute", "absolute,X", "relative", "relative", "relative", "absolute", "relative", "relative", "relative", "implied", "relative", "relative", "implied", "implied", "implied", "implied", "immediate", "absolute", "absolute,X", "absolute,Y", "(indirect,X)", "(indirect),Y", "immediate", "absolute", "immediate", "absolute", "absolute", "absolute,X", "implied", "implied", "immediate", "absolute", "absolute,X", "absolute,Y", "(indirect,X)", "(indirect),Y", "absolute", "absolute,X", "implied", "implied", "absolute", "indirect", "absolute", "immediate", "absolute", "absolute,X", "absolute,Y", "(indirect,X)", "(indirect),Y", "immediate", "absolute", "absolute,Y", "immediate", "absolute", "absolute,X", "accumulator", "absolute", "absolute,X", "implied", "immediate", "absolute", "absolute,X", "absolute,Y", "(indirect,X)", "(indirect),Y", "implied", "implied", "implied", "implied", "accumulator", "absolute", "absolute,X", "accumulator", "absolute", "absolute,X", "implied", "implied", "immediate", "absolute", "absolute,X", "absolute,Y", "(indirect,X)", "(indirect),Y", "implied", "implied", "implied", "absolute", "absolute,X", "absolute,Y", "(indirect,X)", "(indirect),Y", "absolute", "absolute", "implied", "implied", "implied", "implied", "implied", "implied" 
 	};
 	
-	String[] symbols = {
+	static final String[] symbols = {
 			"ADC", "ADC", "ADC", "ADC", "ADC", "ADC", "AND", "AND", "AND", "AND", "AND", "AND", "ASL", "ASL", "ASL", "BCC", "BCS", "BEQ", "BIT", "BMI", "BNE", "BPL", "BRK", "BVC", "BVS", "CLC", "CLD", "CLI", "CLV", "CMP", "CMP", "CMP", "CMP", "CMP", "CMP", "CPX", "CPX", "CPY", "CPY", "DEC", "DEC", "DEX", "DEY", "EOR", "EOR", "EOR", "EOR", "EOR", "EOR", "INC", "INC", "INX", "INY", "JMP", "JMP", "JSR", "LDA", "LDA", "LDA", "LDA", "LDA", "LDA", "LDX", "LDX", "LDX", "LDY", "LDY", "LDY", "LSR", "LSR", "LSR", "NOP", "ORA", "ORA", "ORA", "ORA", "ORA", "ORA", "PHA", "PHP", "PLA", "PLP", "ROL", "ROL", "ROL", "ROR", "ROR", "ROR", "RTI", "RTS", "SBC", "SBC", "SBC", "SBC", "SBC", "SBC", "SEC", "SED", "SEI", "STA", "STA", "STA", "STA", "STA", "STX", "STY", "TAX", "TAY", "TSX", "TXA", "TXS", "TYA" 
 	};
 	
-	String[] opcodes = {
+	static final String[] opcodes = {
 			"69", "6D", "7D", "79", "61", "71", "29", "2D", "3D", "39", "21", "31", "0A", "0E", "1E", "90", "B0", "F0", "2C", "30", "D0", "10", "00", "50", "70", "18", "D8", "58", "B8", "C9", "CD", "DD", "D9", "C1", "D1", "E0", "EC", "C0", "CC", "CE", "DE", "CA", "88", "49", "4D", "5D", "59", "41", "51", "EE", "FE", "E8", "C8", "4C", "6C", "20", "A9", "AD", "BD", "B9", "A1", "B1", "A2", "AE", "BE", "A0", "AC", "BC", "4A", "4E", "5E", "EA", "09", "0D", "1D", "19", "01", "11", "48", "08", "68", "28", "2A", "2E", "3E", "6A", "6E", "7E", "40", "60", "E9", "ED", "FD", "F9", "E1", "F1", "38", "F8", "78", "8D", "9D", "99", "81", "91", "8E", "8C", "AA", "A8", "BA", "8A", "9A", "98" 	
 	};
 	
-	String[] noBytes = {
-			"2", "3", "3", "3", "2", "2", "2", "3", "3", "3", "2", "2", "1", "3", "3", "2", "2", "2", "3", "2", "2", "2", "1", "2", "2", "1", "1", "1", "1", "2", "3", "3", "3", "2", "2", "2", "3", "2", "3", "3", "3", "1", "1", "2", "3", "3", "3", "2", "2", "3", "3", "1", "1", "3", "3", "3", "2", "3", "3", "3", "2", "2", "2", "3", "3", "2", "2", "2", "3", "3", "1", "3", "3", "1", "2", "3", "3", "3", "2", "2", "1", "1", "1", "1", "1", "3", "3", "1", "3", "3", "1", "1", "2", "3", "3", "3", "2", "2", "1", "1", "1", "3", "3", "3", "2", "2", "3", "3", "1", "1", "1", "1", "1", "1" 
+	static final String[] noBytes = {
+			"2", "3", "3", "3", "2", "2", "2", "3", "3", "3", "2", "2", "1", "3", "3", "2", "2", "2", "3", "2", "2", "2", "1", "2", "2", "1", "1", "1", "1", "2", "3", "3", "3", "2", "2", "2", "3", "2", "3", "3", "3", "1", "1", "2", "3", "3", "3", "2", "2", "3", "3", "1", "1", "3", "3", "3", "2", "3", "3", "3", "2", "2", "2", "3", "3", "2", "3", "3", "1", "3", "3", "1", "2", "3", "3", "3", "2", "2", "1", "1", "1", "1", "1", "3", "3", "1", "3", "3", "1", "1", "2", "3", "3", "3", "2", "2", "1", "1", "1", "3", "3", "3", "2", "2", "3", "3", "1", "1", "1", "1", "1", "1"
 	};
 	
-	String[] cycles = {
-			"2", "4", "4*", "4*", "6", "5*", "2", "4", "4*", "4*", "6", "5*", "2", "6", "7", "2**", "2**", "2**", "4", "2**", "2**", "2**", "7", "2**", "2**", "2", "2", "2", "2", "2", "4", "4*", "4*", "6", "5*", "2", "4", "2", "4", "3", "7", "2", "2", "2", "4", "4*", "4*", "6", "5*", "6", "7", "2", "2", "3", "5", "6", "2", "4", "4*", "4*", "6", "5*", "2", "4", "4*", "2", "3", "4", "4", "4*", "2", "6", "7", "2", "2", "4", "4*", "4*", "6", "5*", "3", "3", "4", "4", "2", "6", "7", "2", "6", "7", "6", "6", "2", "4", "4*", "4*", "6", "5*", "2", "2", "2", "4", "5", "5", "6", "6", "4", "4", "2", "2", "2", "2", "2", "2" 
+	static final String[] cycles = {
+			"2", "4", "4*", "4*", "6", "5*", "2", "4", "4*", "4*", "6", "5*", "2", "6", "7", "2**", "2**", "2**", "4", "2**", "2**", "2**", "7", "2**", "2**", "2", "2", "2", "2", "2", "4", "4*", "4*", "6", "5*", "2", "4", "2", "4", "6", "7", "2", "2", "2", "4", "4*", "4*", "6", "5*", "6", "7", "2", "2", "3", "5", "6", "2", "4", "4*", "4*", "6", "5*", "2", "4", "4*", "2", "4", "4*", "2", "6", "7", "2", "2", "4", "4*", "4*", "6", "5*", "3", "3", "4", "4", "2", "6", "7", "2", "6", "7", "6", "6", "2", "4", "4*", "4*", "6", "5*", "2", "2", "2", "4", "5", "5", "6", "6", "4", "4", "2", "2", "2", "2", "2", "2",
 	};
 	
-	String[] symbolAddress = {
+	static final String[] symbolAddress = {
 			"ADC immediate", "ADC absolute", "ADC absolute,X", "ADC absolute,Y", "ADC (indirect,X)", "ADC (indirect),Y", "AND immediate", "AND absolute", "AND absolute,X", "AND absolute,Y", "AND (indirect,X)", "AND (indirect),Y", "ASL accumulator", "ASL absolute", "ASL absolute,X", "BCC relative", "BCS relative", "BEQ relative", "BIT absolute", "BMI relative", "BNE relative", "BPL relative", "BRK implied", "BVC relative", "BVS relative", "CLC implied", "CLD implied", "CLI implied", "CLV implied", "CMP immediate", "CMP absolute", "CMP absolute,X", "CMP absolute,Y", "CMP (indirect,X)", "CMP (indirect),Y", "CPX immediate", "CPX absolute", "CPY immediate", "CPY absolute", "DEC absolute", "DEC absolute,X", "DEX implied", "DEY implied", "EOR immediate", "EOR absolute", "EOR absolute,X", "EOR absolute,Y", "EOR (indirect,X)", "EOR (indirect),Y", "INC absolute", "INC absolute,X", "INX implied", "INY implied", "JMP absolute", "JMP indirect", "JSR absolute", "LDA immediate", "LDA absolute", "LDA absolute,X", "LDA absolute,Y", "LDA (indirect,X)", "LDA (indirect),Y", "LDX immediate", "LDX absolute", "LDX absolute,Y", "LDY immediate", "LDY absolute", "LDY absolute,X", "LSR accumulator", "LSR absolute", "LSR absolute,X", "NOP implied", "ORA immediate", "ORA absolute", "ORA absolute,X", "ORA absolute,Y", "ORA (indirect,X)", "ORA (indirect),Y", "PHA implied", "PHP implied", "PLA implied", "PLP implied", "ROL accumulator", "ROL absolute", "ROL absolute,X", "ROR accumulator", "ROR absolute", "ROR absolute,X", "RTI implied", "RTS implied", "SBC immediate", "SBC absolute", "SBC absolute,X", "SBC absolute,Y", "SBC (indirect,X)", "SBC (indirect),Y", "SEC implied", "SED implied", "SEI implied", "STA absolute", "STA absolute,X", "STA absolute,Y", "STA (indirect,X)", "STA (indirect),Y", "STX absolute", "STY absolute", "TAX implied", "TAY implied", "TSX implied", "TXA implied", "TXS implied", "TYA implied"
 	};
 	
+	/*
+	 * Opcode metadata, indexed by opcode. Opcodes outside of the instruction set have a 
+	 * null mnemonic and mode, a length of 1 and no cycles.
+	 */
+	private static final String[] MNEMONICS = new String[256];
+	private static final AddressingMode[] MODES = new AddressingMode[256];
+	private static final int[] LENGTHS = new int[256];
+	private static final int[] BASE_CYCLES = new int[256];
+	private static final boolean[] PAGE_PENALTY = new boolean[256];
+	private static final boolean[] BRANCH_PENALTY = new boolean[256];
+	private static final boolean[] LEGAL = new boolean[256];
+	
+	/*
+	 * Index of each opcode within the String arrays and the instructions array, -1 if none
+	 */
+	private static final int[] OPCODE_INDEX = new int[256];
+	
+	/*
+	 * Mnemonic id + 1 for each mnemonic key, 0 if the key is not a mnemonic
+	 */
+	private static final int[] MNEMONIC_IDS = new int[1 << 15];
+	
+	/*
+	 * Opcode of each mnemonic id and addressing mode, -1 if the mode is not supported
+	 */
+	private static final int[][] MNEMONIC_OPCODES;
+	
+	/*
+	 * Supported addressing modes of each mnemonic id, in table order
+	 */
+	private static final AddressingMode[][] MNEMONIC_MODES;
+	
+	static
+	{
+		for(int i = 0; i < 256; i++)
+		{
+			LENGTHS[i] = 1;
+			OPCODE_INDEX[i] = -1;
+		}
+		
+		int mnemonicCount = 0;
+		int[] modeCounts = new int[symbols.length];
+		
+		for(int i = 0; i < opcodes.length; i++)
+		{
+			int opcode = Integer.parseInt(opcodes[i], 16);
+			
+			MNEMONICS[opcode] = symbols[i];
+			MODES[opcode] = AddressingMode.fromName(addressing[i]);
+			LENGTHS[opcode] = Integer.parseInt(noBytes[i]);
+			BASE_CYCLES[opcode] = Integer.parseInt(cycles[i].replace("*", ""));
+			BRANCH_PENALTY[opcode] = cycles[i].endsWith("**");
+			PAGE_PENALTY[opcode] = cycles[i].endsWith("*") && !BRANCH_PENALTY[opcode];
+			LEGAL[opcode] = true;
+			OPCODE_INDEX[opcode] = i;
+			
+			int key = mnemonicKey(symbols[i]);
+			if(MNEMONIC_IDS[key] == 0)
+			{
+				MNEMONIC_IDS[key] = ++mnemonicCount;
+			}
+			modeCounts[MNEMONIC_IDS[key] - 1]++;
+		}
+		
+		MNEMONIC_OPCODES = new int[mnemonicCount][AddressingMode.values().length];
+		MNEMONIC_MODES = new AddressingMode[mnemonicCount][];
+		for(int id = 0; id < mnemonicCount; id++)
+		{
+			Arrays.fill(MNEMONIC_OPCODES[id], -1);
+			MNEMONIC_MODES[id] = new AddressingMode[modeCounts[id]];
+			modeCounts[id] = 0;
+		}
+		
+		for(int i = 0; i < opcodes.length; i++)
+		{
+			int id = MNEMONIC_IDS[mnemonicKey(symbols[i])] - 1;
+			AddressingMode mode = AddressingMode.fromName(addressing[i]);
+			
+			MNEMONIC_OPCODES[id][mode.ordinal()] = Integer.parseInt(opcodes[i], 16);
+			MNEMONIC_MODES[id][modeCounts[id]++] = mode;
+		}
+	}
+	
 	public InstructionTable()
 	{
 		createInstructionArray();
@@ -66,32 +163,142 @@ public class InstructionTable {
 		return symbolAddress;
 	}
 	
+	/*
+	 * Returns the mnemonic of the opcode, null if the opcode is outside of the instruction set
+	 */
+	public static String getMnemonic(int opcode)
+	{
+		return MNEMONICS[opcode & 0xff];
+	}
+	
+	/*
+	 * Returns the addressing mode of the opcode, null if the opcode is outside of the instruction set
+	 */
+	public static AddressingMode getAddressingMode(int opcode)
+	{
+		return MODES[opcode & 0xff];
+	}
+	
+	/*
+	 * Returns the number of bytes taken by the opcode and its operand
+	 */
+	public static int getLength(int opcode)
+	{
+		return LENGTHS[opcode & 0xff];
+	}
+	
+	/*
+	 * Returns the number of cycles taken by the opcode, without the page-cross and branch penalties
+	 */
+	public static int getBaseCycles(int opcode)
+	{
+		return BASE_CYCLES[opcode & 0xff];
+	}
+	
+	/*
+	 * (*) in the cycles table, an extra cycle is taken when the indexed address crosses a page boundary
+	 */
+	public static boolean hasPageCrossPenalty(int opcode)
+	{
+		return PAGE_PENALTY[opcode & 0xff];
+	}
+	
+	/*
+	 * (**) in the cycles table, extra cycles are taken when the branch is taken
+	 */
+	public static boolean hasBranchPenalty(int opcode)
+	{
+		return BRANCH_PENALTY[opcode & 0xff];
+	}
+	
+	public static boolean isLegal(int opcode)
+	{
+		return LEGAL[opcode & 0xff];
+	}
+	
+	/*
+	 * Returns true if the token is an instruction mnemonic, the token must be upper case
+	 */
+	public static boolean isMnemonic(String token)
+	{
+		int key = mnemonicKey(token);
+		return key != -1 && MNEMONIC_IDS[key] != 0;
+	}
+	
+	/*
+	 * Returns the opcode of the mnemonic using the addressing mode, -1 if the mnemonic
+	 * does not exist or does not support the addressing mode
+	 */
+	public static int getOpcode(String mnemonic, AddressingMode mode)
+	{
+		int key = mnemonicKey(mnemonic);
+		if(key == -1 || MNEMONIC_IDS[key] == 0 || mode == null)
+			return -1;
+		
+		return MNEMONIC_OPCODES[MNEMONIC_IDS[key] - 1][mode.ordinal()];
+	}
+	
+	/*
+	 * Returns the addressing modes supported by the mnemonic, an empty array if the 
+	 * mnemonic does not exist. The returned array must not be modified.
+	 */
+	public static AddressingMode[] getAddressingModes(String mnemonic)
+	{
+		int key = mnemonicKey(mnemonic);
+		if(key == -1 || MNEMONIC_IDS[key] == 0)
+			return new AddressingMode[0];
+		
+		return MNEMONIC_MODES[MNEMONIC_IDS[key] - 1];
+	}
+	
+	/*
+	 * Packs a three letter upper case mnemonic into a 15-bit key, 5 bits per letter.
+	 * Returns -1 for any other string.
+	 */
+	private static int mnemonicKey(String mnemonic)
+	{
+		if(mnemonic.length() != 3)
+			return -1;
+		
+		int key = 0;
+		for(int i = 0; i < 3; i++)
+		{
+			char c = mnemonic.charAt(i);
+			if(c < 'A' || c > 'Z')
+				return -1;
+			key = (key << 5) | (c - '@');
+		}
+		
+		return key;
+	}
+	
 	public Instruction getInstruction(String opcode)
 	{
-		for(int i = 0; i < instructions.length; i++)
+		int value;
+		try
 		{
-			if(opcode.equals(instructions[i].getOpcode()))
-			{
-				return instructions[i];
-			}
-			
+			value = Integer.parseInt(opcode, 16);
 		}
-		return null;
+		catch(NumberFormatException e)
+		{
+			return null;
+		}
+		
+		if(value < 0 || value > 0xff || OPCODE_INDEX[value] == -1)
+			return null;
+		
+		return instructions[OPCODE_INDEX[value]];
 	}
 	
 	public Instruction getInstructionBySymbol(String symbol)
 	{
 		symbol = symbol.toUpperCase();
 		
-		for(int i = 0; i < instructions.length; i++)
-		{
-			if(symbol.equals(instructions[i].getSymbol()))
-			{
-				return instructions[i];
-			}
-			
-		}
-		return null;
+		AddressingMode[] modes = getAddressingModes(symbol);
+		if(modes.length == 0)
+			return null;
+		
+		return instructions[OPCODE_INDEX[getOpcode(symbol, modes[0])]];
 	}
 	
 	public void createInstructionArray()
@@ -0,0 +1,56 @@
+package compiler;
+
+/*
+ * Layout of the compact binary object format written by OutputBinaryToFile and 
+ * read by core.ReadBinary. All multi-byte values are stored big-endian.
+ * 
+ * Header (12 bytes):
+ *   u32  magic            "M65O" (0x4D36354F)
+ *   u8   version          currently 1
+ *   u8   flags            bit 0 set for ENCODING_FULL programs, other bits reserved, 0
+ *   u16  code length      number of code bytes
+ *   u16  directive count  number of directive records
+ *   u16  symbol count     number of symbol records
+ * 
+ * Code segment:           code length bytes, loaded from address 0x00, includes BEGIN/END bytes
+ * Directive records:      u16 address, u8 value
+ * Symbol records:         u8 name length, name (ASCII), u16 address
+ * Checksum:               u32 CRC32 of every preceding byte in the file
+ * 
+ * A program of n instruction lines therefore takes 12 + 2n + 4 + 4 bytes plus its directives 
+ * and symbols, compared to 18 bytes per line in the text format.
+ */
+
+public final class ObjectFormat {
+
+	public static final int MAGIC = 0x4D36354F;
+	
+	public static final int VERSION = 1;
+	
+	public static final int FLAG_FULL_ENCODING = 0x01;
+	
+	public static final int HEADER_SIZE = 12;
+	
+	public static final int DIRECTIVE_RECORD_SIZE = 3;
+	
+	public static final int CHECKSUM_SIZE = 4;
+	
+	private ObjectFormat()
+	{
+	}
+	
+	/*
+	 * Returns the size in bytes of the passed program once written in the object format
+	 */
+	public static int getObjectSize(AssembledProgram program)
+	{
+		int size = HEADER_SIZE + program.getCodeLength() + program.getDirectiveCount() * DIRECTIVE_RECORD_SIZE + CHECKSUM_SIZE;
+		
+		for(String label : program.getSymbols().keySet())
+		{
+			size += 1 + label.length() + 2;
+		}
+		
+		return size;
+	}
+}
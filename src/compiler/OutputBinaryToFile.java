@@ -2,7 +2,15 @@ package compiler;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.zip.CRC32;
 
 public class OutputBinaryToFile {
 
@@ -37,6 +45,92 @@ public class OutputBinaryToFile {
 		closeLink();
 	}
 	
+	/*
+	 * Writes the passed program to the output file in the compact binary object 
+	 * format, see ObjectFormat for the layout.
+	 */
+	public OutputBinaryToFile(String outputFile, AssembledProgram program)
+	{
+		filepath = outputFile;
+		
+		writeObjectFile(program);
+		System.out.println("[OUTPUTBINARYTOFILE] Write object file completed\n");
+	}
+	
+	/*
+	 * Encodes the passed program in the object format
+	 */
+	public static ByteBuffer encodeObject(AssembledProgram program)
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(ObjectFormat.getObjectSize(program));
+		
+		buffer.putInt(ObjectFormat.MAGIC);
+		buffer.put((byte) ObjectFormat.VERSION);
+		buffer.put((byte) (program.getEncoding() == AssembledProgram.ENCODING_FULL ? ObjectFormat.FLAG_FULL_ENCODING : 0)); //flags
+		buffer.putShort((short) program.getCodeLength());
+		buffer.putShort((short) program.getDirectiveCount());
+		buffer.putShort((short) program.getSymbols().size());
+		
+		buffer.put(program.getCode());
+		
+		for(int i = 0; i < program.getDirectiveCount(); i++)
+		{
+			buffer.putShort((short) program.getDirectiveAddresses()[i]);
+			buffer.put(program.getDirectiveValues()[i]);
+		}
+		
+		for(Map.Entry<String, Integer> symbol : program.getSymbols().entrySet())
+		{
+			byte[] name = symbol.getKey().getBytes(StandardCharsets.US_ASCII);
+			buffer.put((byte) name.length);
+			buffer.put(name);
+			buffer.putShort((short) symbol.getValue().intValue());
+		}
+		
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 0, buffer.position());
+		buffer.putInt((int) crc.getValue());
+		
+		buffer.flip();
+		return buffer;
+	}
+	
+	public void writeObjectFile(AssembledProgram program)
+	{
+		ByteBuffer buffer = encodeObject(program);
+		FileChannel channel = null;
+		
+		try
+		{
+			channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			
+			while(buffer.hasRemaining())
+			{
+				channel.write(buffer);
+			}
+			
+			System.out.println("Object file of " + buffer.limit() + " bytes written to " + filepath);
+		}
+		catch(IOException e)
+		{
+			System.err.println("Could not write object file: " + e.getMessage());
+		}
+		finally
+		{
+			if(channel != null)
+			{
+				try
+				{
+					channel.close();
+				}
+				catch(IOException e)
+				{
+					System.err.println("Could not close object file: " + e.getMessage());
+				}
+			}
+		}
+	}
+	
 	public void makeLink()
 	{
 		file = new File(filepath);
@@ -16,11 +16,19 @@ public class SyntaxChecker {
 	private int TOKEN_TYPE = -1; //1 for branch, 2 for instruction, 3 for operand
 	private boolean errorFound = false;
 	
-	private InstructionTable insTable;
+	/*
+	 * Largest address an absolute operand may hold, 0xFF for the lite encoding and 0xFFFF for the full encoding
+	 */
+	private int maxAddress = 0xFF;
 	
 	public SyntaxChecker()
 	{
-		insTable = new InstructionTable();
+		this(0xFF);
+	}
+	
+	public SyntaxChecker(int maxAddress)
+	{
+		this.maxAddress = maxAddress;
 	}
 	
 	public boolean checkTokenSyntax(int tokenNum, String token) throws CompilerException
@@ -68,13 +76,10 @@ public class SyntaxChecker {
 	{	
 		boolean tokenDetermined = false;
 		
-		for(String symbol : insTable.getSymbols())
+		if(InstructionTable.isMnemonic(token))
 		{
-			if(token.equals(symbol) && !tokenDetermined)
-			{
-				TOKEN_TYPE = 2;
-				tokenDetermined = true;
-			}
+			TOKEN_TYPE = 2;
+			tokenDetermined = true;
 		}
 		
 		if(token.contains("_") && !tokenDetermined)
@@ -506,6 +511,10 @@ public class SyntaxChecker {
 		
 		if(token.contains("$") || token.contains("#"))
 		{
+			//Immediate values and indirect indexed zero-page pointers are always a single byte
+			boolean singleByte = token.contains("#") || (token.contains("(") && token.contains(","));
+			int maxValue = singleByte ? 0xFF : maxAddress;
+			
 			System.out.println("[CNV] Token before special char removal: " + token);
 			token = token.replace("(", ""); 
 			token = token.replace(")", "");
@@ -526,10 +535,10 @@ public class SyntaxChecker {
 				setErrorMessage(token + " contains a value that is less than 0x00.");
 			}
 			
-			if(finalValue > 255) //if numerical value is greater than 0xFF
+			if(finalValue > maxValue) //if numerical value is greater than 0xFF (0xFFFF for full encoding addresses)
 			{
 				errorFound = true;
-				setErrorMessage(token + " contains a value that is greater than 0xFF (255).");
+				setErrorMessage(token + " contains a value that is greater than 0x" + Integer.toHexString(maxValue).toUpperCase() + " (" + maxValue + ").");
 			}
 		}
 		else
@@ -0,0 +1,72 @@
+package core;
+
+/*
+ * Precomputed results of ADC and SBC for every accumulator, operand, carry and decimal
+ * flag input, used by the CPU when ALU tables are enabled (see CPU.setAluTables()).
+ * 
+ * Each table holds 256 x 256 x 2 x 2 entries (512 KB), indexed by index(). An entry holds
+ * the result in bits 0-7 and the N, V, Z and C flags in bits 8-15, in their PSR_ positions.
+ * 
+ * The tables are generated from the CPU's own adc, sbc, adcDecimal and sbcDecimal methods
+ * the first time they are used, so both paths produce exactly the same results.
+ */
+
+final class AluTables {
+
+	/*
+	 * Flags written by ADC and SBC
+	 */
+	static final int FLAG_MASK = CPU.PSR_NEGATIVE | CPU.PSR_OVERFLOW | CPU.PSR_ZERO | CPU.PSR_CARRY;
+	
+	static final short[] ADC = new short[1 << 18];
+	static final short[] SBC = new short[1 << 18];
+	
+	static
+	{
+		CPU cpu = new CPU(false);
+		
+		for(int decimal = 0; decimal < 2; decimal++)
+		{
+			for(int carry = 0; carry < 2; carry++)
+			{
+				int status = (carry * CPU.PSR_CARRY) | (decimal * CPU.PSR_DECIMAL);
+				
+				for(int a = 0; a < 256; a++)
+				{
+					for(int op = 0; op < 256; op++)
+					{
+						int i = index(a, op, status);
+						
+						cpu.setProcessorStatusFlags(status);
+						cpu.setA(a);
+						int result = decimal == 1 ? cpu.adcDecimal(a, op) : cpu.adc(a, op);
+						ADC[i] = entry(result, cpu.getProcessorStatusFlags());
+						
+						cpu.setProcessorStatusFlags(status);
+						cpu.setA(a);
+						result = decimal == 1 ? cpu.sbcDecimal(a, op) : cpu.sbc(a, op);
+						SBC[i] = entry(result, cpu.getProcessorStatusFlags());
+					}
+				}
+			}
+		}
+	}
+	
+	private AluTables()
+	{
+	}
+	
+	/*
+	 * Index of the entry for the accumulator and operand, the carry and decimal flags 
+	 * are taken from the status register
+	 */
+	static int index(int a, int op, int status)
+	{
+		return ((status & CPU.PSR_DECIMAL) << 14) | ((status & CPU.PSR_CARRY) << 16) | ((a & 0xff) << 8) | (op & 0xff);
+	}
+	
+	private static short entry(int result, int status)
+	{
+		return (short) ((result & 0xff) | ((status & FLAG_MASK) << 8));
+	}
+}
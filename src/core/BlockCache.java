@@ -0,0 +1,374 @@
+package core;
+
+import java.util.ArrayList;
+
+/*
+ * Translation cache used by the block cache execution engine (CPU.ENGINE_BLOCK_CACHE).
+ * 
+ * Instructions are decoded from RAM in runs (blocks) starting at a given PC and ending
+ * at the first instruction that can change the flow of control, i.e. a branch, JMP, JSR, 
+ * RTS, RTI or the END keyword. Each block holds the opcode, operand and following PC of 
+ * each of its instructions so that step() can execute a loop body without reading and 
+ * decoding the instruction bytes again on every pass.
+ * 
+ * Blocks are keyed by their start PC. Every address covered by a block is marked in a 
+ * DirtyBitmap, RAM calls written() on each write and a write to a marked address drops
+ * the whole cache, so self-modifying code and programs loaded over old ones always 
+ * execute the current contents of memory. The Bus also drops the cache when a device
+ * is mapped or unmapped, as only addresses held in RAM are cached.
+ * 
+ * Blocks entered BIND_THRESHOLD times are bound into operation chains: the resolver, 
+ * operation, cycle count and penalty of each instruction are looked up once from the 
+ * DispatchTable, so that CPU.step(int) can run the whole block in a single loop with no 
+ * per-instruction lookups, terminating instruction checks or per-step bookkeeping.
+ * 
+ * Bound blocks entered COMPILE_THRESHOLD times are compiled by the BlockCompiler into a 
+ * hidden JVM class that runs the block as straight-line code, which CPU.step(int) then 
+ * calls in place of the operation chain. The BlockCompiler keeps the classes it defines, so 
+ * a dropped block that is decoded and compiled again unchanged reuses its class.
+ */
+
+class BlockCache {
+
+	/*
+	 * Longest run of instructions decoded into a single block
+	 */
+	static final int MAX_BLOCK_LENGTH = 64;
+	
+	/*
+	 * Number of times a block is entered before it is bound
+	 */
+	static final int BIND_THRESHOLD = 8;
+	
+	/*
+	 * Number of times a block is entered before it is compiled, see BlockCompiler
+	 */
+	static final int COMPILE_THRESHOLD = 64;
+	
+	/*
+	 * Instruction kinds of a bound block, BEGIN and END are handled by the CPU itself
+	 */
+	static final byte KIND_EXECUTE = 0;
+	static final byte KIND_BEGIN = 1;
+	static final byte KIND_END = 2;
+	
+	/*
+	 * A block compiled into a JVM class, runs the whole block as CPU.step(int) would run its
+	 * operation chain and returns the number of steps taken, see BlockCompiler
+	 */
+	interface CompiledBlock
+	{
+		int run(CPU cpu, Block block);
+	}
+	
+	/*
+	 * A decoded run of instructions, see class comment
+	 */
+	static final class Block {
+		
+		final int startPc;
+		final int count;
+		final int[] opcodes;
+		final int[] operands;
+		final int[] nextPcs;
+		
+		/*
+		 * Cleared when the memory the block was decoded from is written
+		 */
+		boolean valid = true;
+		
+		/*
+		 * Number of times the block has been entered, see BIND_THRESHOLD
+		 */
+		int executions;
+		
+		/*
+		 * Operation chain of the block, null until bind() is called
+		 */
+		DispatchTable.AddressResolver[] resolvers;
+		DispatchTable.Operation[] operations;
+		int[] cycles;
+		int[] penalties;
+		byte[] kinds;
+		
+		/*
+		 * Null until the block is compiled, see COMPILE_THRESHOLD
+		 */
+		CompiledBlock compiled;
+		
+		Block(int startPc, int count, int[] opcodes, int[] operands, int[] nextPcs)
+		{
+			this.startPc = startPc;
+			this.count = count;
+			this.opcodes = opcodes;
+			this.operands = operands;
+			this.nextPcs = nextPcs;
+		}
+	}
+	
+	private final RAM ram;
+	
+	private final Bus bus;
+	
+	/*
+	 * Instruction length per opcode in full mode, null in lite mode where every instruction is 2 bytes
+	 */
+	private final int[] instructionLengths;
+	
+	private final int addressMask;
+	
+	private final DispatchTable table;
+	
+	/*
+	 * Null when blocks are not compiled, see CPU.setBlockCompilation()
+	 */
+	private final BlockCompiler compiler;
+	
+	/*
+	 * Number of live blocks that have been compiled
+	 */
+	private int compiledCount;
+	
+	private final Block[] blocks;
+	
+	/*
+	 * Blocks currently held in blocks[], so that invalidation does not need to scan the whole array
+	 */
+	private final ArrayList<Block> live = new ArrayList<Block>();
+	
+	/*
+	 * Addresses covered by a live block
+	 */
+	private final DirtyBitmap code;
+	
+	private final int[] opcodeBuffer = new int[MAX_BLOCK_LENGTH];
+	private final int[] operandBuffer = new int[MAX_BLOCK_LENGTH];
+	private final int[] nextPcBuffer = new int[MAX_BLOCK_LENGTH];
+	
+	BlockCache(Bus bus, DispatchTable table, int[] instructionLengths, int addressMask, BlockCompiler compiler)
+	{
+		this.bus = bus;
+		this.table = table;
+		this.compiler = compiler;
+		this.ram = bus.getRam();
+		this.instructionLengths = instructionLengths;
+		this.addressMask = addressMask;
+		
+		blocks = new Block[ram.getRamSize()];
+		code = new DirtyBitmap(ram.getRamSize());
+		ram.setBlockCache(this);
+	}
+	
+	/*
+	 * Returns the block starting at pc, decoding it if it is not held in the cache.
+	 * Returns null if the instruction at pc cannot be cached (e.g. it is mapped to a device), 
+	 * the caller then fetches the instruction from the bus as normal.
+	 */
+	Block lookup(int pc)
+	{
+		Block block = blocks[pc];
+		if(block == null)
+		{
+			block = decode(pc);
+			if(block != null)
+			{
+				blocks[pc] = block;
+				live.add(block);
+			}
+		}
+		
+		return block;
+	}
+	
+	private Block decode(int startPc)
+	{
+		int pc = startPc;
+		int count = 0;
+		
+		while(count < MAX_BLOCK_LENGTH)
+		{
+			int length = instructionLengths == null ? 2 : instructionLengths[ram.getAddressContents(pc)];
+			if(!isCacheable(pc, length))
+				break;
+			
+			int opcode = ram.getAddressContents(pc);
+			int operand;
+			if(instructionLengths == null)
+				operand = ram.getAddressContents(pc + 1);
+			else if(length == 3)
+				operand = ram.getAddressContents(pc + 1) | (ram.getAddressContents(pc + 2) << 8);
+			else if(length == 2)
+				operand = ram.getAddressContents(pc + 1);
+			else
+				operand = 0;
+			
+			for(int i = 0; i < length; i++)
+			{
+				code.mark(pc + i);
+			}
+			
+			pc = (pc + length) & addressMask;
+			opcodeBuffer[count] = opcode;
+			operandBuffer[count] = operand;
+			nextPcBuffer[count] = pc;
+			count++;
+			
+			if(endsBlock(opcode, operand))
+				break;
+		}
+		
+		if(count == 0)
+			return null;
+		
+		int[] opcodes = new int[count];
+		int[] operands = new int[count];
+		int[] nextPcs = new int[count];
+		System.arraycopy(opcodeBuffer, 0, opcodes, 0, count);
+		System.arraycopy(operandBuffer, 0, operands, 0, count);
+		System.arraycopy(nextPcBuffer, 0, nextPcs, 0, count);
+		
+		return new Block(startPc, count, opcodes, operands, nextPcs);
+	}
+	
+	/*
+	 * An instruction is only cached if all of its bytes are held in RAM and it does not 
+	 * wrap around the end of memory
+	 */
+	private boolean isCacheable(int pc, int length)
+	{
+		int last = pc + length - 1;
+		if(last >= blocks.length)
+			return false;
+		
+		return bus.getDevice(pc) == ram && bus.getDevice(last) == ram;
+	}
+	
+	/*
+	 * Branches, jumps, subroutine calls and returns and the END keyword end a block
+	 */
+	static boolean endsBlock(int opcode, int operand)
+	{
+		if((opcode & 0x1f) == 0x10) //Bxx
+			return true;
+		
+		switch(opcode)
+		{
+			case 0x20: //JSR
+			case 0x40: //RTI
+			case 0x4c: //JMP absolute
+			case 0x60: //RTS
+			case 0x6c: //JMP indirect
+				return true;
+			case 0xff:
+				return operand == 0xff; //END
+			default:
+				return false;
+		}
+	}
+	
+	/*
+	 * Counts an entry into the block, binding it once it reaches BIND_THRESHOLD and 
+	 * compiling it once it reaches COMPILE_THRESHOLD
+	 */
+	void entered(Block block)
+	{
+		int executions = ++block.executions;
+		if(executions == BIND_THRESHOLD)
+		{
+			bind(block);
+		}
+		else if(executions == COMPILE_THRESHOLD && compiler != null)
+		{
+			block.compiled = compiler.compile(block);
+			if(block.compiled != null)
+				compiledCount++;
+		}
+	}
+	
+	/*
+	 * Binds the resolver, operation, cycles and penalty of each instruction in the block
+	 */
+	void bind(Block block)
+	{
+		int count = block.count;
+		DispatchTable.AddressResolver[] resolvers = new DispatchTable.AddressResolver[count];
+		DispatchTable.Operation[] operations = new DispatchTable.Operation[count];
+		int[] cycles = new int[count];
+		int[] penalties = new int[count];
+		byte[] kinds = new byte[count];
+		
+		for(int i = 0; i < count; i++)
+		{
+			int opcode = block.opcodes[i];
+			resolvers[i] = table.getResolver(opcode);
+			operations[i] = table.getOperation(opcode);
+			cycles[i] = table.getCycles(opcode);
+			penalties[i] = table.getPenalty(opcode);
+			
+			if(opcode == 0xef && block.operands[i] == 0xef)
+				kinds[i] = KIND_BEGIN;
+			else if(opcode == 0xff && block.operands[i] == 0xff)
+				kinds[i] = KIND_END;
+			else
+				kinds[i] = KIND_EXECUTE;
+		}
+		
+		block.resolvers = resolvers;
+		block.operations = operations;
+		block.cycles = cycles;
+		block.penalties = penalties;
+		block.kinds = kinds;
+	}
+	
+	/*
+	 * Called by RAM on every write, drops the cache if the address holds decoded code
+	 */
+	void written(int address)
+	{
+		if(code.isMarked(address))
+			clear();
+	}
+	
+	/*
+	 * Drops every block, blocks already held by the CPU are marked invalid so that 
+	 * they are not executed any further
+	 */
+	void clear()
+	{
+		for(int i = 0; i < live.size(); i++)
+		{
+			Block block = live.get(i);
+			block.valid = false;
+			blocks[block.startPc] = null;
+		}
+		
+		live.clear();
+		code.clear();
+		compiledCount = 0;
+	}
+	
+	/*
+	 * Stops RAM from notifying this cache, used when the CPU moves to another bus
+	 */
+	void detach()
+	{
+		clear();
+		if(ram.getBlockCache() == this)
+			ram.setBlockCache(null);
+	}
+	
+	int getBlockCount()
+	{
+		return live.size();
+	}
+	
+	int getCompiledCount()
+	{
+		return compiledCount;
+	}
+	
+	Bus getBus()
+	{
+		return bus;
+	}
+}
@@ -0,0 +1,256 @@
+package core;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/*
+ * Compiles bound blocks of the block cache into JVM bytecode, see BlockCache.COMPILE_THRESHOLD.
+ *
+ * Each block becomes a hidden class implementing BlockCache.CompiledBlock. Its run() method
+ * holds the instructions of the block unrolled as straight-line code, with the opcode, operand,
+ * following PC and cycle count of every instruction as constants, and calls the resolver and
+ * operation of each instruction through its own final field. Every call site therefore only
+ * ever sees a single operation, which the JVM can inline, where the loop in CPU.runBoundBlock()
+ * calls every operation of every block from the same place.
+ *
+ * The class is defined as a nestmate of CPU so that it can update the registers and counters
+ * directly. For each instruction the generated code is the equivalent of:
+ *
+ *    cpu.ir = opcode; cpu.irOperand = operand; cpu.pc = nextPc; cpu.stepCounter++;
+ *    operation.execute(cpu, operand, resolver.resolve(cpu, operand));
+ *    cpu.cycleCounter += cycles;  (or cpu.instructionCycles(nextPc) for instructions with a penalty)
+ *    if(!block.valid) return steps taken;
+ *
+ * BEGIN calls cpu.peekAhead() before its operation and END only clears cpu.canStep, exactly as
+ * in CPU.runBoundBlock().
+ * 
+ * Loading a program drops the whole block cache, so the same blocks are compiled again on 
+ * every run of a reloaded program. Classes are therefore kept by their class file, a block 
+ * compiled again with the same instructions at the same address only creates a new instance. 
+ * Up to MAX_CLASSES are kept, hidden classes are not held by their class loader and are
+ * unloaded once dropped from here and from the blocks using them.
+ */
+
+class BlockCompiler {
+
+	private static final String CLASS_NAME = "core/CompiledBlock";
+	private static final String CPU_CLASS = "core/CPU";
+	private static final String BLOCK_CLASS = "core/BlockCache$Block";
+	private static final String COMPILED_BLOCK_CLASS = "core/BlockCache$CompiledBlock";
+	private static final String RESOLVER = "Lcore/DispatchTable$AddressResolver;";
+	private static final String OPERATION = "Lcore/DispatchTable$Operation;";
+
+	/*
+	 * Most compiled classes kept for reuse, see class comment
+	 */
+	static final int MAX_CLASSES = 256;
+
+	/*
+	 * Full privilege lookup on CPU, the compiled classes are defined as its nestmates
+	 */
+	private final MethodHandles.Lookup lookup;
+
+	/*
+	 * Constructor of each compiled class, keyed by its class file
+	 */
+	private final HashMap<ByteBuffer, Constructor<?>> classes = new HashMap<ByteBuffer, Constructor<?>>();
+
+	BlockCompiler(MethodHandles.Lookup lookup)
+	{
+		this.lookup = lookup;
+	}
+
+	/*
+	 * Generates and loads the class for a bound block. Returns null if the class cannot be
+	 * defined, the block is then left to run as an operation chain.
+	 */
+	BlockCache.CompiledBlock compile(BlockCache.Block block)
+	{
+		try
+		{
+			ByteBuffer classFile = ByteBuffer.wrap(generate(block));
+			Constructor<?> constructor = classes.get(classFile);
+			if(constructor == null)
+			{
+				if(classes.size() == MAX_CLASSES)
+					classes.clear();
+
+				Class<?> compiled = lookup.defineHiddenClass(classFile.array(), true, MethodHandles.Lookup.ClassOption.NESTMATE).lookupClass();
+				constructor = compiled.getConstructor(DispatchTable.AddressResolver[].class, DispatchTable.Operation[].class);
+				classes.put(classFile, constructor);
+			}
+
+			return (BlockCache.CompiledBlock) constructor.newInstance(block.resolvers, block.operations);
+		}
+		catch(ReflectiveOperationException | LinkageError e)
+		{
+			return null;
+		}
+	}
+
+	/*
+	 * Returns the class file of the compiled block, see class comment
+	 */
+	private static byte[] generate(BlockCache.Block block)
+	{
+		ClassFileWriter writer = new ClassFileWriter(CLASS_NAME, "java/lang/Object", COMPILED_BLOCK_CLASS);
+		int count = block.count;
+
+		//One resolver and operation field per instruction, END has neither
+		int[] resolverFields = new int[count];
+		int[] operationFields = new int[count];
+		for(int i = 0; i < count; i++)
+		{
+			if(block.kinds[i] == BlockCache.KIND_END)
+				continue;
+
+			writer.addField(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_FINAL, "r" + i, RESOLVER);
+			writer.addField(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_FINAL, "o" + i, OPERATION);
+			resolverFields[i] = writer.fieldRef(CLASS_NAME, "r" + i, RESOLVER);
+			operationFields[i] = writer.fieldRef(CLASS_NAME, "o" + i, OPERATION);
+		}
+
+		writeConstructor(writer, block, resolverFields, operationFields);
+		writeRun(writer, block, resolverFields, operationFields);
+
+		return writer.toByteArray();
+	}
+
+	/*
+	 * public CompiledBlock(AddressResolver[] resolvers, Operation[] operations), copies the
+	 * resolver and operation of each instruction into its field
+	 */
+	private static void writeConstructor(ClassFileWriter writer, BlockCache.Block block, int[] resolverFields, int[] operationFields)
+	{
+		ClassFileWriter.Code code = writer.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>",
+				"([" + RESOLVER + "[" + OPERATION + ")V", 3, 3);
+
+		code.op(ClassFileWriter.ALOAD_0);
+		code.op(ClassFileWriter.INVOKESPECIAL, writer.methodRef("java/lang/Object", "<init>", "()V"));
+
+		for(int i = 0; i < block.count; i++)
+		{
+			if(block.kinds[i] == BlockCache.KIND_END)
+				continue;
+
+			code.op(ClassFileWriter.ALOAD_0);
+			code.op(ClassFileWriter.ALOAD_1);
+			code.pushInt(writer, i);
+			code.op(ClassFileWriter.AALOAD);
+			code.op(ClassFileWriter.PUTFIELD, resolverFields[i]);
+
+			code.op(ClassFileWriter.ALOAD_0);
+			code.op(ClassFileWriter.ALOAD_2);
+			code.pushInt(writer, i);
+			code.op(ClassFileWriter.AALOAD);
+			code.op(ClassFileWriter.PUTFIELD, operationFields[i]);
+		}
+
+		code.op(ClassFileWriter.RETURN);
+	}
+
+	/*
+	 * public int run(CPU cpu, BlockCache.Block block), local 1 is the CPU and local 2 the block
+	 */
+	private static void writeRun(ClassFileWriter writer, BlockCache.Block block, int[] resolverFields, int[] operationFields)
+	{
+		int ir = writer.fieldRef(CPU_CLASS, "ir", "I");
+		int irOperand = writer.fieldRef(CPU_CLASS, "irOperand", "I");
+		int pc = writer.fieldRef(CPU_CLASS, "pc", "I");
+		int stepCounter = writer.fieldRef(CPU_CLASS, "stepCounter", "I");
+		int cycleCounter = writer.fieldRef(CPU_CLASS, "cycleCounter", "J");
+		int canStep = writer.fieldRef(CPU_CLASS, "canStep", "Z");
+		int valid = writer.fieldRef(BLOCK_CLASS, "valid", "Z");
+		int peekAhead = writer.methodRef(CPU_CLASS, "peekAhead", "()V");
+		int instructionCycles = writer.methodRef(CPU_CLASS, "instructionCycles", "(I)I");
+		int resolve = writer.interfaceMethodRef("core/DispatchTable$AddressResolver", "resolve", "(Lcore/CPU;I)I");
+		int execute = writer.interfaceMethodRef("core/DispatchTable$Operation", "execute", "(Lcore/CPU;II)V");
+
+		ClassFileWriter.Code code = writer.addMethod(ClassFileWriter.ACC_PUBLIC, "run",
+				"(Lcore/CPU;Lcore/BlockCache$Block;)I", 6, 3);
+
+		for(int i = 0; i < block.count; i++)
+		{
+			int operand = block.operands[i];
+			int nextPc = block.nextPcs[i];
+
+			//cpu.ir = opcode; cpu.irOperand = operand; cpu.pc = nextPc; cpu.stepCounter++;
+			code.op(ClassFileWriter.ALOAD_1);
+			code.pushInt(writer, block.opcodes[i]);
+			code.op(ClassFileWriter.PUTFIELD, ir);
+			code.op(ClassFileWriter.ALOAD_1);
+			code.pushInt(writer, operand);
+			code.op(ClassFileWriter.PUTFIELD, irOperand);
+			code.op(ClassFileWriter.ALOAD_1);
+			code.pushInt(writer, nextPc);
+			code.op(ClassFileWriter.PUTFIELD, pc);
+			code.op(ClassFileWriter.ALOAD_1);
+			code.op(ClassFileWriter.DUP);
+			code.op(ClassFileWriter.GETFIELD, stepCounter);
+			code.pushInt(writer, 1);
+			code.op(ClassFileWriter.IADD);
+			code.op(ClassFileWriter.PUTFIELD, stepCounter);
+
+			if(block.kinds[i] == BlockCache.KIND_END)
+			{
+				code.op(ClassFileWriter.ALOAD_1);
+				code.op(ClassFileWriter.ICONST_0);
+				code.op(ClassFileWriter.PUTFIELD, canStep);
+			}
+			else
+			{
+				if(block.kinds[i] == BlockCache.KIND_BEGIN)
+				{
+					code.op(ClassFileWriter.ALOAD_1);
+					code.op(ClassFileWriter.INVOKEVIRTUAL, peekAhead);
+				}
+
+				//operation.execute(cpu, operand, resolver.resolve(cpu, operand))
+				code.op(ClassFileWriter.ALOAD_0);
+				code.op(ClassFileWriter.GETFIELD, operationFields[i]);
+				code.op(ClassFileWriter.ALOAD_1);
+				code.pushInt(writer, operand);
+				code.op(ClassFileWriter.ALOAD_0);
+				code.op(ClassFileWriter.GETFIELD, resolverFields[i]);
+				code.op(ClassFileWriter.ALOAD_1);
+				code.pushInt(writer, operand);
+				code.invokeInterface(resolve, 2);
+				code.invokeInterface(execute, 3);
+			}
+
+			//cpu.cycleCounter += cycles
+			code.op(ClassFileWriter.ALOAD_1);
+			code.op(ClassFileWriter.DUP);
+			code.op(ClassFileWriter.GETFIELD, cycleCounter);
+			if(block.penalties[i] == DispatchTable.PENALTY_NONE)
+			{
+				code.pushInt(writer, block.cycles[i]);
+			}
+			else
+			{
+				code.op(ClassFileWriter.ALOAD_1);
+				code.pushInt(writer, nextPc);
+				code.op(ClassFileWriter.INVOKEVIRTUAL, instructionCycles);
+			}
+			code.op(ClassFileWriter.I2L);
+			code.op(ClassFileWriter.LADD);
+			code.op(ClassFileWriter.PUTFIELD, cycleCounter);
+
+			//if(!block.valid) return i + 1, the block was written by its own instruction
+			if(i < block.count - 1)
+			{
+				code.op(ClassFileWriter.ALOAD_2);
+				code.op(ClassFileWriter.GETFIELD, valid);
+				int branch = code.branch(ClassFileWriter.IFNE);
+				code.pushInt(writer, i + 1);
+				code.op(ClassFileWriter.IRETURN);
+				code.target(branch);
+			}
+		}
+
+		code.pushInt(writer, block.count);
+		code.op(ClassFileWriter.IRETURN);
+	}
+}
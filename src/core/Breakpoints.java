@@ -0,0 +1,467 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+ * Breakpoints and watchpoints of a machine, used by the ExecutionThread to stop a run.
+ *
+ * A breakpoint stops a run before the instruction at its address is executed, optionally
+ * only when a condition on the registers and flags holds (see Condition). Conditions can
+ * also be set without an address, they are then tested before every instruction. A
+ * watchpoint stops a run after an instruction that reads or writes its address through
+ * the Bus.
+ *
+ * Addresses are held in bitmaps over the address space. When nothing is set isActive() is
+ * false and the run loop makes no further checks, and the Bus only calls read() and
+ * written() while at least one watchpoint is set.
+ *
+ * Breakpoints should only be changed while the machine is not running, or while the run
+ * is paused.
+ */
+
+public class Breakpoints {
+	
+	/*
+	 * Watchpoint modes, may be combined
+	 */
+	public static final int WATCH_READ = 1;
+	public static final int WATCH_WRITE = 2;
+	
+	private final Bus bus;
+	private final int addressMask;
+	
+	private final DirtyBitmap breakpoints;
+	private final DirtyBitmap readWatchpoints;
+	private final DirtyBitmap writeWatchpoints;
+	
+	/*
+	 * Conditions of the conditional breakpoints by address, and the conditions tested at every address
+	 */
+	private final HashMap<Integer, Condition> conditions = new HashMap<Integer, Condition>();
+	private final ArrayList<Condition> globalConditions = new ArrayList<Condition>();
+	
+	private int breakpointCount;
+	private int watchpointCount;
+	
+	/*
+	 * Set while anything is set, the only check made by the run loop otherwise
+	 */
+	private boolean active;
+	
+	/*
+	 * Description of the most recent hit, and whether a watchpoint has been hit since takeWatchpointHit()
+	 */
+	private String message;
+	private boolean watchpointHit;
+	
+	Breakpoints(Bus bus, int memorySize)
+	{
+		this.bus = bus;
+		addressMask = memorySize - 1;
+		breakpoints = new DirtyBitmap(memorySize);
+		readWatchpoints = new DirtyBitmap(memorySize);
+		writeWatchpoints = new DirtyBitmap(memorySize);
+	}
+	
+	/*
+	 * True if any breakpoint, condition or watchpoint is set
+	 */
+	public boolean isActive()
+	{
+		return active;
+	}
+	
+	private void updateActive()
+	{
+		active = breakpointCount != 0 || watchpointCount != 0 || !globalConditions.isEmpty();
+	}
+	
+	public void addBreakpoint(int address)
+	{
+		address &= addressMask;
+		conditions.remove(address);
+		if(!breakpoints.isMarked(address))
+		{
+			breakpoints.mark(address);
+			breakpointCount++;
+			updateActive();
+		}
+	}
+	
+	/*
+	 * Adds a breakpoint that only stops when the condition holds, see Condition.
+	 * Throws an IllegalArgumentException if the condition cannot be parsed.
+	 */
+	public void addBreakpoint(int address, String condition)
+	{
+		Condition parsed = new Condition(condition);
+		addBreakpoint(address);
+		conditions.put(address & addressMask, parsed);
+	}
+	
+	/*
+	 * Adds a condition tested before every instruction, regardless of its address
+	 */
+	public void addCondition(String condition)
+	{
+		globalConditions.add(new Condition(condition));
+		updateActive();
+	}
+	
+	public void removeBreakpoint(int address)
+	{
+		address &= addressMask;
+		conditions.remove(address);
+		if(breakpoints.isMarked(address))
+		{
+			breakpoints.unmark(address);
+			breakpointCount--;
+			updateActive();
+		}
+	}
+	
+	/*
+	 * Watches the address for reads and/or writes, replacing any earlier mode for the address
+	 */
+	public void addWatchpoint(int address, int mode)
+	{
+		if((mode & (WATCH_READ | WATCH_WRITE)) == 0)
+			throw new IllegalArgumentException("Watchpoint must watch reads or writes: " + mode);
+		
+		removeWatchpoint(address);
+		address &= addressMask;
+		if((mode & WATCH_READ) != 0)
+			readWatchpoints.mark(address);
+		if((mode & WATCH_WRITE) != 0)
+			writeWatchpoints.mark(address);
+		
+		if(watchpointCount++ == 0)
+			bus.setWatchpoints(this);
+		updateActive();
+	}
+	
+	public void removeWatchpoint(int address)
+	{
+		address &= addressMask;
+		if(!readWatchpoints.isMarked(address) && !writeWatchpoints.isMarked(address))
+			return;
+		
+		readWatchpoints.unmark(address);
+		writeWatchpoints.unmark(address);
+		if(--watchpointCount == 0)
+			bus.setWatchpoints(null);
+		updateActive();
+	}
+	
+	/*
+	 * Removes every breakpoint, condition and watchpoint
+	 */
+	public void clear()
+	{
+		breakpoints.clear();
+		readWatchpoints.clear();
+		writeWatchpoints.clear();
+		conditions.clear();
+		globalConditions.clear();
+		breakpointCount = 0;
+		watchpointCount = 0;
+		watchpointHit = false;
+		active = false;
+		bus.setWatchpoints(null);
+	}
+	
+	/*
+	 * Returns true if the instruction about to be executed by the CPU is at a breakpoint
+	 * whose condition holds, or a condition set with addCondition() holds
+	 */
+	public boolean isBreakpointHit(CPU cpu)
+	{
+		int pc = cpu.getPc() & addressMask;
+		if(breakpointCount != 0 && breakpoints.isMarked(pc))
+		{
+			Condition condition = conditions.get(pc);
+			if(condition == null || condition.test(cpu))
+			{
+				message = "Breakpoint at 0x" + Integer.toHexString(pc).toUpperCase() + (condition == null ? "" : " (" + condition + ")");
+				return true;
+			}
+		}
+		
+		for(int i = 0; i < globalConditions.size(); i++)
+		{
+			Condition condition = globalConditions.get(i);
+			if(condition.test(cpu))
+			{
+				message = "Condition " + condition + " holds at 0x" + Integer.toHexString(pc).toUpperCase();
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/*
+	 * Returns true if a watchpoint has been hit since the last call, see getMessage()
+	 */
+	public boolean takeWatchpointHit()
+	{
+		boolean hit = watchpointHit;
+		watchpointHit = false;
+		return hit;
+	}
+	
+	/*
+	 * Called by the Bus while watchpoints are set
+	 */
+	void read(int address)
+	{
+		if(!watchpointHit && readWatchpoints.isMarked(address & addressMask))
+			hit("Watchpoint: read of 0x", address);
+	}
+	
+	void written(int address)
+	{
+		if(!watchpointHit && writeWatchpoints.isMarked(address & addressMask))
+			hit("Watchpoint: write to 0x", address);
+	}
+	
+	private void hit(String description, int address)
+	{
+		message = description + Integer.toHexString(address & addressMask).toUpperCase();
+		watchpointHit = true;
+	}
+	
+	/*
+	 * Description of the most recent breakpoint or watchpoint hit
+	 */
+	public String getMessage()
+	{
+		return message;
+	}
+	
+	/*
+	 * Lists the breakpoints, conditions and watchpoints, one per line
+	 */
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		
+		for(int address = breakpoints.nextMarked(0); address != -1; address = breakpoints.nextMarked(address + 1))
+		{
+			Condition condition = conditions.get(address);
+			sb.append("Breakpoint 0x").append(Integer.toHexString(address).toUpperCase());
+			if(condition != null)
+				sb.append(" if ").append(condition);
+			sb.append('\n');
+		}
+		
+		for(Condition condition : globalConditions)
+		{
+			sb.append("Break if ").append(condition).append('\n');
+		}
+		
+		for(int address = 0; address <= addressMask; address++)
+		{
+			boolean read = readWatchpoints.isMarked(address);
+			boolean write = writeWatchpoints.isMarked(address);
+			if(read || write)
+				sb.append("Watchpoint 0x").append(Integer.toHexString(address).toUpperCase())
+						.append(read && write ? " read/write" : read ? " read" : " write").append('\n');
+		}
+		
+		return sb.toString();
+	}
+	
+	/*
+	 * Condition on the registers and flags, e.g. "A == $10 && C" or "X >= 3 || !Z"
+	 *
+	 * Terms compare A, X, Y, SP, PC or P (the status register) with a number using ==, !=,
+	 * <, <=, > or >=. The flags C, Z, I, D, B, V and N may be used alone, or negated with !,
+	 * and compare as 0 or 1. Numbers are decimal, or hex with a $ or 0x prefix. Terms are
+	 * joined with && and ||, && binding tighter.
+	 */
+	public static class Condition {
+		
+		private static final int OP_EQUAL = 0;
+		private static final int OP_NOT_EQUAL = 1;
+		private static final int OP_LESS = 2;
+		private static final int OP_LESS_EQUAL = 3;
+		private static final int OP_GREATER = 4;
+		private static final int OP_GREATER_EQUAL = 5;
+		
+		private static final String[] OPERATORS = {"==", "!=", "<", "<=", ">", ">="};
+		
+		private static final String[] REGISTERS = {"A", "X", "Y", "SP", "PC", "P"};
+		private static final String FLAGS = "CZIDBVN";
+		private static final int[] FLAG_MASKS = {CPU.PSR_CARRY, CPU.PSR_ZERO, CPU.PSR_IRQ_DISABLE, CPU.PSR_DECIMAL,
+				CPU.PSR_BREAK, CPU.PSR_OVERFLOW, CPU.PSR_NEGATIVE};
+		
+		/*
+		 * For each term: the register index (flags follow the registers), the operator and
+		 * the value compared with, and whether the term begins a new || group
+		 */
+		private final int[] sources;
+		private final int[] operators;
+		private final int[] values;
+		private final boolean[] groupStarts;
+		
+		private final String text;
+		
+		public Condition(String text)
+		{
+			this.text = text.trim();
+			
+			ArrayList<String> terms = new ArrayList<String>();
+			ArrayList<Boolean> starts = new ArrayList<Boolean>();
+			for(String group : this.text.split("\\|\\|", -1))
+			{
+				boolean start = true;
+				for(String term : group.split("&&", -1))
+				{
+					terms.add(term.trim());
+					starts.add(start);
+					start = false;
+				}
+			}
+			
+			sources = new int[terms.size()];
+			operators = new int[terms.size()];
+			values = new int[terms.size()];
+			groupStarts = new boolean[terms.size()];
+			
+			for(int i = 0; i < terms.size(); i++)
+			{
+				parseTerm(i, terms.get(i));
+				groupStarts[i] = starts.get(i);
+			}
+		}
+		
+		private void parseTerm(int index, String term)
+		{
+			if(term.isEmpty())
+				throw new IllegalArgumentException("Missing term in condition: " + text);
+			
+			//Flags used alone
+			if(term.length() <= 2 && FLAGS.indexOf(term.charAt(term.length() - 1)) != -1
+					&& (term.length() == 1 || term.charAt(0) == '!'))
+			{
+				sources[index] = REGISTERS.length + FLAGS.indexOf(term.charAt(term.length() - 1));
+				operators[index] = term.length() == 1 ? OP_NOT_EQUAL : OP_EQUAL;
+				values[index] = 0;
+				return;
+			}
+			
+			int opStart = -1;
+			for(int i = 0; i < term.length() && opStart == -1; i++)
+			{
+				if("=!<>".indexOf(term.charAt(i)) != -1)
+					opStart = i;
+			}
+			int opEnd = opStart + 1;
+			if(opStart != -1 && opEnd < term.length() && term.charAt(opEnd) == '=')
+				opEnd++;
+			
+			if(opStart == -1)
+				throw new IllegalArgumentException("Missing comparison in condition term: " + term);
+			
+			String name = term.substring(0, opStart).trim().toUpperCase();
+			String operator = term.substring(opStart, opEnd);
+			String value = term.substring(opEnd).trim();
+			
+			sources[index] = -1;
+			for(int i = 0; i < REGISTERS.length; i++)
+			{
+				if(REGISTERS[i].equals(name))
+					sources[index] = i;
+			}
+			if(name.length() == 1 && FLAGS.indexOf(name.charAt(0)) != -1)
+				sources[index] = REGISTERS.length + FLAGS.indexOf(name.charAt(0));
+			if(sources[index] == -1)
+				throw new IllegalArgumentException("Unknown register or flag in condition: " + name);
+			
+			operators[index] = -1;
+			for(int i = 0; i < OPERATORS.length; i++)
+			{
+				if(OPERATORS[i].equals(operator))
+					operators[index] = i;
+			}
+			if(operators[index] == -1)
+				throw new IllegalArgumentException("Unknown comparison in condition: " + operator);
+			
+			values[index] = parseNumber(value);
+		}
+		
+		/*
+		 * Parses a decimal number, or a hex number prefixed with $ or 0x
+		 */
+		static int parseNumber(String value)
+		{
+			try
+			{
+				if(value.startsWith("$"))
+					return Integer.parseInt(value.substring(1), 16);
+				if(value.startsWith("0x") || value.startsWith("0X"))
+					return Integer.parseInt(value.substring(2), 16);
+				
+				return Integer.parseInt(value);
+			}
+			catch(NumberFormatException e)
+			{
+				throw new IllegalArgumentException("Invalid number in condition: " + value);
+			}
+		}
+		
+		public boolean test(CPU cpu)
+		{
+			boolean result = false;
+			boolean group = true;
+			
+			for(int i = 0; i < sources.length; i++)
+			{
+				if(groupStarts[i] && i > 0)
+				{
+					result |= group;
+					group = true;
+				}
+				
+				if(group)
+					group = compare(read(cpu, sources[i]), operators[i], values[i]);
+			}
+			
+			return result | group;
+		}
+		
+		private static int read(CPU cpu, int source)
+		{
+			switch(source)
+			{
+				case 0: return cpu.getA();
+				case 1: return cpu.getX();
+				case 2: return cpu.getY();
+				case 3: return cpu.getSp();
+				case 4: return cpu.getPc();
+				case 5: return cpu.getProcessorStatusFlags();
+				default: return (cpu.getProcessorStatusFlags() & FLAG_MASKS[source - REGISTERS.length]) != 0 ? 1 : 0;
+			}
+		}
+		
+		private static boolean compare(int value, int operator, int operand)
+		{
+			switch(operator)
+			{
+				case OP_EQUAL: return value == operand;
+				case OP_NOT_EQUAL: return value != operand;
+				case OP_LESS: return value < operand;
+				case OP_LESS_EQUAL: return value <= operand;
+				case OP_GREATER: return value > operand;
+				default: return value >= operand;
+			}
+		}
+		
+		public String toString()
+		{
+			return text;
+		}
+	}
+}
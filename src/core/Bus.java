@@ -1,17 +1,30 @@
 package core;
 
+import exceptions.SimulationException;
+
 /*
  * The Bus class ties together the simulated CPU and 
  * memory, allowing the components to talk to each other. 
+ * 
+ * Every memory access made by the CPU goes through the Bus. The address space is 
+ * divided into pages, each page is mapped either to RAM or to a Device registered 
+ * with registerDevice(). Lookups are a single array read, and accesses to RAM pages
+ * call RAM directly, so mapping devices does not slow down ordinary memory accesses.
+ * 
+ * The lite machine only has 256 bytes of memory, so a page is 16 bytes (LITE_PAGE_SHIFT).
+ * The full machine uses the 6502's 256 byte pages (FULL_PAGE_SHIFT).
+ * 
+ * Addresses outside of the address space are passed on to RAM, which rejects them.
  */
 
 public class Bus {
 
+	public static final int LITE_PAGE_SHIFT = 4;
+	public static final int FULL_PAGE_SHIFT = 8;
+
 	/*
-	 * The simulation is limited to 256 bytes of memory not only 
-	 * in memory range but also in bus size.
-	 * For this reason the valid memory range of the simulation
-	 * is from 0x00 - 0xFF
+	 * Valid memory range of the simulation, 0x00 - 0xFF for the lite 
+	 * machine and 0x0000 - 0xFFFF for the full machine.
 	 */
 	private int startAddress = 0x00;
 	private int endAddress = 0xFF;
@@ -20,22 +33,193 @@ public class Bus {
 	
 	private RAM ram;
 	
+	/*
+	 * Counts reads and writes when profiling, null otherwise
+	 */
+	private Profiler profiler;
+	
+	/*
+	 * Checks reads and writes against the watchpoints while any are set, null otherwise
+	 */
+	private Breakpoints watchpoints;
+	
+	/*
+	 * Number of address bits used for the offset within a page
+	 */
+	private final int pageShift;
+	
+	/*
+	 * Device mapped to each page and the start address of the device's range,
+	 * RAM pages hold the RAM itself
+	 */
+	private final Device[] pages;
+	private final int[] pageBase;
+	
 	/*
 	 * Constructor
 	 */
-	public Bus()
+	public Bus(RAM ram)
 	{
-
+		this(ram, ram.getRamSize() > RAM.LITE_SIZE ? FULL_PAGE_SHIFT : LITE_PAGE_SHIFT);
+	}
+	
+	public Bus(RAM ram, int pageShift)
+	{
+		this.ram = ram;
+		this.pageShift = pageShift;
+		this.endAddress = ram.getRamSize() - 1;
+		
+		int pageCount = ram.getRamSize() >> pageShift;
+		pages = new Device[pageCount];
+		pageBase = new int[pageCount];
+		
+		for(int i = 0; i < pageCount; i++)
+		{
+			pages[i] = ram;
+		}
 	}
 
 	public void addCpu(CPU cpu)
 	{
-		this.cpu = cpu;;
+		this.cpu = cpu;
 	}
 	
-	public void addRam(RAM ram)
+	/*
+	 * Reads the value held at address from RAM or the device mapped at the address
+	 */
+	public int read(int address)
 	{
-		this.ram = ram;
+		if(profiler != null)
+			profiler.read(address);
+		if(watchpoints != null)
+			watchpoints.read(address);
+		
+		return fetch(address);
+	}
+	
+	/*
+	 * Reads an instruction byte, the same as read() but not counted by the Profiler
+	 */
+	int fetch(int address)
+	{
+		int page = address >>> pageShift;
+		
+		if(page < pages.length)
+		{
+			Device device = pages[page];
+			if(device == ram)
+				return ram.read(address);
+			
+			return device.read(address - pageBase[page]);
+		}
+		
+		return ram.read(address);
+	}
+	
+	/*
+	 * Writes the value to RAM or the device mapped at the address
+	 */
+	public void write(int address, int data)
+	{
+		if(profiler != null)
+			profiler.written(address);
+		if(watchpoints != null)
+			watchpoints.written(address);
+		
+		int page = address >>> pageShift;
+		
+		if(page < pages.length)
+		{
+			Device device = pages[page];
+			if(device == ram)
+			{
+				ram.write(address, data);
+				return;
+			}
+			
+			device.write(address - pageBase[page], data & 0xff);
+			return;
+		}
+		
+		ram.write(address, data);
+	}
+	
+	/*
+	 * Maps the device to the addresses startAddress - endAddress (inclusive). The range must start and 
+	 * end on a page boundary (see getPageSize()) and must not overlap a range already held by a device.
+	 */
+	public void registerDevice(Device device, int startAddress, int endAddress) throws SimulationException
+	{
+		int pageSize = getPageSize();
+		
+		if(startAddress < this.startAddress || endAddress > this.endAddress || startAddress > endAddress)
+			throw new SimulationException("[Bus] Device range 0x" + Integer.toHexString(startAddress) + " - 0x" 
+					+ Integer.toHexString(endAddress) + " is outside of the address space");
+		
+		if(startAddress % pageSize != 0 || (endAddress + 1) % pageSize != 0)
+			throw new SimulationException("[Bus] Device range must start and end on a " + pageSize + " byte page boundary");
+		
+		for(int page = startAddress >> pageShift; page <= endAddress >> pageShift; page++)
+		{
+			if(pages[page] != ram)
+				throw new SimulationException("[Bus] Address 0x" + Integer.toHexString(page << pageShift) + " is already mapped to a device");
+		}
+		
+		for(int page = startAddress >> pageShift; page <= endAddress >> pageShift; page++)
+		{
+			pages[page] = device;
+			pageBase[page] = startAddress;
+		}
+		
+		pagesChanged();
+	}
+	
+	/*
+	 * Removes the device from every page it is mapped to, the pages are mapped back to RAM
+	 */
+	public void unregisterDevice(Device device)
+	{
+		for(int page = 0; page < pages.length; page++)
+		{
+			if(pages[page] == device && device != ram)
+			{
+				pages[page] = ram;
+				pageBase[page] = 0;
+			}
+		}
+		
+		pagesChanged();
+	}
+	
+	/*
+	 * Drops the CPU's decoded instruction blocks, which were decoded for the old page map
+	 * (see BlockCache.isCacheable())
+	 */
+	private void pagesChanged()
+	{
+		BlockCache blockCache = ram.getBlockCache();
+		if(blockCache != null)
+			blockCache.clear();
+	}
+	
+	/*
+	 * Returns the device mapped at the address, RAM if no device is mapped there
+	 */
+	public Device getDevice(int address)
+	{
+		return pages[address >>> pageShift];
+	}
+	
+	public CPU getCpu() {
+		return cpu;
+	}
+	
+	public RAM getRam() {
+		return ram;
+	}
+	
+	public int getPageSize() {
+		return 1 << pageShift;
 	}
 	
 	public int getStartAddress() {
@@ -45,5 +229,13 @@ public class Bus {
 	public int getEndAddress() {
 		return endAddress;
 	}
+	
+	void setProfiler(Profiler profiler) {
+		this.profiler = profiler;
+	}
+	
+	void setWatchpoints(Breakpoints watchpoints) {
+		this.watchpoints = watchpoints;
+	}
 
 }
@@ -1,6 +1,8 @@
 package core;
 
 
+import java.lang.invoke.MethodHandles;
+
 import compiler.InstructionTable;
 import exceptions.SimulationException;
 import gui.GUI2;
@@ -58,6 +60,15 @@ import util.Utils;
  * Immediate addressing uses the format #number instead of #$number
  * 
  * All number inputs are assumed to be hexadecimal
+ * 
+ * -Full mode (MODE_FULL)-
+ * The limitations above describe the default "lite" mode (MODE_LITE). The CPU can also be created in full mode,
+ * which removes the 8-bit address bus limitation:
+ * 16-bit PC and 64KB of memory (0x0000 - 0xFFFF)
+ * Instructions are 1-3 bytes long as on the 6502, with 16-bit operands stored little endian (low byte first)
+ * Zero-page indexed and indirect addressing wraps around within the zero page
+ * JSR/RTS/RTI push and pull the full 16-bit return address, high byte first, onto a 256 byte stack
+ * The BEGIN (0xEFEF) and END (0xFFFF) keywords remain 2 bytes long in both modes.
  */
 
 public class CPU {
@@ -75,6 +86,28 @@ public class CPU {
 	
 	public boolean canStep = true;
 	
+	/*
+	 * Execution engines, selects how step() decodes and executes instructions.
+	 * ENGINE_SWITCH decodes each instruction through the addressing mode and opcode switches below.
+	 * ENGINE_DISPATCH_TABLE uses the precomputed per-opcode table held in DispatchTable.
+	 * ENGINE_BLOCK_CACHE executes through DispatchTable from runs of instructions decoded once 
+	 * and held in BlockCache, instead of reading and decoding each instruction from memory.
+	 * Frequently entered blocks are bound into operation chains and run whole by step(int), 
+	 * the hottest are then compiled into JVM classes, see BlockCache, setBlockBinding() and 
+	 * setBlockCompilation().
+	 */
+	public static final int ENGINE_SWITCH = 0;
+	public static final int ENGINE_DISPATCH_TABLE = 1;
+	public static final int ENGINE_BLOCK_CACHE = 2;
+	
+	/*
+	 * Address modes, selects the width of the address bus and the instruction format, see class comment.
+	 * MODE_LITE uses an 8-bit PC and 2 byte instructions.
+	 * MODE_FULL uses a 16-bit PC and 1-3 byte instructions with little endian operands.
+	 */
+	public static final int MODE_LITE = 0;
+	public static final int MODE_FULL = 1;
+	
 	
 	
 	
@@ -84,6 +117,11 @@ public class CPU {
 	private RAM ram;
 	private Stack stack;
 	
+	/*
+	 * Every memory access made by the CPU goes through the bus, see Bus
+	 */
+	private Bus bus;
+	
 	/*
 	 * Accumulator
 	 */
@@ -119,6 +157,12 @@ public class CPU {
 	 */
 	private int irOperand;
 	
+	/*
+	 * Pointer read by the last (Zero page),Y address, the base address checked for a page
+	 * crossing by instructionCycles() without reading the pointer again
+	 */
+	private int indirectBase;
+	
 	/*
 	 * Next instruction to be loaded
 	 */
@@ -130,15 +174,27 @@ public class CPU {
 	private int nextIrOperand;
 	
 	/*
-	 * Status Register bits
+	 * Processor status register (P), packed into a single int as on the 6502, see PSR_ constants.
+	 * Instructions update the flags they affect with a mask and an OR instead of one boolean per
+	 * flag, and PHP/PLP push and pull the register as it is. Bit 5 is always set.
 	 */
-	private boolean carryFlag;
-	private boolean zeroFlag;
-	private boolean irqDisableFlag;
-	private boolean decimalModeFlag;
-	private boolean breakFlag;
-	private boolean overflowFlag;
-	private boolean negativeFlag;
+	private int status = PSR_SETBIT;
+	
+	/*
+	 * Lazy flag evaluation, see setLazyFlags(). lazyMask holds the PSR_ bits whose value is
+	 * not in status but held in the lazy sources below, and is only ever non-zero in lazy mode:
+	 * Z and N come from lazyResult, C from bit 8 of lazyCarry and V from bit 7 of lazyOverflow.
+	 */
+	private boolean lazyFlags;
+	private int lazyMask;
+	private int lazyResult;
+	private int lazyCarry;
+	private int lazyOverflow;
+	
+	/*
+	 * Use the precomputed ADC/SBC tables in AluTables instead of computing the results, see setAluTables()
+	 */
+	private boolean aluTables;
 	
 	
 	
@@ -148,9 +204,92 @@ public class CPU {
 	private int stepCounter;
 	
 	/*
-	 * Instruction lookup table
+	 * Number of clock cycles executed since reset, see instructionCycles()
+	 */
+	private long cycleCounter;
+	
+	/*
+	 * Per-opcode base cycle counts and cycle penalties, see DispatchTable
+	 */
+	private final int[] cycleCounts;
+	private final int[] cyclePenalties;
+	
+	/*
+	 * Execution engine currently in use, see ENGINE_ constants
+	 */
+	private int executionEngine = ENGINE_SWITCH;
+	
+	/*
+	 * Opcode dispatch table used by ENGINE_DISPATCH_TABLE
+	 */
+	private DispatchTable dispatchTable;
+	
+	/*
+	 * Decoded instruction blocks used by ENGINE_BLOCK_CACHE, created on first use.
+	 * currentBlock is the block being executed, blockIndex the next instruction in it and 
+	 * blockPc the PC that instruction was decoded from.
+	 */
+	private BlockCache blockCache;
+	private BlockCache.Block currentBlock;
+	private int blockIndex;
+	private int blockPc;
+	
+	/*
+	 * Run bound blocks whole from step(int), see setBlockBinding()
+	 */
+	private boolean blockBinding = true;
+	
+	/*
+	 * Compile hot bound blocks into JVM classes, see setBlockCompilation()
+	 */
+	private boolean blockCompilation = true;
+	
+	/*
+	 * Verbose tracing prints each phase of step() to the console. When disabled
+	 * the CPU performs no console output or string building while executing.
+	 */
+	private boolean verbose = true;
+	
+	/*
+	 * Address mode the CPU was created with, see MODE_ constants
+	 */
+	private final int addressMode;
+	
+	/*
+	 * Mask applied to the PC and to calculated addresses, 0xFF in lite mode and 0xFFFF in full mode
+	 */
+	private final int addressMask;
+	
+	/*
+	 * Highest stack position, the SP is reset to this value and wraps around to it
+	 */
+	private final int stackTop;
+	
+	/*
+	 * RAM address of stack position 0 when the stack is mapped into RAM, -1 while the stack 
+	 * is held by the Stack, see setStackBase()
+	 */
+	private int stackBase = -1;
+	
+	/*
+	 * Undo journal, null unless enabled with MOS6502.setStepJournal()
+	 */
+	private StepJournal journal;
+	
+	/*
+	 * Binary execution trace, null unless enabled with MOS6502.setTraceRecorder()
+	 */
+	private TraceRecorder trace;
+	
+	/*
+	 * Execution profiler, null unless enabled with MOS6502.setProfiling()
+	 */
+	private Profiler profiler;
+	
+	/*
+	 * Instruction lengths used to fetch instructions in full mode
 	 */
-	private InstructionTable insTable;
+	private int[] instructionLengths;
 	
 	
 	
@@ -160,8 +299,33 @@ public class CPU {
 	 */
 	public CPU()
 	{
-		System.out.println("[CPU] CPU initialised");
-		insTable = new InstructionTable();
+		this(true);
+	}
+	
+	public CPU(boolean verbose)
+	{
+		this(MODE_LITE, verbose);
+	}
+	
+	public CPU(int addressMode, boolean verbose)
+	{
+		this.verbose = verbose;
+		this.addressMode = addressMode;
+		cycleCounts = DispatchTable.getDefault().getCycleCounts();
+		cyclePenalties = DispatchTable.getDefault().getPenalties();
+		if(addressMode == MODE_FULL)
+		{
+			addressMask = 0xffff;
+			stackTop = Stack.FULL_SIZE - 1;
+			instructionLengths = DispatchTable.getDefault().getInstructionLengths();
+		}
+		else
+		{
+			addressMask = 0xff;
+			stackTop = Stack.LITE_SIZE - 1;
+		}
+		if(verbose)
+			System.out.println("[CPU] CPU initialised");
 	}
 	
 	/*
@@ -175,7 +339,7 @@ public class CPU {
 		y = 0; 
 		
 		//SP points towards the bottom of the stack i.e. stack has no internal values. not sure
-		sp = 63;
+		sp = stackTop;
 		
 		//Program is always loaded into memory starting at 0x00
 		pc = 0x00;
@@ -187,21 +351,20 @@ public class CPU {
 		nextIrOperand = 0;
 		
 		//Clear status register bits
-		carryFlag = false;
-		zeroFlag = false;
-		irqDisableFlag = false;
-		decimalModeFlag = false;
-		breakFlag = false;
-		overflowFlag = false;
-		negativeFlag = false;
-		
-		//Reset step counter
+		status = PSR_SETBIT;
+		lazyMask = 0;
+		
+		//Reset step and cycle counters
 		stepCounter = 0;
+		cycleCounter = 0;
+		if(journal != null)
+			journal.clear();
 		
 		//Allow the CPU to step
 		canStep = true;
 		
-		System.out.println("\n[CPU] CPU values reset");
+		if(verbose)
+			System.out.println("\n[CPU] CPU values reset");
 		
 		//Peek ahead to next instruction, grabbing the opcode and operand
 		peekAhead();
@@ -214,45 +377,167 @@ public class CPU {
 	 */
 	public void peekAhead()
 	{
-		nextIr = ram.read(pc);
-		nextIrOperand = ram.read(pc + 1);
-		System.out.println("[CPU] peekAhead - nextIr set to: " + nextIr);
-		System.out.println("[CPU] peekAhead - nextIrOperand set to: " + nextIrOperand);
+		nextIr = bus.fetch(pc);
+		if(addressMode == MODE_FULL)
+			nextIrOperand = readOperand(pc, instructionLengths[nextIr]);
+		else
+			nextIrOperand = bus.fetch(pc + 1);
+		if(verbose)
+			System.out.println("[CPU] peekAhead - nextIr set to: " + nextIr);
+		if(verbose)
+			System.out.println("[CPU] peekAhead - nextIrOperand set to: " + nextIrOperand);
 	}
 	
 	public void step(int num) throws SimulationException
 	{
+		if(executionEngine == ENGINE_BLOCK_CACHE && !verbose && journal == null && trace == null && profiler == null)
+		{
+			runBlocks(num);
+			return;
+		}
+		
 		for(int i = 0; i < num; i++)
 		{
 			step();
 		}
 	}
 	
+	/*
+	 * Runs num steps using the block cache. When the PC is at the start of a bound block
+	 * that fits into the remaining steps the whole block is run at once, otherwise a single
+	 * step() is taken. The result is identical to calling step() num times.
+	 */
+	private void runBlocks(int num) throws SimulationException
+	{
+		int remaining = num;
+		while(remaining > 0)
+		{
+			if(blockBinding && canStep && isBlockFinished())
+			{
+				BlockCache.Block block = enterBlock();
+				if(block != null && block.kinds != null && block.count <= remaining)
+				{
+					remaining -= runBoundBlock(block);
+					continue;
+				}
+			}
+			
+			step();
+			remaining--;
+		}
+	}
+	
+	/*
+	 * Runs a bound block from its first instruction, stopping early if the block is 
+	 * invalidated by a write to its own instructions. Returns the number of steps taken.
+	 */
+	private int runBoundBlock(BlockCache.Block block) throws SimulationException
+	{
+		int i;
+		if(block.compiled != null)
+			i = block.compiled.run(this, block);
+		else
+			i = runOperationChain(block);
+		
+		blockIndex = i;
+		blockPc = pc;
+		return i;
+	}
+	
+	/*
+	 * Runs a bound block that has not been compiled, see runBoundBlock()
+	 */
+	private int runOperationChain(BlockCache.Block block)
+	{
+		int i = 0;
+		while(i < block.count)
+		{
+			int operand = block.operands[i];
+			int nextPc = block.nextPcs[i];
+			ir = block.opcodes[i];
+			irOperand = operand;
+			pc = nextPc;
+			stepCounter++;
+			
+			switch(block.kinds[i])
+			{
+				case BlockCache.KIND_END:
+					canStep = false;
+					break;
+				case BlockCache.KIND_BEGIN:
+					peekAhead();
+					//BEGIN is then executed as a normal instruction, as in step()
+					block.operations[i].execute(this, operand, block.resolvers[i].resolve(this, operand));
+					break;
+				default:
+					block.operations[i].execute(this, operand, block.resolvers[i].resolve(this, operand));
+			}
+			
+			if(block.penalties[i] == DispatchTable.PENALTY_NONE)
+				cycleCounter += block.cycles[i];
+			else
+				cycleCounter += instructionCycles(nextPc);
+			
+			i++;
+			if(!block.valid)
+				break;
+		}
+		
+		return i;
+	}
+	
 	public void step() throws SimulationException
 	{
-		System.out.println("\n[CPU] ---Step---");
+		if(verbose)
+			System.out.println("\n[CPU] ---Step---");
 		
 		if(canStep)
 		{
-			System.out.println("[CPU] Starting fetch");
-			//Fetch instruction pointed at by PC 
-			ir = ram.read(pc);
-			irOperand = ram.read(pc + 1); //2 byte pair for instruction and operand
+			if(journal != null)
+				journal.beginStep();
 			
-			int irAddressMode = (ir >> 2) & 0x07; //Bits 3-5 of IR denotes addressing mode of instruction
-			int irOpMode = ir & 0x03;
+			int instructionPc = pc;
+			
+			//Fetch instruction from the current decoded block when using the block cache
+			if(executionEngine != ENGINE_BLOCK_CACHE || !fetchFromBlock())
+			{
+				if(verbose)
+					System.out.println("[CPU] Starting fetch");
+				//Fetch instruction pointed at by PC 
+				ir = bus.fetch(pc);
+				int length = 2; //2 byte pair for instruction and operand
+				if(addressMode == MODE_FULL)
+				{
+					length = instructionLengths[ir];
+					irOperand = readOperand(pc, length);
+				}
+				else
+				{
+					irOperand = bus.fetch(pc + 1);
+				}
+			
+				if(verbose)
+					System.out.println("[CPU] IR value: " + ir + " (Address mode: " + ((ir >> 2) & 0x07) + ") (Op mode: " + (ir & 0x03) + ")" 
+											+ " (Instruction: " + determineInstructionSymbol(ir) + ")");
+				if(verbose)
+					System.out.println("[CPU] IR operand value: " + irOperand);
+			
+				for(int i = 0; i < length; i++) //2 bytes per instruction:operand pair in lite mode
+				{
+					incrementPc();
+				}
+				if(verbose)
+					System.out.println("[CPU] PC incremented to: " + pc);
+			}
 			
-			System.out.println("[CPU] IR value: " + ir + " (Address mode: " + irAddressMode + ") (Op mode: " + irOpMode + ")" 
-									+ " (Instruction: " + determineInstructionSymbol(ir) + ")");
-			System.out.println("[CPU] IR operand value: " + irOperand);
-			//System.out.println("[CPU] IR has address mode " + irAddressMode);
-			//ystem.out.println("[CPU] IR has op mode " + irOpMode);
+			if(trace != null)
+				trace.record(instructionPc, ir, irOperand, a, x, y, sp, getProcessorStatusFlags(), cycleCounter);
 			
-			incrementPc(); //2 bytes per instruction:operand pair
-			incrementPc();
-			System.out.println("[CPU] PC incremented to: " + pc);
+			int irAddressMode = (ir >> 2) & 0x07; //Bits 3-5 of IR denotes addressing mode of instruction
+			int irOpMode = ir & 0x03;
 			
 			stepCounter++;
+			int nextPc = pc;
 		
 			
 			int effectiveAddress = 0;
@@ -261,13 +546,19 @@ public class CPU {
 			//if terminating instruction is reached, finish execution
 			if(checkTerminatingInstruction()) 
 			{
-				System.out.println("[CPU] End of program reached. Execution finished.");
+				if(verbose)
+					System.out.println("[CPU] End of program reached. Execution finished.");
 				//setGuiOutput("End of program reached. Execution finished.");
 			}
+			else if(executionEngine != ENGINE_SWITCH)
+			{
+				dispatchTable.execute(this, ir, irOperand);
+			}
 			else //otherwise continue with program 
 			{
 				
-				System.out.println("[CPU] Gettting effective address");
+				if(verbose)
+					System.out.println("[CPU] Gettting effective address");
 				//Get the data from the effective address
 				
 				//If the instruction held in the IR matches any of the implied instruction opcodes, 
@@ -297,94 +588,112 @@ public class CPU {
 						ir == 0xCA || //DEX
 						ir == 0xEA)   //NOP
 				{
-					System.out.println("[CPU] Addressing mode: Implied");
+					if(verbose)
+						System.out.println("[CPU] Addressing mode: Implied");
 				}
 				else
 				{
 					switch(irOpMode) 
 					{
 						case 0: //case 0 (i.e. irOpMode 0) uses the same addressing mode numbering as case 2, therefore case 0 just uses case 2
-							System.out.println("[CPU] IR Op-mode case 0 - using case 2");
+							if(verbose)
+								System.out.println("[CPU] IR Op-mode case 0 - using case 2");
 						case 2:
-							System.out.println("[CPU] IR Op-mode case 2");
+							if(verbose)
+								System.out.println("[CPU] IR Op-mode case 2");
 							switch(irAddressMode)
 							{
 								case 0: //#Immediate
-									System.out.println("[CPU] Addressing mode case 0: Immediate");
+									if(verbose)
+										System.out.println("[CPU] Addressing mode case 0: Immediate");
 									break;
 								case 1: //Zero page - treated like absolute
-									System.out.println("[CPU] Addressing mode case 1: Zero page (treated like absolute)");
+									if(verbose)
+										System.out.println("[CPU] Addressing mode case 1: Zero page (treated like absolute)");
 									effectiveAddress = irOperand;
 									break;
 								case 2: //Accumulator - ignored
-									System.out.println("[CPU] Addressing mode case 2: Accumulator (ignored)");
+									if(verbose)
+										System.out.println("[CPU] Addressing mode case 2: Accumulator (ignored)");
 									break;
 								case 3: //Absolute
-									System.out.println("[CPU] Addressing mode case 3: Absolute");
+									if(verbose)
+										System.out.println("[CPU] Addressing mode case 3: Absolute");
 									effectiveAddress = irOperand;
 									break;
-								case 5:  //Zero page,Y / Zero page,X - treated like absolute,x and absolute,y
+								case 5:  //Zero page,Y / Zero page,X
 									if(ir == 0x96 || ir == 0xb6)
 									{
-										System.out.println("[CPU] Addressing mode case 5: Zero-page,Y (treated like absolute,y");
-										effectiveAddress = yAddress(irOperand);
+										if(verbose)
+											System.out.println("[CPU] Addressing mode case 5: Zero-page,Y");
+										effectiveAddress = zeroPageYAddress(irOperand);
 									}
 									else
 									{
-										System.out.println("[CPU] Addressing mode case 5: Zero-page,X (treated like absolute,x");
-										effectiveAddress = xAddress(irOperand);
+										if(verbose)
+											System.out.println("[CPU] Addressing mode case 5: Zero-page,X");
+										effectiveAddress = zeroPageXAddress(irOperand);
 									}
 									break;
 								case 7: //Absolute,Y / Absolute, X
 									if(ir == 0xbe)
 									{
-										System.out.println("[CPU] Addressing mode case 7: Absolute,Y");
+										if(verbose)
+											System.out.println("[CPU] Addressing mode case 7: Absolute,Y");
 										effectiveAddress = yAddress(irOperand);
 									}
 									else
 									{
-										System.out.println("[CPU] Addressing mode case 7: Absolute,X");
+										if(verbose)
+											System.out.println("[CPU] Addressing mode case 7: Absolute,X");
 										effectiveAddress = xAddress(irOperand);
 									}
 									break;
 							}
 							break;
 						case 1:
-							System.out.println("[CPU] IR Op-mode case 1");
+							if(verbose)
+								System.out.println("[CPU] IR Op-mode case 1");
 							switch(irAddressMode)
 							{
-								case 0: // (Zero page, X) - treated like (Absolute,X)
-									System.out.println("[CPU] Addressing mode case 0: (Zero-page,X)");
-									tmp = xAddress(irOperand);
-									effectiveAddress = ram.read(tmp); 
+								case 0: // (Zero page, X)
+									if(verbose)
+										System.out.println("[CPU] Addressing mode case 0: (Zero-page,X)");
+									effectiveAddress = indexedIndirectAddress(irOperand);
 									break;
 								case 1: // Zero page - treated like Absolute
-									System.out.println("[CPU] Addressing mode case 1: Zero-page (treated like Absolute)");
+									if(verbose)
+										System.out.println("[CPU] Addressing mode case 1: Zero-page (treated like Absolute)");
 									effectiveAddress = irOperand;
 									break;
 								case 2: // #Immediate
-									System.out.println("[CPU] Addressing mode case 2: Immediate");
+									if(verbose)
+										System.out.println("[CPU] Addressing mode case 2: Immediate");
 									effectiveAddress = -1;
 									break;
 								case 3: //Absolute
-									System.out.println("[CPU] Addressing mode case 3: Absolute");
+									if(verbose)
+										System.out.println("[CPU] Addressing mode case 3: Absolute");
 									effectiveAddress = irOperand;
 									break;
-								case 4: //(Zero page),Y - treated like (Absolute),Y
-									System.out.println("[CPU] Addressing mode case 4: (Zero-page),Y (treated like (Absolute),Y )");
-									tmp = ram.read(irOperand);
-									effectiveAddress = yAddress(tmp);
+								case 4: //(Zero page),Y
+									if(verbose)
+										System.out.println("[CPU] Addressing mode case 4: (Zero-page),Y");
+									effectiveAddress = indirectIndexedAddress(irOperand);
 									break;
-								case 5: //Zero page, X - treated like Absolute, X
-									System.out.println("[CPU] Addressing mode case 5: Zero-page,X (treated like Absolute,X)");
-									effectiveAddress = xAddress(irOperand);
+								case 5: //Zero page, X
+									if(verbose)
+										System.out.println("[CPU] Addressing mode case 5: Zero-page,X");
+									effectiveAddress = zeroPageXAddress(irOperand);
 									break;
 								case 6: //Absolute, Y 
-									System.out.println("[CPU] Addressing mode case 6: Absolute,Y");
+									if(verbose)
+										System.out.println("[CPU] Addressing mode case 6: Absolute,Y");
 									effectiveAddress = yAddress(irOperand); //why & 0xff?
 									break;
 								case 7: //Absolute, X
-									System.out.println("[CPU] Addressing mode case 7: Absolute,X");
+									if(verbose)
+										System.out.println("[CPU] Addressing mode case 7: Absolute,X");
 									effectiveAddress = xAddress(irOperand);
 									break;
 							}
@@ -392,7 +701,8 @@ public class CPU {
 					}		
 				}
 				
-				System.out.println("[CPU] Effective address: " + effectiveAddress);
+				if(verbose)
+					System.out.println("[CPU] Effective address: " + effectiveAddress);
 				
 				//Execute
 				switch(ir)
@@ -409,7 +719,7 @@ public class CPU {
 					case 0xB9: //LDA - Load Accumulator - Absolute,Y
 					case 0xA1: //LDA - Load Accumulator - (Indirect,X)
 					case 0xB1: //LDA - Load Accumulator - (Indirect),Y
-						a = ram.read(effectiveAddress);
+						a = bus.read(effectiveAddress);
 						setArithmeticFlags(a);
 						break;
 						
@@ -421,7 +731,7 @@ public class CPU {
 					case 0xB6: //LDX - Load X Register - Zero-page,Y
 					case 0xAE: //LDX - Load X Register - Absolute
 					case 0xBE: //LDX - Load X Register - Absolute,Y
-						x = ram.read(effectiveAddress);
+						x = bus.read(effectiveAddress);
 						setArithmeticFlags(x);
 						break;
 						
@@ -433,7 +743,7 @@ public class CPU {
 					case 0xB4: //LDY - Load Y Register - Zero-page,X
 					case 0xAC: //LDY - Load Y Register - Absolute
 					case 0xBC: //LDY - Load Y Register - Absolute,X
-						y = ram.read(effectiveAddress);
+						y = bus.read(effectiveAddress);
 						setArithmeticFlags(y);
 						break;
 						
@@ -444,19 +754,19 @@ public class CPU {
 					case 0x99: //STA - Store Accumulator in Memory - Absolute,Y
 					case 0x81: //STA - Store Accumulator in Memory - (Indirect,X)
 					case 0x91: //STA - Store Accumulator in Memory - (Indirect),Y
-						ram.write(effectiveAddress, a);
+						bus.write(effectiveAddress, a);
 						break;
 						
 					case 0x86: //STX - Store X Register in Memory - Zero-page
 					case 0x96: //STX - Store X Register in Memory - Zero-page,Y
 					case 0x8E: //STX - Store X Register in Memory - Absolute
-						ram.write(effectiveAddress, x);
+						bus.write(effectiveAddress, x);
 						break;
 						
 					case 0x84: //STY - Store Y Register in Memory - Zero-page
 					case 0x94: //STY - Store Y Register in Memory - Zero-page,X
 					case 0x8C: //STY - Store Y Register in Memory - Absolute
-						ram.write(effectiveAddress, y);
+						bus.write(effectiveAddress, y);
 						break;
 						
 						
@@ -467,22 +777,26 @@ public class CPU {
 					case 0xAA: //TAX - Transfer Accumulator to X - Implied
 						x = a;
 						setArithmeticFlags(x);
-						System.out.println("TAX (implied) instruction executed");
+						if(verbose)
+							System.out.println("TAX (implied) instruction executed");
 						break;
 					case 0xA8: //TAY - Transfer Accumulator to Y - Implied
 						y = a;
 						setArithmeticFlags(y);
-						System.out.println("TAY (implied) instruction executed");
+						if(verbose)
+							System.out.println("TAY (implied) instruction executed");
 						break;
 					case 0x8A: //TXA - Transfer X to Accumulator - Implied
 						a = x;
 						setArithmeticFlags(a);
-						System.out.println("TXA (implied) instruction executed");
+						if(verbose)
+							System.out.println("TXA (implied) instruction executed");
 						break;
 					case 0x98: //TYA - Transfer Y to Accumulator - Implied
 						a = y;
 						setArithmeticFlags(a);
-						System.out.println("TYA (implied) instruction executed");
+						if(verbose)
+							System.out.println("TYA (implied) instruction executed");
 						break;
 				
 				
@@ -492,7 +806,7 @@ public class CPU {
 						setArithmeticFlags(x);
 						break;
 					case 0x9A: //TXS - Transfer X to Stack Pointer - Implied
-						sp = x;
+						sp = x & stackTop;
 						break;
 					case 0x48: //PHA - Push Accumulator to Stack - Implied
 						stackPush(a);
@@ -522,7 +836,7 @@ public class CPU {
 					case 0x39: //AND - Logical AND - Absolute,Y
 					case 0x21: //AND - Logical AND - (Indirect,X)
 					case 0x31: //AND - Logical AND - (Indirect),Y
-						a &= ram.read(effectiveAddress);
+						a &= bus.read(effectiveAddress);
 						setArithmeticFlags(a);
 						break;
 						
@@ -537,7 +851,7 @@ public class CPU {
 					case 0x59: //EOR - Exclusive OR - Absolute,Y
 					case 0x41: //EOR - Exclusive OR - (Indirect,X)
 					case 0x51: //EOR - Exclusive OR - (Indirect),Y
-						a ^= ram.read(effectiveAddress);
+						a ^= bus.read(effectiveAddress);
 						setArithmeticFlags(a);
 						break;
 						
@@ -552,13 +866,13 @@ public class CPU {
 					case 0x19: //ORA - Logical Inclusive OR - Absolute,Y
 					case 0x01: //ORA - Logical Inclusive OR - (Indirect,X)
 					case 0x11: //ORA - Logical Inclusive OR - (Indirect),Y
-						a |= ram.read(effectiveAddress);
+						a |= bus.read(effectiveAddress);
 						setArithmeticFlags(a);
 						break;
 						
 					case 0x24: //BIT - Bit Test - Zero-page
 					case 0x2C: //BIT - Bit Test - Absolute
-						tmp = ram.read(effectiveAddress);
+						tmp = bus.read(effectiveAddress);
 						setZeroFlag((a & tmp) == 0);
 						setOverflowFlag((tmp & PSR_OVERFLOW) != 0);
 						setNegativeFlag((tmp & PSR_NEGATIVE) != 0);
@@ -569,14 +883,7 @@ public class CPU {
 				
 					//Arithmetic Operations
 					case 0x69: //ADC - Add with Carry - Immediate 
-						if(decimalModeFlag)
-						{
-							a = adcDecimal(a, irOperand);
-						}
-						else
-						{
-							a = adc(a, irOperand);
-						}
+						addWithCarry(irOperand);
 						break;
 					case 0x65: //ADC - Add with Carry - Zero-page 
 					case 0x75: //ADC - Add with Carry - Zero-page,X 
@@ -585,25 +892,11 @@ public class CPU {
 					case 0x79: //ADC - Add with Carry - Absolute,Y
 					case 0x61: //ADC - Add with Carry - (Indirect,X)
 					case 0x71: //ADC - Add with Carry - (Indirect),Y
-						if(decimalModeFlag)
-						{
-							a = adcDecimal(a, ram.read(effectiveAddress));
-						}
-						else
-						{
-							a = adc(a, ram.read(effectiveAddress));
-						}
+						addWithCarry(bus.read(effectiveAddress));
 						break;
 						
 					case 0xE9: //SBC - Subtract with Carry - Immediate
-						if(decimalModeFlag)
-						{
-							a = sbcDecimal(a, irOperand);
-						}
-						else
-						{
-							a = sbc(a, irOperand);
-						}
+						subtractWithCarry(irOperand);
 						break;
 					case 0xE5: //SBC - Subtract with Carry - Zero-page 
 					case 0xF5: //SBC - Subtract with Carry - Zero-page,X 
@@ -612,14 +905,7 @@ public class CPU {
 					case 0xF9: //SBC - Subtract with Carry - Absolute,Y
 					case 0xE1: //SBC - Subtract with Carry - (Indirect,X);
 					case 0xF1: //SBC - Subtract with Carry - (Indirect),Y
-						if(decimalModeFlag)
-						{
-							a = sbcDecimal(a, ram.read(effectiveAddress));
-						}
-						else
-						{
-							a = sbc(a, ram.read(effectiveAddress));
-						}
+						subtractWithCarry(bus.read(effectiveAddress));
 						break;
 						
 					case 0xC9: //CMP - Compare - Immediate
@@ -632,7 +918,7 @@ public class CPU {
 					case 0xD9: //CMP - Compare - Absolute,Y
 					case 0xC1: //CMP - Compare - (Indirect,X)
 					case 0xD1: //CMP - Compare - (Indirect),Y
-						cmp(a, ram.read(effectiveAddress));
+						cmp(a, bus.read(effectiveAddress));
 						break;
 					
 					case 0xE0: //CPX - Compare X Register - Immediate
@@ -640,7 +926,7 @@ public class CPU {
 						break;
 					case 0xE4: //CPX - Compare X Register - Zero-page
 					case 0xEC: //CPX - Compare X Register - Absolute
-						cmp(x, ram.read(effectiveAddress));
+						cmp(x, bus.read(effectiveAddress));
 						break;
 						
 					case 0xC0: //CPY - Compare Y Register - Immediate
@@ -648,7 +934,7 @@ public class CPU {
 						break;
 					case 0xC4: //CPY - Compare Y Register - Zero-page
 					case 0xCC: //CPY - Compare Y Register - Absolute
-						cmp(y, ram.read(effectiveAddress));
+						cmp(y, bus.read(effectiveAddress));
 						break;
 						
 				
@@ -658,8 +944,8 @@ public class CPU {
 					case 0xF6: //INC - Increment Memory - Zero-page,X 
 					case 0xEE: //INC - Increment Memory - Absolute
 					case 0xFE: //INC - Increment Memory - Absolute,X 
-						tmp = (ram.read(effectiveAddress) + 1) & 0xff;
-						ram.write(effectiveAddress, tmp);
+						tmp = (bus.read(effectiveAddress) + 1) & 0xff;
+						bus.write(effectiveAddress, tmp);
 						setArithmeticFlags(tmp);
 						break;
 						
@@ -677,8 +963,8 @@ public class CPU {
 					case 0xD6: //DEC - Decrement Memory - Zero-page,X 
 					case 0xCE: //DEC - Decrement Memory - Absolute
 					case 0xDE: //DEC - Decrement Memory - Absolute,X 
-						tmp = (ram.read(effectiveAddress) - 1) & 0xff;
-						ram.write(effectiveAddress, tmp);
+						tmp = (bus.read(effectiveAddress) - 1) & 0xff;
+						bus.write(effectiveAddress, tmp);
 						setArithmeticFlags(tmp);
 						break;
 						
@@ -705,8 +991,8 @@ public class CPU {
 					case 0x16: //ASL - Arithmetic Shift Left - Zero-page,X 
 					case 0x0E: //ASL - Arithmetic Shift Left - Absolute
 					case 0x1E: //ASL - Arithmetic Shift Left - Absolute,X
-						tmp = asl(ram.read(effectiveAddress));
-						ram.write(effectiveAddress, tmp);
+						tmp = asl(bus.read(effectiveAddress));
+						bus.write(effectiveAddress, tmp);
 						setArithmeticFlags(tmp);
 						break;
 						
@@ -718,8 +1004,8 @@ public class CPU {
 					case 0x56: //LSR - Rotate Right - Zero-page,X 
 					case 0x4E: //LSR - Rotate Right - Absolute
 					case 0x5E: //LSR - Rotate Right - Absolute,X 
-						tmp = lsr(ram.read(effectiveAddress));
-						ram.write(effectiveAddress, tmp);
+						tmp = lsr(bus.read(effectiveAddress));
+						bus.write(effectiveAddress, tmp);
 						setArithmeticFlags(tmp);
 						break;
 						
@@ -731,8 +1017,8 @@ public class CPU {
 					case 0x36: //ROL - Rotate Left - Zero-page,X 
 					case 0x2E: //ROL - Rotate Left - Absolute
 					case 0x3E: //ROL - Rotate Left - Absolute,X
-						tmp = rol(ram.read(effectiveAddress));
-						ram.write(effectiveAddress, tmp);
+						tmp = rol(bus.read(effectiveAddress));
+						bus.write(effectiveAddress, tmp);
 						setArithmeticFlags(tmp);
 						break;
 						
@@ -744,8 +1030,8 @@ public class CPU {
 					case 0x76: //ROR - Rotate Right - Zero-page,X 
 					case 0x6E: //ROR - Rotate Right - Absolute
 					case 0x7E: //ROR - Rotate Right - Absolute,X
-						tmp = ror(ram.read(effectiveAddress));
-						ram.write(effectiveAddress, tmp);
+						tmp = ror(bus.read(effectiveAddress));
+						bus.write(effectiveAddress, tmp);
 						setArithmeticFlags(tmp);
 						break;
 						
@@ -756,18 +1042,15 @@ public class CPU {
 						pc = irOperand; //set PC to absolute value held in operand
 						break;
 					case 0x6C: //JMP - Jump - Indirect
-						int address = irOperand;
-						pc = ram.read(address);
+						pc = indirectAddress(irOperand);
 						break;
 				
 					case 0x20: //JSR - Jump to Subroutine - Absolute
-						stackPush(pc - 2 & 0xFF); //minus 2 due to incrementation of PC by 2 after every fetch-execute cycle
-						pc = irOperand; //set PC to absolute address held in irOperand
+						jumpToSubroutine(irOperand);
 						break;
 	
 					case 0x60: //RTS - Return from Subroutine - Implied
-						int returnAddress = stackPop();
-						setPc((returnAddress + 2) & 0xFF); //Set the PC to the address pushed to stack + 2 for next instruction. Also peek at the next instruction. 
+						returnFromSubroutine();
 						break;
 				
 						
@@ -866,18 +1149,25 @@ public class CPU {
 						//No action taken
 						break;
 					case 0x40: //RTI - Return from Interrupt - Implied
-						int status = stackPop();
-						setProcessorStatusFlags(status);
-						int newPcVal = stackPop();
-						setPc(newPcVal);
+						returnFromInterrupt();
 						break;
 				}
 				
 			}
+			
+			int cycles = instructionCycles(nextPc);
+			cycleCounter += cycles;
+			
+			if(profiler != null)
+				profiler.executed(instructionPc, ir, cycles);
+			
+			if(journal != null)
+				journal.endStep();
 		}
 		else
 		{
-			System.out.println("[CPU] Terminating keyword END has been reached. CPU can no longer step");
+			if(verbose)
+				System.out.println("[CPU] Terminating keyword END has been reached. CPU can no longer step");
 			setGuiOutput("Terminating keyword END has been reached. CPU can no longer step");
 		}
 	}
@@ -941,33 +1231,42 @@ public class CPU {
 	{
 		if(ir == 239 && irOperand == 239) //BEGIN keyword, peek ahead to next instruction
 		{
-			System.out.println("[CPU] Instruction is BEGIN keyword. Getting next instruction.");
+			if(verbose)
+				System.out.println("[CPU] Instruction is BEGIN keyword. Getting next instruction.");
 			peekAhead();
 			return false;
 		}
 		else if(ir == 255 && irOperand == 255)
 		{
-			System.out.println("[CPU] Instruction is END keyword. Terminating runloop.");
+			if(verbose)
+				System.out.println("[CPU] Instruction is END keyword. Terminating runloop.");
 			canStep = false;
 			return true;
 		}
 		else
 		{
-			System.out.println("[CPU] Instruction is not a terminating instruction");
+			if(verbose)
+				System.out.println("[CPU] Instruction is not a terminating instruction");
 			return false;
 		}
 	}
 	
 	public void stackPush(int data)
 	{
-		System.out.println("SP: " + sp);
+		sp &= stackTop; //An SP set past the top of the stack wraps around, see setSp()
+		if(verbose)
+			System.out.println("SP: " + sp);
 		
-		stack.push(sp, data);
+		if(stackBase >= 0)
+			bus.write(stackBase + sp, data); //Through the Bus, so that devices, watchpoints and the profiler see stack traffic
+		else
+			stack.push(sp, data);
 		
 		if(sp == 0) //stack is full
 		{
-			sp = 63;
-			System.out.println("[CPU] SP reached bottom of stack. Setting SP to top (0x3f).");
+			sp = stackTop;
+			if(verbose)
+				System.out.println("[CPU] SP reached bottom of stack. Setting SP to top (0x" + Utils.DecToHex(stackTop) + ").");
 		}
 		else
 		{
@@ -978,26 +1277,115 @@ public class CPU {
 	
 	public int stackPop()
 	{
-		System.out.println("SP: " + sp);
+		sp &= stackTop;
+		if(verbose)
+			System.out.println("SP: " + sp);
 		
-		if(sp == 63) //stack is empty
+		if(sp == stackTop) //stack is empty
 		{
 			sp = 0;
-			System.out.println("[CPU] SP reached top of stack. Setting SP to bottom (0x00).");
+			if(verbose)
+				System.out.println("[CPU] SP reached top of stack. Setting SP to bottom (0x00).");
 		}
 		else
 		{
 			sp++;
 		}
 		
+		if(stackBase >= 0)
+			return bus.read(stackBase + sp);
+		
 		return stack.pop(sp);
 	}
 	
+	/*
+	 * Helpers used by the DispatchTable operations
+	 */
+	
+	/*
+	 * TXS, sets the SP without the console output of setSp(). X is masked to the stack 
+	 * size, as the lite machine's stack is smaller than the range of X.
+	 */
+	void transferXToSp()
+	{
+		sp = x & stackTop;
+	}
+	
+	int read(int address)
+	{
+		return bus.read(address);
+	}
+	
+	void write(int address, int data)
+	{
+		bus.write(address, data);
+	}
+	
+	/*
+	 * Sets the PC without peeking ahead, used by jumps and branches
+	 */
+	void jump(int address)
+	{
+		pc = address;
+	}
+	
+	/*
+	 * ADC, in binary or decimal mode depending on the decimal flag
+	 */
+	void addWithCarry(int op)
+	{
+		if(aluTables)
+		{
+			a = applyAluEntry(AluTables.ADC[AluTables.index(a, op, (status & PSR_DECIMAL) | getCarryBit())]);
+			return;
+		}
+		
+		if((status & PSR_DECIMAL) != 0)
+		{
+			a = adcDecimal(a, op);
+		}
+		else
+		{
+			a = adc(a, op);
+		}
+	}
+	
+	/*
+	 * SBC, in binary or decimal mode depending on the decimal flag
+	 */
+	void subtractWithCarry(int op)
+	{
+		if(aluTables)
+		{
+			a = applyAluEntry(AluTables.SBC[AluTables.index(a, op, (status & PSR_DECIMAL) | getCarryBit())]);
+			return;
+		}
+		
+		if((status & PSR_DECIMAL) != 0)
+		{
+			a = sbcDecimal(a, op);
+		}
+		else
+		{
+			a = sbc(a, op);
+		}
+	}
+	
+	/*
+	 * Writes the flags held in an AluTables entry and returns its result
+	 */
+	private int applyAluEntry(int entry)
+	{
+		lazyMask &= ~AluTables.FLAG_MASK;
+		status = (status & ~AluTables.FLAG_MASK) | ((entry >> 8) & AluTables.FLAG_MASK);
+		return entry & 0xff;
+	}
+	
 	/*
 	 * ADC (decimal, uses BCD) adds the contents of a memory location to the accumulator along with the carry bit.
 	 * Sets carry bit if overflow occurs
 	 */
-	private int adcDecimal(int a, int op)
+	int adcDecimal(int a, int op)
 	{
 //		System.out.printf("[CPU] ADC-Decimal: %04X + %04X + %d",
 //	            a, op, getCarryBit());
@@ -1021,7 +1409,8 @@ public class CPU {
 //	        return result;
 		
 		
-		System.out.println("[CPU] ADC-Decimal: " + a + " + " + op + " + " + getCarryBit());
+		if(verbose)
+			System.out.println("[CPU] ADC-Decimal: " + a + " + " + op + " + " + getCarryBit());
 		int l, h, result;
         l = (a & 0x0f) + (op & 0x0f) + getCarryBit();
         if ((l & 0xff) > 9) l += 6;
@@ -1033,34 +1422,53 @@ public class CPU {
         setZeroFlag(result == 0);
         setOverflowFlag(false); // BCD never sets overflow flag
 
-        negativeFlag = (result & 0x80) != 0; // N Flag is valid on CMOS 6502/65816
+        setNegativeFlag((result & 0x80) != 0); // N Flag is valid on CMOS 6502/65816
            
-        System.out.println("[CPU] ADC-Decimal result: " + result);
+        if(verbose)
+        	System.out.println("[CPU] ADC-Decimal result: " + result);
         return result;
 	}
 	
 	/*
 	 * Add with carry
 	 */
-	private int adc(int a, int op)
+	int adc(int a, int op)
 	{
-		System.out.println("[CPU] ADC: " + a + " + " + op + " + " + getCarryBit());
-		int result = (op & 0xff) + (a & 0xff) + getCarryBit();
-        int carry = (op & 0x7f) + (a & 0x7f) + getCarryBit();
-        setCarryFlag((result & 0x100) != 0);
-        setOverflowFlag(carryFlag ^ ((carry & 0x80) != 0));
+		if(verbose)
+			System.out.println("[CPU] ADC: " + a + " + " + op + " + " + getCarryBit());
+		if(lazyFlags)
+		{
+			int sum = (op & 0xff) + (a & 0xff) + getCarryBit();
+			lazyCarry = sum;
+			lazyResult = sum & 0xff;
+			lazyOverflow = (a ^ sum) & (op ^ sum);
+			lazyMask |= PSR_CARRY | PSR_OVERFLOW | PSR_ZERO | PSR_NEGATIVE;
+			if(verbose)
+	        	System.out.println("[CPU] ADC result: " + lazyResult);
+			return lazyResult;
+		}
+		
+		int result = (op & 0xff) + (a & 0xff) + (status & PSR_CARRY);
+        int carry = (op & 0x7f) + (a & 0x7f) + (status & PSR_CARRY);
+        int carryOut = (result >> 8) & 1;
         result &= 0xff;
-        setArithmeticFlags(result);
-        System.out.println("[CPU] ADC result: " + result);
+        status = (status & ~(PSR_CARRY | PSR_OVERFLOW | PSR_ZERO | PSR_NEGATIVE)) 
+        		| carryOut 
+        		| ((carryOut ^ ((carry >> 7) & 1)) << 6) 
+        		| (result == 0 ? PSR_ZERO : 0) 
+        		| (result & PSR_NEGATIVE);
+        if(verbose)
+        	System.out.println("[CPU] ADC result: " + result);
         return result;
 	}
 	
-	private int sbcDecimal(int ac, int op)
+	int sbcDecimal(int ac, int op)
 	{
-		System.out.println("[CPU] SBC-Decimal: " + a + " - " + op + " - " + getCarryBit());
+		if(verbose)
+			System.out.println("[CPU] SBC-Decimal: " + a + " - " + op + " - " + getCarryBit());
 		
 		int l, h, result;
-        l = (a & 0x0f) - (op & 0x0f) - (carryFlag ? 0 : 1);
+        l = (a & 0x0f) - (op & 0x0f) - (1 - getCarryBit());
         if ((l & 0x10) != 0) l -= 6;
         h = (a >> 4) - (op >> 4) - ((l & 0x10) != 0 ? 1 : 0);
         if ((h & 0x10) != 0) h -= 6;
@@ -1069,37 +1477,65 @@ public class CPU {
         setZeroFlag(result == 0);
         setOverflowFlag(false); // BCD never sets overflow flag
 
-        negativeFlag = (result & 0x80) != 0; // N Flag is valid on CMOS 6502/65816
+        setNegativeFlag((result & 0x80) != 0); // N Flag is valid on CMOS 6502/65816
 
         
-        System.out.println("[CPU] SBC-Decimal result: " + result);
+        if(verbose)
+        	System.out.println("[CPU] SBC-Decimal result: " + result);
         return (result & 0xff);
 	}
 	
-	private int sbc(int a, int op) {
-		System.out.println("[CPU] SBC: " + a + " - " + op + " - " + getCarryBit());
+	int sbc(int a, int op) {
+		if(verbose)
+			System.out.println("[CPU] SBC: " + a + " - " + op + " - " + getCarryBit());
 		int result;
         result = adc(a, ~op);
         setArithmeticFlags(result);
-        System.out.println("[CPU] SBC result: " + result);
+        if(verbose)
+        	System.out.println("[CPU] SBC result: " + result);
         return result;
     }
 	
-	private void cmp(int register, int operand)
+	void cmp(int register, int operand)
 	{
+		if(lazyFlags)
+		{
+			lazyCarry = register - operand + 0x100; //Bit 8 is set when register >= operand
+			lazyResult = lazyCarry & 0xff;
+			lazyMask |= PSR_CARRY | PSR_ZERO | PSR_NEGATIVE;
+			return;
+		}
+		
 		int val = (register - operand) & 0xff;
-		setCarryFlag(register >= operand);
-		setZeroFlag(val == 0);
-		setNegativeFlag((val & 0x80) != 0);
+		status = (status & ~(PSR_CARRY | PSR_ZERO | PSR_NEGATIVE)) 
+				| (register >= operand ? PSR_CARRY : 0) 
+				| (val == 0 ? PSR_ZERO : 0) 
+				| (val & PSR_NEGATIVE);
+	}
+	
+	/*
+	 * Sets the carry flag to bit 8 of the value, the carry out of the shift and rotate helpers below
+	 */
+	private void setCarryFromBit8(int value)
+	{
+		if(lazyFlags)
+		{
+			lazyCarry = value;
+			lazyMask |= PSR_CARRY;
+		}
+		else
+		{
+			status = (status & ~PSR_CARRY) | ((value >> 8) & PSR_CARRY);
+		}
 	}
 	
 	/*
 	 * Shifts the passed parameter left by one bit.
 	 * Sets the carry flag to the high bit of the initial value.
 	 */
-	private int asl(int val)
+	int asl(int val)
 	{
-		setCarryFlag((val & 0x80) != 0);
+		setCarryFromBit8(val << 1);
 		return (val << 1) & 0xff;
 	}
 	
@@ -1107,9 +1543,9 @@ public class CPU {
 	 * Shifts the passed parameter right by one bit.
 	 * Sets the carry flag to the low bit of the initial value
 	 */
-	private int lsr(int val)
+	int lsr(int val)
 	{
-		setCarryFlag((val & 0x01) != 0);
+		setCarryFromBit8(val << 8);
 		return (val & 0xff) >>> 1;
 	}
 	
@@ -1117,11 +1553,12 @@ public class CPU {
 	 * Rotates the passed int left by one bit.
 	 * Sets bit 0 to the value of the carry flag, and sets the carry flag to the original value of bit 7
 	 */
-	private int rol(int val)
+	int rol(int val)
 	{
 		int result = ((val << 1) | getCarryBit()) & 0xff;
-		setCarryFlag((val & 0x80) != 0);
-		System.out.println("[CPU] " + val + " -> ROL -> " + result);
+		setCarryFromBit8(val << 1);
+		if(verbose)
+			System.out.println("[CPU] " + val + " -> ROL -> " + result);
 		return result;
 	}
 	
@@ -1129,11 +1566,12 @@ public class CPU {
 	 * Rotates the passed int right by one bit.
 	 * Sets bit 7 to the value of the carry flag, and sets the carry flag to the original value of bit 1. 
 	 */
-	private int ror(int val)
+	int ror(int val)
 	{
 		int result = ((val >>> 1) | (getCarryBit() << 7)) & 0xff;
-		setCarryFlag((val & 0x01) != 0);
-		System.out.println("[CPU] " + val + " -> ROR -> " + result);
+		setCarryFromBit8(val << 8);
+		if(verbose)
+			System.out.println("[CPU] " + val + " -> ROR -> " + result);
 		return result;
 	}
 	
@@ -1141,135 +1579,337 @@ public class CPU {
 	
 	
 	/*
-	 * Given an address, return the Absolute,X offset address.
+	 * Returns the number of clock cycles taken by the instruction just executed.
+	 * The base cycle count is increased by 1 if an indexed address crosses a page boundary, and 
+	 * for branches by 1 if the branch is taken plus 1 more if the target is on a different page
+	 * to the next instruction. In lite mode an indexed address crosses a page when it wraps past 0xFF.
+	 * 
+	 * nextPc is the address of the instruction following the one executed.
 	 */
-	private int xAddress(int addr)
+	int instructionCycles(int nextPc)
 	{
-		return (addr + x) & 0xff;
+		int cycles = cycleCounts[ir];
+		
+		switch(cyclePenalties[ir])
+		{
+			case DispatchTable.PENALTY_PAGE_X:
+				if(crossesPage(irOperand, x))
+					cycles++;
+				break;
+			case DispatchTable.PENALTY_PAGE_Y:
+				if(crossesPage(irOperand, y))
+					cycles++;
+				break;
+			case DispatchTable.PENALTY_PAGE_INDIRECT_Y:
+				if(crossesPage(indirectBase, y))
+					cycles++;
+				break;
+			case DispatchTable.PENALTY_BRANCH:
+				if(branchTaken(ir))
+				{
+					cycles++;
+					if((pc & 0xff00) != (nextPc & 0xff00))
+						cycles++;
+				}
+				break;
+		}
+		
+		return cycles;
+	}
+	
+	private boolean crossesPage(int base, int index)
+	{
+		return ((base + index) & ~0xff) != (base & ~0xff);
 	}
 	
 	/*
-	 * Given an address, return the Absolute,Y offset address.
+	 * Evaluates the condition of a branch opcode. Bits 6-7 of the opcode select the flag
+	 * tested (N, V, C, Z) and bit 5 holds the value the flag must have for the branch to be taken.
 	 */
-	private int yAddress(int addr)
+	private static final int[] BRANCH_FLAGS = {PSR_NEGATIVE, PSR_OVERFLOW, PSR_CARRY, PSR_ZERO};
+	
+	private boolean branchTaken(int opcode)
 	{
-		return (addr + y) & 0xff;
+		boolean flag = (getProcessorStatusFlags() & BRANCH_FLAGS[opcode >> 6]) != 0;
+		return flag == (((opcode >> 5) & 1) == 1);
 	}
 	
 	/*
-	 * Given a byte, return the offset address from the PC
+	 * Given an address, return the Absolute,X offset address.
 	 */
-	private int relativeAddress(int offset)
+	int xAddress(int addr)
 	{
-		int relAddress = (pc + (byte) offset) & 0xff;
-		byte relAddressSigned = (byte) relAddress;
-		System.out.println("[CPU Relative address = " + relAddress + " / " + relAddressSigned + " (" + pc + " + " + offset + ")");
-		return relAddress;
+		return (addr + x) & addressMask;
 	}
 	
+	/*
+	 * Given an address, return the Absolute,Y offset address.
+	 */
+	int yAddress(int addr)
+	{
+		return (addr + y) & addressMask;
+	}
 	
+	/*
+	 * Given a zero-page address, return the Zero page,X offset address. Wraps around within the zero page.
+	 */
+	int zeroPageXAddress(int addr)
+	{
+		return (addr + x) & 0xff;
+	}
 	
+	/*
+	 * Given a zero-page address, return the Zero page,Y offset address. Wraps around within the zero page.
+	 */
+	int zeroPageYAddress(int addr)
+	{
+		return (addr + y) & 0xff;
+	}
 	
+	/*
+	 * Given a zero-page address, return the (Zero page,X) address read from the pointer held at address + X.
+	 * In full mode the pointer is 16-bit little endian, the high byte wraps around within the zero page.
+	 */
+	int indexedIndirectAddress(int addr)
+	{
+		return readZeroPagePointer(zeroPageXAddress(addr));
+	}
 	
+	/*
+	 * Given a zero-page address, return the (Zero page),Y address, the pointer held at the address plus Y.
+	 */
+	int indirectIndexedAddress(int addr)
+	{
+		indirectBase = readZeroPagePointer(addr);
+		return yAddress(indirectBase);
+	}
 	
+	/*
+	 * Given the operand of an indirect JMP, return the jump target held at the address.
+	 * In full mode the target is 16-bit little endian, the page boundary bug of the
+	 * NMOS 6502 is not simulated (see class comment).
+	 */
+	int indirectAddress(int addr)
+	{
+		if(addressMode == MODE_FULL)
+			return bus.read(addr) | (bus.read((addr + 1) & addressMask) << 8);
+		
+		return bus.read(addr);
+	}
 	
+	private int readZeroPagePointer(int addr)
+	{
+		if(addressMode == MODE_FULL)
+			return bus.read(addr) | (bus.read((addr + 1) & 0xff) << 8);
+		
+		return bus.read(addr);
+	}
 	
-	
-	
-	
-	
-	
+	/*
+	 * Fetches the next instruction from the current decoded block, entering the block held
+	 * for the PC when the current one is finished. Returns false if the instruction at the 
+	 * PC cannot be cached, in which case it is fetched from the bus as normal.
+	 */
+	private boolean fetchFromBlock()
+	{
+		BlockCache.Block block = currentBlock;
+		if(isBlockFinished())
+		{
+			block = enterBlock();
+			if(block == null)
+				return false;
+		}
+		
+		ir = block.opcodes[blockIndex];
+		irOperand = block.operands[blockIndex];
+		pc = block.nextPcs[blockIndex];
+		blockPc = pc;
+		blockIndex++;
+		
+		if(verbose)
+			System.out.println("[CPU] Fetched IR " + ir + " operand " + irOperand + " from block at " + block.startPc + ", PC set to: " + pc);
+		return true;
+	}
 	
 	/*
-	 * Set the zero and negative flags based on the value of 
-	 * the variable passed
+	 * True when the next instruction is not the next one in the current block, i.e. the
+	 * block has run out, has been invalidated by a write or the PC has moved elsewhere
 	 */
-	private void setArithmeticFlags(int val)
+	private boolean isBlockFinished()
 	{
-		zeroFlag = (val == 0);
-		negativeFlag = (val & 0x80) != 0;
+		BlockCache.Block block = currentBlock;
+		return block == null || !block.valid || blockIndex == block.count || blockPc != pc;
 	}
 	
-	public int getProcessorStatusFlags()
+	/*
+	 * Makes the block starting at the PC the current block, decoding it if needed. 
+	 * Returns null if the instruction at the PC cannot be cached.
+	 */
+	private BlockCache.Block enterBlock()
 	{
-		int statusFlags = 0;
-		
-		if(carryFlag)
+		if(blockCache == null || blockCache.getBus() != bus)
 		{
-			statusFlags |= PSR_CARRY;
+			if(blockCache != null)
+				blockCache.detach();
+			blockCache = new BlockCache(bus, dispatchTable, addressMode == MODE_FULL ? instructionLengths : null, addressMask,
+					blockCompilation ? new BlockCompiler(MethodHandles.lookup()) : null);
 		}
 		
-		if(zeroFlag)
+		BlockCache.Block block = blockCache.lookup(pc);
+		currentBlock = block;
+		blockIndex = 0;
+		blockPc = pc;
+		if(block != null)
+			blockCache.entered(block);
+		
+		return block;
+	}
+	
+	/*
+	 * Reads the operand of an instruction of the given length held at address, 16-bit operands are little endian.
+	 * Only used in full mode, 1 byte instructions have an operand of 0.
+	 */
+	private int readOperand(int address, int length)
+	{
+		if(length == 3)
+			return bus.fetch((address + 1) & addressMask) | (bus.fetch((address + 2) & addressMask) << 8);
+		if(length == 2)
+			return bus.fetch((address + 1) & addressMask);
+		
+		return 0;
+	}
+	
+	/*
+	 * JSR - pushes the return address and jumps to the subroutine.
+	 * Lite mode pushes the address of the JSR instruction itself, RTS then skips over it.
+	 * Full mode pushes the address of the last byte of the JSR instruction, high byte first, as on the 6502.
+	 */
+	void jumpToSubroutine(int address)
+	{
+		if(addressMode == MODE_FULL)
 		{
-			statusFlags |= PSR_ZERO;
+			int returnAddress = (pc - 1) & addressMask;
+			stackPush(returnAddress >> 8);
+			stackPush(returnAddress & 0xff);
 		}
-
-		if(irqDisableFlag)
+		else
 		{
-			statusFlags |= PSR_IRQ_DISABLE;
+			stackPush(pc - 2 & 0xFF); //minus 2 due to incrementation of PC by 2 after every fetch-execute cycle
 		}
-		
-		if(decimalModeFlag)
+		pc = address; //set PC to absolute address held in operand
+	}
+	
+	/*
+	 * RTS - pulls the return address pushed by jumpToSubroutine() and continues from the following instruction.
+	 * Also peeks at the next instruction.
+	 */
+	void returnFromSubroutine()
+	{
+		if(addressMode == MODE_FULL)
 		{
-			statusFlags |= PSR_DECIMAL;
+			int low = stackPop();
+			int high = stackPop();
+			setPc(((high << 8 | low) + 1) & addressMask);
 		}
-		
-		if(breakFlag)
+		else
 		{
-			statusFlags |= PSR_BREAK;
+			int returnAddress = stackPop();
+			setPc((returnAddress + 2) & 0xFF); //Set the PC to the address pushed to stack + 2 for next instruction.
 		}
-		
-		statusFlags |= PSR_SETBIT; //Bit 5 of the PSR is always set
-		
-		if(overflowFlag)
+	}
+	
+	/*
+	 * RTI - pulls the processor status followed by the PC, 16-bit low byte first in full mode.
+	 */
+	void returnFromInterrupt()
+	{
+		int status = stackPop();
+		setProcessorStatusFlags(status);
+		int newPcVal = stackPop();
+		if(addressMode == MODE_FULL)
+			newPcVal |= stackPop() << 8;
+		setPc(newPcVal);
+	}
+	
+	/*
+	 * Given a byte, return the offset address from the PC
+	 */
+	int relativeAddress(int offset)
+	{
+		int relAddress = (pc + (byte) offset) & addressMask;
+		byte relAddressSigned = (byte) relAddress;
+		if(verbose)
+			System.out.println("[CPU Relative address = " + relAddress + " / " + relAddressSigned + " (" + pc + " + " + offset + ")");
+		return relAddress;
+	}
+	
+	
+	
+	
+	
+	
+	
+	
+	
+	
+	
+	
+	
+	
+	/*
+	 * Set the zero and negative flags based on the value of 
+	 * the variable passed
+	 */
+	void setArithmeticFlags(int val)
+	{
+		if(lazyFlags)
 		{
-			statusFlags |= PSR_OVERFLOW;
+			lazyResult = val;
+			lazyMask |= PSR_ZERO | PSR_NEGATIVE;
+			return;
 		}
 		
-		if(negativeFlag)
-		{
-			statusFlags |= PSR_NEGATIVE;
-		}
+		status = (status & ~(PSR_ZERO | PSR_NEGATIVE)) | (val == 0 ? PSR_ZERO : 0) | (val & PSR_NEGATIVE);
+	}
+	
+	/*
+	 * Returns the status register, computing any flags held lazily first
+	 */
+	public int getProcessorStatusFlags()
+	{
+		if(lazyMask != 0)
+			materializeFlags();
 		
-		return statusFlags;
+		return status;
 	}
 	
+	/*
+	 * Loads the status register, bit 5 is always set
+	 */
 	public void setProcessorStatusFlags(int status)
 	{
-		if((status & PSR_CARRY) != 0)
-			setCarryFlag();
-		else
-			clearCarryFlag();
-		
-		if((status & PSR_ZERO) != 0)
-			setZeroFlag();
-		else
-			clearZeroFlag();
-		
-		if((status & PSR_IRQ_DISABLE) != 0)
-			setIrqDisableFlag();
-		else
-			clearIrqDisableFlag();
-		
-		if((status & PSR_DECIMAL) != 0)
-			setDecimalModeFlag();
-		else
-			clearDecimalModeFlag();
+		this.status = (status & 0xff) | PSR_SETBIT;
+		lazyMask = 0;
+	}
+	
+	/*
+	 * Computes the flags held in the lazy sources and writes them into the status register
+	 */
+	private void materializeFlags()
+	{
+		int flags = status & ~lazyMask;
 		
-		if((status & PSR_BREAK) != 0)
-			setBreakFlag();
-		else
-			clearBreakFlag();
+		if((lazyMask & PSR_ZERO) != 0 && lazyResult == 0)
+			flags |= PSR_ZERO;
+		if((lazyMask & PSR_NEGATIVE) != 0)
+			flags |= lazyResult & PSR_NEGATIVE;
+		if((lazyMask & PSR_CARRY) != 0)
+			flags |= (lazyCarry >> 8) & PSR_CARRY;
+		if((lazyMask & PSR_OVERFLOW) != 0)
+			flags |= (lazyOverflow & 0x80) >> 1;
 		
-		if((status & PSR_OVERFLOW) != 0)
-			setOverflowFlag();
-		else
-			clearOverflowFlag();
-			
-		if((status & PSR_NEGATIVE) != 0)
-			setNegativeFlag();
-		else
-			clearNegativeFlag();
+		status = flags;
+		lazyMask = 0;
 	}
 	
 	
@@ -1328,7 +1968,8 @@ public class CPU {
 	}
 
 	public void setSp(int sp) {
-		System.out.println("[CPU] SP set to " + sp);
+		if(verbose)
+			System.out.println("[CPU] SP set to " + sp);
 		this.sp = sp;
 	}
 
@@ -1343,7 +1984,7 @@ public class CPU {
 	}
 	
 	public void incrementPc() {
-		if(pc == 0xff)
+		if(pc == addressMask)
 		{
 			pc = 0;
 		}
@@ -1375,127 +2016,142 @@ public class CPU {
 
 	public boolean getCarryFlag() 
 	{
-		return carryFlag;
+		return (getProcessorStatusFlags() & PSR_CARRY) != 0;
 	}
 	
 	public int getCarryBit()
 	{
-		return (carryFlag ? 1 : 0);
+		if((lazyMask & PSR_CARRY) != 0)
+			return (lazyCarry >> 8) & PSR_CARRY;
+		
+		return status & PSR_CARRY;
 	}
 	
 	public void setCarryFlag(boolean flag)
 	{
-		carryFlag = flag;
+		lazyMask &= ~PSR_CARRY;
+		status = flag ? (status | PSR_CARRY) : (status & ~PSR_CARRY);
 	}
 
 	public void setCarryFlag() {
-		carryFlag = true;
+		lazyMask &= ~PSR_CARRY;
+		status |= PSR_CARRY;
 	}
 	
 	public void clearCarryFlag() {
-		carryFlag = false;
+		lazyMask &= ~PSR_CARRY;
+		status &= ~PSR_CARRY;
 	}
 
 	public boolean getNegativeFlag() {
-		return negativeFlag;
+		return (getProcessorStatusFlags() & PSR_NEGATIVE) != 0;
 	}
 	
 	public void setNegativeFlag(boolean flag)
 	{
-		negativeFlag = flag;
+		lazyMask &= ~PSR_NEGATIVE;
+		status = flag ? (status | PSR_NEGATIVE) : (status & ~PSR_NEGATIVE);
 	}
 
 	public void setNegativeFlag() {
-		negativeFlag = true;
+		lazyMask &= ~PSR_NEGATIVE;
+		status |= PSR_NEGATIVE;
 	}
 	
 	public void clearNegativeFlag() {
-		negativeFlag = false;
+		lazyMask &= ~PSR_NEGATIVE;
+		status &= ~PSR_NEGATIVE;
 	}
 
 	public boolean getZeroFlag() {
-		return zeroFlag;
+		return (getProcessorStatusFlags() & PSR_ZERO) != 0;
 	}
 	
 	public void setZeroFlag(boolean flag)
 	{
-		zeroFlag = flag;
+		lazyMask &= ~PSR_ZERO;
+		status = flag ? (status | PSR_ZERO) : (status & ~PSR_ZERO);
 	}
 
 	public void setZeroFlag() {
-		zeroFlag = true;
+		lazyMask &= ~PSR_ZERO;
+		status |= PSR_ZERO;
 	}
 	
 	public void clearZeroFlag() {
-		zeroFlag = false;
+		lazyMask &= ~PSR_ZERO;
+		status &= ~PSR_ZERO;
 	}
 
 	public boolean getOverflowFlag() {
-		return overflowFlag;
+		return (getProcessorStatusFlags() & PSR_OVERFLOW) != 0;
 	}
 	
 	public void setOverflowFlag(boolean flag)
 	{
-		overflowFlag = flag;
+		lazyMask &= ~PSR_OVERFLOW;
+		status = flag ? (status | PSR_OVERFLOW) : (status & ~PSR_OVERFLOW);
 	}
 
 	public void setOverflowFlag() {
-		overflowFlag = true;
+		lazyMask &= ~PSR_OVERFLOW;
+		status |= PSR_OVERFLOW;
 	}
 	
 	public void clearOverflowFlag() {
-		overflowFlag = false;
+		lazyMask &= ~PSR_OVERFLOW;
+		status &= ~PSR_OVERFLOW;
 	}
 
 	public boolean getIrqDisableFlag() {
-		return irqDisableFlag;
+		return (status & PSR_IRQ_DISABLE) != 0;
 	}
 	
 	public void setIrqDisableFlag(boolean flag)
 	{
-		irqDisableFlag = flag;
+		status = flag ? (status | PSR_IRQ_DISABLE) : (status & ~PSR_IRQ_DISABLE);
 	}
 
 	public void setIrqDisableFlag() {
-		irqDisableFlag = true;
+		status |= PSR_IRQ_DISABLE;
 	}
 	
 	public void clearIrqDisableFlag() {
-		irqDisableFlag = false;
+		status &= ~PSR_IRQ_DISABLE;
 	}
 
 	public boolean getDecimalModeFlag() {
-		return decimalModeFlag;
+		return (status & PSR_DECIMAL) != 0;
 	}
 	
 	public void setDecimalModeFlag(boolean flag)
 	{
-		decimalModeFlag = flag;
+		status = flag ? (status | PSR_DECIMAL) : (status & ~PSR_DECIMAL);
 	}
 
 	public void setDecimalModeFlag() {
-		decimalModeFlag = true;
+		status |= PSR_DECIMAL;
 	}
 	
 	public void clearDecimalModeFlag() {
-		decimalModeFlag = false;
+		status &= ~PSR_DECIMAL;
 	}
 
 	public boolean getBreakFlag() {
-		return breakFlag;
+		return (status & PSR_BREAK) != 0;
 	}
 	
 	public void setBreakFlag(boolean flag)
 	{
-		breakFlag = flag;
+		status = flag ? (status | PSR_BREAK) : (status & ~PSR_BREAK);
 	}
 
 	public void setBreakFlag() {
-		breakFlag = true;
+		status |= PSR_BREAK;
 	}
 	
 	public void clearBreakFlag() {
-		breakFlag = false;
+		status &= ~PSR_BREAK;
 	}
 	
 	
@@ -1507,8 +2163,27 @@ public class CPU {
 		return ram;
 	}
 	
+	/*
+	 * Attaches the RAM through a new Bus with no devices mapped, see setBus()
+	 */
 	public void setRam(RAM ram) {
-		this.ram = ram;
+		setBus(new Bus(ram));
+	}
+	
+	public Bus getBus() {
+		return bus;
+	}
+	
+	public void setBus(Bus bus) {
+		if(blockCache != null)
+		{
+			blockCache.detach();
+			blockCache = null;
+		}
+		currentBlock = null;
+		this.bus = bus;
+		this.ram = bus.getRam();
+		bus.addCpu(this);
 	}
 	
 	public Stack getStack() {
@@ -1543,11 +2218,169 @@ public class CPU {
 		this.stepCounter = stepCounter;
 	}
 	
+	/*
+	 * Number of clock cycles executed since the last reset
+	 */
+	public long getCycleCounter() {
+		return cycleCounter;
+	}
+	
+	public void setCycleCounter(long cycleCounter) {
+		this.cycleCounter = cycleCounter;
+	}
+	
+	public int getExecutionEngine() {
+		return executionEngine;
+	}
+	
+	/*
+	 * Selects the engine used by step() to decode and execute instructions.
+	 * All engines produce identical results.
+	 */
+	public void setExecutionEngine(int executionEngine) {
+		if(executionEngine != ENGINE_SWITCH && dispatchTable == null)
+		{
+			dispatchTable = DispatchTable.getDefault();
+		}
+		if(executionEngine != ENGINE_BLOCK_CACHE && blockCache != null)
+		{
+			//Stop RAM from notifying a cache that is no longer used
+			blockCache.detach();
+			blockCache = null;
+		}
+		currentBlock = null;
+		
+		this.executionEngine = executionEngine;
+	}
+	
+	public boolean isBlockBinding()
+	{
+		return blockBinding;
+	}
+	
+	/*
+	 * Selects whether step(int) runs bound blocks whole with the block cache engine (the 
+	 * default), or steps through every instruction of a block. Both produce identical results.
+	 */
+	public void setBlockBinding(boolean blockBinding)
+	{
+		this.blockBinding = blockBinding;
+	}
+	
+	public boolean isBlockCompilation()
+	{
+		return blockCompilation;
+	}
+	
+	/*
+	 * Selects whether hot bound blocks are compiled into JVM classes (the default) or stay 
+	 * operation chains, see BlockCompiler. Both produce identical results. Drops the block cache.
+	 */
+	public void setBlockCompilation(boolean blockCompilation)
+	{
+		if(blockCache != null)
+		{
+			blockCache.detach();
+			blockCache = null;
+		}
+		currentBlock = null;
+		
+		this.blockCompilation = blockCompilation;
+	}
+	
+	/*
+	 * Number of blocks currently held compiled by the block cache engine
+	 */
+	public int getCompiledBlockCount()
+	{
+		return blockCache == null ? 0 : blockCache.getCompiledCount();
+	}
+	
+	public boolean isLazyFlags()
+	{
+		return lazyFlags;
+	}
+	
+	/*
+	 * Selects lazy flag evaluation. In lazy mode the ALU helpers record the last result and 
+	 * carry/overflow sources instead of updating N, Z, C and V, and the flags are only computed
+	 * when they are read (branches, PHP, the flag getters and the GUI). Both modes produce 
+	 * identical results.
+	 */
+	public void setLazyFlags(boolean lazyFlags)
+	{
+		getProcessorStatusFlags(); //Materialize any pending flags before switching mode
+		this.lazyFlags = lazyFlags;
+	}
+	
+	void setJournal(StepJournal journal)
+	{
+		this.journal = journal;
+	}
+	
+	void setTraceRecorder(TraceRecorder trace)
+	{
+		this.trace = trace;
+	}
+	
+	void setProfiler(Profiler profiler)
+	{
+		this.profiler = profiler;
+	}
+	
+	public int getStackBase()
+	{
+		return stackBase;
+	}
+	
+	/*
+	 * Pushes and pulls directly to and from RAM at stackBase + SP instead of through the Stack,
+	 * -1 to use the Stack. Set together with Stack.mapToRam(), see MOS6502.setStackInRam().
+	 */
+	public void setStackBase(int stackBase)
+	{
+		this.stackBase = stackBase;
+	}
+	
+	public boolean isAluTables()
+	{
+		return aluTables;
+	}
+	
+	/*
+	 * Selects the precomputed ADC/SBC tables (see AluTables) instead of computing the results
+	 * and flags of each ADC and SBC. The tables are generated on first use.
+	 */
+	public void setAluTables(boolean aluTables)
+	{
+		this.aluTables = aluTables;
+	}
+	
+	public int getAddressMode()
+	{
+		return addressMode;
+	}
+	
+	public int getAddressMask()
+	{
+		return addressMask;
+	}
+	
 	public boolean getCanStep()
 	{
 		return canStep;
 	}
 	
+	public boolean isVerbose()
+	{
+		return verbose;
+	}
+	
+	public void setVerbose(boolean verbose)
+	{
+		this.verbose = verbose;
+	}
+	
 	public void setGui(GUI2 gui)
 	{
 		this.gui = gui;
@@ -1555,7 +2388,8 @@ public class CPU {
 	
 	public void setGuiOutput(String msg)
 	{
-		gui.getAssemblerTextArea().setText(msg);
+		if(gui != null) //No GUI is attached when running headless
+			gui.getAssemblerTextArea().setText(msg);
 	}
 	
 	
@@ -1687,43 +2521,19 @@ public class CPU {
 	 */
 	public String determineInstructionSymbol(int ir)
 	{
-		String[] opcodes = insTable.getOpcodes();
-		String[] symbols = insTable.getSymbols();
-		
-		String opcodeHex = Utils.DecToHex(ir);
-		String symbol = "";
-		
-		if(opcodeHex.length() == 1)
-		{
-			opcodeHex = "0".concat(opcodeHex);
-		}
-		
-		if(opcodeHex.length() == 0)
-		{
-			opcodeHex = "00".concat(opcodeHex);
-		}
-		
 		if(ir == 239)
 		{
-			symbol = "*BEGIN*";
-			return symbol;
+			return "*BEGIN*";
 		}
 		
 		if(ir == 255)
 		{
-			symbol = "*END*";
-			return symbol;
+			return "*END*";
 		}
 		
-		for(int i = 0; i < opcodes.length; i++)
-		{
-			if(opcodeHex.equals(opcodes[i]))
-			{
-				symbol = symbols[i];
-			}
-		}
+		String symbol = InstructionTable.getMnemonic(ir);
 		
-		if(symbol == "")
+		if(symbol == null)
 		{
 			symbol = "N/A";
 		}
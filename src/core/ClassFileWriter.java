@@ -0,0 +1,413 @@
+package core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+ * Minimal writer for JVM class files, used by BlockCompiler to generate one class per
+ * compiled block.
+ *
+ * Only what BlockCompiler needs is supported: a constant pool of UTF8, Integer, Class,
+ * NameAndType and member reference entries, fields without attributes and methods with
+ * a Code attribute. Forward branches only, every branch target is given a StackMapTable
+ * same_frame entry, so the operand stack must be empty and the locals must be those the
+ * method was entered with wherever a branch lands.
+ */
+
+class ClassFileWriter {
+
+	/*
+	 * Access flags
+	 */
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_PRIVATE = 0x0002;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_SUPER = 0x0020;
+
+	/*
+	 * Opcodes used by BlockCompiler
+	 */
+	static final int ICONST_0 = 0x03;
+	static final int BIPUSH = 0x10;
+	static final int SIPUSH = 0x11;
+	static final int LDC_W = 0x13;
+	static final int ALOAD_0 = 0x2a;
+	static final int ALOAD_1 = 0x2b;
+	static final int ALOAD_2 = 0x2c;
+	static final int AALOAD = 0x32;
+	static final int DUP = 0x59;
+	static final int IADD = 0x60;
+	static final int LADD = 0x61;
+	static final int I2L = 0x85;
+	static final int IFNE = 0x9a;
+	static final int IRETURN = 0xac;
+	static final int RETURN = 0xb1;
+	static final int GETFIELD = 0xb4;
+	static final int PUTFIELD = 0xb5;
+	static final int INVOKEVIRTUAL = 0xb6;
+	static final int INVOKESPECIAL = 0xb7;
+	static final int INVOKEINTERFACE = 0xb9;
+
+	/*
+	 * Java 17 class file version
+	 */
+	private static final int MAJOR_VERSION = 61;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	/*
+	 * Growable big-endian byte buffer, as used by every part of the class file
+	 */
+	static class Buffer {
+
+		byte[] data = new byte[256];
+		int length;
+
+		void u1(int value)
+		{
+			if(length == data.length)
+				data = Arrays.copyOf(data, length * 2);
+			data[length++] = (byte) value;
+		}
+
+		void u2(int value)
+		{
+			u1(value >> 8);
+			u1(value);
+		}
+
+		void u4(int value)
+		{
+			u2(value >> 16);
+			u2(value);
+		}
+
+		void bytes(Buffer buffer)
+		{
+			for(int i = 0; i < buffer.length; i++)
+			{
+				u1(buffer.data[i]);
+			}
+		}
+
+		int length()
+		{
+			return length;
+		}
+	}
+
+	/*
+	 * Body of a single method, see addMethod()
+	 */
+	static final class Code extends Buffer {
+
+		private final int access;
+		private final int name;
+		private final int descriptor;
+		private final int maxStack;
+		private final int maxLocals;
+
+		/*
+		 * Offsets of the branch targets, in order, each given a same_frame
+		 */
+		private final ArrayList<Integer> frames = new ArrayList<Integer>();
+
+		private Code(int access, int name, int descriptor, int maxStack, int maxLocals)
+		{
+			this.access = access;
+			this.name = name;
+			this.descriptor = descriptor;
+			this.maxStack = maxStack;
+			this.maxLocals = maxLocals;
+		}
+
+		void op(int opcode)
+		{
+			u1(opcode);
+		}
+
+		/*
+		 * Instructions taking a constant pool index, i.e. field access and invokevirtual/invokespecial
+		 */
+		void op(int opcode, int index)
+		{
+			u1(opcode);
+			u2(index);
+		}
+
+		void invokeInterface(int index, int argumentSlots)
+		{
+			u1(INVOKEINTERFACE);
+			u2(index);
+			u1(argumentSlots + 1); //Including the receiver
+			u1(0);
+		}
+
+		/*
+		 * Pushes an int constant using the shortest instruction for it
+		 */
+		void pushInt(ClassFileWriter writer, int value)
+		{
+			if(value >= -1 && value <= 5)
+			{
+				u1(ICONST_0 + value);
+			}
+			else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+			{
+				u1(BIPUSH);
+				u1(value);
+			}
+			else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+			{
+				u1(SIPUSH);
+				u2(value);
+			}
+			else
+			{
+				op(LDC_W, writer.integer(value));
+			}
+		}
+
+		/*
+		 * Writes a forward branch, returns its offset to be passed to target()
+		 */
+		int branch(int opcode)
+		{
+			int offset = length();
+			u1(opcode);
+			u2(0);
+			return offset;
+		}
+
+		/*
+		 * Points the branch written at offset to the next instruction
+		 */
+		void target(int offset)
+		{
+			int jump = length() - offset;
+			data[offset + 1] = (byte) (jump >> 8);
+			data[offset + 2] = (byte) jump;
+
+			if(frames.isEmpty() || frames.get(frames.size() - 1) != length())
+				frames.add(length());
+		}
+	}
+
+	private final Buffer pool = new Buffer();
+	private int poolCount = 1;
+	private final HashMap<String, Integer> poolIndexes = new HashMap<String, Integer>();
+
+	private final int thisClass;
+	private final int superClass;
+	private final int[] interfaces;
+
+	private final Buffer fields = new Buffer();
+	private int fieldCount;
+
+	private final ArrayList<Code> methods = new ArrayList<Code>();
+
+	ClassFileWriter(String name, String superName, String... interfaceNames)
+	{
+		thisClass = classRef(name);
+		superClass = classRef(superName);
+		interfaces = new int[interfaceNames.length];
+		for(int i = 0; i < interfaceNames.length; i++)
+		{
+			interfaces[i] = classRef(interfaceNames[i]);
+		}
+	}
+
+	int utf8(String value)
+	{
+		Integer index = poolIndexes.get("U" + value);
+		if(index != null)
+			return index;
+
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8); //Names and descriptors are plain ASCII
+		pool.u1(CONSTANT_UTF8);
+		pool.u2(bytes.length);
+		for(byte b : bytes)
+		{
+			pool.u1(b);
+		}
+		return add("U" + value);
+	}
+
+	int integer(int value)
+	{
+		Integer index = poolIndexes.get("I" + value);
+		if(index != null)
+			return index;
+
+		pool.u1(CONSTANT_INTEGER);
+		pool.u4(value);
+		return add("I" + value);
+	}
+
+	int classRef(String name)
+	{
+		Integer index = poolIndexes.get("C" + name);
+		if(index != null)
+			return index;
+
+		int nameIndex = utf8(name);
+		pool.u1(CONSTANT_CLASS);
+		pool.u2(nameIndex);
+		return add("C" + name);
+	}
+
+	int fieldRef(String owner, String name, String descriptor)
+	{
+		return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+	}
+
+	int methodRef(String owner, String name, String descriptor)
+	{
+		return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+	}
+
+	int interfaceMethodRef(String owner, String name, String descriptor)
+	{
+		return memberRef(CONSTANT_INTERFACE_METHODREF, owner, name, descriptor);
+	}
+
+	private int memberRef(int tag, String owner, String name, String descriptor)
+	{
+		String key = "M" + tag + owner + "." + name + descriptor;
+		Integer index = poolIndexes.get(key);
+		if(index != null)
+			return index;
+
+		int ownerIndex = classRef(owner);
+		int nameAndType = nameAndType(name, descriptor);
+		pool.u1(tag);
+		pool.u2(ownerIndex);
+		pool.u2(nameAndType);
+		return add(key);
+	}
+
+	private int nameAndType(String name, String descriptor)
+	{
+		String key = "N" + name + ":" + descriptor;
+		Integer index = poolIndexes.get(key);
+		if(index != null)
+			return index;
+
+		int nameIndex = utf8(name);
+		int descriptorIndex = utf8(descriptor);
+		pool.u1(CONSTANT_NAME_AND_TYPE);
+		pool.u2(nameIndex);
+		pool.u2(descriptorIndex);
+		return add(key);
+	}
+
+	private int add(String key)
+	{
+		int index = poolCount++;
+		poolIndexes.put(key, index);
+		return index;
+	}
+
+	void addField(int access, String name, String descriptor)
+	{
+		fields.u2(access);
+		fields.u2(utf8(name));
+		fields.u2(utf8(descriptor));
+		fields.u2(0); //No attributes
+		fieldCount++;
+	}
+
+	/*
+	 * Adds a method, the returned Code is filled in by the caller before toByteArray() is called
+	 */
+	Code addMethod(int access, String name, String descriptor, int maxStack, int maxLocals)
+	{
+		Code code = new Code(access, utf8(name), utf8(descriptor), maxStack, maxLocals);
+		methods.add(code);
+		return code;
+	}
+
+	byte[] toByteArray()
+	{
+		int codeName = utf8("Code");
+		int stackMapName = utf8("StackMapTable");
+
+		Buffer methodsBuffer = new Buffer();
+		for(Code code : methods)
+		{
+			Buffer stackMap = new Buffer();
+			stackMap.u2(code.frames.size());
+			int previous = -1;
+			for(int offset : code.frames)
+			{
+				int delta = offset - previous - 1;
+				if(delta < 64)
+				{
+					stackMap.u1(delta); //same_frame
+				}
+				else
+				{
+					stackMap.u1(251); //same_frame_extended
+					stackMap.u2(delta);
+				}
+				previous = offset;
+			}
+
+			Buffer attribute = new Buffer();
+			attribute.u2(code.maxStack);
+			attribute.u2(code.maxLocals);
+			attribute.u4(code.length());
+			attribute.bytes(code);
+			attribute.u2(0); //No exception table
+			if(code.frames.isEmpty())
+			{
+				attribute.u2(0);
+			}
+			else
+			{
+				attribute.u2(1);
+				attribute.u2(stackMapName);
+				attribute.u4(stackMap.length());
+				attribute.bytes(stackMap);
+			}
+
+			methodsBuffer.u2(code.access);
+			methodsBuffer.u2(code.name);
+			methodsBuffer.u2(code.descriptor);
+			methodsBuffer.u2(1); //Code attribute
+			methodsBuffer.u2(codeName);
+			methodsBuffer.u4(attribute.length());
+			methodsBuffer.bytes(attribute);
+		}
+
+		Buffer out = new Buffer();
+		out.u4(0xcafebabe);
+		out.u2(0); //Minor version
+		out.u2(MAJOR_VERSION);
+		out.u2(poolCount);
+		out.bytes(pool);
+		out.u2(ACC_FINAL | ACC_SUPER);
+		out.u2(thisClass);
+		out.u2(superClass);
+		out.u2(interfaces.length);
+		for(int index : interfaces)
+		{
+			out.u2(index);
+		}
+		out.u2(fieldCount);
+		out.bytes(fields);
+		out.u2(methods.size());
+		out.bytes(methodsBuffer);
+		out.u2(0); //No class attributes
+
+		return Arrays.copyOf(out.data, out.length);
+	}
+}
@@ -0,0 +1,22 @@
+package core;
+
+/*
+ * A device attached to the Bus at a range of addresses, see Bus.registerDevice().
+ * 
+ * The Bus passes each device the offset of the accessed address from the start of 
+ * the device's range, so a device does not need to know where it is mapped. 
+ * Reads may have side effects (e.g. a random source returns a new value on every read).
+ */
+
+public interface Device {
+
+	/*
+	 * Returns the 8-bit value held at the offset
+	 */
+	int read(int offset);
+	
+	/*
+	 * Writes the 8-bit value to the offset
+	 */
+	void write(int offset, int data);
+}
@@ -0,0 +1,77 @@
+package core;
+
+import java.util.Arrays;
+
+/*
+ * One bit per address recording which addresses have been written since the bitmap was
+ * last cleared. Used by RAM and Stack so that views of memory (e.g. the GUI memory map)
+ * only need to redraw the addresses that have changed since the last frame.
+ * 
+ * Marking an address is a single OR into a long, so tracking adds next to no cost to 
+ * memory writes.
+ */
+
+class DirtyBitmap {
+
+	private final long[] words;
+	
+	private final int size;
+	
+	DirtyBitmap(int size)
+	{
+		this.size = size;
+		words = new long[(size + 63) >>> 6];
+	}
+	
+	void mark(int index)
+	{
+		words[index >>> 6] |= 1L << index;
+	}
+	
+	/*
+	 * Marks every address, used when the whole memory changes at once (e.g. fill())
+	 */
+	void markAll()
+	{
+		Arrays.fill(words, -1L);
+		if((size & 63) != 0)
+		{
+			words[words.length - 1] = (1L << size) - 1;
+		}
+	}
+	
+	void unmark(int index)
+	{
+		words[index >>> 6] &= ~(1L << index);
+	}
+	
+	boolean isMarked(int index)
+	{
+		return (words[index >>> 6] & (1L << index)) != 0;
+	}
+	
+	/*
+	 * Returns the first marked index at or after from, -1 if there are none
+	 */
+	int nextMarked(int from)
+	{
+		if(from < 0 || from >= size)
+			return -1;
+		
+		int word = from >>> 6;
+		long bits = words[word] & (-1L << from);
+		while(true)
+		{
+			if(bits != 0)
+				return (word << 6) + Long.numberOfTrailingZeros(bits);
+			if(++word == words.length)
+				return -1;
+			bits = words[word];
+		}
+	}
+	
+	void clear()
+	{
+		Arrays.fill(words, 0L);
+	}
+}
@@ -0,0 +1,638 @@
+package core;
+
+import compiler.AddressingMode;
+import compiler.InstructionTable;
+
+/*
+ * Precomputed 256-entry opcode dispatch table used by the CPU's table-driven
+ * execution engines (CPU.ENGINE_DISPATCH_TABLE and CPU.ENGINE_BLOCK_CACHE).
+ *
+ * Each opcode is given an AddressResolver, which calculates the effective address
+ * of the instruction from its operand, and an Operation, which carries out the
+ * instruction itself. Both arrays are built once from the InstructionTable, so
+ * executing an instruction becomes two array reads and two calls instead of the
+ * opMode/addressMode decode and the opcode switch inside CPU.step().
+ *
+ * The zero-page opcodes are not part of the InstructionTable since the assembler
+ * never outputs them, they are still executed by the CPU however and are therefore
+ * added to the table from the ZERO_PAGE_OPCODES list below.
+ *
+ * Opcodes that are not present in either list are treated as a NOP, this matches
+ * the behaviour of the switch engine where unknown opcodes fall through the switch.
+ *
+ * Every operation must produce exactly the same architectural results (registers,
+ * flags, memory and stack contents) as its case within CPU.step().
+ *
+ * The table also holds the length and timing of every opcode, which are used by the CPU
+ * for both execution engines. The base cycle count is taken from the InstructionTable,
+ * "*" marks an extra cycle when the indexed address crosses a page boundary and "**" marks
+ * a branch, which takes an extra cycle when taken and another when the target is on a
+ * different page.
+ */
+
+public class DispatchTable {
+
+	/*
+	 * Calculates the effective address of an instruction from its operand
+	 */
+	interface AddressResolver
+	{
+		int resolve(CPU cpu, int operand);
+	}
+
+	/*
+	 * Executes an instruction. The raw operand is passed alongside the effective
+	 * address for instructions using the immediate, relative or implied addressing modes.
+	 */
+	interface Operation
+	{
+		void execute(CPU cpu, int operand, int effectiveAddress);
+	}
+
+	/*
+	 * Cycle penalties, see getPenalty()
+	 */
+	public static final int PENALTY_NONE = 0;
+	public static final int PENALTY_PAGE_X = 1;
+	public static final int PENALTY_PAGE_Y = 2;
+	public static final int PENALTY_PAGE_INDIRECT_Y = 3;
+	public static final int PENALTY_BRANCH = 4;
+
+	/*
+	 * Zero-page opcodes executed by the CPU that are not held within the InstructionTable.
+	 * Each entry holds the opcode, the instruction symbol and the addressing mode.
+	 */
+	private static final Object[][] ZERO_PAGE_OPCODES = {
+			{0xA5, "LDA", AddressingMode.ZERO_PAGE}, {0xB5, "LDA", AddressingMode.ZERO_PAGE_X},
+			{0xA6, "LDX", AddressingMode.ZERO_PAGE}, {0xB6, "LDX", AddressingMode.ZERO_PAGE_Y},
+			{0xA4, "LDY", AddressingMode.ZERO_PAGE}, {0xB4, "LDY", AddressingMode.ZERO_PAGE_X},
+			{0x85, "STA", AddressingMode.ZERO_PAGE}, {0x95, "STA", AddressingMode.ZERO_PAGE_X},
+			{0x86, "STX", AddressingMode.ZERO_PAGE}, {0x96, "STX", AddressingMode.ZERO_PAGE_Y},
+			{0x84, "STY", AddressingMode.ZERO_PAGE}, {0x94, "STY", AddressingMode.ZERO_PAGE_X},
+			{0x25, "AND", AddressingMode.ZERO_PAGE}, {0x35, "AND", AddressingMode.ZERO_PAGE_X},
+			{0x45, "EOR", AddressingMode.ZERO_PAGE}, {0x55, "EOR", AddressingMode.ZERO_PAGE_X},
+			{0x05, "ORA", AddressingMode.ZERO_PAGE}, {0x15, "ORA", AddressingMode.ZERO_PAGE_X},
+			{0x24, "BIT", AddressingMode.ZERO_PAGE},
+			{0x65, "ADC", AddressingMode.ZERO_PAGE}, {0x75, "ADC", AddressingMode.ZERO_PAGE_X},
+			{0xE5, "SBC", AddressingMode.ZERO_PAGE}, {0xF5, "SBC", AddressingMode.ZERO_PAGE_X},
+			{0xC5, "CMP", AddressingMode.ZERO_PAGE}, {0xD5, "CMP", AddressingMode.ZERO_PAGE_X},
+			{0xE4, "CPX", AddressingMode.ZERO_PAGE},
+			{0xC4, "CPY", AddressingMode.ZERO_PAGE},
+			{0xE6, "INC", AddressingMode.ZERO_PAGE}, {0xF6, "INC", AddressingMode.ZERO_PAGE_X},
+			{0xC6, "DEC", AddressingMode.ZERO_PAGE}, {0xD6, "DEC", AddressingMode.ZERO_PAGE_X},
+			{0x06, "ASL", AddressingMode.ZERO_PAGE}, {0x16, "ASL", AddressingMode.ZERO_PAGE_X},
+			{0x46, "LSR", AddressingMode.ZERO_PAGE}, {0x56, "LSR", AddressingMode.ZERO_PAGE_X},
+			{0x26, "ROL", AddressingMode.ZERO_PAGE}, {0x36, "ROL", AddressingMode.ZERO_PAGE_X},
+			{0x66, "ROR", AddressingMode.ZERO_PAGE}, {0x76, "ROR", AddressingMode.ZERO_PAGE_X}
+	};
+
+	/*
+	 * Single shared table, the table holds no state and can be used by any number of CPUs
+	 */
+	private static DispatchTable defaultTable;
+
+	private final AddressResolver[] resolvers = new AddressResolver[256];
+	private final Operation[] operations = new Operation[256];
+	
+	/*
+	 * Instruction length in bytes for each opcode, used by the full (16-bit) CPU mode to fetch
+	 * 1, 2 or 3 byte instructions. Opcodes outside of the instruction set are a single byte,
+	 * except for the BEGIN (0xEFEF) and END (0xFFFF) keywords which are always 2 bytes.
+	 */
+	private final int[] lengths = new int[256];
+
+	/*
+	 * Base cycle count and cycle penalty for each opcode. Opcodes outside of the instruction
+	 * set take 2 cycles like a NOP, the BEGIN and END keywords take none.
+	 */
+	private final int[] cycles = new int[256];
+	private final int[] penalties = new int[256];
+
+	/*
+	 * Constructor
+	 */
+	public DispatchTable()
+	{
+		for(int i = 0; i < 256; i++)
+		{
+			resolvers[i] = NO_ADDRESS;
+			operations[i] = NOP;
+			lengths[i] = 1;
+			cycles[i] = 2;
+			penalties[i] = PENALTY_NONE;
+		}
+		
+		lengths[0xEF] = 2;
+		lengths[0xFF] = 2;
+		cycles[0xEF] = 0;
+		cycles[0xFF] = 0;
+
+		for(int opcode = 0; opcode < 256; opcode++)
+		{
+			if(InstructionTable.isLegal(opcode))
+			{
+				register(opcode, InstructionTable.getMnemonic(opcode), InstructionTable.getAddressingMode(opcode), InstructionTable.getLength(opcode), 
+						InstructionTable.getBaseCycles(opcode), InstructionTable.hasPageCrossPenalty(opcode), InstructionTable.hasBranchPenalty(opcode));
+			}
+		}
+
+		for(Object[] entry : ZERO_PAGE_OPCODES)
+		{
+			String symbol = (String) entry[1];
+			AddressingMode mode = (AddressingMode) entry[2];
+			register((Integer) entry[0], symbol, mode, 2, zeroPageCycles(symbol, mode), false, false);
+		}
+	}
+
+	/*
+	 * Returns the shared dispatch table, building it on first use.
+	 */
+	public static synchronized DispatchTable getDefault()
+	{
+		if(defaultTable == null)
+		{
+			defaultTable = new DispatchTable();
+		}
+
+		return defaultTable;
+	}
+
+	/*
+	 * Resolves the effective address of the instruction and executes it.
+	 */
+	public void execute(CPU cpu, int ir, int operand)
+	{
+		int effectiveAddress = resolvers[ir].resolve(cpu, operand);
+		operations[ir].execute(cpu, operand, effectiveAddress);
+	}
+
+	public AddressResolver getResolver(int opcode)
+	{
+		return resolvers[opcode];
+	}
+
+	public Operation getOperation(int opcode)
+	{
+		return operations[opcode];
+	}
+
+	public int getInstructionLength(int opcode)
+	{
+		return lengths[opcode];
+	}
+
+	public int getCycles(int opcode)
+	{
+		return cycles[opcode];
+	}
+
+	/*
+	 * Returns the cycle penalty that applies to the opcode, see PENALTY_ constants
+	 */
+	public int getPenalty(int opcode)
+	{
+		return penalties[opcode];
+	}
+
+	/*
+	 * Shared lengths array, indexed by opcode. Must not be modified.
+	 */
+	int[] getInstructionLengths()
+	{
+		return lengths;
+	}
+
+	/*
+	 * Shared cycles and penalties arrays, indexed by opcode. Must not be modified.
+	 */
+	int[] getCycleCounts()
+	{
+		return cycles;
+	}
+
+	int[] getPenalties()
+	{
+		return penalties;
+	}
+
+	private void register(int opcode, String symbol, AddressingMode mode, int length, int cycleCount, boolean pagePenalty, boolean branchPenalty)
+	{
+		resolvers[opcode] = createResolver(mode);
+		operations[opcode] = createOperation(symbol, mode);
+		lengths[opcode] = length;
+		cycles[opcode] = cycleCount;
+		
+		if(branchPenalty)
+			penalties[opcode] = PENALTY_BRANCH;
+		else if(pagePenalty)
+		{
+			if(mode == AddressingMode.INDIRECT_INDEXED)
+				penalties[opcode] = PENALTY_PAGE_INDIRECT_Y;
+			else if(mode.isIndexedByY())
+				penalties[opcode] = PENALTY_PAGE_Y;
+			else
+				penalties[opcode] = PENALTY_PAGE_X;
+		}
+	}
+
+	/*
+	 * Cycle counts of the zero-page opcodes, read-modify-write instructions take 
+	 * 5 cycles (6 indexed), all others take 3 cycles (4 indexed).
+	 */
+	private static int zeroPageCycles(String symbol, AddressingMode mode)
+	{
+		boolean indexed = mode != AddressingMode.ZERO_PAGE;
+		boolean readModifyWrite = symbol.equals("ASL") || symbol.equals("LSR") || symbol.equals("ROL") 
+				|| symbol.equals("ROR") || symbol.equals("INC") || symbol.equals("DEC");
+		
+		if(readModifyWrite)
+			return indexed ? 6 : 5;
+		
+		return indexed ? 4 : 3;
+	}
+
+
+
+	/*
+	 * Address resolvers
+	 */
+
+	private static final AddressResolver NO_ADDRESS = new AddressResolver() {
+		public int resolve(CPU cpu, int operand) { return 0; }
+	};
+
+	private static final AddressResolver ABSOLUTE = new AddressResolver() {
+		public int resolve(CPU cpu, int operand) { return operand; }
+	};
+
+	private static final AddressResolver ABSOLUTE_X = new AddressResolver() {
+		public int resolve(CPU cpu, int operand) { return cpu.xAddress(operand); }
+	};
+
+	private static final AddressResolver ABSOLUTE_Y = new AddressResolver() {
+		public int resolve(CPU cpu, int operand) { return cpu.yAddress(operand); }
+	};
+
+	private static final AddressResolver ZERO_PAGE_X = new AddressResolver() {
+		public int resolve(CPU cpu, int operand) { return cpu.zeroPageXAddress(operand); }
+	};
+
+	private static final AddressResolver ZERO_PAGE_Y = new AddressResolver() {
+		public int resolve(CPU cpu, int operand) { return cpu.zeroPageYAddress(operand); }
+	};
+
+	private static final AddressResolver INDEXED_INDIRECT = new AddressResolver() {
+		public int resolve(CPU cpu, int operand) { return cpu.indexedIndirectAddress(operand); }
+	};
+
+	private static final AddressResolver INDIRECT_INDEXED = new AddressResolver() {
+		public int resolve(CPU cpu, int operand) { return cpu.indirectIndexedAddress(operand); }
+	};
+
+	/*
+	 * Zero-page operands are a single byte so zero-page addressing resolves like absolute
+	 * addressing, the indexed zero-page modes wrap within the zero page.
+	 * The indirect vector used by JMP is read by the JMP operation itself.
+	 */
+	private static AddressResolver createResolver(AddressingMode mode)
+	{
+		switch(mode)
+		{
+			case ABSOLUTE:
+			case ZERO_PAGE:
+			case INDIRECT:
+				return ABSOLUTE;
+			case ABSOLUTE_X:
+				return ABSOLUTE_X;
+			case ABSOLUTE_Y:
+				return ABSOLUTE_Y;
+			case ZERO_PAGE_X:
+				return ZERO_PAGE_X;
+			case ZERO_PAGE_Y:
+				return ZERO_PAGE_Y;
+			case INDEXED_INDIRECT:
+				return INDEXED_INDIRECT;
+			case INDIRECT_INDEXED:
+				return INDIRECT_INDEXED;
+			default:
+				break;
+		}
+
+		return NO_ADDRESS; //immediate, relative, implied and accumulator
+	}
+
+
+
+	/*
+	 * Operations
+	 */
+
+	private static final Operation NOP = new Operation() {
+		public void execute(CPU cpu, int operand, int ea) { }
+	};
+
+	private static Operation createOperation(String symbol, AddressingMode mode)
+	{
+		final boolean immediate = mode == AddressingMode.IMMEDIATE;
+		final boolean accumulator = mode == AddressingMode.ACCUMULATOR;
+
+		switch(symbol)
+		{
+			//Load/Store Operations
+			case "LDA":
+				if(immediate) return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.setA(operand); cpu.setArithmeticFlags(operand); }
+				};
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { int val = cpu.read(ea); cpu.setA(val); cpu.setArithmeticFlags(val); }
+				};
+			case "LDX":
+				if(immediate) return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.setX(operand); cpu.setArithmeticFlags(operand); }
+				};
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { int val = cpu.read(ea); cpu.setX(val); cpu.setArithmeticFlags(val); }
+				};
+			case "LDY":
+				if(immediate) return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.setY(operand); cpu.setArithmeticFlags(operand); }
+				};
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { int val = cpu.read(ea); cpu.setY(val); cpu.setArithmeticFlags(val); }
+				};
+			case "STA":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.write(ea, cpu.getA()); }
+				};
+			case "STX":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.write(ea, cpu.getX()); }
+				};
+			case "STY":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.write(ea, cpu.getY()); }
+				};
+
+			//Register Transfers
+			case "TAX":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.setX(cpu.getA()); cpu.setArithmeticFlags(cpu.getX()); }
+				};
+			case "TAY":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.setY(cpu.getA()); cpu.setArithmeticFlags(cpu.getY()); }
+				};
+			case "TXA":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.setA(cpu.getX()); cpu.setArithmeticFlags(cpu.getA()); }
+				};
+			case "TYA":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.setA(cpu.getY()); cpu.setArithmeticFlags(cpu.getA()); }
+				};
+
+			//Stack Operations
+			case "TSX":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.setX(cpu.getSp()); cpu.setArithmeticFlags(cpu.getX()); }
+				};
+			case "TXS":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.transferXToSp(); }
+				};
+			case "PHA":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.stackPush(cpu.getA()); }
+				};
+			case "PHP":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.stackPush(cpu.getProcessorStatusFlags() | 0x10); }
+				};
+			case "PLA":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { int val = cpu.stackPop(); cpu.setA(val); cpu.setArithmeticFlags(val); }
+				};
+			case "PLP":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.setProcessorStatusFlags(cpu.stackPop()); }
+				};
+
+			//Logical Operations
+			case "AND":
+				if(immediate) return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { int val = cpu.getA() & operand; cpu.setA(val); cpu.setArithmeticFlags(val); }
+				};
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { int val = cpu.getA() & cpu.read(ea); cpu.setA(val); cpu.setArithmeticFlags(val); }
+				};
+			case "EOR":
+				if(immediate) return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { int val = cpu.getA() ^ operand; cpu.setA(val); cpu.setArithmeticFlags(val); }
+				};
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { int val = cpu.getA() ^ cpu.read(ea); cpu.setA(val); cpu.setArithmeticFlags(val); }
+				};
+			case "ORA":
+				if(immediate) return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { int val = cpu.getA() | operand; cpu.setA(val); cpu.setArithmeticFlags(val); }
+				};
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { int val = cpu.getA() | cpu.read(ea); cpu.setA(val); cpu.setArithmeticFlags(val); }
+				};
+			case "BIT":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea)
+					{
+						int tmp = cpu.read(ea);
+						cpu.setZeroFlag((cpu.getA() & tmp) == 0);
+						cpu.setOverflowFlag((tmp & CPU.PSR_OVERFLOW) != 0);
+						cpu.setNegativeFlag((tmp & CPU.PSR_NEGATIVE) != 0);
+					}
+				};
+
+			//Arithmetic Operations
+			case "ADC":
+				if(immediate) return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.addWithCarry(operand); }
+				};
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.addWithCarry(cpu.read(ea)); }
+				};
+			case "SBC":
+				if(immediate) return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.subtractWithCarry(operand); }
+				};
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.subtractWithCarry(cpu.read(ea)); }
+				};
+			case "CMP":
+				if(immediate) return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.cmp(cpu.getA(), operand); }
+				};
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.cmp(cpu.getA(), cpu.read(ea)); }
+				};
+			case "CPX":
+				if(immediate) return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.cmp(cpu.getX(), operand); }
+				};
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.cmp(cpu.getX(), cpu.read(ea)); }
+				};
+			case "CPY":
+				if(immediate) return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.cmp(cpu.getY(), operand); }
+				};
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.cmp(cpu.getY(), cpu.read(ea)); }
+				};
+
+			//Increment & Decrement Operations
+			case "INC":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { int tmp = (cpu.read(ea) + 1) & 0xff; cpu.write(ea, tmp); cpu.setArithmeticFlags(tmp); }
+				};
+			case "INX":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.setX((cpu.getX() + 1) & 0xff); cpu.setArithmeticFlags(cpu.getX()); }
+				};
+			case "INY":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.setY((cpu.getY() + 1) & 0xff); cpu.setArithmeticFlags(cpu.getY()); }
+				};
+			case "DEC":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { int tmp = (cpu.read(ea) - 1) & 0xff; cpu.write(ea, tmp); cpu.setArithmeticFlags(tmp); }
+				};
+			case "DEX":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.setX((cpu.getX() - 1) & 0xff); cpu.setArithmeticFlags(cpu.getX()); }
+				};
+			case "DEY":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.setY((cpu.getY() - 1) & 0xff); cpu.setArithmeticFlags(cpu.getY()); }
+				};
+
+			//Shift Operations
+			case "ASL":
+				if(accumulator) return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { int val = cpu.asl(cpu.getA()); cpu.setA(val); cpu.setArithmeticFlags(val); }
+				};
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { int tmp = cpu.asl(cpu.read(ea)); cpu.write(ea, tmp); cpu.setArithmeticFlags(tmp); }
+				};
+			case "LSR":
+				if(accumulator) return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { int val = cpu.lsr(cpu.getA()); cpu.setA(val); cpu.setArithmeticFlags(val); }
+				};
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { int tmp = cpu.lsr(cpu.read(ea)); cpu.write(ea, tmp); cpu.setArithmeticFlags(tmp); }
+				};
+			case "ROL":
+				if(accumulator) return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { int val = cpu.rol(cpu.getA()); cpu.setA(val); cpu.setArithmeticFlags(val); }
+				};
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { int tmp = cpu.rol(cpu.read(ea)); cpu.write(ea, tmp); cpu.setArithmeticFlags(tmp); }
+				};
+			case "ROR":
+				if(accumulator) return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { int val = cpu.ror(cpu.getA()); cpu.setA(val); cpu.setArithmeticFlags(val); }
+				};
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { int tmp = cpu.ror(cpu.read(ea)); cpu.write(ea, tmp); cpu.setArithmeticFlags(tmp); }
+				};
+
+			//Jumps and Calls
+			case "JMP":
+				if(mode == AddressingMode.INDIRECT) return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.jump(cpu.indirectAddress(operand)); }
+				};
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.jump(operand); }
+				};
+			case "JSR":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.jumpToSubroutine(operand); }
+				};
+			case "RTS":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.returnFromSubroutine(); }
+				};
+
+			//Branch Instructions
+			case "BCC":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { if(!cpu.getCarryFlag()) cpu.jump(cpu.relativeAddress(operand)); }
+				};
+			case "BCS":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { if(cpu.getCarryFlag()) cpu.jump(cpu.relativeAddress(operand)); }
+				};
+			case "BEQ":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { if(cpu.getZeroFlag()) cpu.jump(cpu.relativeAddress(operand)); }
+				};
+			case "BMI":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { if(cpu.getNegativeFlag()) cpu.jump(cpu.relativeAddress(operand)); }
+				};
+			case "BNE":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { if(!cpu.getZeroFlag()) cpu.jump(cpu.relativeAddress(operand)); }
+				};
+			case "BPL":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { if(!cpu.getNegativeFlag()) cpu.jump(cpu.relativeAddress(operand)); }
+				};
+			case "BVC":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { if(!cpu.getOverflowFlag()) cpu.jump(cpu.relativeAddress(operand)); }
+				};
+			case "BVS":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { if(cpu.getOverflowFlag()) cpu.jump(cpu.relativeAddress(operand)); }
+				};
+
+			//Status Flag Changes
+			case "CLC":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.clearCarryFlag(); }
+				};
+			case "CLD":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.clearDecimalModeFlag(); }
+				};
+			case "CLI":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.clearIrqDisableFlag(); }
+				};
+			case "CLV":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.clearOverflowFlag(); }
+				};
+			case "SEC":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.setCarryFlag(); }
+				};
+			case "SED":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.setDecimalModeFlag(); }
+				};
+			case "SEI":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.setIrqDisableFlag(); }
+				};
+
+			//System Functions
+			case "RTI":
+				return new Operation() {
+					public void execute(CPU cpu, int operand, int ea) { cpu.returnFromInterrupt(); }
+				};
+			case "BRK": //TODO: Implement interrupt functionality, see CPU.step()
+			case "NOP":
+			default:
+				return NOP;
+		}
+	}
+}
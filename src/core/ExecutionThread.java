@@ -0,0 +1,347 @@
+package core;
+
+import java.awt.EventQueue;
+
+import exceptions.SimulationException;
+
+/*
+ * Runs the simulation's CPU on a dedicated worker thread so that the Swing event 
+ * dispatch thread is never blocked by a running program.
+ * 
+ * The CPU is stepped at full speed with console tracing disabled. At most refreshRate 
+ * times per second the worker publishes a frame: the Listener's frame() method is run on 
+ * the event dispatch thread while the worker waits, so the GUI always renders a consistent
+ * register/memory snapshot without the machine state having to be copied.
+ * 
+ * The run ends when the END keyword is reached, the step or cycle budget is used up, a 
+ * breakpoint or watchpoint is hit (see Breakpoints), stop() is called or the CPU raises a 
+ * SimulationException. A breakpoint at the address the run starts from is passed over, so 
+ * a run stopped at a breakpoint can be continued with a new run. The Listener's finished() method is
+ * then run on the event dispatch thread with the reason.
+ * 
+ * A run can be paused and resumed any number of times. An ExecutionThread is only 
+ * started once, a new instance is created for every run.
+ */
+
+public class ExecutionThread implements Runnable {
+
+	/*
+	 * Reasons passed to Listener.finished()
+	 */
+	public static final int FINISHED_END_REACHED = 0;
+	public static final int FINISHED_BUDGET_REACHED = 1;
+	public static final int FINISHED_STOPPED = 2;
+	public static final int FINISHED_ERROR = 3;
+	public static final int FINISHED_BREAKPOINT = 4;
+	
+	public static final long DEFAULT_STEP_BUDGET = 1000000;
+	
+	public static final int DEFAULT_REFRESH_RATE = 30;
+	
+	/*
+	 * Number of steps executed between checks of the frame timer
+	 */
+	private static final int FRAME_CHECK_INTERVAL = 1024;
+	
+	/*
+	 * Callbacks made on the event dispatch thread
+	 */
+	public interface Listener
+	{
+		void frame(ExecutionThread thread);
+		
+		void finished(ExecutionThread thread, int reason, String message);
+	}
+	
+	private final MOS6502 machine;
+	private final Listener listener;
+	
+	private final Object lock = new Object();
+	
+	private Thread thread;
+	
+	/*
+	 * Maximum number of steps executed by the run, 0 for no limit
+	 */
+	private long stepBudget = DEFAULT_STEP_BUDGET;
+	
+	/*
+	 * Maximum number of clock cycles executed by the run, 0 for no limit. See CPU.getCycleCounter()
+	 */
+	private long cycleBudget = 0;
+	
+	private int refreshRate = DEFAULT_REFRESH_RATE;
+	
+	private volatile boolean paused = false;
+	private volatile boolean stopRequested = false;
+	private volatile long stepsExecuted = 0;
+	
+	/*
+	 * Set once the event dispatch thread has rendered the most recently published frame
+	 */
+	private boolean frameDone;
+	
+	public ExecutionThread(MOS6502 machine, Listener listener)
+	{
+		this.machine = machine;
+		this.listener = listener;
+	}
+	
+	public void start()
+	{
+		thread = new Thread(this, "MOS6502 execution");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/*
+	 * Pauses the run, the current state is published as a frame once the worker has stopped stepping
+	 */
+	public void pause()
+	{
+		paused = true;
+	}
+	
+	public void resume()
+	{
+		synchronized(lock)
+		{
+			paused = false;
+			lock.notifyAll();
+		}
+	}
+	
+	/*
+	 * Stops the run and waits for the worker thread to exit, the machine can be 
+	 * safely modified once this method returns. May be called from the event dispatch thread.
+	 */
+	public void stop()
+	{
+		synchronized(lock)
+		{
+			stopRequested = true;
+			lock.notifyAll();
+		}
+		
+		if(thread != null && Thread.currentThread() != thread)
+		{
+			try
+			{
+				thread.join();
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	public void run()
+	{
+		CPU cpu = machine.getCpu();
+		Breakpoints breakpoints = machine.getBreakpoints();
+		boolean verbose = cpu.isVerbose();
+		machine.setVerbose(false);
+		
+		long startCycles = cpu.getCycleCounter();
+		long frameInterval = 1000000000L / refreshRate;
+		long nextFrame = System.nanoTime() + frameInterval;
+		
+		int reason = FINISHED_END_REACHED;
+		String message = "Terminating instruction END has been reached. Terminating runloop.";
+		
+		//Drops a watchpoint hit left over from stepping outside of the run
+		breakpoints.takeWatchpointHit();
+		
+		try
+		{
+			while(cpu.getCanStep())
+			{
+				if(stopRequested)
+				{
+					reason = FINISHED_STOPPED;
+					message = "Run stopped after " + stepsExecuted + " steps.";
+					break;
+				}
+				
+				if(stepBudget > 0 && stepsExecuted >= stepBudget)
+				{
+					reason = FINISHED_BUDGET_REACHED;
+					message = "Run loop reached limit of " + stepBudget + " steps and has stopped.";
+					break;
+				}
+				
+				if(cycleBudget > 0 && cpu.getCycleCounter() - startCycles >= cycleBudget)
+				{
+					reason = FINISHED_BUDGET_REACHED;
+					message = "Run loop reached limit of " + cycleBudget + " cycles and has stopped.";
+					break;
+				}
+				
+				if(paused)
+				{
+					publishFrame();
+					waitWhilePaused();
+					nextFrame = System.nanoTime() + frameInterval;
+					continue;
+				}
+				
+				if(breakpoints.isActive() && stepsExecuted > 0 && breakpoints.isBreakpointHit(cpu))
+				{
+					reason = FINISHED_BREAKPOINT;
+					message = breakpoints.getMessage() + ", run stopped after " + stepsExecuted + " steps.";
+					break;
+				}
+				
+				cpu.step();
+				stepsExecuted++;
+				
+				if(breakpoints.isActive() && breakpoints.takeWatchpointHit())
+				{
+					reason = FINISHED_BREAKPOINT;
+					message = breakpoints.getMessage() + ", run stopped after " + stepsExecuted + " steps.";
+					break;
+				}
+				
+				if(stepsExecuted % FRAME_CHECK_INTERVAL == 0 && System.nanoTime() >= nextFrame)
+				{
+					publishFrame();
+					nextFrame = System.nanoTime() + frameInterval;
+				}
+			}
+		}
+		catch(SimulationException ex)
+		{
+			reason = FINISHED_ERROR;
+			message = ex.getErrorMessage();
+		}
+		finally
+		{
+			machine.setVerbose(verbose);
+		}
+		
+		final int finishedReason = reason;
+		final String finishedMessage = message;
+		
+		EventQueue.invokeLater(new Runnable() {
+			public void run()
+			{
+				listener.finished(ExecutionThread.this, finishedReason, finishedMessage);
+			}
+		});
+	}
+	
+	/*
+	 * Runs the Listener's frame() method on the event dispatch thread and waits until 
+	 * it has completed, or until the run is stopped.
+	 */
+	private void publishFrame()
+	{
+		synchronized(lock)
+		{
+			frameDone = false;
+		}
+		
+		EventQueue.invokeLater(new Runnable() {
+			public void run()
+			{
+				try
+				{
+					listener.frame(ExecutionThread.this);
+				}
+				finally
+				{
+					synchronized(lock)
+					{
+						frameDone = true;
+						lock.notifyAll();
+					}
+				}
+			}
+		});
+		
+		synchronized(lock)
+		{
+			while(!frameDone && !stopRequested)
+			{
+				try
+				{
+					lock.wait();
+				}
+				catch(InterruptedException e)
+				{
+					stopRequested = true;
+				}
+			}
+		}
+	}
+	
+	private void waitWhilePaused()
+	{
+		synchronized(lock)
+		{
+			while(paused && !stopRequested)
+			{
+				try
+				{
+					lock.wait();
+				}
+				catch(InterruptedException e)
+				{
+					stopRequested = true;
+				}
+			}
+		}
+	}
+	
+	
+	
+	/*
+	 * Getters / Setters
+	 */
+	
+	public boolean isRunning()
+	{
+		return thread != null && thread.isAlive();
+	}
+	
+	public boolean isPaused()
+	{
+		return paused;
+	}
+	
+	public long getStepsExecuted()
+	{
+		return stepsExecuted;
+	}
+	
+	public long getStepBudget()
+	{
+		return stepBudget;
+	}
+	
+	public void setStepBudget(long stepBudget)
+	{
+		this.stepBudget = stepBudget;
+	}
+	
+	public long getCycleBudget()
+	{
+		return cycleBudget;
+	}
+	
+	public void setCycleBudget(long cycleBudget)
+	{
+		this.cycleBudget = cycleBudget;
+	}
+	
+	public int getRefreshRate()
+	{
+		return refreshRate;
+	}
+	
+	public void setRefreshRate(int refreshRate)
+	{
+		this.refreshRate = refreshRate;
+	}
+}
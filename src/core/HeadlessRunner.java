@@ -0,0 +1,610 @@
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import compiler.AssembledProgram;
+import compiler.Compiler;
+import exceptions.CompilerException;
+import exceptions.SimulationException;
+
+/*
+ * Command line entry point that assembles and executes programs without the GUI.
+ * 
+ * Each assembly file passed on the command line is compiled, loaded into a fresh 
+ * MOS6502 running in quiet mode and stepped until the END keyword is reached or the 
+ * step limit is exceeded. The final state of the machine is then printed as a single
+ * line of space separated key=value pairs, one line per program, e.g.
+ * 
+ * file=prog.asm status=END steps=12 cycles=30 a=03 x=00 y=00 sp=3F pc=1C p=20 mem=EFEF... stack=00...
+ * 
+ * With --full programs are assembled with the full encoding and run on the 64KB full 
+ * machine (CPU.MODE_FULL), the PC is then printed as 4 hex digits. Object files always 
+ * run on the machine matching the encoding they were assembled with.
+ * 
+ * Status is one of END, STEP_LIMIT, CYCLE_LIMIT, COMPILE_ERROR, SIMULATION_ERROR, TOO_LARGE or IO_ERROR.
+ * The error statuses are followed by an error=... pair holding the reason for the failure.
+ * 
+ * Files in the binary object format (see compiler.ObjectFormat) are loaded directly 
+ * without being assembled. With --emit-object each assembled program is also exported
+ * as an object file next to its source file, with the extension .obj
+ * 
+ * With --trace dir every step is recorded by a TraceRecorder into dir/<file>.trace,
+ * which can be printed as text with the TraceRecorder command line.
+ * 
+ * With --profile each result line is followed by the busiest opcodes and addresses of 
+ * the run, see Profiler.report().
+ * 
+ * Console output from the compiler is discarded so that stdout only contains results.
+ * Options apply to every file. A missing or invalid option value is reported with the 
+ * usage on stderr and exit status 2, before any file is run.
+ * 
+ * Usage: HeadlessRunner [--max-steps n] [--max-cycles n] [--engine switch|table|blocks] [--lazy-flags] [--alu-tables] [--stack-in-ram] [--no-memory] [--emit-object] [--trace dir] [--profile] [--full] file.asm [file.asm ...]
+ */
+
+public class HeadlessRunner {
+	
+	/*
+	 * Default number of steps a program may execute before it is stopped
+	 */
+	public static final long DEFAULT_STEP_LIMIT = 1000000;
+	
+	private long stepLimit = DEFAULT_STEP_LIMIT;
+	
+	/*
+	 * Most steps run by a single call to CPU.step(int) when there is no cycle limit, lets 
+	 * the block cache engine run whole bound blocks
+	 */
+	private static final int STEP_CHUNK = 4096;
+	
+	/*
+	 * Number of clock cycles a program may execute before it is stopped, 0 for no limit
+	 */
+	private long cycleLimit = 0;
+	
+	private int executionEngine = CPU.ENGINE_SWITCH;
+	
+	private boolean lazyFlags = false;
+	
+	private boolean aluTables = false;
+	
+	private boolean stackInRam = false;
+	
+	private boolean printMemory = true;
+	
+	private boolean emitObject = false;
+	
+	/*
+	 * Directory trace files are written to, null when tracing is disabled
+	 */
+	private String traceDirectory = null;
+	
+	private boolean profile = false;
+	
+	/*
+	 * Number of opcodes and addresses listed in each section of a profile
+	 */
+	private static final int PROFILE_LIMIT = 10;
+	
+	/*
+	 * Records held in memory by the trace recorder, copied to the trace file each time it fills
+	 */
+	private static final int TRACE_CAPACITY = 65536;
+	
+	private int encoding = AssembledProgram.ENCODING_LITE;
+	
+	private PrintStream out;
+	
+	/*
+	 * Stream used to discard the console output of the compiler and file readers
+	 */
+	private static final PrintStream NULL_OUTPUT = new PrintStream(new OutputStream() {
+		public void write(int b) { }
+		public void write(byte[] b, int off, int len) { }
+	});
+	
+	private static final String USAGE = "Usage: HeadlessRunner [--max-steps n] [--max-cycles n] [--engine switch|table|blocks] [--lazy-flags] [--alu-tables] [--stack-in-ram] [--no-memory] [--emit-object] [--trace dir] [--profile] [--full] file.asm [file.asm ...]";
+	
+	public HeadlessRunner(PrintStream out)
+	{
+		this.out = out;
+	}
+	
+	public static void main(String[] args)
+	{
+		HeadlessRunner runner = new HeadlessRunner(System.out);
+		List<String> files = new ArrayList<String>();
+		
+		for(int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+			
+			if(arg.equals("--max-steps"))
+			{
+				runner.setStepLimit(limitValue(args, i++));
+			}
+			else if(arg.equals("--max-cycles"))
+			{
+				runner.setCycleLimit(limitValue(args, i++));
+			}
+			else if(arg.equals("--engine"))
+			{
+				String engine = optionValue(args, i++);
+				if(engine.equals("blocks"))
+					runner.setExecutionEngine(CPU.ENGINE_BLOCK_CACHE);
+				else if(engine.equals("table"))
+					runner.setExecutionEngine(CPU.ENGINE_DISPATCH_TABLE);
+				else if(engine.equals("switch"))
+					runner.setExecutionEngine(CPU.ENGINE_SWITCH);
+				else
+					usageError("Unknown engine: " + engine);
+			}
+			else if(arg.equals("--lazy-flags"))
+			{
+				runner.setLazyFlags(true);
+			}
+			else if(arg.equals("--alu-tables"))
+			{
+				runner.setAluTables(true);
+			}
+			else if(arg.equals("--stack-in-ram"))
+			{
+				runner.setStackInRam(true);
+			}
+			else if(arg.equals("--no-memory"))
+			{
+				runner.setPrintMemory(false);
+			}
+			else if(arg.equals("--emit-object"))
+			{
+				runner.setEmitObject(true);
+			}
+			else if(arg.equals("--trace"))
+			{
+				runner.setTraceDirectory(optionValue(args, i++));
+			}
+			else if(arg.equals("--profile"))
+			{
+				runner.setProfile(true);
+			}
+			else if(arg.equals("--full"))
+			{
+				runner.setEncoding(AssembledProgram.ENCODING_FULL);
+			}
+			else
+			{
+				files.add(arg);
+			}
+		}
+		
+		if(files.isEmpty())
+		{
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		
+		//Every option is read before the first file is run, so a bad option runs nothing
+		boolean success = true;
+		for(String file : files)
+		{
+			success &= runner.runFile(file);
+		}
+		
+		System.exit(success ? 0 : 1);
+	}
+	
+	/*
+	 * Returns the value following the option at args[i], a missing value is a usage error
+	 */
+	private static String optionValue(String[] args, int i)
+	{
+		if(i + 1 >= args.length)
+			usageError(args[i] + " requires a value");
+		
+		return args[i + 1];
+	}
+	
+	/*
+	 * Returns the step or cycle limit following the option at args[i], which must be a 
+	 * non-negative number
+	 */
+	private static long limitValue(String[] args, int i)
+	{
+		String value = optionValue(args, i);
+		try
+		{
+			long limit = Long.parseLong(value);
+			if(limit >= 0)
+				return limit;
+		}
+		catch(NumberFormatException ex)
+		{
+		}
+		
+		usageError(args[i] + " requires a non-negative number: " + value);
+		return 0;
+	}
+	
+	/*
+	 * Reports a bad command line and exits with status 2
+	 */
+	private static void usageError(String message)
+	{
+		System.err.println("HeadlessRunner: " + message);
+		System.err.println(USAGE);
+		System.exit(2);
+	}
+	
+	/*
+	 * Assembles and runs a single assembly or object file, printing the result line.
+	 * Returns false if the program could not be assembled or executed.
+	 */
+	public boolean runFile(String filepath)
+	{
+		if(ReadBinary.isObjectFile(filepath))
+		{
+			return runObjectFile(filepath);
+		}
+		
+		List<String> lines;
+		
+		try
+		{
+			lines = Files.readAllLines(Paths.get(filepath), StandardCharsets.UTF_8);
+		}
+		catch(IOException ex)
+		{
+			printError(filepath, "IO_ERROR", "Could not read file: " + ex.getMessage());
+			return false;
+		}
+		
+		String objectFilepath = null;
+		if(emitObject)
+		{
+			int extension = filepath.lastIndexOf('.');
+			objectFilepath = (extension > filepath.lastIndexOf(File.separatorChar) ? filepath.substring(0, extension) : filepath) + ".obj";
+		}
+		
+		return runAssembly(filepath, lines.toArray(new String[lines.size()]), objectFilepath);
+	}
+	
+	/*
+	 * Loads and runs a program held in the binary object format
+	 */
+	public boolean runObjectFile(String filepath)
+	{
+		PrintStream console = System.out;
+		AssembledProgram program;
+		
+		try
+		{
+			System.setOut(NULL_OUTPUT);
+			program = new ReadBinary(filepath).getAssembledProgram();
+		}
+		catch(SimulationException ex)
+		{
+			printError(filepath, "IO_ERROR", ex.getErrorMessage());
+			return false;
+		}
+		finally
+		{
+			System.setOut(console);
+		}
+		
+		return runProgram(filepath, program);
+	}
+	
+	public boolean runAssembly(String name, String[] assemblyText)
+	{
+		return runAssembly(name, assemblyText, null);
+	}
+	
+	/*
+	 * Assembles and runs the passed assembly text. The name is used to identify
+	 * the program within the result line. The program is exported as an object 
+	 * file if objectFilepath is not null.
+	 */
+	public boolean runAssembly(String name, String[] assemblyText, String objectFilepath)
+	{
+		Compiler compiler;
+		PrintStream console = System.out;
+		
+		try
+		{
+			System.setOut(NULL_OUTPUT);
+			compiler = new Compiler(assemblyText, false, encoding);
+			
+			if(objectFilepath != null)
+				compiler.writeObjectToFile(objectFilepath);
+		}
+		catch(CompilerException ex)
+		{
+			printError(name, "COMPILE_ERROR", ex.getErrorMessage());
+			return false;
+		}
+		catch(RuntimeException ex)
+		{
+			printError(name, "COMPILE_ERROR", ex.toString());
+			return false;
+		}
+		finally
+		{
+			System.setOut(console);
+		}
+		
+		return runProgram(name, compiler.getProgram());
+	}
+	
+	/*
+	 * Loads the passed program into a fresh machine and runs it
+	 */
+	public boolean runProgram(String name, AssembledProgram program)
+	{
+		int addressMode = program.getEncoding() == AssembledProgram.ENCODING_FULL ? CPU.MODE_FULL : CPU.MODE_LITE;
+		MOS6502 machine = new MOS6502(addressMode, false);
+		
+		if(program.getCodeLength() > machine.getRam().getRamSize())
+		{
+			printError(name, "TOO_LARGE", "Program is too large to fit into " + machine.getRam().getRamSize() + " bytes of memory");
+			return false;
+		}
+		
+		machine.setExecutionEngine(executionEngine);
+		machine.setLazyFlags(lazyFlags);
+		machine.setAluTables(aluTables);
+		machine.setStackInRam(stackInRam);
+		machine.setProfiling(profile);
+		machine.loadProgram(program);
+		machine.resetCPU();
+		
+		TraceRecorder trace = null;
+		try
+		{
+			if(traceDirectory != null)
+			{
+				trace = new TraceRecorder(TRACE_CAPACITY);
+				trace.spillTo(new File(traceDirectory, new File(name).getName() + ".trace"));
+				machine.setTraceRecorder(trace);
+			}
+			
+			String status = run(machine);
+			
+			if(trace != null)
+				trace.close();
+			
+			printResult(name, status, machine);
+			
+			if(profile)
+				machine.getProfiler().report(out, PROFILE_LIMIT);
+		}
+		catch(SimulationException ex)
+		{
+			printError(name, "SIMULATION_ERROR", ex.getErrorMessage());
+			return false;
+		}
+		catch(IOException ex)
+		{
+			printError(name, "IO_ERROR", "Could not write trace file: " + ex.getMessage());
+			return false;
+		}
+		finally
+		{
+			//Closes the trace file when the run failed, does nothing once it has been closed
+			try
+			{
+				if(trace != null)
+					trace.close();
+			}
+			catch(IOException ex)
+			{
+			}
+		}
+		
+		return true;
+	}
+	
+	/*
+	 * Steps the machine until END is reached or the step limit is exceeded.
+	 * Returns the resulting status.
+	 */
+	private String run(MOS6502 machine) throws SimulationException
+	{
+		return run(machine.getCpu(), stepLimit, cycleLimit);
+	}
+	
+	/*
+	 * Steps the CPU until END is reached or a limit is exceeded, a cycle limit of 0 is no limit.
+	 * Also used by the SimulationFarm.
+	 */
+	static String run(CPU cpu, long stepLimit, long cycleLimit) throws SimulationException
+	{
+		long steps = 0;
+		
+		while(cpu.getCanStep())
+		{
+			if(steps >= stepLimit)
+			{
+				return "STEP_LIMIT";
+			}
+			
+			if(cycleLimit > 0 && cpu.getCycleCounter() >= cycleLimit)
+			{
+				return "CYCLE_LIMIT";
+			}
+			
+			//The cycle limit is checked after every step, the step limit only bounds the chunk
+			int chunk = cycleLimit > 0 ? 1 : (int) Math.min(stepLimit - steps, STEP_CHUNK);
+			cpu.step(chunk);
+			steps += chunk;
+		}
+		
+		return "END";
+	}
+	
+	private void printResult(String name, String status, MOS6502 machine)
+	{
+		CPU cpu = machine.getCpu();
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append("file=").append(name.replace(' ', '_'));
+		sb.append(" status=").append(status);
+		sb.append(" steps=").append(cpu.getStepCounter());
+		sb.append(" cycles=").append(cpu.getCycleCounter());
+		sb.append(" a=").append(toHex(cpu.getA()));
+		sb.append(" x=").append(toHex(cpu.getX()));
+		sb.append(" y=").append(toHex(cpu.getY()));
+		sb.append(" sp=").append(toHex(cpu.getSp()));
+		sb.append(" pc=").append(cpu.getAddressMode() == CPU.MODE_FULL ? String.format("%04X", cpu.getPc()) : toHex(cpu.getPc()));
+		sb.append(" p=").append(toHex(cpu.getProcessorStatusFlags()));
+		
+		if(printMemory)
+		{
+			sb.append(" mem=");
+			for(int i = 0; i < machine.getRam().getRamSize(); i++)
+			{
+				sb.append(toHex(machine.getRam().getAddressContents(i)));
+			}
+			
+			sb.append(" stack=");
+			for(int i = 0; i < machine.getStack().getStackSize(); i++)
+			{
+				sb.append(toHex(machine.getStack().getStackValue(i)));
+			}
+		}
+		
+		out.println(sb.toString());
+	}
+	
+	private void printError(String name, String status, String message)
+	{
+		out.println("file=" + name.replace(' ', '_') + " status=" + status + " error=" + message.trim().replaceAll("\\s+", "_"));
+	}
+	
+	private static String toHex(int value)
+	{
+		return String.format("%02X", value & 0xff);
+	}
+	
+	
+	
+	/*
+	 * Getters / Setters
+	 */
+	
+	public long getStepLimit()
+	{
+		return stepLimit;
+	}
+	
+	public void setStepLimit(long stepLimit)
+	{
+		this.stepLimit = stepLimit;
+	}
+	
+	public long getCycleLimit()
+	{
+		return cycleLimit;
+	}
+	
+	public void setCycleLimit(long cycleLimit)
+	{
+		this.cycleLimit = cycleLimit;
+	}
+	
+	public int getExecutionEngine()
+	{
+		return executionEngine;
+	}
+	
+	public void setExecutionEngine(int executionEngine)
+	{
+		this.executionEngine = executionEngine;
+	}
+	
+	public boolean getLazyFlags()
+	{
+		return lazyFlags;
+	}
+	
+	public void setLazyFlags(boolean lazyFlags)
+	{
+		this.lazyFlags = lazyFlags;
+	}
+	
+	public boolean getAluTables()
+	{
+		return aluTables;
+	}
+	
+	public void setAluTables(boolean aluTables)
+	{
+		this.aluTables = aluTables;
+	}
+	
+	public boolean getStackInRam()
+	{
+		return stackInRam;
+	}
+	
+	public void setStackInRam(boolean stackInRam)
+	{
+		this.stackInRam = stackInRam;
+	}
+	
+	public boolean getEmitObject()
+	{
+		return emitObject;
+	}
+	
+	public void setEmitObject(boolean emitObject)
+	{
+		this.emitObject = emitObject;
+	}
+	
+	public boolean getProfile()
+	{
+		return profile;
+	}
+	
+	public void setProfile(boolean profile)
+	{
+		this.profile = profile;
+	}
+	
+	public String getTraceDirectory()
+	{
+		return traceDirectory;
+	}
+	
+	public void setTraceDirectory(String traceDirectory)
+	{
+		this.traceDirectory = traceDirectory;
+	}
+	
+	public int getEncoding()
+	{
+		return encoding;
+	}
+	
+	public void setEncoding(int encoding)
+	{
+		this.encoding = encoding;
+	}
+	
+	public boolean getPrintMemory()
+	{
+		return printMemory;
+	}
+	
+	public void setPrintMemory(boolean printMemory)
+	{
+		this.printMemory = printMemory;
+	}
+}
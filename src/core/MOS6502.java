@@ -1,5 +1,7 @@
 package core;
 
+import compiler.AssembledProgram;
+import exceptions.SimulationException;
 import util.Utils;
 
 /*
@@ -10,6 +12,11 @@ import util.Utils;
  * of the simulation is limited to 256 bytes, or from 0x00 - 0xFF. 
  * 
  * The MOS6502Lite simply consists of a CPU, stack and RAM simulation.
+ * The CPU reaches the RAM through a Bus, which peripherals (see the peripherals
+ * package) can be mapped onto with registerDevice().
+ * 
+ * The machine can also be created in full mode (CPU.MODE_FULL), which gives
+ * a 16-bit address bus with 64KB of RAM and a 256 byte stack, see CPU class comment.
  * 
  */
 
@@ -18,14 +25,54 @@ public class MOS6502 {
 	private final CPU cpu;
 	private final RAM ram;
 	private final Stack stack;
+	private final Bus bus;
+	
+	/*
+	 * Undo journal used by stepBack(), null when disabled
+	 */
+	private StepJournal journal;
+	
+	/*
+	 * Execution trace, null when disabled
+	 */
+	private TraceRecorder trace;
+	
+	/*
+	 * Execution profiler, null when disabled
+	 */
+	private Profiler profiler;
+	
+	/*
+	 * Breakpoints and watchpoints checked by the ExecutionThread
+	 */
+	private final Breakpoints breakpoints;
 	
 	public MOS6502()
 	{
-		this.cpu = new CPU();
-		this.ram = new RAM();
-		this.stack = new Stack();
+		this(true);
+	}
+	
+	/*
+	 * Creates the machine with console tracing enabled or disabled, see setVerbose()
+	 */
+	public MOS6502(boolean verbose)
+	{
+		this(CPU.MODE_LITE, verbose);
+	}
+	
+	/*
+	 * Creates the machine in the given address mode, see CPU.MODE_ constants
+	 */
+	public MOS6502(int addressMode, boolean verbose)
+	{
+		boolean full = addressMode == CPU.MODE_FULL;
+		this.cpu = new CPU(addressMode, verbose);
+		this.ram = new RAM(full ? RAM.FULL_SIZE : RAM.LITE_SIZE, verbose);
+		this.stack = new Stack(full ? Stack.FULL_SIZE : Stack.LITE_SIZE, verbose);
+		this.bus = new Bus(ram);
+		this.breakpoints = new Breakpoints(bus, ram.getRamSize());
 		
-		cpu.setRam(ram);
+		cpu.setBus(bus);
 		cpu.setStack(stack);
 		ram.setCpu(cpu);
 		stack.setCpu(cpu);
@@ -38,7 +85,8 @@ public class MOS6502 {
 	
 	public void loadRAM(int[] program)
 	{
-		System.out.println("\n[MOS6502] Load program into RAM");
+		if(cpu.isVerbose())
+			System.out.println("\n[MOS6502] Load program into RAM");
 		
 //		int writeAddress = 0;
 //		for(int i : program)
@@ -48,15 +96,33 @@ public class MOS6502 {
 //			writeAddress++;
 //		}
 		ram.loadProgram(program);
-		ram.showTrimmedMemory();
+		if(cpu.isVerbose())
+			ram.showTrimmedMemory();
 	}
 	
 	public void loadDirectives(String[] directives)
 	{
-		System.out.println("\n[MOS6502] Load directives into RAM");
+		if(cpu.isVerbose())
+			System.out.println("\n[MOS6502] Load directives into RAM");
 		
 		ram.loadDirectives(directives);
-		ram.showTrimmedMemory();
+		if(cpu.isVerbose())
+			ram.showTrimmedMemory();
+	}
+	
+	/*
+	 * Loads a program assembled in memory by the compiler, the program code is written 
+	 * from address 0x00 and the directive data is then written on top.
+	 */
+	public void loadProgram(AssembledProgram program)
+	{
+		if(cpu.isVerbose())
+			System.out.println("\n[MOS6502] Load assembled program into RAM");
+		
+		ram.loadProgram(program.getCode());
+		ram.loadDirectives(program.getDirectiveAddresses(), program.getDirectiveValues());
+		if(cpu.isVerbose())
+			ram.showTrimmedMemory();
 	}
 	
 	public void resetCPU()
@@ -64,6 +130,174 @@ public class MOS6502 {
 		cpu.reset();
 	}
 	
+	/*
+	 * Enables or disables the console tracing of the CPU, RAM and stack. 
+	 * Quiet execution (verbose = false) performs no console output while stepping.
+	 */
+	public void setVerbose(boolean verbose)
+	{
+		cpu.setVerbose(verbose);
+		ram.setVerbose(verbose);
+		stack.setVerbose(verbose);
+	}
+	
+	/*
+	 * Selects the CPU execution engine, see CPU.ENGINE_ constants
+	 */
+	public void setExecutionEngine(int engine)
+	{
+		cpu.setExecutionEngine(engine);
+	}
+	
+	/*
+	 * Selects whether the block cache engine runs bound blocks whole, see CPU.setBlockBinding()
+	 */
+	public void setBlockBinding(boolean blockBinding)
+	{
+		cpu.setBlockBinding(blockBinding);
+	}
+	
+	/*
+	 * Selects whether the block cache engine compiles hot blocks, see CPU.setBlockCompilation()
+	 */
+	public void setBlockCompilation(boolean blockCompilation)
+	{
+		cpu.setBlockCompilation(blockCompilation);
+	}
+	
+	/*
+	 * Selects lazy flag evaluation in the CPU, see CPU.setLazyFlags()
+	 */
+	public void setLazyFlags(boolean lazyFlags)
+	{
+		cpu.setLazyFlags(lazyFlags);
+	}
+	
+	/*
+	 * Selects the precomputed ADC/SBC tables in the CPU, see CPU.setAluTables()
+	 */
+	public void setAluTables(boolean aluTables)
+	{
+		cpu.setAluTables(aluTables);
+	}
+	
+	/*
+	 * Moves the stack into RAM at its default region (Stack.LITE_RAM_BASE or Stack.FULL_RAM_BASE),
+	 * or back into its own array
+	 */
+	public void setStackInRam(boolean stackInRam)
+	{
+		setStackInRam(stackInRam, cpu.getAddressMode() == CPU.MODE_FULL ? Stack.FULL_RAM_BASE : Stack.LITE_RAM_BASE);
+	}
+	
+	/*
+	 * Moves the stack into RAM starting at base, see Stack.mapToRam()
+	 */
+	public void setStackInRam(boolean stackInRam, int base)
+	{
+		if(stackInRam)
+		{
+			stack.mapToRam(ram, base);
+			cpu.setStackBase(base);
+		}
+		else
+		{
+			stack.unmapFromRam();
+			cpu.setStackBase(-1);
+		}
+	}
+	
+	
+	/*
+	 * Captures the registers, flags, counters, memory and stack of the machine, see MachineSnapshot
+	 */
+	public MachineSnapshot snapshot()
+	{
+		return new MachineSnapshot(this);
+	}
+	
+	/*
+	 * Puts the machine back into the state captured by snapshot()
+	 */
+	public void restore(MachineSnapshot snapshot)
+	{
+		snapshot.restore(this);
+		if(journal != null)
+			journal.clear();
+	}
+	
+	/*
+	 * Records each step in a StepJournal holding up to capacity steps, so that they can be 
+	 * taken back with stepBack(). A capacity of 0 disables the journal.
+	 */
+	public void setStepJournal(int capacity)
+	{
+		journal = capacity > 0 ? new StepJournal(this, capacity) : null;
+		cpu.setJournal(journal);
+		ram.setJournal(journal);
+		stack.setJournal(journal);
+	}
+	
+	public StepJournal getStepJournal()
+	{
+		return journal;
+	}
+	
+	/*
+	 * Records every step into the passed TraceRecorder, null stops tracing. The recorder
+	 * is not closed when it is replaced.
+	 */
+	public void setTraceRecorder(TraceRecorder trace)
+	{
+		this.trace = trace;
+		cpu.setTraceRecorder(trace);
+	}
+	
+	public TraceRecorder getTraceRecorder()
+	{
+		return trace;
+	}
+	
+	/*
+	 * Counts the steps and cycles of each opcode and instruction address and the reads and 
+	 * writes of each address in a Profiler, see getProfiler(). Disabling discards the counts.
+	 */
+	public void setProfiling(boolean profiling)
+	{
+		if(profiling == (profiler != null))
+			return;
+		
+		profiler = profiling ? new Profiler(ram.getRamSize()) : null;
+		cpu.setProfiler(profiler);
+		bus.setProfiler(profiler);
+	}
+	
+	public Profiler getProfiler()
+	{
+		return profiler;
+	}
+	
+	/*
+	 * Takes back the most recent step recorded in the journal, restoring the registers, flags, 
+	 * counters, memory and stack from before it. Returns false if there is no step to take back.
+	 */
+	public boolean stepBack()
+	{
+		return journal != null && journal.stepBack();
+	}
+	
+	/*
+	 * Maps the device onto the bus at the given address range, see Bus.registerDevice()
+	 */
+	public void registerDevice(Device device, int startAddress, int endAddress) throws SimulationException
+	{
+		bus.registerDevice(device, startAddress, endAddress);
+	}
+	
+	public int getAddressMode()
+	{
+		return cpu.getAddressMode();
+	}
 	
 	public CPU getCpu()
 	{
@@ -79,4 +313,14 @@ public class MOS6502 {
 	{
 		return stack;
 	}
+	
+	public Bus getBus()
+	{
+		return bus;
+	}
+	
+	public Breakpoints getBreakpoints()
+	{
+		return breakpoints;
+	}
 }
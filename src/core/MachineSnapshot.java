@@ -0,0 +1,180 @@
+package core;
+
+/*
+ * Immutable copy of the state of a whole MOS6502: CPU registers, flags and counters, memory 
+ * and stack. Taken with MOS6502.snapshot() and restored with MOS6502.restore().
+ * 
+ * Memory is held as pages (the Bus page size). Pages that have not been written between two
+ * snapshots of the same machine are shared by both, so taking a snapshot only copies the pages
+ * written since the previous one, and restoring only copies the pages that differ from the 
+ * current contents. Thousands of snapshots of a long running program (e.g. for backtracking 
+ * or as test fixtures) cost little more than the memory the program actually changes.
+ */
+
+public final class MachineSnapshot {
+
+	private final int addressMode;
+	
+	private final int a;
+	private final int x;
+	private final int y;
+	private final int sp;
+	private final int pc;
+	private final int status;
+	
+	private final int ir;
+	private final int irOperand;
+	private final int nextIr;
+	private final int nextIrOperand;
+	
+	private final int stepCounter;
+	private final long cycleCounter;
+	private final boolean canStep;
+	
+	/*
+	 * Memory pages, see RAM.snapshotPages()
+	 */
+	private final byte[][] memoryPages;
+	private final int pageSize;
+	
+	/*
+	 * Stack contents, null if the stack was mapped into RAM at stackBase
+	 */
+	private final byte[] stackContents;
+	private final int stackBase;
+	private final int stackSize;
+	
+	MachineSnapshot(MOS6502 machine)
+	{
+		CPU cpu = machine.getCpu();
+		addressMode = cpu.getAddressMode();
+		a = cpu.getA();
+		x = cpu.getX();
+		y = cpu.getY();
+		sp = cpu.getSp();
+		pc = cpu.getPc();
+		status = cpu.getProcessorStatusFlags();
+		ir = cpu.getIr();
+		irOperand = cpu.getIrOperand();
+		nextIr = cpu.getNextIr();
+		nextIrOperand = cpu.getNextIrOperand();
+		stepCounter = cpu.getStepCounter();
+		cycleCounter = cpu.getCycleCounter();
+		canStep = cpu.getCanStep();
+		
+		memoryPages = machine.getRam().snapshotPages();
+		pageSize = machine.getRam().getRamSize() / memoryPages.length;
+		stackContents = machine.getStack().snapshotContents();
+		stackBase = cpu.getStackBase();
+		stackSize = machine.getStack().getStackSize();
+	}
+	
+	/*
+	 * Puts the machine back into the state held by this snapshot. The machine must have the 
+	 * same address mode and the same stack mapping as the machine the snapshot was taken from.
+	 */
+	void restore(MOS6502 machine)
+	{
+		CPU cpu = machine.getCpu();
+		if(cpu.getAddressMode() != addressMode || machine.getRam().getRamSize() != getMemorySize())
+			throw new IllegalArgumentException("Snapshot was taken from a machine of a different size");
+		if(cpu.getStackBase() != stackBase)
+			throw new IllegalArgumentException("Snapshot was taken with a different stack mapping");
+		
+		machine.getRam().restorePages(memoryPages);
+		if(stackContents != null)
+			machine.getStack().restoreContents(stackContents);
+		
+		cpu.setA(a);
+		cpu.setX(x);
+		cpu.setY(y);
+		cpu.setSp(sp);
+		cpu.setPc(pc);
+		cpu.setProcessorStatusFlags(status);
+		cpu.setIr(ir);
+		cpu.setIrOperand(irOperand);
+		cpu.setNextIr(nextIr);
+		cpu.setNextIrOperand(nextIrOperand);
+		cpu.setStepCounter(stepCounter);
+		cpu.setCycleCounter(cycleCounter);
+		cpu.canStep = canStep;
+	}
+	
+	/*
+	 * Returns the memory contents held at address
+	 */
+	public int getMemory(int address)
+	{
+		return memoryPages[address / pageSize][address % pageSize] & 0xff;
+	}
+	
+	public int getMemorySize()
+	{
+		return memoryPages.length * pageSize;
+	}
+	
+	/*
+	 * Returns the value held at the stack position, read from memory if the stack was mapped into RAM
+	 */
+	public int getStackValue(int position)
+	{
+		position &= stackSize - 1;
+		if(stackContents == null)
+			return getMemory(stackBase + position);
+		
+		return stackContents[position] & 0xff;
+	}
+	
+	
+	
+	/*
+	 * G + S
+	 */
+	public int getAddressMode() {
+		return addressMode;
+	}
+	
+	public int getA() {
+		return a;
+	}
+	
+	public int getX() {
+		return x;
+	}
+	
+	public int getY() {
+		return y;
+	}
+	
+	public int getSp() {
+		return sp;
+	}
+	
+	public int getPc() {
+		return pc;
+	}
+	
+	public int getProcessorStatusFlags() {
+		return status;
+	}
+	
+	public int getIr() {
+		return ir;
+	}
+	
+	public int getIrOperand() {
+		return irOperand;
+	}
+	
+	public int getStepCounter() {
+		return stepCounter;
+	}
+	
+	public long getCycleCounter() {
+		return cycleCounter;
+	}
+	
+	public boolean getCanStep() {
+		return canStep;
+	}
+}
@@ -18,6 +18,13 @@ public class Main {
 	
 	public static void main(String[] args)
 	{	
+		//Assembly files passed on the command line are run without the GUI
+		if(args.length > 0)
+		{
+			HeadlessRunner.main(args);
+			return;
+		}
+		
 		Simulator simulator = new Simulator();	
 	
 		
@@ -0,0 +1,216 @@
+package core;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/*
+ * Execution profiler enabled with MOS6502.setProfiling(), counting where a program spends
+ * its time.
+ *
+ * For every step the CPU counts the instruction against its opcode and against the address
+ * it was fetched from, along with the clock cycles it took. Every read and write made
+ * through the Bus is counted against its address. Instruction fetches are not counted as
+ * reads, and neither are stack accesses, which do not go through the Bus.
+ *
+ * The counters are primitive arrays sized to the address space, so counting does not
+ * allocate. report() prints the busiest opcodes and addresses, and the GUI's memory map
+ * can shade each address by getHeat().
+ */
+
+public class Profiler {
+	
+	private final int addressMask;
+	
+	/*
+	 * Steps and cycles for each opcode
+	 */
+	private final long[] opcodeCounts = new long[256];
+	private final long[] opcodeCycles = new long[256];
+	
+	/*
+	 * Steps and cycles for each instruction address, reads and writes for each address
+	 */
+	private final long[] executionCounts;
+	private final long[] executionCycles;
+	private final long[] readCounts;
+	private final long[] writeCounts;
+	
+	private long stepCount;
+	private long cycleCount;
+	
+	/*
+	 * Memory size must be a power of two, addresses outside of it wrap around
+	 */
+	public Profiler(int memorySize)
+	{
+		if(memorySize <= 0 || (memorySize & (memorySize - 1)) != 0)
+			throw new IllegalArgumentException("Memory size must be a power of two: " + memorySize);
+		
+		addressMask = memorySize - 1;
+		executionCounts = new long[memorySize];
+		executionCycles = new long[memorySize];
+		readCounts = new long[memorySize];
+		writeCounts = new long[memorySize];
+	}
+	
+	/*
+	 * Counts a step, called by the CPU once the instruction has executed
+	 */
+	void executed(int pc, int opcode, int cycles)
+	{
+		pc &= addressMask;
+		opcodeCounts[opcode & 0xff]++;
+		opcodeCycles[opcode & 0xff] += cycles;
+		executionCounts[pc]++;
+		executionCycles[pc] += cycles;
+		stepCount++;
+		cycleCount += cycles;
+	}
+	
+	void read(int address)
+	{
+		readCounts[address & addressMask]++;
+	}
+	
+	void written(int address)
+	{
+		writeCounts[address & addressMask]++;
+	}
+	
+	/*
+	 * Resets every counter to 0
+	 */
+	public void clear()
+	{
+		Arrays.fill(opcodeCounts, 0);
+		Arrays.fill(opcodeCycles, 0);
+		Arrays.fill(executionCounts, 0);
+		Arrays.fill(executionCycles, 0);
+		Arrays.fill(readCounts, 0);
+		Arrays.fill(writeCounts, 0);
+		stepCount = 0;
+		cycleCount = 0;
+	}
+	
+	/*
+	 * Activity at an address, the cycles spent executing instructions held there plus
+	 * the reads and writes of it. Used to shade the GUI's memory map.
+	 */
+	public long getHeat(int address)
+	{
+		address &= addressMask;
+		return executionCycles[address] + readCounts[address] + writeCounts[address];
+	}
+	
+	/*
+	 * Prints the limit busiest opcodes, instruction addresses (by cycles) and read and
+	 * written addresses, as lines of key=value pairs
+	 */
+	public void report(PrintStream out, int limit)
+	{
+		out.println("profile steps=" + stepCount + " cycles=" + cycleCount);
+		
+		for(int opcode : busiest(opcodeCounts, limit))
+		{
+			out.println("opcode=" + String.format("%02X", opcode) + " " + TraceRecorder.symbol(opcode)
+					+ " count=" + opcodeCounts[opcode] + " cycles=" + opcodeCycles[opcode]);
+		}
+		
+		for(int address : busiest(executionCycles, limit))
+		{
+			out.println("pc=" + String.format("%04X", address) + " count=" + executionCounts[address]
+					+ " cycles=" + executionCycles[address] + " share=" + String.format("%.1f%%", 100.0 * executionCycles[address] / cycleCount));
+		}
+		
+		for(int address : busiest(readCounts, limit))
+		{
+			out.println("read=" + String.format("%04X", address) + " count=" + readCounts[address]);
+		}
+		
+		for(int address : busiest(writeCounts, limit))
+		{
+			out.println("write=" + String.format("%04X", address) + " count=" + writeCounts[address]);
+		}
+	}
+	
+	/*
+	 * Returns the indexes of the limit largest non zero counters, largest first
+	 */
+	private static int[] busiest(long[] counts, int limit)
+	{
+		int[] indexes = new int[Math.min(limit, counts.length)];
+		int found = 0;
+		
+		for(int i = 0; i < counts.length; i++)
+		{
+			if(counts[i] == 0)
+				continue;
+			
+			//Insertion into the sorted list of the largest counters so far
+			int position = found;
+			while(position > 0 && counts[indexes[position - 1]] < counts[i])
+			{
+				position--;
+			}
+			
+			if(position == indexes.length)
+				continue;
+			
+			int last = Math.min(found, indexes.length - 1);
+			System.arraycopy(indexes, position, indexes, position + 1, last - position);
+			indexes[position] = i;
+			found = Math.min(found + 1, indexes.length);
+		}
+		
+		return Arrays.copyOf(indexes, found);
+	}
+	
+	/*
+	 * Getters
+	 */
+	
+	public long getOpcodeCount(int opcode)
+	{
+		return opcodeCounts[opcode & 0xff];
+	}
+	
+	public long getOpcodeCycles(int opcode)
+	{
+		return opcodeCycles[opcode & 0xff];
+	}
+	
+	public long getExecutionCount(int address)
+	{
+		return executionCounts[address & addressMask];
+	}
+	
+	public long getExecutionCycles(int address)
+	{
+		return executionCycles[address & addressMask];
+	}
+	
+	public long getReadCount(int address)
+	{
+		return readCounts[address & addressMask];
+	}
+	
+	public long getWriteCount(int address)
+	{
+		return writeCounts[address & addressMask];
+	}
+	
+	public long getStepCount()
+	{
+		return stepCount;
+	}
+	
+	public long getCycleCount()
+	{
+		return cycleCount;
+	}
+	
+	public int getMemorySize()
+	{
+		return addressMask + 1;
+	}
+}
@@ -6,64 +6,132 @@ import gui.GUI2;
 import util.Utils;
 
 /*
- * TODO: Add exceptions for memory access outside of mem range, might not need if RAM size is unable to be changed by user.
+ * Addresses outside of memory are masked into range rather than rejected, see addressMask.
  */
 
-public class RAM {
+public class RAM implements Device {
 
 	private GUI2 gui; 
 	
 	private CPU cpu;
 	
-	private int[] memory;
+	/*
+	 * Flat byte array holding the memory contents, see LITE_SIZE and FULL_SIZE
+	 */
+	private byte[] memory;
+	
+	/*
+	 * Size - 1. Addresses are masked into range instead of being range checked, so an 
+	 * address past the end of memory wraps around to the start as on the address bus.
+	 */
+	private final int addressMask;
+	
+	/*
+	 * Addresses written since the last call to clearDirty(), see DirtyBitmap
+	 */
+	private DirtyBitmap dirty;
+	
+	/*
+	 * Decoded instruction blocks of the block cache engine, notified of every write so that 
+	 * stale blocks are dropped. Null unless a CPU is using ENGINE_BLOCK_CACHE.
+	 */
+	private BlockCache blockCache;
+	
+	/*
+	 * Copy-on-write snapshot pages, see snapshotPages(). basePages holds the pages of the last 
+	 * snapshot taken or restored and modifiedPages the pages written since then.
+	 */
+	private final int pageShift;
+	private byte[][] basePages;
+	private DirtyBitmap modifiedPages;
+	
+	/*
+	 * Records the previous value of each write so that steps can be taken back, null unless 
+	 * enabled with MOS6502.setStepJournal()
+	 */
+	private StepJournal journal;
+	
+	/*
+	 * Memory size of the lite (8-bit address bus) and full (16-bit address bus) machines
+	 */
+	public static final int LITE_SIZE = 0x100;
+	public static final int FULL_SIZE = 0x10000;
 	
 	/*Initalise all memory addresses to 0x00*/
 	private static final int DEFAULT_FILL = 0x00; 
 	
+	/*
+	 * Print each read and write to the console, disabled for quiet execution
+	 */
+	private boolean verbose = true;
+	
 	public RAM()
 	{
-		memory = new int[256]; 
+		this(true);
+	}
+	
+	public RAM(boolean verbose)
+	{
+		this(LITE_SIZE, verbose);
+	}
+	
+	public RAM(int size, boolean verbose)
+	{
+		if(size <= 0 || (size & (size - 1)) != 0)
+			throw new IllegalArgumentException("RAM size must be a power of two: " + size);
+		
+		this.verbose = verbose;
+		addressMask = size - 1;
+		memory = new byte[size]; 
+		dirty = new DirtyBitmap(size);
+		pageShift = size > LITE_SIZE ? Bus.FULL_PAGE_SHIFT : Bus.LITE_PAGE_SHIFT;
+		modifiedPages = new DirtyBitmap(Math.max(1, size >> pageShift));
 		fill(DEFAULT_FILL);
-		System.out.println("[RAM] RAM initalised and filled to DEFAULT_FILL");
+		if(verbose)
+			System.out.println("[RAM] RAM initalised and filled to DEFAULT_FILL");
 	}
 	
 	public void write(int address, int data)
 	{
-		if(address > 256 || address < 0)
-		{
-			System.out.println("[RAM] " + address + " address outside of RAM range, write failed.");
-		}
-		else
-		{
-			memory[address] = data;
+		address &= addressMask;
+		if(journal != null)
+			journal.ramWritten(address, memory[address] & 0xff);
+		memory[address] = (byte) data;
+		dirty.mark(address);
+		modifiedPages.mark(address >>> pageShift);
+		if(blockCache != null)
+			blockCache.written(address);
+		if(verbose)
 			System.out.println(data + " written to 0x" + Utils.DecToHex(address));
-		}
-		
 	}
 	
 	
 	public int read(int address)
 	{
-		if(address > 255 || address < 0)
-		{
-			System.out.println("[RAM] " + address + " address outside of RAM range, read failed.");
-			return -1;
-		}
-		
-		int data = memory[address];
-		System.out.println("[RAM] Read address 0x" + Utils.byteToHex(address) + ": " + data);
+		address &= addressMask;
+		int data = memory[address] & 0xff;
+		if(verbose)
+			System.out.println("[RAM] Read address 0x" + Utils.byteToHex(address) + ": " + data);
 		return data;
 	}
 	
 	public void fill(int val)
 	{
-		Arrays.fill(this.memory, val);
-		System.out.println("[RAM] Ram contents set to: " + val);
+		Arrays.fill(this.memory, (byte) val);
+		if(journal != null)
+			journal.clear();
+		dirty.markAll();
+		modifiedPages.markAll();
+		if(blockCache != null)
+			blockCache.clear();
+		if(verbose)
+			System.out.println("[RAM] Ram contents set to: " + val);
 	}
 	
 	public void loadProgram(int[] program)
 	{
-		System.out.println("[RAM] START LOADING PROGRAM");
+		if(verbose)
+			System.out.println("[RAM] START LOADING PROGRAM");
 		
 		int writeAddress = 0;
 		for(int i : program)
@@ -73,12 +141,48 @@ public class RAM {
 			writeAddress++;
 		}
 		
-		System.out.println("[RAM] END LOADING PROGRAM");
+		if(verbose)
+			System.out.println("[RAM] END LOADING PROGRAM");
+	}
+	
+	/*
+	 * Loads an assembled program image into memory starting at address 0x00
+	 */
+	public void loadProgram(byte[] program)
+	{
+		if(verbose)
+			System.out.println("[RAM] START LOADING PROGRAM");
+		
+		for(int i = 0; i < program.length; i++)
+		{
+			write(i, program[i] & 0xff);
+		}
+		
+		if(verbose)
+			System.out.println("[RAM] END LOADING PROGRAM");
+	}
+	
+	/*
+	 * Loads directive data held as address:value pairs, see AssembledProgram
+	 */
+	public void loadDirectives(int[] addresses, byte[] values)
+	{
+		if(verbose)
+			System.out.println("[RAM] START LOADING DIRECTIVES");
+		
+		for(int i = 0; i < addresses.length; i++)
+		{
+			write(addresses[i], values[i] & 0xff);
+		}
+		
+		if(verbose)
+			System.out.println("[RAM] END LOADING DIRECTIVES\n");
 	}
 	
 	public void loadDirectives(String[] directives)
 	{
-		System.out.println("[RAM] START LOADING DIRECTIVES");
+		if(verbose)
+			System.out.println("[RAM] START LOADING DIRECTIVES");
 		
 		for(int i = 0; i < directives.length; i+=2) //Incremented by two since each address:value pair takes up two array elements
 		{
@@ -86,11 +190,12 @@ public class RAM {
 			int writeAddress = Integer.parseInt(directives[i], 2);
 			int writeValue = Integer.parseInt(directives[i+1], 2);
 			
-			if(writeAddress > 0xff) //if the write address is greater than 255 
+			if(writeAddress >= memory.length) //if the write address is outside of memory
 			{
 				//Prevent from writing to memory
-				System.out.println("Writing value " + Utils.DecToHex(writeValue) + " to address " + Utils.DecToHex(writeAddress) + " failed due to address being greater than 0xFF (255");
-				appendGuiOutput("Writing value " + Utils.DecToHex(writeValue) + " to address " + Utils.DecToHex(writeAddress) + " failed due to address being greater than 0xFF (255");
+				if(verbose)
+					System.out.println("Writing value " + Utils.DecToHex(writeValue) + " to address " + Utils.DecToHex(writeAddress) + " failed due to address being greater than 0x" + Integer.toHexString(memory.length - 1).toUpperCase());
+				appendGuiOutput("Writing value " + Utils.DecToHex(writeValue) + " to address " + Utils.DecToHex(writeAddress) + " failed due to address being greater than 0x" + Integer.toHexString(memory.length - 1).toUpperCase());
 			}
 			else
 			{
@@ -98,7 +203,8 @@ public class RAM {
 			}
 		}
 		
-		System.out.println("[RAM] END LOADING DIRECTIVES\n");
+		if(verbose)
+			System.out.println("[RAM] END LOADING DIRECTIVES\n");
 	}
 	
 	
@@ -108,7 +214,7 @@ public class RAM {
 		for(int i = 0; i < memory.length; i++)
 		{
 			String address = Utils.byteToHex(i);
-			int data = memory[i];
+			int data = memory[i] & 0xff;
 			System.out.println("0x" + address + ": " + data);		
 		}
 	}
@@ -120,7 +226,7 @@ public class RAM {
 		for(int i = 0; i < memory.length; i++)
 		{
 			String address = Utils.byteToHex(i);
-			int data = memory[i];
+			int data = memory[i] & 0xff;
 			
 			if(data != 0)
 			{
@@ -131,7 +237,30 @@ public class RAM {
 	
 	public int getAddressContents(int address)
 	{
-		return memory[address];
+		return memory[address & addressMask] & 0xff;
+	}
+	
+	/*
+	 * Returns true if the address has been written since the last call to clearDirty()
+	 */
+	public boolean isDirty(int address)
+	{
+		return dirty.isMarked(address);
+	}
+	
+	/*
+	 * Returns the first address at or after from that has been written since the last 
+	 * call to clearDirty(), -1 if there are none. Visit every written address with
+	 * for(int a = ram.nextDirty(0); a != -1; a = ram.nextDirty(a + 1))
+	 */
+	public int nextDirty(int from)
+	{
+		return dirty.nextMarked(from);
+	}
+	
+	public void clearDirty()
+	{
+		dirty.clear();
 	}
 	
 	
@@ -157,6 +286,87 @@ public class RAM {
 		this.cpu = cpu;
 	}
 	
+	/*
+	 * Returns the memory contents as pages for a MachineSnapshot. Pages that have not been 
+	 * written since the last snapshot was taken or restored are shared with that snapshot, 
+	 * only written pages are copied. The returned pages must not be modified.
+	 */
+	byte[][] snapshotPages()
+	{
+		int pageSize = Math.min(1 << pageShift, memory.length);
+		int pageCount = memory.length / pageSize;
+		byte[][] pages = new byte[pageCount][];
+		
+		for(int i = 0; i < pageCount; i++)
+		{
+			if(basePages != null && !modifiedPages.isMarked(i))
+			{
+				pages[i] = basePages[i];
+			}
+			else
+			{
+				pages[i] = Arrays.copyOfRange(memory, i * pageSize, (i + 1) * pageSize);
+			}
+		}
+		
+		basePages = pages;
+		modifiedPages.clear();
+		return pages;
+	}
+	
+	/*
+	 * Restores the memory contents from pages returned by snapshotPages(). Only pages that 
+	 * differ from the last snapshot taken or restored, or have been written since, are copied.
+	 */
+	void restorePages(byte[][] pages)
+	{
+		int pageSize = memory.length / pages.length;
+		boolean restored = false;
+		
+		for(int i = 0; i < pages.length; i++)
+		{
+			if(basePages == null || basePages[i] != pages[i] || modifiedPages.isMarked(i))
+			{
+				System.arraycopy(pages[i], 0, memory, i * pageSize, pageSize);
+				for(int address = i * pageSize; address < (i + 1) * pageSize; address++)
+				{
+					dirty.mark(address);
+				}
+				restored = true;
+			}
+		}
+		
+		if(restored && blockCache != null)
+			blockCache.clear();
+		basePages = pages;
+		modifiedPages.clear();
+	}
+	
+	void setJournal(StepJournal journal)
+	{
+		this.journal = journal;
+	}
+	
+	BlockCache getBlockCache()
+	{
+		return blockCache;
+	}
+	
+	void setBlockCache(BlockCache blockCache)
+	{
+		this.blockCache = blockCache;
+	}
+	
+	public boolean isVerbose()
+	{
+		return verbose;
+	}
+	
+	public void setVerbose(boolean verbose)
+	{
+		this.verbose = verbose;
+	}
+	
 	public void setGui(GUI2 gui)
 	{
 		this.gui = gui;
@@ -164,12 +374,14 @@ public class RAM {
 	
 	public void setGuiOutput(String msg)
 	{
-		gui.getAssemblerTextArea().setText(msg);
+		if(gui != null) //No GUI is attached when running headless
+			gui.getAssemblerTextArea().setText(msg);
 	}
 	
 	public void appendGuiOutput(String msg)
 	{
-		gui.getAssemblerTextArea().append("\n\n" + msg);
+		if(gui != null)
+			gui.getAssemblerTextArea().append("\n\n" + msg);
 	}
 	
 }
@@ -2,8 +2,33 @@ package core;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.zip.CRC32;
+
+import compiler.AssembledProgram;
+import compiler.ObjectFormat;
+import exceptions.SimulationException;
+
+/*
+ * Reads a program written by the compiler. 
+ * 
+ * Files in the compact binary object format (see compiler.ObjectFormat) are memory mapped 
+ * and decoded directly, their checksum is verified before the program is accepted.
+ * 
+ * Any other file is read as the original text format, where each byte is an 8-character
+ * binary string and directive address:value pairs are prefixed with '*'.
+ */
 
 public class ReadBinary {
 
@@ -16,13 +41,24 @@ public class ReadBinary {
 	private int[] program;
 	private ArrayList<String> directiveValues;
 	
-	public ReadBinary(String filepathToRead)
+	/*
+	 * Program decoded from an object file, null when the text format was read
+	 */
+	private AssembledProgram assembledProgram;
+	
+	public ReadBinary(String filepathToRead) throws SimulationException
 	{
 		filepath = filepathToRead;
 		
 		programAL = new ArrayList<String>();
 		directiveValues = new ArrayList<String>();
 		
+		if(isObjectFile(filepath))
+		{
+			readObjectFile();
+			return;
+		}
+		
 		makeLink();
 		read();
 		closeLink();
@@ -38,6 +74,161 @@ public class ReadBinary {
 		}
 	}
 	
+	/*
+	 * Returns true if the passed file starts with the object format's magic number
+	 */
+	public static boolean isObjectFile(String filepath)
+	{
+		FileChannel channel = null;
+		
+		try
+		{
+			channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ);
+			ByteBuffer magic = ByteBuffer.allocate(4);
+			
+			while(magic.hasRemaining() && channel.read(magic) >= 0);
+			
+			return !magic.hasRemaining() && magic.getInt(0) == ObjectFormat.MAGIC;
+		}
+		catch(IOException e)
+		{
+			return false;
+		}
+		finally
+		{
+			closeChannel(channel);
+		}
+	}
+	
+	/*
+	 * Maps the object file into memory and decodes it
+	 */
+	public void readObjectFile() throws SimulationException
+	{
+		FileChannel channel = null;
+		
+		try
+		{
+			channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ);
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			
+			assembledProgram = decodeObject(buffer);
+		}
+		catch(IOException e)
+		{
+			throw new SimulationException("[ReadBinary] Could not read object file " + filepath + ": " + e.getMessage());
+		}
+		finally
+		{
+			closeChannel(channel);
+		}
+		
+		byte[] code = assembledProgram.getCode();
+		program = new int[code.length];
+		for(int i = 0; i < code.length; i++)
+		{
+			program[i] = code[i] & 0xff;
+		}
+		
+		for(int i = 0; i < assembledProgram.getDirectiveCount(); i++)
+		{
+			directiveValues.add(toBinaryString(assembledProgram.getDirectiveAddresses()[i]));
+			directiveValues.add(toBinaryString(assembledProgram.getDirectiveValues()[i] & 0xff));
+		}
+		
+		System.out.println("[ReadBinary] Object file read: " + code.length + " code bytes, " + assembledProgram.getDirectiveCount() 
+							+ " directives, " + assembledProgram.getSymbols().size() + " symbols");
+	}
+	
+	/*
+	 * Decodes a program held in the object format, see compiler.ObjectFormat for the layout.
+	 * The checksum is verified before any of the contents are decoded.
+	 */
+	public static AssembledProgram decodeObject(ByteBuffer buffer) throws SimulationException
+	{
+		int size = buffer.limit();
+		
+		if(size < ObjectFormat.HEADER_SIZE + ObjectFormat.CHECKSUM_SIZE || buffer.getInt(0) != ObjectFormat.MAGIC)
+			throw new SimulationException("[ReadBinary] File is not an object file");
+		
+		if((buffer.get(4) & 0xff) != ObjectFormat.VERSION)
+			throw new SimulationException("[ReadBinary] Unsupported object file version " + (buffer.get(4) & 0xff));
+		
+		ByteBuffer body = buffer.duplicate();
+		body.position(0);
+		body.limit(size - ObjectFormat.CHECKSUM_SIZE);
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		
+		if((int) crc.getValue() != buffer.getInt(size - ObjectFormat.CHECKSUM_SIZE))
+			throw new SimulationException("[ReadBinary] Object file checksum does not match, file is corrupt");
+		
+		try
+		{
+			int encoding = (buffer.get(5) & ObjectFormat.FLAG_FULL_ENCODING) != 0 ? AssembledProgram.ENCODING_FULL : AssembledProgram.ENCODING_LITE;
+			
+			ByteBuffer in = buffer.duplicate();
+			in.position(6);
+			in.limit(size - ObjectFormat.CHECKSUM_SIZE);
+			
+			int codeLength = in.getShort() & 0xffff;
+			int directiveCount = in.getShort() & 0xffff;
+			int symbolCount = in.getShort() & 0xffff;
+			
+			byte[] code = new byte[codeLength];
+			in.get(code);
+			
+			int[] directiveAddresses = new int[directiveCount];
+			byte[] directiveData = new byte[directiveCount];
+			for(int i = 0; i < directiveCount; i++)
+			{
+				directiveAddresses[i] = in.getShort() & 0xffff;
+				directiveData[i] = in.get();
+			}
+			
+			Map<String, Integer> symbols = new LinkedHashMap<String, Integer>();
+			for(int i = 0; i < symbolCount; i++)
+			{
+				byte[] name = new byte[in.get() & 0xff];
+				in.get(name);
+				symbols.put(new String(name, StandardCharsets.US_ASCII), in.getShort() & 0xffff);
+			}
+			
+			return new AssembledProgram(code, directiveAddresses, directiveData, symbols, encoding);
+		}
+		catch(BufferUnderflowException e)
+		{
+			throw new SimulationException("[ReadBinary] Object file is truncated");
+		}
+	}
+	
+	private static void closeChannel(FileChannel channel)
+	{
+		if(channel != null)
+		{
+			try
+			{
+				channel.close();
+			}
+			catch(IOException e)
+			{
+				System.err.println("[ReadBinary] Could not close file");
+			}
+		}
+	}
+	
+	private static String toBinaryString(int value)
+	{
+		String binary = Integer.toBinaryString(value);
+		
+		while(binary.length() < 8)
+		{
+			binary = "0" + binary;
+		}
+		
+		return binary;
+	}
+	
 	public void makeProgram()
 	{
 		program = new int[programAL.size()];
@@ -105,6 +296,34 @@ public class ReadBinary {
 		return program;
 	}
 	
+	/*
+	 * Returns the program read from the file in the form produced by the compiler. 
+	 * Programs read from the text format have no symbols.
+	 */
+	public AssembledProgram getAssembledProgram()
+	{
+		if(assembledProgram == null)
+		{
+			byte[] code = new byte[program.length];
+			for(int i = 0; i < program.length; i++)
+			{
+				code[i] = (byte) program[i];
+			}
+			
+			int[] directiveAddresses = new int[directiveValues.size() / 2];
+			byte[] directiveData = new byte[directiveValues.size() / 2];
+			for(int i = 0; i < directiveAddresses.length; i++)
+			{
+				directiveAddresses[i] = Integer.parseInt(directiveValues.get(i * 2), 2);
+				directiveData[i] = (byte) Integer.parseInt(directiveValues.get(i * 2 + 1), 2);
+			}
+			
+			assembledProgram = new AssembledProgram(code, directiveAddresses, directiveData, new LinkedHashMap<String, Integer>());
+		}
+		
+		return assembledProgram;
+	}
+	
 	public String[] getDirectiveValues()
 	{
 		String[] directiveValuesArray = directiveValues.toArray(new String[directiveValues.size()]);
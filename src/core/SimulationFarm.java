@@ -0,0 +1,422 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import compiler.AssembledProgram;
+import exceptions.SimulationException;
+
+/*
+ * Runs many independent simulations across a fixed pool of worker threads, e.g. the same
+ * program against thousands of input memory images for grading or regression testing.
+ *
+ * Each instance gets its own MOS6502 in quiet mode, loaded by a Job and stepped until the
+ * END keyword is reached or the step or cycle limit is exceeded, in the same way as the
+ * HeadlessRunner and with the same statuses. Machines share nothing but the immutable 
+ * instruction tables, so no locking is needed while they run. The final state of each 
+ * machine is returned in a Result as a MachineSnapshot, and the totals of the run are 
+ * kept as Statistics.
+ */
+
+public class SimulationFarm {
+	
+	/*
+	 * Result statuses, as printed by the HeadlessRunner
+	 */
+	public static final String STATUS_END = "END";
+	public static final String STATUS_STEP_LIMIT = "STEP_LIMIT";
+	public static final String STATUS_CYCLE_LIMIT = "CYCLE_LIMIT";
+	public static final String STATUS_SIMULATION_ERROR = "SIMULATION_ERROR";
+	
+	/*
+	 * Loads an instance's program and input into its machine, called on a worker thread
+	 * once the machine has been created and before the CPU is reset
+	 */
+	public interface Job
+	{
+		void load(MOS6502 machine, int index) throws SimulationException;
+	}
+	
+	/*
+	 * Outcome of a single instance
+	 */
+	public static final class Result
+	{
+		private final int index;
+		private final String status;
+		private final String error;
+		private final MachineSnapshot state;
+		private final long nanos;
+		
+		Result(int index, String status, String error, MachineSnapshot state, long nanos)
+		{
+			this.index = index;
+			this.status = status;
+			this.error = error;
+			this.state = state;
+			this.nanos = nanos;
+		}
+		
+		public int getIndex()
+		{
+			return index;
+		}
+		
+		/*
+		 * One of the STATUS_ constants
+		 */
+		public String getStatus()
+		{
+			return status;
+		}
+		
+		/*
+		 * Reason for a SIMULATION_ERROR, null otherwise
+		 */
+		public String getError()
+		{
+			return error;
+		}
+		
+		/*
+		 * Final state of the machine, also taken when the run failed
+		 */
+		public MachineSnapshot getState()
+		{
+			return state;
+		}
+		
+		/*
+		 * Time taken to load and run the instance
+		 */
+		public long getNanos()
+		{
+			return nanos;
+		}
+	}
+	
+	/*
+	 * Totals over every instance of a run
+	 */
+	public static final class Statistics
+	{
+		private final int instances;
+		private final int errors;
+		private final long steps;
+		private final long cycles;
+		private final long elapsedNanos;
+		private final long busyNanos;
+		private final int threads;
+		
+		Statistics(int instances, int errors, long steps, long cycles, long elapsedNanos, long busyNanos, int threads)
+		{
+			this.instances = instances;
+			this.errors = errors;
+			this.steps = steps;
+			this.cycles = cycles;
+			this.elapsedNanos = elapsedNanos;
+			this.busyNanos = busyNanos;
+			this.threads = threads;
+		}
+		
+		public int getInstances()
+		{
+			return instances;
+		}
+		
+		public int getErrors()
+		{
+			return errors;
+		}
+		
+		public long getSteps()
+		{
+			return steps;
+		}
+		
+		public long getCycles()
+		{
+			return cycles;
+		}
+		
+		/*
+		 * Wall clock time of the whole run
+		 */
+		public long getElapsedNanos()
+		{
+			return elapsedNanos;
+		}
+		
+		/*
+		 * Time spent by the workers on instances, added over all threads
+		 */
+		public long getBusyNanos()
+		{
+			return busyNanos;
+		}
+		
+		public int getThreads()
+		{
+			return threads;
+		}
+		
+		public double getInstancesPerSecond()
+		{
+			return instances * 1e9 / Math.max(elapsedNanos, 1);
+		}
+		
+		public double getStepsPerSecond()
+		{
+			return steps * 1e9 / Math.max(elapsedNanos, 1);
+		}
+		
+		public String toString()
+		{
+			return String.format("instances=%d errors=%d steps=%d cycles=%d threads=%d elapsed=%.1fms instances/s=%.0f steps/s=%.0f",
+					instances, errors, steps, cycles, threads, elapsedNanos / 1e6, getInstancesPerSecond(), getStepsPerSecond());
+		}
+	}
+	
+	private final int threads;
+	
+	private int addressMode = CPU.MODE_LITE;
+	private int executionEngine = CPU.ENGINE_SWITCH;
+	private boolean lazyFlags = false;
+	private boolean aluTables = false;
+	
+	private long stepLimit = HeadlessRunner.DEFAULT_STEP_LIMIT;
+	
+	/*
+	 * Number of clock cycles an instance may execute before it is stopped, 0 for no limit
+	 */
+	private long cycleLimit = 0;
+	
+	/*
+	 * Statistics of the most recent run
+	 */
+	private Statistics statistics;
+	
+	public SimulationFarm()
+	{
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	public SimulationFarm(int threads)
+	{
+		if(threads <= 0)
+			throw new IllegalArgumentException("Thread count must be positive: " + threads);
+		
+		this.threads = threads;
+	}
+	
+	/*
+	 * Runs count instances, each loaded by the job, and returns their results in index order.
+	 * Blocks until every instance has finished.
+	 */
+	public List<Result> run(int count, final Job job) throws InterruptedException
+	{
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, count)), new ThreadFactory() {
+			private int created = 0;
+			
+			public synchronized Thread newThread(Runnable task)
+			{
+				Thread thread = new Thread(task, "MOS6502 farm " + created++);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		
+		long start = System.nanoTime();
+		List<Result> results = new ArrayList<Result>(count);
+		
+		try
+		{
+			List<Future<Result>> futures = new ArrayList<Future<Result>>(count);
+			for(int i = 0; i < count; i++)
+			{
+				final int index = i;
+				futures.add(pool.submit(new Callable<Result>() {
+					public Result call()
+					{
+						return runInstance(job, index);
+					}
+				}));
+			}
+			
+			for(Future<Result> future : futures)
+			{
+				results.add(future.get());
+			}
+		}
+		catch(ExecutionException e)
+		{
+			//Errors raised by the simulation are held in the results, anything else is a bug
+			throw new IllegalStateException("Simulation instance failed", e.getCause());
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+		
+		long elapsed = System.nanoTime() - start;
+		
+		int errors = 0;
+		long steps = 0;
+		long cycles = 0;
+		long busy = 0;
+		for(Result result : results)
+		{
+			if(result.getStatus().equals(STATUS_SIMULATION_ERROR))
+				errors++;
+			steps += result.getState().getStepCounter();
+			cycles += result.getState().getCycleCounter();
+			busy += result.getNanos();
+		}
+		
+		statistics = new Statistics(count, errors, steps, cycles, elapsed, busy, threads);
+		return results;
+	}
+	
+	/*
+	 * Runs the program once for each input, the input is written into memory at inputAddress
+	 * after the program has been loaded
+	 */
+	public List<Result> run(final AssembledProgram program, final int inputAddress, final List<int[]> inputs) throws InterruptedException
+	{
+		return run(inputs.size(), new Job() {
+			public void load(MOS6502 machine, int index) throws SimulationException
+			{
+				if(program.getCodeLength() > machine.getRam().getRamSize())
+					throw new SimulationException("[SimulationFarm] Program is too large to fit into " + machine.getRam().getRamSize() + " bytes of memory");
+				
+				machine.loadProgram(program);
+				
+				int[] input = inputs.get(index);
+				for(int i = 0; i < input.length; i++)
+				{
+					machine.getRam().write(inputAddress + i, input[i]);
+				}
+			}
+		});
+	}
+	
+	/*
+	 * Runs each memory image, loaded with MOS6502.loadRAM()
+	 */
+	public List<Result> runImages(final List<int[]> images) throws InterruptedException
+	{
+		return run(images.size(), new Job() {
+			public void load(MOS6502 machine, int index)
+			{
+				machine.loadRAM(images.get(index));
+			}
+		});
+	}
+	
+	/*
+	 * Creates, loads and runs a single instance on the calling worker thread
+	 */
+	private Result runInstance(Job job, int index)
+	{
+		long start = System.nanoTime();
+		MOS6502 machine = new MOS6502(addressMode, false);
+		machine.setExecutionEngine(executionEngine);
+		machine.setLazyFlags(lazyFlags);
+		machine.setAluTables(aluTables);
+		
+		try
+		{
+			job.load(machine, index);
+			machine.resetCPU();
+			String status = HeadlessRunner.run(machine.getCpu(), stepLimit, cycleLimit);
+			return new Result(index, status, null, machine.snapshot(), System.nanoTime() - start);
+		}
+		catch(SimulationException ex)
+		{
+			return new Result(index, STATUS_SIMULATION_ERROR, ex.getErrorMessage(), machine.snapshot(), System.nanoTime() - start);
+		}
+	}
+	
+	/*
+	 * Getters / Setters
+	 */
+	
+	/*
+	 * Statistics of the most recent run, null before the first run
+	 */
+	public Statistics getStatistics()
+	{
+		return statistics;
+	}
+	
+	public int getThreads()
+	{
+		return threads;
+	}
+	
+	public int getAddressMode()
+	{
+		return addressMode;
+	}
+	
+	public void setAddressMode(int addressMode)
+	{
+		this.addressMode = addressMode;
+	}
+	
+	public int getExecutionEngine()
+	{
+		return executionEngine;
+	}
+	
+	public void setExecutionEngine(int executionEngine)
+	{
+		this.executionEngine = executionEngine;
+	}
+	
+	public boolean getLazyFlags()
+	{
+		return lazyFlags;
+	}
+	
+	public void setLazyFlags(boolean lazyFlags)
+	{
+		this.lazyFlags = lazyFlags;
+	}
+	
+	public boolean getAluTables()
+	{
+		return aluTables;
+	}
+	
+	public void setAluTables(boolean aluTables)
+	{
+		this.aluTables = aluTables;
+	}
+	
+	public long getStepLimit()
+	{
+		return stepLimit;
+	}
+	
+	public void setStepLimit(long stepLimit)
+	{
+		this.stepLimit = stepLimit;
+	}
+	
+	public long getCycleLimit()
+	{
+		return cycleLimit;
+	}
+	
+	public void setCycleLimit(long cycleLimit)
+	{
+		this.cycleLimit = cycleLimit;
+	}
+}
@@ -1,23 +1,28 @@
 package core;
 
 import java.awt.EventQueue;
+import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 
 import javax.swing.JButton;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
+import javax.swing.JLabel;
 import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
+import javax.swing.JTextField;
 
 import compiler.Compiler;
-import compiler.ReadAssemblyFile;
+import compiler.AssembledProgram;
 import exceptions.CompilerException;
 import exceptions.SimulationException;
 import gui.GUI2;
@@ -34,24 +39,51 @@ import gui.GuiAbout;
 
 public class Simulator {
 	
-	String assemblyFilepath = "./assembly_input.txt/";
 	String binaryFilepath = "./binary_output.txt/"; 
 	
 	private int stepsPerClick = 1;
 	
+	/*
+	 * Number of steps that can be taken back with the step back button, see StepJournal
+	 */
+	private static final int STEP_JOURNAL_CAPACITY = 100000;
+	
 	private MOS6502 mos6502;
 	private GUI2 gui;
 	
 	private JButton btnRun;
+	private JButton btnPause;
+	private JButton btnStop;
+	private JButton btnStepBack;
 	private JButton btnStep;
 	private JButton btnReset;
 	private JComboBox comboBox;
 	
-	private JMenuItem menuClearMemory, menuClearStack, menuQuit, menuResetCpu, menuClearEditor, menuRunAssembler, menuHelp, menuAbout, menuClearOutputConsole;
+	private JCheckBoxMenuItem menuHeatmap;
+	private JMenuItem menuAddBreakpoint, menuAddWatchpoint, menuClearBreakpoints, menuProfilerReport, menuClearMemory, menuClearStack, menuQuit, menuResetCpu, menuRunBudget, menuClearEditor, menuRunAssembler, menuHelp, menuAbout, menuClearOutputConsole;
 	private JScrollPane memoryScrollPane, stackScrollPane;
 	private JTextArea editorTextArea;
 	
-	private PrintWriter writer;
+	/*
+	 * Worker thread of the current run, null if no run has been started
+	 */
+	private ExecutionThread executionThread;
+	
+	/*
+	 * Maximum number of steps executed by a single run, 0 for no limit
+	 */
+	private long runBudget = ExecutionThread.DEFAULT_STEP_BUDGET;
+	
+	/*
+	 * Maximum number of clock cycles executed by a single run, 0 for no limit
+	 */
+	private long runCycleBudget = 0;
+	
+	/*
+	 * Number of opcodes and addresses listed in each section of the profiler report
+	 */
+	private static final int PROFILER_REPORT_LIMIT = 10;
+	
 	
 	
 	
@@ -61,21 +93,34 @@ public class Simulator {
 	public Simulator() 
 	{
 		mos6502 = new MOS6502();
+		mos6502.setStepJournal(STEP_JOURNAL_CAPACITY);
 		
 	}
 	
 	/*
-	 * Loads the program held inside the binary_output.txt file inside the
+	 * Loads the program exported to the binary_output.txt file inside the
 	 * project directory. Makes use of the ReadBinary class to read in the 
 	 * binary patterns representing the program data, and then calls the 
-	 * loadRAM method inside the mos6502 simulation.
+	 * loadRAM method inside the mos6502 simulation. The file may be in either
+	 * the text format or the binary object format.
 	 * 
 	 * This method will prevent the program from being loaded into memory 
 	 * if the size of the program exceeds 256 bytes. 
 	 */
 	public void loadProgram()
 	{
-		ReadBinary rb = new ReadBinary(binaryFilepath);
+		ReadBinary rb;
+		
+		try
+		{
+			rb = new ReadBinary(binaryFilepath);
+		}
+		catch(SimulationException ex)
+		{
+			System.out.println(ex.getErrorMessage());
+			return;
+		}
+		
 		int[] program = rb.getProgram();
 		String[] directiveValues = rb.getDirectiveValues();
 
@@ -89,6 +134,25 @@ public class Simulator {
 		
 	}
 	
+	/*
+	 * Loads a program assembled in memory by the compiler directly into the
+	 * simulation's RAM, no files are written or read.
+	 * 
+	 * Returns false without loading the program if the program code
+	 * exceeds the size of memory.
+	 */
+	public boolean loadProgram(AssembledProgram program)
+	{
+		if(program.getCodeLength() > mos6502.getRam().getRamSize())
+		{
+			System.out.println("Program is too large to fit into " + mos6502.getRam().getRamSize() + " bytes of memory");
+			return false;
+		}
+		
+		mos6502.loadProgram(program);
+		return true;
+	}
+	
 
 	/*
 	 * The actual creation of the gui is done through the GUI2 class. This method
@@ -108,6 +172,9 @@ public class Simulator {
 		gui.setCarets(0);
 		
 		btnRun = gui.getBtnRun();
+		btnPause = gui.getBtnPause();
+		btnStop = gui.getBtnStop();
+		btnStepBack = gui.getBtnStepBack();
 		btnStep = gui.getBtnStep();
 		btnReset = gui.getBtnReset();
 		comboBox = gui.getComboBox();
@@ -118,9 +185,15 @@ public class Simulator {
 		menuClearStack = gui.getMenuClearStack();
 		menuQuit = gui.getMenuQuit();
 		menuResetCpu = gui.getMenuResetCpu();
+		menuRunBudget = gui.getMenuRunBudget();
 		menuClearEditor = gui.getMenuClearEditor();
 		menuRunAssembler = gui.getMenuRunAssembler();
 		menuClearOutputConsole = gui.getMenuClearOutputConsole();
+		menuHeatmap = gui.getMenuHeatmap();
+		menuProfilerReport = gui.getMenuProfilerReport();
+		menuAddBreakpoint = gui.getMenuAddBreakpoint();
+		menuAddWatchpoint = gui.getMenuAddWatchpoint();
+		menuClearBreakpoints = gui.getMenuClearBreakpoints();
 		
 		memoryScrollPane = gui.getMemMapScrollPane();
 		stackScrollPane = gui.getStackScrollPane();
@@ -160,6 +233,17 @@ public class Simulator {
 			}
 		});
 		
+		/*
+		 * Add listener to step back button, takes back stepsPerClick steps when clicked
+		 */
+		btnStepBack.addActionListener(new ActionListener() {
+			//@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				Simulator.this.handleStepBack(stepsPerClick);
+			}
+		});
+		
 		/*
 		 * Add listener to reset button, reset button causes CPU reset to inital vals, does not clear memory or stack
 		 */
@@ -179,6 +263,22 @@ public class Simulator {
 			}
 		});
 		
+		btnPause.addActionListener(new ActionListener() {
+			//@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				Simulator.this.handlePause();
+			}
+		});
+		
+		btnStop.addActionListener(new ActionListener() {
+			//@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				Simulator.this.stopRun();
+			}
+		});
+		
 		
 		
 		/*
@@ -208,6 +308,7 @@ public class Simulator {
 			//@Override
 			public void actionPerformed(ActionEvent e)
 			{
+				stopRun();
 				clearRam();
 				gui.refreshGui();
 				gui.setCarets(0);
@@ -218,6 +319,7 @@ public class Simulator {
 			//@Override
 			public void actionPerformed(ActionEvent e)
 			{
+				stopRun();
 				clearStack();
 				gui.refreshGui();
 				gui.setCarets(0);
@@ -241,6 +343,14 @@ public class Simulator {
 			}
 		});
 		
+		menuRunBudget.addActionListener(new ActionListener() {
+			//@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				Simulator.this.handleRunBudget();
+			}
+		});
+		
 		menuClearEditor.addActionListener(new ActionListener() {
 			//@Override
 			public void actionPerformed(ActionEvent e)
@@ -265,6 +375,48 @@ public class Simulator {
 			}
 		});
 		
+		menuHeatmap.addActionListener(new ActionListener() {
+			//@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				Simulator.this.handleHeatmap(menuHeatmap.isSelected());
+			}
+		});
+		
+		menuProfilerReport.addActionListener(new ActionListener() {
+			//@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				Simulator.this.handleProfilerReport();
+			}
+		});
+		
+		menuAddBreakpoint.addActionListener(new ActionListener() {
+			//@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				Simulator.this.handleAddBreakpoint();
+			}
+		});
+		
+		menuAddWatchpoint.addActionListener(new ActionListener() {
+			//@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				Simulator.this.handleAddWatchpoint();
+			}
+		});
+		
+		menuClearBreakpoints.addActionListener(new ActionListener() {
+			//@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				stopRun();
+				mos6502.getBreakpoints().clear();
+				gui.getAssemblerTextArea().setText("All breakpoints and watchpoints removed.");
+			}
+		});
+		
 		mos6502.getCpu().setGui(gui); //Set reference to GUI in CPU
 		mos6502.getRam().setGui(gui); //Set referebce to GUI in RAM
 	}
@@ -283,6 +435,8 @@ public class Simulator {
 	{
 		int pc = 0;
 		
+		stopRun();
+		
 		try
 		{
 			for(int i = 0; i < steps; i++)
@@ -300,6 +454,29 @@ public class Simulator {
 		}
 	}
 	
+	/*
+	 * The handler that is called by user generated actions on the step back button.
+	 * 
+	 * Takes back up to the passed number of steps from the machine's StepJournal, stopping
+	 * early once there are no more recorded steps. The GUI is then refreshed.
+	 */
+	private void handleStepBack(int steps)
+	{
+		stopRun();
+		
+		for(int i = 0; i < steps; i++)
+		{
+			if(!mos6502.stepBack())
+			{
+				gui.getAssemblerTextArea().setText("No more steps to take back.");
+				break;
+			}
+		}
+		
+		gui.refreshGui();
+		gui.setCarets(0);
+	}
+	
 	/*
 	 * Handler that is called by user generated actions on the reset button.
 	 * 
@@ -312,6 +489,7 @@ public class Simulator {
 	{
 		try
 		{
+			stopRun();
 			resetCpu();
 			clearStack();
 			gui.refreshGui();
@@ -327,48 +505,240 @@ public class Simulator {
 	/*
 	 * Handler that is called by user generated actions on the run button.
 	 * 
-	 * handleRun() uses the CPU's canStep boolean variable to determine if the system
-	 * is capable of stepping further. If canStep == true, the handler will call the
-	 * step method until canStep == false, which occurs when the terminating keyword 
-	 * END has been reached by the CPU.
+	 * handleRun() starts a new run on an ExecutionThread, or resumes the current run 
+	 * if it has been paused. The CPU is stepped on the worker thread until canStep == false,
+	 * which occurs when the terminating keyword END has been reached by the CPU, so the 
+	 * GUI remains responsive while the program runs.
 	 * 
-	 * The GUI is refreshed after the run sequence has been completed. 
+	 * The GUI is refreshed at most ExecutionThread.DEFAULT_REFRESH_RATE times per second 
+	 * during the run and once more when the run has finished. 
 	 * 
-	 * The run handler includes a failsafe that prevents the run method from causing
-	 * an infinite loop if the END keyword is never reached. The run loop will break
-	 * if the number of executed steps exceeds 256.
+	 * The run includes a failsafe that prevents an infinite loop if the END keyword is 
+	 * never reached. The run stops once the number of executed steps or clock cycles reaches 
+	 * the run budget, which can be changed through the CPU menu.
 	 */
 	private void handleRun()
 	{
-		boolean canStep = mos6502.getCpu().getCanStep();
-		int stepCounter = 0;
+		if(executionThread != null && executionThread.isRunning())
+		{
+			if(executionThread.isPaused())
+			{
+				executionThread.resume();
+				setRunControls(true, false);
+			}
+			return;
+		}
+		
+		executionThread = new ExecutionThread(mos6502, new ExecutionThread.Listener() {
+			public void frame(ExecutionThread thread)
+			{
+				gui.refreshGui();
+			}
+			
+			public void finished(ExecutionThread thread, int reason, String message)
+			{
+				if(thread != executionThread)
+					return;
+				
+				gui.getAssemblerTextArea().setText(message);
+				gui.refreshGui();
+				gui.setCarets(0);
+				setRunControls(false, false);
+			}
+		});
+		
+		executionThread.setStepBudget(runBudget);
+		executionThread.setCycleBudget(runCycleBudget);
+		setRunControls(true, false);
+		executionThread.start();
+	}
+	
+	/*
+	 * Handler that is called by user generated actions on the pause button.
+	 */
+	private void handlePause()
+	{
+		if(executionThread != null && executionThread.isRunning())
+		{
+			executionThread.pause();
+			setRunControls(true, true);
+			gui.getAssemblerTextArea().setText("Run paused. Press Run to resume.");
+		}
+	}
+	
+	/*
+	 * Stops the current run, if any, and waits for the worker thread to finish so the
+	 * machine can be safely modified by the caller.
+	 */
+	private void stopRun()
+	{
+		if(executionThread != null && executionThread.isRunning())
+		{
+			executionThread.stop();
+			gui.getAssemblerTextArea().setText("Run stopped after " + executionThread.getStepsExecuted() + " steps.");
+			gui.refreshGui();
+		}
+		
+		executionThread = null; //finished() of the stopped run is ignored
+		setRunControls(false, false);
+	}
+	
+	/*
+	 * Enables the run controls that apply to the current run state
+	 */
+	private void setRunControls(boolean running, boolean paused)
+	{
+		btnRun.setEnabled(!running || paused);
+		btnPause.setEnabled(running && !paused);
+		btnStop.setEnabled(running);
+	}
+	
+	/*
+	 * Handler that is called by user generated actions on the "Add Breakpoint" menu item.
+	 * Prompts for an address in hex, optionally followed by a condition (see Breakpoints.Condition).
+	 * An address of * adds a condition that is tested at every address.
+	 */
+	private void handleAddBreakpoint()
+	{
+		String input = JOptionPane.showInputDialog(null, "Breakpoint address in hex, optionally followed by a condition,"
+				+ "\ne.g. 1C or 1C A == $03 && C. Use * for a condition tested at every address.");
+		
+		if(input == null || input.trim().isEmpty()) //dialog cancelled
+			return;
+		
+		stopRun();
+		
+		String[] parts = input.trim().split("\\s+", 2);
+		String condition = parts.length > 1 ? parts[1] : null;
 		
 		try
 		{
-			while(canStep)
+			if(parts[0].equals("*"))
 			{
-				step();
-				canStep = mos6502.getCpu().getCanStep();
-				stepCounter++;
+				if(condition == null)
+					throw new IllegalArgumentException("A condition is needed for a breakpoint at every address");
 				
-				if(stepCounter >= 256)
-				{
-					gui.getAssemblerTextArea().setText("Run loop reached limit of 256 steps and has stopped.");
-					break;
-				}
-					
+				mos6502.getBreakpoints().addCondition(condition);
+			}
+			else if(condition == null)
+			{
+				mos6502.getBreakpoints().addBreakpoint(Integer.parseInt(parts[0], 16));
+			}
+			else
+			{
+				mos6502.getBreakpoints().addBreakpoint(Integer.parseInt(parts[0], 16), condition);
 			}
 			
-			if(canStep == false)
-				gui.getAssemblerTextArea().setText("Terminating instruction END has been reached. Terminating runloop.");
-			
-			gui.refreshGui();
-			gui.setCarets(0);
+			gui.getAssemblerTextArea().setText(mos6502.getBreakpoints().toString());
 		}
-		catch(Exception ex)
+		catch(IllegalArgumentException ex)
 		{
-			System.out.println("[Simulator] Exception raised during CPU run: " + ex);
-			ex.printStackTrace();
+			gui.getAssemblerTextArea().setText("Invalid breakpoint: " + ex.getMessage());
+		}
+	}
+	
+	/*
+	 * Handler that is called by user generated actions on the "Add Watchpoint" menu item.
+	 * Prompts for an address in hex followed by r, w or rw, reads and writes are watched by default.
+	 */
+	private void handleAddWatchpoint()
+	{
+		String input = JOptionPane.showInputDialog(null, "Watchpoint address in hex followed by r, w or rw, e.g. 80 w");
+		
+		if(input == null || input.trim().isEmpty()) //dialog cancelled
+			return;
+		
+		stopRun();
+		
+		String[] parts = input.trim().split("\\s+");
+		String mode = parts.length > 1 ? parts[1].toLowerCase() : "rw";
+		
+		try
+		{
+			int watch = (mode.contains("r") ? Breakpoints.WATCH_READ : 0) | (mode.contains("w") ? Breakpoints.WATCH_WRITE : 0);
+			mos6502.getBreakpoints().addWatchpoint(Integer.parseInt(parts[0], 16), watch);
+			gui.getAssemblerTextArea().setText(mos6502.getBreakpoints().toString());
+		}
+		catch(IllegalArgumentException ex)
+		{
+			gui.getAssemblerTextArea().setText("Invalid watchpoint: " + ex.getMessage());
+		}
+	}
+	
+	/*
+	 * Handler that is called by user generated actions on the "Profiler Heatmap" menu item.
+	 * Profiling runs while the heatmap is shown, turning it off discards the counts.
+	 */
+	private void handleHeatmap(boolean enabled)
+	{
+		mos6502.setProfiling(enabled);
+		gui.setHeatmap(enabled);
+		gui.refreshGui();
+	}
+	
+	/*
+	 * Handler that is called by user generated actions on the "Profiler Report" menu item.
+	 * Shows the busiest opcodes and addresses in the output console.
+	 */
+	private void handleProfilerReport()
+	{
+		if(mos6502.getProfiler() == null)
+		{
+			gui.getAssemblerTextArea().setText("The profiler is off, turn it on with Memory > Profiler Heatmap.");
+			return;
+		}
+		
+		ByteArrayOutputStream report = new ByteArrayOutputStream();
+		mos6502.getProfiler().report(new PrintStream(report), PROFILER_REPORT_LIMIT);
+		gui.getAssemblerTextArea().setText(report.toString());
+	}
+	
+	/*
+	 * Handler that is called by user generated actions on the "Set Run Budget" menu item.
+	 * Prompts the user for the maximum number of steps and clock cycles a single run may execute.
+	 */
+	private void handleRunBudget()
+	{
+		JTextField stepsField = new JTextField(Long.toString(runBudget));
+		JTextField cyclesField = new JTextField(Long.toString(runCycleBudget));
+		
+		JPanel panel = new JPanel(new GridLayout(2, 2, 5, 5));
+		panel.add(new JLabel("Maximum steps per run (0 for no limit):"));
+		panel.add(stepsField);
+		panel.add(new JLabel("Maximum cycles per run (0 for no limit):"));
+		panel.add(cyclesField);
+		
+		if(JOptionPane.showConfirmDialog(null, panel, "Set Run Budget", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION)
+			return; //dialog cancelled
+		
+		long steps = parseBudget(stepsField.getText());
+		long cycles = parseBudget(cyclesField.getText());
+		
+		if(steps < 0 || cycles < 0)
+		{
+			gui.getAssemblerTextArea().setText("Invalid run budget: " + (steps < 0 ? stepsField.getText() : cyclesField.getText()));
+			return;
+		}
+		
+		runBudget = steps;
+		runCycleBudget = cycles;
+		gui.getAssemblerTextArea().setText("Run budget set to " + (runBudget == 0 ? "no step limit" : runBudget + " steps") 
+				+ " and " + (runCycleBudget == 0 ? "no cycle limit." : runCycleBudget + " cycles."));
+	}
+	
+	/*
+	 * Returns the budget entered in the run budget dialog, -1 if it is not a non-negative number
+	 */
+	private static long parseBudget(String input)
+	{
+		try
+		{
+			long budget = Long.parseLong(input.trim());
+			return budget < 0 ? -1 : budget;
+		}
+		catch(NumberFormatException ex)
+		{
+			return -1;
 		}
 	}
 	
@@ -390,10 +760,14 @@ public class Simulator {
 	 */
 	private void handleRunAssembler()
 	{
+		stopRun();
 		clearRam();
 		clearStack();
 		resetCpu();
 		
+		if(mos6502.getProfiler() != null)
+			mos6502.getProfiler().clear();
+		
 		System.out.println("\n[Simulator] RAM cleared");
 		
 		String assemblyContent = editorTextArea.getText(); //Get text from editor window 
@@ -404,16 +778,22 @@ public class Simulator {
 		}
 		else
 		{
-			createInputFile(assemblyContent); //Create assembly_input.txt file using text in editor window
 			try
 			{
-				ReadAssemblyFile raf = new ReadAssemblyFile(assemblyFilepath); //Read assembly file into program
+				String[] assemblyText = assemblyContent.split("\\r?\\n"); //Each element holds a single line of the editor window
 				System.out.println("[Simulator] BEGIN ASSEMBLER RUN");
-				Compiler c = new Compiler(raf.getAssemblyText()); //Compile assembly file into binary and output to binary_output.txt
+				Compiler c = new Compiler(assemblyText); //Compile assembly text into an in-memory program
 				System.out.println("[Simulator] END ASSEMBLER RUN");
-				loadProgram(); //Load binary from binary_output.txt into memory
-				System.out.println("\n[Simulator] Program successfully assembled and loaded into memory.");
-				gui.getAssemblerTextArea().setText("Program successfully assembled into binary and loaded into memory.");
+				
+				if(loadProgram(c.getProgram())) //Load assembled program directly into memory
+				{
+					System.out.println("\n[Simulator] Program successfully assembled and loaded into memory.");
+					gui.getAssemblerTextArea().setText("Program successfully assembled into binary and loaded into memory.");
+				}
+				else
+				{
+					gui.getAssemblerTextArea().setText("Program is too large to fit into " + mos6502.getRam().getRamSize() + " bytes of memory.");
+				}
 			}
 			catch(CompilerException ex)
 			{
@@ -427,33 +807,6 @@ public class Simulator {
 		
 	}
 	
-	/*
-	 * Utility method for the handleRunAssembler() method.
-	 * 
-	 * Generates a blank text file using the filepath stored in the
-	 * AssemblyFilepath string. This is the textfile that the user's 
-	 * custom program is loaded into before being processed by the 
-	 * compiler.
-	 */
-	private void createInputFile(String content)
-	{
-		
-		File file = new File(assemblyFilepath);
-		
-		try
-		{
-			writer = new PrintWriter(file);
-		}
-		catch(FileNotFoundException e)
-		{
-			System.err.println("[Simulation] createInputFile - File not found.");
-		}
-		
-		writer.print(content);
-		writer.close();
-		System.out.println("\n[Simulation] assembly_input file created successfully.");
-	}
-	
 	/*
 	 * Calls the simulation's actual step method. If an exception is raised by the step
 	 * method the exception error message is used to update the output TextArea with the
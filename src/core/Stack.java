@@ -11,41 +11,156 @@ import util.Utils;
  * 
  * TODO: May need to remove stackpointer from this class and implement a register version instead. Otherwise 
  * inconsistencies between what is represented by a register class and what is just an int.
+ * 
+ * The stack can be mapped into RAM with mapToRam(), as page 1 is on the 6502. The stack is
+ * then a view onto that region of RAM: pushes and pops read and write RAM, and the stack
+ * contents are part of memory (visible to loads and stores, and copied with RAM).
  */
 
 public class Stack {
 
 	private CPU cpu;
 	
-	private int[] stack;
+	/*
+	 * Stack contents as bytes. Stack positions are masked into range, so an SP that moves 
+	 * past either end of the stack wraps around as it does within page 1 on the 6502.
+	 */
+	private byte[] stack;
+	
+	/*
+	 * Size - 1, see stack
+	 */
+	private final int spMask;
+	
+	/*
+	 * Stack positions pushed or popped since the last call to clearDirty()
+	 */
+	private DirtyBitmap dirty;
+	
+	/*
+	 * Stack size of the lite machine (0x00 - 0x3F) and of the full machine, where the stack
+	 * occupies a whole page as on the 6502 (0x00 - 0xFF)
+	 */
+	public static final int LITE_SIZE = 64;
+	public static final int FULL_SIZE = 256;
+	
+	/*
+	 * Default RAM regions for a stack mapped into RAM: the top 64 bytes of the lite machine's
+	 * memory (0xC0 - 0xFF) and page 1 (0x100 - 0x1FF) of the full machine
+	 */
+	public static final int LITE_RAM_BASE = 0xc0;
+	public static final int FULL_RAM_BASE = 0x100;
+	
+	/*
+	 * RAM holding the stack and address of stack position 0 within it, null and -1 
+	 * while the stack is held in its own array
+	 */
+	private RAM ram;
+	private int ramBase = -1;
+	
+	/*
+	 * Contents of the last snapshot taken or restored, and whether the stack has changed 
+	 * since, see snapshotContents()
+	 */
+	private byte[] baseContents;
+	private boolean modified = true;
+	
+	/*
+	 * Records the previous value of each push and pop, see StepJournal. A stack mapped to RAM
+	 * is recorded by the RAM.
+	 */
+	private StepJournal journal;
 	
 	/*Initalise all memory addresses to 0x00*/
 	private static final int DEFAULT_FILL = 0x00; 
 	
+	/*
+	 * Print each push and pop to the console, disabled for quiet execution
+	 */
+	private boolean verbose = true;
+	
 	public Stack()
 	{
-		stack = new int[64]; 
+		this(true);
+	}
+	
+	public Stack(boolean verbose)
+	{
+		this(LITE_SIZE, verbose);
+	}
+	
+	public Stack(int size, boolean verbose)
+	{
+		if(size <= 0 || (size & (size - 1)) != 0)
+			throw new IllegalArgumentException("Stack size must be a power of two: " + size);
+		
+		this.verbose = verbose;
+		spMask = size - 1;
+		stack = new byte[size]; 
+		dirty = new DirtyBitmap(size);
 		fill(DEFAULT_FILL);
 	}
 	
 	public void push(int sp, int data)
 	{	
-		stack[sp] = data;
-		System.out.println(data + " pushed to stack position " + (sp));
+		sp &= spMask;
+		if(ram != null)
+		{
+			ram.write(ramBase + sp, data);
+		}
+		else
+		{
+			if(journal != null)
+				journal.stackWritten(sp, stack[sp] & 0xff);
+			stack[sp] = (byte) data;
+			dirty.mark(sp);
+			modified = true;
+		}
+		if(verbose)
+			System.out.println(data + " pushed to stack position " + (sp));
 	}
 	
 	public int pop(int sp)
 	{
-		int popVal = stack[sp];
-		stack[sp] = 0;
-		System.out.println(popVal + " popped from stack position " + (sp));
+		sp &= spMask;
+		int popVal;
+		if(ram != null)
+		{
+			popVal = ram.read(ramBase + sp); //Popped values are left in memory as on the 6502
+		}
+		else
+		{
+			popVal = stack[sp] & 0xff;
+			if(journal != null)
+				journal.stackWritten(sp, popVal);
+			stack[sp] = 0;
+			dirty.mark(sp);
+			modified = true;
+		}
+		if(verbose)
+			System.out.println(popVal + " popped from stack position " + (sp));
 		return popVal;
 	}
 	
 	public void fill(int val)
 	{
-		Arrays.fill(this.stack, val);
-		System.out.println("[Stack] Stack contents set to: " + val);
+		if(ram != null)
+		{
+			for(int i = 0; i <= spMask; i++)
+			{
+				ram.write(ramBase + i, val);
+			}
+		}
+		else
+		{
+			Arrays.fill(this.stack, (byte) val);
+			if(journal != null)
+				journal.clear();
+			dirty.markAll();
+			modified = true;
+		}
+		if(verbose)
+			System.out.println("[Stack] Stack contents set to: " + val);
 	}
 
 	public void showAllStack()
@@ -54,7 +169,7 @@ public class Stack {
 		for(int i = 0; i < stack.length; i++)
 		{
 			String address = Utils.byteToHex(i);
-			int data = stack[i];
+			int data = getStackValue(i);
 			System.out.println(address + ": " + data);		
 		}
 	}
@@ -67,13 +182,13 @@ public class Stack {
 			if(i == sp)
 			{
 				String address = Utils.byteToHex(i);
-				int data = stack[i];
+				int data = getStackValue(i);
 				System.out.println(address + ": " + data + " <- SP");
 			}
 			else
 			{
 				String address = Utils.byteToHex(i);
-				int data = stack[i];
+				int data = getStackValue(i);
 				System.out.println(address + ": " + data);
 			}
 		}
@@ -81,7 +196,143 @@ public class Stack {
 	
 	public int getStackValue(int sp)
 	{
-		return stack[sp];
+		if(ram != null)
+			return ram.getAddressContents(ramBase + (sp & spMask));
+		
+		return stack[sp & spMask] & 0xff;
+	}
+	
+	/*
+	 * Moves the stack into RAM at base - base + size - 1, base must be a multiple of the stack 
+	 * size. The current stack contents are copied into RAM.
+	 */
+	public void mapToRam(RAM ram, int base)
+	{
+		if((base & spMask) != 0 || base < 0 || base + spMask >= ram.getRamSize())
+			throw new IllegalArgumentException("Stack cannot be mapped to 0x" + Integer.toHexString(base));
+		
+		if(this.ram != null)
+			unmapFromRam();
+		
+		for(int i = 0; i <= spMask; i++)
+		{
+			ram.write(base + i, stack[i] & 0xff);
+		}
+		this.ram = ram;
+		this.ramBase = base;
+	}
+	
+	/*
+	 * Moves the stack back into its own array, copying the contents out of RAM
+	 */
+	public void unmapFromRam()
+	{
+		if(ram == null)
+			return;
+		
+		for(int i = 0; i <= spMask; i++)
+		{
+			stack[i] = (byte) ram.getAddressContents(ramBase + i);
+		}
+		modified = true;
+		ram = null;
+		ramBase = -1;
+		dirty.markAll();
+	}
+	
+	/*
+	 * Returns the stack contents for a MachineSnapshot, shared with the previous snapshot if 
+	 * the stack has not changed since. Null while the stack is mapped to RAM, the contents are 
+	 * then part of the RAM snapshot. The returned array must not be modified.
+	 */
+	byte[] snapshotContents()
+	{
+		if(ram != null)
+			return null;
+		
+		if(modified || baseContents == null)
+		{
+			baseContents = stack.clone();
+			modified = false;
+		}
+		
+		return baseContents;
+	}
+	
+	/*
+	 * Restores the stack contents from an array returned by snapshotContents()
+	 */
+	void restoreContents(byte[] contents)
+	{
+		if(contents != baseContents || modified)
+		{
+			System.arraycopy(contents, 0, stack, 0, stack.length);
+			dirty.markAll();
+		}
+		
+		baseContents = contents;
+		modified = false;
+	}
+	
+	void setJournal(StepJournal journal)
+	{
+		this.journal = journal;
+	}
+	
+	public boolean isMappedToRam()
+	{
+		return ram != null;
+	}
+	
+	/*
+	 * Address of stack position 0 in RAM, -1 if the stack is not mapped to RAM
+	 */
+	public int getRamBase()
+	{
+		return ramBase;
+	}
+	
+	/*
+	 * Returns true if the stack position has been pushed or popped since the last call to clearDirty().
+	 * A stack mapped to RAM uses the RAM's record of written addresses instead, see RAM.isDirty()
+	 */
+	public boolean isDirty(int sp)
+	{
+		if(ram != null)
+			return ram.isDirty(ramBase + sp);
+		
+		return dirty.isMarked(sp);
+	}
+	
+	/*
+	 * Returns the first stack position at or after from that has changed since the last 
+	 * call to clearDirty(), -1 if there are none
+	 */
+	public int nextDirty(int from)
+	{
+		if(ram != null)
+		{
+			if(from < 0 || from > spMask)
+				return -1;
+			
+			int address = ram.nextDirty(ramBase + from);
+			return address == -1 || address > ramBase + spMask ? -1 : address - ramBase;
+		}
+		
+		return dirty.nextMarked(from);
+	}
+	
+	/*
+	 * A stack mapped to RAM is cleared along with the rest of RAM, see RAM.clearDirty()
+	 */
+	public void clearDirty()
+	{
+		dirty.clear();
+	}
+	
+	public int getStackSize()
+	{
+		return stack.length;
 	}
 	
 	public CPU getCpu() 
@@ -94,4 +345,14 @@ public class Stack {
 		this.cpu = cpu;
 	}
 	
+	public boolean isVerbose()
+	{
+		return verbose;
+	}
+	
+	public void setVerbose(boolean verbose)
+	{
+		this.verbose = verbose;
+	}
+	
 }
@@ -0,0 +1,254 @@
+package core;
+
+/*
+ * Undo journal recording the state changed by each CPU step, so that steps can be 
+ * taken back one at a time with MOS6502.stepBack().
+ * 
+ * For every step the registers, flags and counters from before the step are held in 
+ * a ring buffer of primitive arrays, along with the number of memory and stack bytes 
+ * the step wrote. The previous value of each written byte is held in a second ring. Most
+ * instructions write at most one byte, so a step costs around 25 bytes of journal and 
+ * taking it back is a constant amount of work.
+ * 
+ * Once full the oldest steps are dropped. Changes made to the machine outside of a step 
+ * (loading a program, fill(), reset(), restoring a snapshot) clear the journal, since the 
+ * steps before them can no longer be taken back. Writes to devices are not recorded.
+ */
+
+public class StepJournal {
+
+	/*
+	 * Set in a recorded write location for stack positions, otherwise the location is a RAM address
+	 */
+	private static final int STACK_WRITE = 1 << 24;
+	
+	/*
+	 * Ring buffer entries held for each step
+	 */
+	private static final int WRITES_PER_STEP = 4;
+	
+	private final CPU cpu;
+	private final RAM ram;
+	private final Stack stack;
+	
+	/*
+	 * Per step ring: a | x << 8 | y << 16 | sp << 24, pc | status << 16, ir | irOperand << 8, 
+	 * nextIr | nextIrOperand << 8, cycle counter and the number of writes made by the step
+	 */
+	private final int[] registers;
+	private final int[] pcStatus;
+	private final int[] instructions;
+	private final int[] nextInstructions;
+	private final long[] cycles;
+	private final byte[] writeCounts;
+	
+	/*
+	 * Write ring: location (address or stack position | STACK_WRITE) and previous value
+	 */
+	private final int[] writeLocations;
+	private final byte[] writeValues;
+	
+	/*
+	 * Slot of the next step and write, and the number of steps and writes held
+	 */
+	private int stepHead;
+	private int stepCount;
+	private int writeHead;
+	private int writeCount;
+	
+	/*
+	 * True while a step is being recorded, writes outside of a step clear the journal
+	 */
+	private boolean recording;
+	
+	/*
+	 * True while stepBack() writes the previous values back
+	 */
+	private boolean replaying;
+	
+	StepJournal(MOS6502 machine, int capacity)
+	{
+		if(capacity <= 0)
+			throw new IllegalArgumentException("Journal capacity must be positive: " + capacity);
+		
+		cpu = machine.getCpu();
+		ram = machine.getRam();
+		stack = machine.getStack();
+		
+		registers = new int[capacity];
+		pcStatus = new int[capacity];
+		instructions = new int[capacity];
+		nextInstructions = new int[capacity];
+		cycles = new long[capacity];
+		writeCounts = new byte[capacity];
+		
+		writeLocations = new int[capacity * WRITES_PER_STEP];
+		writeValues = new byte[capacity * WRITES_PER_STEP];
+	}
+	
+	/*
+	 * Called by the CPU before it executes an instruction
+	 */
+	void beginStep()
+	{
+		int capacity = registers.length;
+		if(stepCount == capacity)
+			dropOldestStep();
+		
+		int slot = stepHead;
+		registers[slot] = cpu.getA() | cpu.getX() << 8 | cpu.getY() << 16 | cpu.getSp() << 24;
+		pcStatus[slot] = cpu.getPc() | cpu.getProcessorStatusFlags() << 16;
+		instructions[slot] = (cpu.getIr() & 0xff) | cpu.getIrOperand() << 8;
+		nextInstructions[slot] = (cpu.getNextIr() & 0xff) | cpu.getNextIrOperand() << 8;
+		cycles[slot] = cpu.getCycleCounter();
+		writeCounts[slot] = 0;
+		
+		stepHead = (slot + 1) % capacity;
+		stepCount++;
+		recording = true;
+	}
+	
+	/*
+	 * Called by the CPU once the instruction has been executed
+	 */
+	void endStep()
+	{
+		recording = false;
+	}
+	
+	/*
+	 * Called by RAM before the address is written
+	 */
+	void ramWritten(int address, int previous)
+	{
+		written(address, previous);
+	}
+	
+	/*
+	 * Called by the Stack before the stack position is pushed or popped
+	 */
+	void stackWritten(int sp, int previous)
+	{
+		written(sp | STACK_WRITE, previous);
+	}
+	
+	private void written(int location, int previous)
+	{
+		if(replaying)
+			return;
+		
+		if(!recording)
+		{
+			clear();
+			return;
+		}
+		
+		int stepSlot = (stepHead + registers.length - 1) % registers.length;
+		if(writeCounts[stepSlot] == Byte.MAX_VALUE)
+		{
+			clear();
+			return;
+		}
+		
+		while(writeCount == writeLocations.length)
+		{
+			if(stepCount == 1)
+			{
+				//The current step alone fills the ring, it can not be taken back
+				clear();
+				return;
+			}
+			dropOldestStep();
+		}
+		
+		writeLocations[writeHead] = location;
+		writeValues[writeHead] = (byte) previous;
+		writeHead = (writeHead + 1) % writeLocations.length;
+		writeCount++;
+		writeCounts[stepSlot]++;
+	}
+	
+	private void dropOldestStep()
+	{
+		int capacity = registers.length;
+		int oldest = (stepHead + capacity - stepCount) % capacity;
+		writeCount -= writeCounts[oldest];
+		stepCount--;
+	}
+	
+	/*
+	 * Takes back the most recent step, returns false if there is no step to take back
+	 */
+	boolean stepBack()
+	{
+		if(stepCount == 0)
+			return false;
+		
+		int capacity = registers.length;
+		int slot = (stepHead + capacity - 1) % capacity;
+		
+		replaying = true;
+		try
+		{
+			for(int i = writeCounts[slot]; i > 0; i--)
+			{
+				writeHead = (writeHead + writeLocations.length - 1) % writeLocations.length;
+				writeCount--;
+				
+				int location = writeLocations[writeHead];
+				int previous = writeValues[writeHead] & 0xff;
+				if((location & STACK_WRITE) != 0)
+					stack.push(location & ~STACK_WRITE, previous);
+				else
+					ram.write(location, previous);
+			}
+		}
+		finally
+		{
+			replaying = false;
+		}
+		
+		int registerValues = registers[slot];
+		cpu.setA(registerValues & 0xff);
+		cpu.setX((registerValues >>> 8) & 0xff);
+		cpu.setY((registerValues >>> 16) & 0xff);
+		cpu.setSp(registerValues >>> 24);
+		cpu.setPc(pcStatus[slot] & 0xffff);
+		cpu.setProcessorStatusFlags(pcStatus[slot] >>> 16);
+		cpu.setIr(instructions[slot] & 0xff);
+		cpu.setIrOperand(instructions[slot] >>> 8);
+		cpu.setNextIr(nextInstructions[slot] & 0xff);
+		cpu.setNextIrOperand(nextInstructions[slot] >>> 8);
+		cpu.setCycleCounter(cycles[slot]);
+		cpu.setStepCounter(cpu.getStepCounter() - 1);
+		cpu.canStep = true;
+		
+		stepHead = slot;
+		stepCount--;
+		recording = false;
+		return true;
+	}
+	
+	/*
+	 * Drops every recorded step
+	 */
+	public void clear()
+	{
+		stepCount = 0;
+		writeCount = 0;
+		recording = false;
+	}
+	
+	/*
+	 * Number of steps that can currently be taken back
+	 */
+	public int getStepCount()
+	{
+		return stepCount;
+	}
+	
+	public int getCapacity()
+	{
+		return registers.length;
+	}
+}
@@ -0,0 +1,404 @@
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import compiler.InstructionTable;
+import exceptions.SimulationException;
+
+/*
+ * Execution trace holding one fixed width binary record per CPU step, enabled with
+ * MOS6502.setTraceRecorder().
+ *
+ * Each record is RECORD_SIZE bytes, stored as two longs:
+ *
+ * pc (16 bits) | opcode << 16 (8 bits) | operand << 24 (16 bits) | a << 40 | x << 48 | y << 56
+ * sp (8 bits) | status << 8 (8 bits) | cycle << 16 (48 bits)
+ *
+ * The registers and cycle counter are those from before the instruction executed, the
+ * pc is the address the instruction was fetched from. Records are written into a ring
+ * buffer preallocated for capacity records, so recording does not allocate and once
+ * full the oldest records are overwritten.
+ *
+ * With spillTo() each time the ring fills it is also copied to a memory mapped file,
+ * which then holds the whole trace as little endian records with no header. A trace
+ * file can be opened again with open() to search it or export it as text, or printed
+ * from the command line:
+ *
+ * Usage: TraceRecorder [--pc address] file.trace
+ */
+
+public class TraceRecorder {
+
+	/*
+	 * Size of a record in bytes
+	 */
+	public static final int RECORD_SIZE = 16;
+
+	private static final long CYCLE_MASK = (1L << 48) - 1;
+
+	/*
+	 * Ring of two words per record, null for a trace opened from a file
+	 */
+	private final long[] ring;
+	private final int capacity;
+
+	/*
+	 * Slot of the next record, the number of records held and the number made since
+	 * the trace began
+	 */
+	private int head;
+	private int held;
+	private long recordCount;
+
+	/*
+	 * File the ring is copied to when it fills and the number of records written to it
+	 */
+	private FileChannel spillChannel;
+	private File spillFile;
+	private long spilledCount;
+
+	/*
+	 * Records of a trace opened from a file
+	 */
+	private MappedByteBuffer records;
+
+	public TraceRecorder(int capacity)
+	{
+		if(capacity <= 0)
+			throw new IllegalArgumentException("Trace capacity must be positive: " + capacity);
+
+		this.capacity = capacity;
+		ring = new long[capacity * 2];
+	}
+
+	private TraceRecorder(MappedByteBuffer records)
+	{
+		this.records = records;
+		capacity = records.capacity() / RECORD_SIZE;
+		held = capacity;
+		recordCount = capacity;
+		ring = null;
+	}
+
+	/*
+	 * Opens a trace file written by spillTo() for reading, the records are mapped rather
+	 * than read into memory. Files are limited to 2GB, around 134 million records.
+	 */
+	public static TraceRecorder open(File file) throws IOException
+	{
+		try(RandomAccessFile input = new RandomAccessFile(file, "r"))
+		{
+			FileChannel channel = input.getChannel();
+			long size = channel.size();
+			if(size % RECORD_SIZE != 0 || size > Integer.MAX_VALUE)
+				throw new IOException("Not a trace file: " + file.getPath());
+
+			MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			records.order(ByteOrder.LITTLE_ENDIAN);
+			return new TraceRecorder(records);
+		}
+	}
+
+	/*
+	 * Copies the trace to the passed file, which is truncated. Must be called before
+	 * the first record is made. close() writes the records still held only in the ring.
+	 */
+	public void spillTo(File file) throws IOException
+	{
+		if(ring == null)
+			throw new IllegalStateException("Trace was opened from a file");
+		if(recordCount != 0)
+			throw new IllegalStateException("Trace has already started");
+
+		close();
+		spillFile = file;
+		spillChannel = new RandomAccessFile(file, "rw").getChannel();
+		spillChannel.truncate(0);
+		spilledCount = 0;
+	}
+
+	/*
+	 * Writes any records not yet copied to the spill file and closes it
+	 */
+	public void close() throws IOException
+	{
+		if(spillChannel == null)
+			return;
+
+		try
+		{
+			spill(head);
+		}
+		finally
+		{
+			spillChannel.close();
+			spillChannel = null;
+		}
+	}
+
+	/*
+	 * Records a step, called by the CPU once the instruction has been fetched
+	 */
+	void record(int pc, int opcode, int operand, int a, int x, int y, int sp, int status, long cycle) throws SimulationException
+	{
+		int slot = head * 2;
+		ring[slot] = (pc & 0xffff) | (long)(opcode & 0xff) << 16 | (long)(operand & 0xffff) << 24
+				| (long)(a & 0xff) << 40 | (long)(x & 0xff) << 48 | (long)(y & 0xff) << 56;
+		ring[slot + 1] = (sp & 0xff) | (status & 0xff) << 8 | (cycle & CYCLE_MASK) << 16;
+		recordCount++;
+		if(held < capacity)
+			held++;
+
+		if(++head == capacity)
+		{
+			if(spillChannel != null)
+			{
+				try
+				{
+					spill(capacity);
+				}
+				catch(IOException e)
+				{
+					throw new SimulationException("[TraceRecorder] Could not write trace file " + spillFile.getPath() + ": " + e.getMessage());
+				}
+			}
+			head = 0;
+		}
+	}
+
+	/*
+	 * Copies the first count slots of the ring to the end of the spill file
+	 */
+	private void spill(int count) throws IOException
+	{
+		if(count == 0)
+			return;
+
+		MappedByteBuffer buffer = spillChannel.map(FileChannel.MapMode.READ_WRITE, spilledCount * RECORD_SIZE, (long)count * RECORD_SIZE);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.asLongBuffer().put(ring, 0, count * 2);
+		spilledCount += count;
+	}
+
+	/*
+	 * Number of records that can be read back, the oldest is at index 0
+	 */
+	public int size()
+	{
+		return held;
+	}
+
+	/*
+	 * Returns the first word of the record at the passed index
+	 */
+	private long first(int index)
+	{
+		if(ring == null)
+			return records.getLong(index * RECORD_SIZE);
+
+		return ring[slot(index) * 2];
+	}
+
+	private long second(int index)
+	{
+		if(ring == null)
+			return records.getLong(index * RECORD_SIZE + 8);
+
+		return ring[slot(index) * 2 + 1];
+	}
+
+	private int slot(int index)
+	{
+		if(index < 0 || index >= size())
+			throw new IndexOutOfBoundsException("Trace record " + index + " of " + size());
+
+		int slot = head - held + index;
+		return slot < 0 ? slot + capacity : slot;
+	}
+
+	public int getPc(int index)
+	{
+		return (int)first(index) & 0xffff;
+	}
+
+	public int getOpcode(int index)
+	{
+		return (int)(first(index) >>> 16) & 0xff;
+	}
+
+	public int getOperand(int index)
+	{
+		return (int)(first(index) >>> 24) & 0xffff;
+	}
+
+	public int getA(int index)
+	{
+		return (int)(first(index) >>> 40) & 0xff;
+	}
+
+	public int getX(int index)
+	{
+		return (int)(first(index) >>> 48) & 0xff;
+	}
+
+	public int getY(int index)
+	{
+		return (int)(first(index) >>> 56) & 0xff;
+	}
+
+	public int getSp(int index)
+	{
+		return (int)second(index) & 0xff;
+	}
+
+	public int getStatus(int index)
+	{
+		return (int)(second(index) >>> 8) & 0xff;
+	}
+
+	public long getCycle(int index)
+	{
+		return second(index) >>> 16;
+	}
+
+	/*
+	 * Returns the index of the first record at or after from with the passed pc, or -1
+	 */
+	public int find(int pc, int from)
+	{
+		int size = size();
+		for(int i = Math.max(from, 0); i < size; i++)
+		{
+			if(getPc(i) == pc)
+				return i;
+		}
+
+		return -1;
+	}
+
+	/*
+	 * Returns the index of the first record at or after from with the passed opcode, or -1
+	 */
+	public int findOpcode(int opcode, int from)
+	{
+		int size = size();
+		for(int i = Math.max(from, 0); i < size; i++)
+		{
+			if(getOpcode(i) == opcode)
+				return i;
+		}
+
+		return -1;
+	}
+
+	/*
+	 * Formats a record as a line of key=value pairs, e.g.
+	 *
+	 * pc=0010 op=A9 LDA operand=05 a=00 x=00 y=00 sp=3F p=20 cycle=12
+	 */
+	public String format(int index)
+	{
+		int opcode = getOpcode(index);
+
+		return String.format("pc=%04X op=%02X %s operand=%02X a=%02X x=%02X y=%02X sp=%02X p=%02X cycle=%d",
+				getPc(index), opcode, symbol(opcode), getOperand(index),
+				getA(index), getX(index), getY(index), getSp(index), getStatus(index), getCycle(index));
+	}
+
+	/*
+	 * Mnemonic of an opcode, including the BEGIN and END keywords
+	 */
+	static String symbol(int opcode)
+	{
+		if(opcode == 0xef)
+			return "BEGIN";
+		if(opcode == 0xff)
+			return "END";
+
+		String symbol = InstructionTable.getMnemonic(opcode);
+		return symbol == null ? "???" : symbol;
+	}
+
+	/*
+	 * Prints every record held, one line each
+	 */
+	public void export(PrintStream out)
+	{
+		int size = size();
+		for(int i = 0; i < size; i++)
+		{
+			out.println(format(i));
+		}
+	}
+
+	/*
+	 * Number of records made since the trace began, including any overwritten in the ring
+	 */
+	public long getRecordCount()
+	{
+		return recordCount;
+	}
+
+	/*
+	 * Number of records written to the spill file
+	 */
+	public long getSpilledCount()
+	{
+		return spilledCount;
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/*
+	 * Prints a trace file as text, optionally only the records at the passed pc
+	 */
+	public static void main(String[] args)
+	{
+		int pc = -1;
+		String filepath = null;
+
+		for(int i = 0; i < args.length; i++)
+		{
+			if(args[i].equals("--pc") && i + 1 < args.length)
+				pc = Integer.parseInt(args[++i], 16);
+			else
+				filepath = args[i];
+		}
+
+		if(filepath == null)
+		{
+			System.err.println("Usage: TraceRecorder [--pc address] file.trace");
+			System.exit(2);
+		}
+
+		try
+		{
+			TraceRecorder trace = open(new File(filepath));
+			if(pc < 0)
+			{
+				trace.export(System.out);
+			}
+			else
+			{
+				for(int i = trace.find(pc, 0); i >= 0; i = trace.find(pc, i + 1))
+				{
+					System.out.println(i + " " + trace.format(i));
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			System.err.println("Could not read trace file: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -13,6 +13,8 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import java.awt.SystemColor;
+import java.awt.Color;
+import java.util.ArrayList;
 import java.util.HashMap;
 
 import javax.swing.UIManager;
@@ -24,11 +26,18 @@ import javax.swing.JComboBox;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.ImageIcon;
 import javax.swing.JMenuItem;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.border.BevelBorder;
 import javax.swing.border.EtchedBorder;
 import javax.swing.border.SoftBevelBorder;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Highlighter;
 
 import core.MOS6502;
+import core.Profiler;
+import core.RAM;
+import core.Stack;
 import util.Utils;
 import javax.swing.JList;
 import javax.swing.AbstractListModel;
@@ -47,13 +56,45 @@ public class GUI2 {
 	private JFrame frmlite;
 	
 	private static JTextArea register1, register2TextArea, stackTextArea, editorTextArea, psrTextArea, psr2TextArea, memmapTextArea, assemblerTextArea;
-	private static JButton btnRun, btnStep, btnReset;
-	private static JMenuItem mntmClearMemory, mntmClearStack, mntmQuit, mntmResetCpu, mntmClearEditor, mntmRunAssembler, mntmHelp, mntmAbout, mntmClearOutputConsole;
+	private static JButton btnRun, btnPause, btnStop, btnStepBack, btnStep, btnReset;
+	private static JCheckBoxMenuItem mntmHeatmap;
+	private static JMenuItem mntmAddBreakpoint, mntmAddWatchpoint, mntmClearBreakpoints, mntmProfilerReport, mntmClearMemory, mntmClearStack, mntmQuit, mntmResetCpu, mntmRunBudget, mntmClearEditor, mntmRunAssembler, mntmHelp, mntmAbout, mntmClearOutputConsole;
 	private static JComboBox<?> comboBox;
 	private static JScrollPane memmapScrollPane, stackScrollPane;
 	
 	private HashMap<Integer, String> asciiMap;
 	
+	/*
+	 * Number of lines shown in the memory and stack maps
+	 */
+	private static final int MEMORY_MAP_LINES = 256;
+	private static final int STACK_MAP_LINES = 64;
+	
+	/*
+	 * The RAM and Stack currently drawn in the memory and stack maps, and the positions
+	 * of the PC and SP markers, used to update the maps in place between frames
+	 */
+	private RAM shownRam;
+	private Stack shownStack;
+	private int shownPc = -1;
+	private int shownSp = -1;
+	
+	/*
+	 * Shades the memory map by the profiler's counts when set, see populateHeatmap()
+	 */
+	private boolean heatmap = false;
+	
+	/*
+	 * Painters for each level of heat, from barely used to the busiest address
+	 */
+	private static final int HEAT_LEVELS = 8;
+	private final Highlighter.HighlightPainter[] heatPainters = new Highlighter.HighlightPainter[HEAT_LEVELS];
+	
+	/*
+	 * Highlights added by the heatmap, removed on the next refresh
+	 */
+	private final ArrayList<Object> heatHighlights = new ArrayList<Object>();
+	
 	ImageIcon img = new ImageIcon("./source/6502.png");
 
 
@@ -86,15 +127,19 @@ public class GUI2 {
 	public GUI2() {
 		initialize();
 		populateAsciiMap();
+		populateHeatPainters();
 		System.out.println("\n[GUI] GUI Initialised");
 	}
 	
 	public void refreshGui()
 	{
+		//The stack map goes first, a stack mapped to RAM uses the RAM's dirty addresses, which
+		//populateMemoryMap() clears
+		populateStackMap();
 		populateMemoryMap();
+		populateHeatmap();
 		populateRegisterContents();
 		populatePsrContents();
-		populateStackMap();
 	}
 	
 	/*
@@ -103,160 +148,215 @@ public class GUI2 {
 	public void setSimMachine(MOS6502 machine)
 	{
 		this.machine = machine;
+		shownRam = null; //Rebuild the memory and stack maps for the new machine
+		shownStack = null;
 	}
 	
+	/*
+	 * Updates the memory map. The whole map is only built when a machine is first shown,
+	 * after that only the lines of addresses written since the last frame (see RAM.nextDirty())
+	 * and the lines the PC has moved between are replaced, so a refresh costs O(changed bytes).
+	 */
 	public void populateMemoryMap()
 	{
-		String memoryMap = "";
+		RAM ram = machine.getRam();
 		int pc = machine.getCpu().getPc();
 		
-		
-		for(int i = 0; i < 256; i++)
+		if(ram != shownRam)
 		{
-			String memoryString = "";
-			
-			String currentHexAddress = Utils.DecToHex(i);
-			int memContents = machine.getRam().getAddressContents(i);
-			String memContentsHex = Utils.DecToHex(memContents);
-			String instructionSymbol = machine.getCpu().determineInstructionSymbol(memContents);
-			String instructionBox = "[" + instructionSymbol + "]";
-			String asciiChar = " '" + determineAsciiChar(memContents) + "'";
-			
-			
-			if(currentHexAddress.length() == 0)
+			StringBuilder memoryMap = new StringBuilder();
+			for(int i = 0; i < MEMORY_MAP_LINES; i++)
 			{
-				currentHexAddress = "00";
+				memoryMap.append(formatMapLine(i, ram.getAddressContents(i), i == pc)).append('\n');
 			}
-			
-			if(currentHexAddress.length() == 1)
-			{
-				currentHexAddress = "0".concat(currentHexAddress);
-			}
-			
-			if(memContentsHex.length() == 0)
-			{
-				memContentsHex = "00";
-			}
-			
-			if(memContentsHex.length() == 1)
-			{
-				memContentsHex = "0".concat(memContentsHex);
-			}
-			
-			
-			
-			memoryString = memoryString.concat("0x" + currentHexAddress + ": $" + memContentsHex + " (" + memContents + ")");
-			
-			int stringLength = memoryString.length();
-			
-			while(stringLength < 16)
-			{
-				memoryString = memoryString.concat(" ");
-				stringLength = memoryString.length();
-			}
-			
-			memoryString = memoryString.concat(asciiChar);
-			
-			while(stringLength < 22)
+			memmapTextArea.setText(memoryMap.toString());
+			shownRam = ram;
+		}
+		else
+		{
+			for(int i = ram.nextDirty(0); i != -1 && i < MEMORY_MAP_LINES; i = ram.nextDirty(i + 1))
 			{
-				memoryString = memoryString.concat(" ");
-				stringLength = memoryString.length();
+				replaceLine(memmapTextArea, i, formatMapLine(i, ram.getAddressContents(i), i == pc));
 			}
 			
-			
-			memoryString = memoryString.concat(instructionBox);
-			
-			if(i == pc)
+			if(shownPc != pc)
 			{
-				String pcStr = "  <- PC";
-				memoryString = memoryString + pcStr;
+				if(shownPc >= 0 && shownPc < MEMORY_MAP_LINES)
+					replaceLine(memmapTextArea, shownPc, formatMapLine(shownPc, ram.getAddressContents(shownPc), false));
+				if(pc < MEMORY_MAP_LINES)
+					replaceLine(memmapTextArea, pc, formatMapLine(pc, ram.getAddressContents(pc), true));
 			}
-			
-			memoryString = memoryString.concat("\n");
-			
-			memoryMap = memoryMap.concat(memoryString);
-			
 		}
 		
-		memmapTextArea.setText(memoryMap);
-		
+		ram.clearDirty();
+		shownPc = pc;
 	}
 	
-	public void populateStackMap()
+	/*
+	 * Highlights each line of the memory map by the activity of its address (see Profiler.getHeat()), 
+	 * on a log scale relative to the busiest address. Removes the highlights when the heatmap 
+	 * is off or the machine is not profiling.
+	 */
+	public void populateHeatmap()
 	{
-		String stackMap = "";
-		int sp = machine.getCpu().getSp();
+		Highlighter highlighter = memmapTextArea.getHighlighter();
+		for(Object highlight : heatHighlights)
+		{
+			highlighter.removeHighlight(highlight);
+		}
+		heatHighlights.clear();
 		
+		Profiler profiler = machine.getProfiler();
+		if(!heatmap || profiler == null)
+			return;
 		
-		for(int i = 63; i > -1; i--)
+		int lines = Math.min(MEMORY_MAP_LINES, profiler.getMemorySize());
+		long max = 0;
+		for(int i = 0; i < lines; i++)
 		{
-			String stackString = "";
-			
-			String currentHexAddress = Utils.DecToHex(i);
-			int memContents = machine.getStack().getStackValue(i);
-			String memContentsHex = Utils.DecToHex(memContents);
-			String instructionSymbol = machine.getCpu().determineInstructionSymbol(memContents);
-			String instructionBox = "[" + instructionSymbol + "]";
-			String asciiChar = " '" + determineAsciiChar(memContents) + "'";
-			
-			
-			if(currentHexAddress.length() == 0)
-			{
-				currentHexAddress = "00";
-			}
-			
-			if(currentHexAddress.length() == 1)
-			{
-				currentHexAddress = "0".concat(currentHexAddress);
-			}
-			
-			if(memContentsHex.length() == 0)
-			{
-				memContentsHex = "00";
-			}
-			
-			if(memContentsHex.length() == 1)
+			max = Math.max(max, profiler.getHeat(i));
+		}
+		
+		if(max == 0)
+			return;
+		
+		double scale = (HEAT_LEVELS - 1) / Math.log(max + 1);
+		try
+		{
+			for(int i = 0; i < lines; i++)
 			{
-				memContentsHex = "0".concat(memContentsHex);
+				long heat = profiler.getHeat(i);
+				if(heat > 0)
+				{
+					int level = (int) (Math.log(heat + 1) * scale);
+					heatHighlights.add(highlighter.addHighlight(memmapTextArea.getLineStartOffset(i), memmapTextArea.getLineEndOffset(i) - 1, heatPainters[level]));
+				}
 			}
-			
-			stackString = stackString.concat("0x" + currentHexAddress + ": $" + memContentsHex + " (" + memContents + ")");
-			
-			
-			
-			int stringLength = stackString.length();
-			
-			while(stringLength < 16)
+		}
+		catch(BadLocationException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/*
+	 * Updates the stack map, which is shown from the top of the stack down, in the same 
+	 * way as populateMemoryMap()
+	 */
+	public void populateStackMap()
+	{
+		Stack stack = machine.getStack();
+		int sp = machine.getCpu().getSp();
+		
+		if(stack != shownStack)
+		{
+			StringBuilder stackMap = new StringBuilder();
+			for(int i = STACK_MAP_LINES - 1; i > -1; i--)
 			{
-				stackString = stackString.concat(" ");
-				stringLength = stackString.length();
+				stackMap.append(formatMapLine(i, stack.getStackValue(i), i == sp)).append('\n');
 			}
-			
-			stackString = stackString.concat(asciiChar);
-			
-			while(stringLength < 22)
+			stackTextArea.setText(stackMap.toString());
+			shownStack = stack;
+		}
+		else
+		{
+			for(int i = stack.nextDirty(0); i != -1 && i < STACK_MAP_LINES; i = stack.nextDirty(i + 1))
 			{
-				stackString = stackString.concat(" ");
-				stringLength = stackString.length();
+				replaceLine(stackTextArea, STACK_MAP_LINES - 1 - i, formatMapLine(i, stack.getStackValue(i), i == sp));
 			}
 			
-			
-			stackString = stackString.concat(instructionBox);
-			
-			if(i == sp)
+			if(shownSp != sp)
 			{
-				String pcStr = "  <- PC";
-				stackString = stackString + pcStr;
+				if(shownSp >= 0 && shownSp < STACK_MAP_LINES)
+					replaceLine(stackTextArea, STACK_MAP_LINES - 1 - shownSp, formatMapLine(shownSp, stack.getStackValue(shownSp), false));
+				if(sp >= 0 && sp < STACK_MAP_LINES)
+					replaceLine(stackTextArea, STACK_MAP_LINES - 1 - sp, formatMapLine(sp, stack.getStackValue(sp), true));
 			}
-			
-			stackString = stackString.concat("\n");
-			
-			stackMap = stackMap.concat(stackString);
-			
 		}
 		
-		stackTextArea.setText(stackMap);
+		stack.clearDirty();
+		shownSp = sp;
+	}
+	
+	/*
+	 * Builds one line of the memory or stack map, without the trailing newline
+	 */
+	private String formatMapLine(int address, int memContents, boolean pointer)
+	{
+		String memoryString = "";
+		
+		String currentHexAddress = Utils.DecToHex(address);
+		String memContentsHex = Utils.DecToHex(memContents);
+		String instructionSymbol = machine.getCpu().determineInstructionSymbol(memContents);
+		String instructionBox = "[" + instructionSymbol + "]";
+		String asciiChar = " '" + determineAsciiChar(memContents) + "'";
+		
+		
+		if(currentHexAddress.length() == 0)
+		{
+			currentHexAddress = "00";
+		}
+		
+		if(currentHexAddress.length() == 1)
+		{
+			currentHexAddress = "0".concat(currentHexAddress);
+		}
+		
+		if(memContentsHex.length() == 0)
+		{
+			memContentsHex = "00";
+		}
+		
+		if(memContentsHex.length() == 1)
+		{
+			memContentsHex = "0".concat(memContentsHex);
+		}
 		
+		memoryString = memoryString.concat("0x" + currentHexAddress + ": $" + memContentsHex + " (" + memContents + ")");
+		
+		int stringLength = memoryString.length();
+		
+		while(stringLength < 16)
+		{
+			memoryString = memoryString.concat(" ");
+			stringLength = memoryString.length();
+		}
+		
+		memoryString = memoryString.concat(asciiChar);
+		
+		while(stringLength < 22)
+		{
+			memoryString = memoryString.concat(" ");
+			stringLength = memoryString.length();
+		}
+		
+		
+		memoryString = memoryString.concat(instructionBox);
+		
+		if(pointer)
+		{
+			String pcStr = "  <- PC";
+			memoryString = memoryString + pcStr;
+		}
+		
+		return memoryString;
+	}
+	
+	/*
+	 * Replaces the text of a line in the text area, the line's newline is kept
+	 */
+	private static void replaceLine(JTextArea textArea, int line, String text)
+	{
+		try
+		{
+			int start = textArea.getLineStartOffset(line);
+			int end = textArea.getLineEndOffset(line) - 1;
+			textArea.replaceRange(text, start, end);
+		}
+		catch(BadLocationException e)
+		{
+			e.printStackTrace();
+		}
 	}
 	
 	public void populateRegisterContents()
@@ -271,6 +371,11 @@ public class GUI2 {
 		psr2TextArea.setText(machine.getCpu().getPsrContentsSecondary());
 	}
 	
+	public void setHeatmap(boolean heatmap)
+	{
+		this.heatmap = heatmap;
+	}
+	
 	public void setCarets(int val)
 	{
 		memmapTextArea.setCaretPosition(val); //Scroll TextAreas back to top
@@ -404,6 +509,26 @@ public class GUI2 {
 		mntmResetCpu.setToolTipText("Resets the CPU back to initial values. Does not affect the stack or RAM state.");
 		mnCpu.add(mntmResetCpu);
 		
+		mntmRunBudget = new JMenuItem("Set Run Budget...");
+		mntmRunBudget.setToolTipText("Sets the maximum number of steps and clock cycles executed by the Run button.");
+		mnCpu.add(mntmRunBudget);
+		
+		mntmAddBreakpoint = new JMenuItem("Add Breakpoint...");
+		mntmAddBreakpoint.setToolTipText("Stops a run before the instruction at an address is executed, optionally only when a condition holds.");
+		mnCpu.add(mntmAddBreakpoint);
+		
+		mntmAddWatchpoint = new JMenuItem("Add Watchpoint...");
+		mntmAddWatchpoint.setToolTipText("Stops a run after an instruction reads or writes an address.");
+		mnCpu.add(mntmAddWatchpoint);
+		
+		mntmClearBreakpoints = new JMenuItem("Clear Breakpoints");
+		mntmClearBreakpoints.setToolTipText("Removes every breakpoint and watchpoint.");
+		mnCpu.add(mntmClearBreakpoints);
+		
+		mntmProfilerReport = new JMenuItem("Profiler Report");
+		mntmProfilerReport.setToolTipText("Shows the busiest opcodes and addresses counted by the profiler.");
+		mnCpu.add(mntmProfilerReport);
+		
 		JMenu mnMemory = new JMenu("Memory");
 		menuBar.add(mnMemory);
 		
@@ -415,6 +540,10 @@ public class GUI2 {
 		mntmClearStack.setToolTipText("Resets the stack back to initial values. Does not affect the CPU or RAM state.");
 		mnMemory.add(mntmClearStack);
 		
+		mntmHeatmap = new JCheckBoxMenuItem("Profiler Heatmap");
+		mntmHeatmap.setToolTipText("Profiles execution and shades each address in the memory map by how often it is executed, read or written.");
+		mnMemory.add(mntmHeatmap);
+		
 		JMenu mnAssembler = new JMenu("Assembler");
 		menuBar.add(mnAssembler);
 		
@@ -447,6 +576,20 @@ public class GUI2 {
 		btnRun.setToolTipText("Execute program until the terminating instruction is reached.");
 		buttonPanel.add(btnRun);
 		
+		btnPause = new JButton("Pause");
+		btnPause.setToolTipText("Pause the running program, press Run to resume.");
+		btnPause.setEnabled(false);
+		buttonPanel.add(btnPause);
+		
+		btnStop = new JButton("Stop");
+		btnStop.setToolTipText("Stop the running program.");
+		btnStop.setEnabled(false);
+		buttonPanel.add(btnStop);
+		
+		btnStepBack = new JButton("Step Back");
+		btnStepBack.setToolTipText("Take back the selected number of steps.");
+		buttonPanel.add(btnStepBack);
+		
 		btnStep = new JButton("Step");
 		btnStep.setToolTipText("Step through the program the selected number of times.");
 		buttonPanel.add(btnStep);
@@ -482,11 +625,38 @@ public class GUI2 {
 		}
 	}
 	
+	/*
+	 * Builds a painter for each heat level, from pale yellow to red
+	 */
+	public void populateHeatPainters()
+	{
+		for(int i = 0; i < HEAT_LEVELS; i++)
+		{
+			int fade = 200 - i * 200 / (HEAT_LEVELS - 1);
+			heatPainters[i] = new DefaultHighlighter.DefaultHighlightPainter(new Color(255, 55 + fade, fade));
+		}
+	}
+	
 	public JButton getBtnRun()
 	{
 		return btnRun;
 	}
 	
+	public JButton getBtnPause()
+	{
+		return btnPause;
+	}
+	
+	public JButton getBtnStop()
+	{
+		return btnStop;
+	}
+	
+	public JButton getBtnStepBack()
+	{
+		return btnStepBack;
+	}
+	
 	public JButton getBtnStep()
 	{
 		return btnStep;
@@ -522,6 +692,31 @@ public class GUI2 {
 		return assemblerTextArea;
 	}
 
+	public JCheckBoxMenuItem getMenuHeatmap()
+	{
+		return mntmHeatmap;
+	}
+	
+	public JMenuItem getMenuAddBreakpoint()
+	{
+		return mntmAddBreakpoint;
+	}
+	
+	public JMenuItem getMenuAddWatchpoint()
+	{
+		return mntmAddWatchpoint;
+	}
+	
+	public JMenuItem getMenuClearBreakpoints()
+	{
+		return mntmClearBreakpoints;
+	}
+	
+	public JMenuItem getMenuProfilerReport()
+	{
+		return mntmProfilerReport;
+	}
+	
 	public JMenuItem getMenuClearMemory()
 	{
 		return mntmClearMemory;
@@ -542,6 +737,11 @@ public class GUI2 {
 		return mntmResetCpu;
 	}
 	
+	public JMenuItem getMenuRunBudget()
+	{
+		return mntmRunBudget;
+	}
+	
 	public JMenuItem getMenuClearEditor()
 	{
 		return mntmClearEditor;
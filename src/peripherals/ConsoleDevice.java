@@ -0,0 +1,66 @@
+package peripherals;
+
+import java.io.PrintStream;
+
+import core.Device;
+
+/*
+ * Console output port.
+ * 
+ * Offset 0: writing a value outputs it as an ASCII character.
+ * Offset 1: writing a value outputs it as a 2 digit hexadecimal number.
+ * Reads always return 0x00.
+ * 
+ * Output is collected in a buffer (see getOutput()) and echoed to the passed 
+ * PrintStream if one is given.
+ */
+
+public class ConsoleDevice implements Device {
+
+	public static final int PORT_CHAR = 0;
+	public static final int PORT_HEX = 1;
+	
+	private final StringBuilder output = new StringBuilder();
+	
+	private PrintStream echo;
+	
+	public ConsoleDevice()
+	{
+		this(null);
+	}
+	
+	public ConsoleDevice(PrintStream echo)
+	{
+		this.echo = echo;
+	}
+	
+	public int read(int offset)
+	{
+		return 0;
+	}
+	
+	public void write(int offset, int data)
+	{
+		String text;
+		if(offset == PORT_CHAR)
+			text = String.valueOf((char) data);
+		else if(offset == PORT_HEX)
+			text = String.format("%02X", data);
+		else
+			return;
+		
+		output.append(text);
+		if(echo != null)
+			echo.print(text);
+	}
+	
+	public String getOutput()
+	{
+		return output.toString();
+	}
+	
+	public void clear()
+	{
+		output.setLength(0);
+	}
+}
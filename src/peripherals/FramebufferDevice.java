@@ -0,0 +1,71 @@
+package peripherals;
+
+import core.Device;
+
+/*
+ * Framebuffer of width x height pixels, one byte per pixel, stored row by row.
+ * Pixel (x, y) is held at offset y * width + x. Offsets outside of the framebuffer 
+ * read as 0x00 and ignore writes.
+ * 
+ * The modified flag is set by every write and cleared by clearModified(), allowing a 
+ * display to only redraw when the contents have changed.
+ */
+
+public class FramebufferDevice implements Device {
+
+	private final int width;
+	private final int height;
+	
+	private final byte[] pixels;
+	
+	private volatile boolean modified = false;
+	
+	public FramebufferDevice(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+		pixels = new byte[width * height];
+	}
+	
+	public int read(int offset)
+	{
+		if(offset < pixels.length)
+			return pixels[offset] & 0xff;
+		
+		return 0;
+	}
+	
+	public void write(int offset, int data)
+	{
+		if(offset < pixels.length)
+		{
+			pixels[offset] = (byte) data;
+			modified = true;
+		}
+	}
+	
+	public int getPixel(int x, int y)
+	{
+		return pixels[y * width + x] & 0xff;
+	}
+	
+	public int getWidth()
+	{
+		return width;
+	}
+	
+	public int getHeight()
+	{
+		return height;
+	}
+	
+	public boolean isModified()
+	{
+		return modified;
+	}
+	
+	public void clearModified()
+	{
+		modified = false;
+	}
+}
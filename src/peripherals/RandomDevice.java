@@ -0,0 +1,38 @@
+package peripherals;
+
+import java.util.Random;
+
+import core.Device;
+
+/*
+ * Random number source.
+ * 
+ * Every read returns a new random value between 0x00 and 0xFF.
+ * Writing a value to offset 0 reseeds the generator with it, giving a repeatable sequence.
+ */
+
+public class RandomDevice implements Device {
+
+	private final Random random;
+	
+	public RandomDevice()
+	{
+		random = new Random();
+	}
+	
+	public RandomDevice(long seed)
+	{
+		random = new Random(seed);
+	}
+	
+	public int read(int offset)
+	{
+		return random.nextInt(256);
+	}
+	
+	public void write(int offset, int data)
+	{
+		if(offset == 0)
+			random.setSeed(data);
+	}
+}
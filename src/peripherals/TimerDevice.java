@@ -0,0 +1,60 @@
+package peripherals;
+
+import core.CPU;
+import core.Device;
+
+/*
+ * Cycle timer driven by the CPU's cycle counter (CPU.getCycleCounter()).
+ * 
+ * Offsets 0-3: number of cycles since the timer was last reset, little endian. Reading
+ * offset 0 latches the count so that the 4 bytes can be read one after another.
+ * Writing any value to offset 0 resets the timer to 0.
+ * Other offsets read as 0x00.
+ */
+
+public class TimerDevice implements Device {
+
+	private final CPU cpu;
+	
+	private long startCycle;
+	
+	private long latched;
+	
+	public TimerDevice(CPU cpu)
+	{
+		this.cpu = cpu;
+		this.startCycle = cpu.getCycleCounter();
+	}
+	
+	public int read(int offset)
+	{
+		if(offset == 0)
+			latched = getElapsedCycles();
+		
+		if(offset < 4)
+			return (int) (latched >> (offset * 8)) & 0xff;
+		
+		return 0;
+	}
+	
+	public void write(int offset, int data)
+	{
+		if(offset == 0)
+		{
+			startCycle = cpu.getCycleCounter();
+			latched = 0;
+		}
+	}
+	
+	/*
+	 * Number of cycles since the timer was last reset, the CPU's counter is cleared by CPU.reset()
+	 */
+	public long getElapsedCycles()
+	{
+		long cycles = cpu.getCycleCounter();
+		if(cycles < startCycle) //CPU has been reset
+			startCycle = 0;
+		
+		return cycles - startCycle;
+	}
+}
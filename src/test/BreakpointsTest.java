@@ -0,0 +1,238 @@
+package test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import core.Breakpoints;
+import core.ExecutionThread;
+import core.MOS6502;
+import core.Stack;
+import exceptions.SimulationException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * This JUnit Test checks breakpoint conditions, and runs programs on an ExecutionThread
+ * that stop at breakpoints and watchpoints.
+ */
+
+public class BreakpointsTest extends TestCase {
+
+	private static final int[] LOOP_PROGRAM = {0xef, 0xef,  // BEGIN
+											   0xa2, 0x05,  // LDX #$05
+											   0xca, 0x00,  // DEX
+											   0xd0, 0xfc,  // BNE $FC
+											   0xff, 0xff}; // END
+
+	private static final int[] STORE_PROGRAM = {0xef, 0xef,  // BEGIN
+												0xa2, 0x03,  // LDX #$03
+												0x9d, 0x80,  // STA $80,X
+												0xca, 0x00,  // DEX
+												0xd0, 0xfa,  // BNE $FA
+												0xff, 0xff}; // END
+
+	protected MOS6502 machine;
+	protected Breakpoints breakpoints;
+
+	protected CountDownLatch finished;
+	protected int reason;
+	protected String message;
+
+	public BreakpointsTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(BreakpointsTest.class);
+	}
+
+	public void setUp()
+	{
+		machine = new MOS6502(false);
+		breakpoints = machine.getBreakpoints();
+	}
+
+	public void testConditions() throws SimulationException
+	{
+		machine.loadRAM(LOOP_PROGRAM);
+		machine.resetCPU();
+		machine.getCpu().step(2); //X is 5, Z and N are clear
+
+		assertTrue(test("X == 5"));
+		assertTrue(test("x==$05"));
+		assertTrue(test("X >= 0x5 && A == 0"));
+		assertFalse(test("X > 5"));
+		assertTrue(test("X > 5 || A == 0"));
+		assertFalse(test("X == 5 && Z"));
+		assertTrue(test("X == 5 && !Z && !N"));
+		assertTrue(test("Z == 0 && PC == 4"));
+		assertTrue(test("SP != 0 && P > 0"));
+
+		String[] invalid = {"", "Q == 1", "A ~ 3", "A == zz", "A == 1 &&", "X"};
+		for(String condition : invalid)
+		{
+			try
+			{
+				new Breakpoints.Condition(condition);
+				fail("Invalid condition accepted: " + condition);
+			}
+			catch(IllegalArgumentException e)
+			{
+			}
+		}
+	}
+
+	public void testInactiveWhenEmpty()
+	{
+		assertFalse(breakpoints.isActive());
+
+		breakpoints.addBreakpoint(0x06);
+		breakpoints.addWatchpoint(0x80, Breakpoints.WATCH_WRITE);
+		assertTrue(breakpoints.isActive());
+
+		breakpoints.removeBreakpoint(0x06);
+		assertTrue(breakpoints.isActive());
+		breakpoints.removeWatchpoint(0x80);
+		assertFalse(breakpoints.isActive());
+
+		breakpoints.addCondition("A == 1");
+		assertTrue(breakpoints.isActive());
+		breakpoints.clear();
+		assertFalse(breakpoints.isActive());
+		assertEquals("", breakpoints.toString());
+	}
+
+	public void testRunStopsAtBreakpoint() throws InterruptedException
+	{
+		machine.loadRAM(LOOP_PROGRAM);
+		breakpoints.addBreakpoint(0x06);
+
+		run();
+		assertEquals(ExecutionThread.FINISHED_BREAKPOINT, reason);
+		assertEquals(0x06, machine.getCpu().getPc());
+		assertEquals(4, machine.getCpu().getX());
+
+		//A new run passes over the breakpoint it starts at
+		run();
+		assertEquals(ExecutionThread.FINISHED_BREAKPOINT, reason);
+		assertEquals(3, machine.getCpu().getX());
+
+		breakpoints.removeBreakpoint(0x06);
+		run();
+		assertEquals(ExecutionThread.FINISHED_END_REACHED, reason);
+	}
+
+	public void testConditionalBreakpoint() throws InterruptedException
+	{
+		machine.loadRAM(LOOP_PROGRAM);
+		breakpoints.addBreakpoint(0x06, "X == 2");
+
+		run();
+		assertEquals(ExecutionThread.FINISHED_BREAKPOINT, reason);
+		assertEquals(0x06, machine.getCpu().getPc());
+		assertEquals(2, machine.getCpu().getX());
+		assertTrue(message, message.startsWith("Breakpoint at 0x6 (X == 2)"));
+	}
+
+	public void testConditionAtEveryAddress() throws InterruptedException
+	{
+		machine.loadRAM(LOOP_PROGRAM);
+		breakpoints.addCondition("X == 1 && PC == 6");
+
+		run();
+		assertEquals(ExecutionThread.FINISHED_BREAKPOINT, reason);
+		assertEquals(1, machine.getCpu().getX());
+	}
+
+	public void testWatchpoints() throws InterruptedException
+	{
+		machine.loadRAM(STORE_PROGRAM);
+		breakpoints.addWatchpoint(0x82, Breakpoints.WATCH_WRITE);
+		breakpoints.addWatchpoint(0x90, Breakpoints.WATCH_READ | Breakpoints.WATCH_WRITE);
+
+		//Stops after the STA $80,X that writes 0x82
+		run();
+		assertEquals(ExecutionThread.FINISHED_BREAKPOINT, reason);
+		assertEquals(2, machine.getCpu().getX());
+		assertEquals(0x06, machine.getCpu().getPc());
+		assertTrue(message, message.startsWith("Watchpoint: write to 0x82"));
+
+		run();
+		assertEquals(ExecutionThread.FINISHED_END_REACHED, reason);
+	}
+
+	public void testReadWatchpoint() throws InterruptedException
+	{
+		machine.loadRAM(STORE_PROGRAM);
+		breakpoints.addWatchpoint(0x83, Breakpoints.WATCH_READ);
+
+		//0x83 is only written
+		run();
+		assertEquals(ExecutionThread.FINISHED_END_REACHED, reason);
+
+		machine.resetCPU();
+		machine.getBus().write(0x00, machine.getBus().read(0x83));
+		assertTrue(breakpoints.takeWatchpointHit());
+		assertEquals("Watchpoint: read of 0x83", breakpoints.getMessage());
+		assertFalse(breakpoints.takeWatchpointHit());
+	}
+
+	public void testWatchpointOnStackInRam() throws InterruptedException
+	{
+		int[] program = {0xef, 0xef,  // BEGIN
+						 0xa9, 0x07,  // LDA #$07
+						 0x48, 0x00,  // PHA
+						 0x68, 0x00,  // PLA
+						 0xff, 0xff}; // END
+
+		machine.setStackInRam(true);
+		machine.loadRAM(program);
+		int top = Stack.LITE_RAM_BASE + 0x3f;
+		breakpoints.addWatchpoint(top, Breakpoints.WATCH_WRITE);
+
+		//Stops after the PHA writes the top of the stack
+		run();
+		assertEquals(ExecutionThread.FINISHED_BREAKPOINT, reason);
+		assertEquals(0x06, machine.getCpu().getPc());
+		assertTrue(message, message.startsWith("Watchpoint: write to 0x" + Integer.toHexString(top).toUpperCase()));
+
+		breakpoints.addWatchpoint(top, Breakpoints.WATCH_READ);
+		run();
+		assertEquals(ExecutionThread.FINISHED_BREAKPOINT, reason);
+		assertEquals(0x08, machine.getCpu().getPc());
+		assertTrue(message, message.startsWith("Watchpoint: read of 0x"));
+	}
+
+	private boolean test(String condition)
+	{
+		return new Breakpoints.Condition(condition).test(machine.getCpu());
+	}
+
+	/*
+	 * Runs the machine on a new ExecutionThread until it finishes
+	 */
+	private void run() throws InterruptedException
+	{
+		finished = new CountDownLatch(1);
+		reason = -1;
+
+		ExecutionThread thread = new ExecutionThread(machine, new ExecutionThread.Listener() {
+			public void frame(ExecutionThread thread)
+			{
+			}
+
+			public void finished(ExecutionThread thread, int finishedReason, String finishedMessage)
+			{
+				reason = finishedReason;
+				message = finishedMessage;
+				finished.countDown();
+			}
+		});
+		thread.start();
+
+		assertTrue(finished.await(10, TimeUnit.SECONDS));
+	}
+}
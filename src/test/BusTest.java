@@ -0,0 +1,143 @@
+package test;
+
+import core.Bus;
+import core.CPU;
+import core.MOS6502;
+import core.RAM;
+import exceptions.SimulationException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import peripherals.ConsoleDevice;
+import peripherals.FramebufferDevice;
+import peripherals.RandomDevice;
+import peripherals.TimerDevice;
+
+/*
+ * This JUnit Test checks the Bus device map and the peripherals mapped onto it.
+ */
+
+public class BusTest extends TestCase {
+
+	protected MOS6502 machine;
+	protected Bus bus;
+	protected RAM ram;
+
+	public BusTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(BusTest.class);
+	}
+
+	public void setUp()
+	{
+		machine = new MOS6502(false);
+		bus = machine.getBus();
+		ram = machine.getRam();
+	}
+
+	public void testRamPages()
+	{
+		assertEquals(16, bus.getPageSize());
+		assertSame(ram, bus.getDevice(0x80));
+
+		bus.write(0x80, 0x42);
+		assertEquals(0x42, ram.read(0x80));
+		assertEquals(0x42, bus.read(0x80));
+		assertEquals(0x42, bus.read(0x180)); //Outside of the address space, wraps around to 0x80
+	}
+
+	public void testConsoleDeviceProgram() throws SimulationException
+	{
+		ConsoleDevice console = new ConsoleDevice();
+		machine.registerDevice(console, 0xf0, 0xff);
+
+		machine.loadRAM(new int[] {0xef, 0xef,  // BEGIN
+								   0xa9, 0x48,  // LDA #$48
+								   0x8d, 0xf0,  // STA $F0
+								   0xa9, 0x69,  // LDA #$69
+								   0x8d, 0xf0,  // STA $F0
+								   0x8d, 0xf1,  // STA $F1
+								   0xff, 0xff}); // END
+		machine.resetCPU();
+
+		CPU cpu = machine.getCpu();
+		while(cpu.getCanStep())
+		{
+			cpu.step();
+		}
+
+		assertEquals("Hi69", console.getOutput());
+		assertEquals(0, ram.read(0xf0)); //Writes do not reach RAM
+	}
+
+	public void testDeviceOffsetsAndUnregister() throws SimulationException
+	{
+		FramebufferDevice framebuffer = new FramebufferDevice(8, 4);
+		machine.registerDevice(framebuffer, 0xc0, 0xdf);
+
+		bus.write(0xc0 + 9, 0x07); //Pixel (1, 1)
+		assertEquals(0x07, framebuffer.getPixel(1, 1));
+		assertEquals(0x07, bus.read(0xc9));
+		assertTrue(framebuffer.isModified());
+
+		bus.unregisterDevice(framebuffer);
+		assertSame(ram, bus.getDevice(0xc9));
+		assertEquals(0, bus.read(0xc9));
+	}
+
+	public void testRegistrationChecks() throws SimulationException
+	{
+		machine.registerDevice(new RandomDevice(1), 0xe0, 0xef);
+
+		try
+		{
+			machine.registerDevice(new ConsoleDevice(), 0xe8, 0xf7);
+			fail("Misaligned range accepted");
+		}
+		catch(SimulationException e)
+		{
+		}
+
+		try
+		{
+			machine.registerDevice(new ConsoleDevice(), 0xd0, 0xef);
+			fail("Overlapping range accepted");
+		}
+		catch(SimulationException e)
+		{
+		}
+	}
+
+	public void testRandomAndTimerDevices() throws SimulationException
+	{
+		machine.registerDevice(new RandomDevice(), 0xe0, 0xef);
+		machine.registerDevice(new TimerDevice(machine.getCpu()), 0xf0, 0xff);
+
+		bus.write(0xe0, 0x05);
+		int first = bus.read(0xe0);
+		bus.write(0xe0, 0x05);
+		assertEquals(first, bus.read(0xe0));
+
+		machine.getCpu().setCycleCounter(0x1234);
+		assertEquals(0x34, bus.read(0xf0));
+		assertEquals(0x12, bus.read(0xf1));
+		bus.write(0xf0, 0);
+		assertEquals(0, bus.read(0xf0));
+	}
+
+	public void testFullModePages() throws SimulationException
+	{
+		MOS6502 full = new MOS6502(CPU.MODE_FULL, false);
+		assertEquals(256, full.getBus().getPageSize());
+
+		ConsoleDevice console = new ConsoleDevice();
+		full.registerDevice(console, 0xd000, 0xd0ff);
+		full.getBus().write(0xd000, 'A');
+		assertEquals("A", console.getOutput());
+	}
+}
@@ -0,0 +1,147 @@
+package test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import compiler.AssembledProgram;
+import compiler.Compiler;
+import core.MOS6502;
+import exceptions.CompilerException;
+import exceptions.SimulationException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * This JUnit Test checks the in-memory output of the compiler (AssembledProgram) 
+ * against the binary string output written to binary_output.txt, and that the 
+ * program runs once loaded directly into a MOS6502.
+ */
+
+public class CompilerProgramTest extends TestCase {
+
+	private static final String[] PROGRAM = {"BEGIN",
+											 "_START LDX #05",
+											 "LDA #01",
+											 "_LOOP STA $80",
+											 "INX",
+											 "END",
+											 "dc.v $90 $2A $2B"};
+	
+	public CompilerProgramTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(CompilerProgramTest.class);
+	}
+
+	public void testCodeMatchesBinaryOutput() throws CompilerException
+	{
+		Compiler compiler = new Compiler(PROGRAM);
+		byte[] code = compiler.getProgram().getCode();
+		String[] binaryOutput = compiler.getBinaryOutput();
+		
+		assertEquals(binaryOutput.length * 2, code.length);
+		
+		for(int i = 0; i < binaryOutput.length; i++)
+		{
+			String[] pair = binaryOutput[i].split(" ");
+			assertEquals(Integer.parseInt(pair[0], 2), code[i * 2] & 0xff);
+			assertEquals(Integer.parseInt(pair[1], 2), code[i * 2 + 1] & 0xff);
+		}
+		
+		assertEquals(0xef, code[0] & 0xff);
+		assertEquals(0xff, code[code.length - 1] & 0xff);
+	}
+	
+	public void testBinaryOutputBuiltOnDemand() throws CompilerException
+	{
+		PrintStream console = System.out;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(out));
+		Compiler compiler;
+		try
+		{
+			compiler = new Compiler(PROGRAM);
+		}
+		finally
+		{
+			System.setOut(console);
+		}
+		
+		//constructBinaryOutput() logs each line it converts, compiling alone should not
+		assertFalse(out.toString().contains("Hex opcode/operand"));
+		assertEquals(6, compiler.getBinaryOutput().length);
+		assertSame(compiler.getBinaryOutput(), compiler.getBinaryOutput());
+	}
+	
+	public void testDirectivesAndSymbols() throws CompilerException
+	{
+		AssembledProgram program = new Compiler(PROGRAM).getProgram();
+		
+		assertEquals(2, program.getDirectiveCount());
+		assertEquals(0x90, program.getDirectiveAddresses()[0]);
+		assertEquals(0x2b, program.getDirectiveValues()[1] & 0xff);
+		
+		assertEquals(0x02, program.getSymbolAddress("START"));
+		assertEquals(0x06, program.getSymbolAddress("loop"));
+		assertEquals(-1, program.getSymbolAddress("MISSING"));
+		
+		byte[] image = program.toMemoryImage(256);
+		assertEquals(0xa2, image[0x02] & 0xff);
+		assertEquals(0x2a, image[0x90] & 0xff);
+	}
+	
+	public void testDirectiveData() throws CompilerException
+	{
+		Compiler compiler = new Compiler(new String[] {"BEGIN", "NOP", "END", "dc.b $00 $7F", "dc.s $A0 Hi", "dc.v $FE $01 $FF"});
+		AssembledProgram program = compiler.getProgram();
+		
+		int[] addresses = {0x00, 0xa0, 0xa1, 0xfe, 0xff};
+		int[] values = {0x7f, 'H', 'i', 0x01, 0xff};
+		assertEquals(addresses.length, program.getDirectiveCount());
+		for(int i = 0; i < addresses.length; i++)
+		{
+			assertEquals(addresses[i], program.getDirectiveAddresses()[i]);
+			assertEquals(values[i], program.getDirectiveValues()[i] & 0xff);
+		}
+		
+		//The binary strings are only built for the text export
+		String[] directiveOutput = compiler.getDirectiveBinaryOutput();
+		assertEquals("*00000000 *01111111", directiveOutput[0]);
+		assertEquals("*11111111 *11111111", directiveOutput[4]);
+		
+		assertNull(new Compiler(new String[] {"BEGIN", "NOP", "END"}).getDirectiveBinaryOutput());
+	}
+	
+	public void testDirectivePastZeroPage()
+	{
+		try
+		{
+			new Compiler(new String[] {"BEGIN", "NOP", "END", "dc.v $FF $01 $02"});
+			fail("Directive data past 0xFF accepted");
+		}
+		catch(CompilerException e)
+		{
+		}
+	}
+	
+	public void testLoadAndRun() throws CompilerException, SimulationException
+	{
+		MOS6502 machine = new MOS6502(false);
+		machine.loadProgram(new Compiler(PROGRAM).getProgram());
+		machine.resetCPU();
+		
+		while(machine.getCpu().getCanStep())
+		{
+			machine.getCpu().step();
+		}
+		
+		assertEquals(0x01, machine.getRam().read(0x80));
+		assertEquals(0x2a, machine.getRam().read(0x90));
+		assertEquals(0x06, machine.getCpu().getX());
+	}
+}
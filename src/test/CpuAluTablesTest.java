@@ -0,0 +1,124 @@
+package test;
+
+import core.CPU;
+import core.RAM;
+import core.Stack;
+import exceptions.SimulationException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * This JUnit Test checks the precomputed ADC/SBC tables (CPU.setAluTables()) against the 
+ * computed results, for every accumulator, operand and carry input in binary and decimal mode.
+ */
+
+public class CpuAluTablesTest extends TestCase
+{
+
+	protected CPU computedCpu;
+	protected RAM computedRam;
+
+	protected CPU tableCpu;
+	protected RAM tableRam;
+
+	public CpuAluTablesTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(CpuAluTablesTest.class);
+	}
+
+	public void setUp()
+	{
+		computedRam = new RAM(false);
+		computedCpu = createCpu(computedRam);
+
+		tableRam = new RAM(false);
+		tableCpu = createCpu(tableRam);
+		tableCpu.setAluTables(true);
+	}
+
+	private static CPU createCpu(RAM ram)
+	{
+		CPU cpu = new CPU(false);
+		Stack stack = new Stack(false);
+
+		cpu.setRam(ram);
+		cpu.setStack(stack);
+		ram.setCpu(cpu);
+		stack.setCpu(cpu);
+
+		cpu.reset();
+		return cpu;
+	}
+
+	public void testAdcMatchesComputed() throws SimulationException
+	{
+		checkAllInputs(0x69);
+	}
+
+	public void testSbcMatchesComputed() throws SimulationException
+	{
+		checkAllInputs(0xe9);
+	}
+
+	public void testTablesWithLazyFlags() throws SimulationException
+	{
+		tableCpu.setLazyFlags(true);
+		tableRam.loadProgram(new int[] {0xc9, 0x00,  // CMP #$00, carry held lazily
+										0x69, 0x01,  // ADC #$01
+										0xb0, 0x02,  // BCS *+02
+										0xa2, 0x01,  // LDX #$01 (executed, no carry out of the ADC)
+										0xf8, 0x00,  // SED
+										0xe9, 0x09}); // SBC #$09
+		tableCpu.setA(0x7f);
+		tableCpu.step(6);
+
+		assertEquals(0x01, tableCpu.getX());
+		assertEquals(0x71, tableCpu.getA()); //0x81 - 0x09 - 1 in BCD, the carry is clear
+		assertTrue(tableCpu.getCarryFlag());
+		assertFalse(tableCpu.getOverflowFlag());
+	}
+
+	/*
+	 * Runs the immediate mode opcode for every accumulator, operand, carry and decimal flag input
+	 */
+	private void checkAllInputs(int opcode) throws SimulationException
+	{
+		for(int status = 0; status < 16; status++)
+		{
+			if((status & ~(CPU.PSR_CARRY | CPU.PSR_DECIMAL)) != 0)
+				continue;
+
+			for(int a = 0; a < 256; a++)
+			{
+				for(int operand = 0; operand < 256; operand++)
+				{
+					run(computedCpu, computedRam, opcode, operand, a, status | CPU.PSR_OVERFLOW);
+					run(tableCpu, tableRam, opcode, operand, a, status | CPU.PSR_OVERFLOW);
+
+					if(computedCpu.getA() != tableCpu.getA() || computedCpu.getProcessorStatusFlags() != tableCpu.getProcessorStatusFlags())
+					{
+						fail("Opcode " + Integer.toHexString(opcode) + " A=" + a + " operand=" + operand + " P=" + status 
+								+ ": expected A=" + computedCpu.getA() + " P=" + computedCpu.getProcessorStatusFlags() 
+								+ " got A=" + tableCpu.getA() + " P=" + tableCpu.getProcessorStatusFlags());
+					}
+				}
+			}
+		}
+	}
+
+	private static void run(CPU cpu, RAM ram, int opcode, int operand, int a, int status) throws SimulationException
+	{
+		ram.write(0, opcode);
+		ram.write(1, operand);
+		cpu.setPc(0);
+		cpu.setA(a);
+		cpu.setProcessorStatusFlags(status);
+		cpu.step();
+	}
+}
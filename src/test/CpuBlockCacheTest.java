@@ -0,0 +1,570 @@
+package test;
+
+import java.util.Random;
+
+import core.CPU;
+import core.Device;
+import core.MOS6502;
+import core.RAM;
+import core.Stack;
+import exceptions.SimulationException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * This JUnit Test checks the block cache execution engine (CPU.ENGINE_BLOCK_CACHE)
+ * against the switch execution engine (CPU.ENGINE_SWITCH).
+ *
+ * Both CPUs run the same programs step by step and are compared after every step,
+ * including programs that write over their own instructions so that the decoded
+ * blocks have to be dropped. Hot loops are also run through CPU.step(int), which runs 
+ * bound blocks whole, in chunks that end both on and part way through a block, and long
+ * enough for the hottest blocks to be compiled into JVM classes.
+ */
+
+public class CpuBlockCacheTest extends TestCase
+{
+
+	protected CPU switchCpu;
+	protected RAM switchRam;
+	protected Stack switchStack;
+
+	protected CPU blockCpu;
+	protected RAM blockRam;
+	protected Stack blockStack;
+
+	public CpuBlockCacheTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(CpuBlockCacheTest.class);
+	}
+
+	public void setUp()
+	{
+		this.switchCpu = new CPU(false);
+		this.switchRam = new RAM(false);
+		this.switchStack = new Stack(false);
+
+		switchCpu.setRam(switchRam);
+		switchCpu.setStack(switchStack);
+		switchRam.setCpu(switchCpu);
+		switchStack.setCpu(switchCpu);
+
+		this.blockCpu = new CPU(false);
+		this.blockRam = new RAM(false);
+		this.blockStack = new Stack(false);
+
+		blockCpu.setRam(blockRam);
+		blockCpu.setStack(blockStack);
+		blockRam.setCpu(blockCpu);
+		blockStack.setCpu(blockCpu);
+
+		blockCpu.setExecutionEngine(CPU.ENGINE_BLOCK_CACHE);
+
+		switchCpu.reset();
+		blockCpu.reset();
+	}
+
+	public void testLoopProgram() throws SimulationException
+	{
+		runBoth(new int[] {0xef, 0xef,  // BEGIN
+						   0xa2, 0x05,  // LDX #$05
+						   0xa9, 0x00,  // LDA #$00
+						   0x18, 0x00,  // CLC
+						   0x69, 0x03,  // ADC #$03
+						   0x9d, 0x80,  // STA $80,X
+						   0x48, 0x00,  // PHA
+						   0x20, 0x18,  // JSR $18
+						   0xca, 0x00,  // DEX
+						   0xd0, 0xf2,  // BNE $F2
+						   0x4c, 0x1c,  // JMP $1C
+						   0x00, 0x00,  // BRK
+						   0xc8, 0x00,  // INY
+						   0x60, 0x00,  // RTS
+						   0xff, 0xff}); // END
+
+		assertEquals(0x0f, blockRam.read(0x81));
+		assertEquals(0x03, blockRam.read(0x85));
+		assertEquals(0x05, blockCpu.getY());
+		assertEquals(switchCpu.getCycleCounter(), blockCpu.getCycleCounter());
+	}
+
+	public void testWriteToCurrentBlock() throws SimulationException
+	{
+		//The STA replaces the LDA #$01 that follows it in the same block with LDA #$07
+		runBoth(new int[] {0xef, 0xef,  // BEGIN
+						   0xa9, 0x07,  // LDA #$07
+						   0x8d, 0x09,  // STA $09
+						   0xa2, 0x00,  // LDX #$00
+						   0xa9, 0x01,  // LDA #$01
+						   0x85, 0x80,  // STA $80
+						   0xff, 0xff}); // END
+
+		assertEquals(0x07, blockRam.read(0x80));
+	}
+
+	public void testWriteToLoopBody() throws SimulationException
+	{
+		//Each pass increments the immediate operand of the ADC at 0x08, so the loop body
+		//changes on every iteration
+		runBoth(new int[] {0xef, 0xef,  // BEGIN
+						   0xa2, 0x04,  // LDX #$04
+						   0xa9, 0x00,  // LDA #$00
+						   0x18, 0x00,  // CLC
+						   0x69, 0x01,  // ADC #$01
+						   0xee, 0x09,  // INC $09
+						   0xca, 0x00,  // DEX
+						   0xd0, 0xf8,  // BNE $F8
+						   0x85, 0x80,  // STA $80
+						   0xff, 0xff}); // END
+
+		assertEquals(0x0a, blockRam.read(0x80)); //1 + 2 + 3 + 4
+		assertEquals(0x05, blockRam.read(0x09));
+	}
+
+	public void testRandomStates() throws SimulationException
+	{
+		Random random = new Random(6502);
+
+		for(int trial = 0; trial < 2000; trial++)
+		{
+			for(int i = 0; i < 256; i++)
+			{
+				int data = random.nextInt(256);
+				switchRam.write(i, data);
+				blockRam.write(i, data);
+			}
+
+			int pc = random.nextInt(128) * 2;
+			int status = random.nextInt(256);
+			for(CPU cpu : new CPU[] {switchCpu, blockCpu})
+			{
+				cpu.reset();
+				cpu.setPc(pc);
+				cpu.setProcessorStatusFlags(status);
+			}
+
+			for(int step = 0; step < 16 && switchCpu.getCanStep(); step++)
+			{
+				//Random code can move SP outside of the stack, both engines must then fail alike
+				RuntimeException switchFailure = null;
+				try
+				{
+					switchCpu.step();
+				}
+				catch(RuntimeException e)
+				{
+					switchFailure = e;
+				}
+				try
+				{
+					blockCpu.step();
+					assertNull("Trial " + trial + " step " + step + " did not fail", switchFailure);
+				}
+				catch(RuntimeException e)
+				{
+					assertNotNull("Trial " + trial + " step " + step + " failed", switchFailure);
+					assertEquals(switchFailure.getClass(), e.getClass());
+					break;
+				}
+				assertSameState("Trial " + trial + " step " + step);
+			}
+		}
+	}
+
+	public void testFullModeSelfModifyingLoop() throws SimulationException
+	{
+		MOS6502 machine = new MOS6502(CPU.MODE_FULL, false);
+		machine.setExecutionEngine(CPU.ENGINE_BLOCK_CACHE);
+		machine.loadRAM(new int[] {0xef, 0xef,        // BEGIN
+								   0xa0, 0x03,        // LDY #$03
+								   0xa9, 0x00,        // LDA #$00
+								   0x8d, 0x00, 0x20,  // STA $2000
+								   0xee, 0x07, 0x00,  // INC $0007 (low byte of the STA address)
+								   0x88,              // DEY
+								   0xd0, 0xf6,        // BNE $F6
+								   0xff, 0xff});      // END
+		machine.resetCPU();
+
+		CPU cpu = machine.getCpu();
+		RAM ram = machine.getRam();
+		ram.write(0x2000, 0x11);
+		ram.write(0x2001, 0x11);
+		ram.write(0x2002, 0x11);
+		ram.write(0x2003, 0x11);
+		while(cpu.getCanStep())
+		{
+			cpu.step();
+		}
+
+		assertEquals(0x00, ram.read(0x2000));
+		assertEquals(0x00, ram.read(0x2001));
+		assertEquals(0x00, ram.read(0x2002));
+		assertEquals(0x11, ram.read(0x2003));
+		assertEquals(0x03, ram.read(0x0007));
+	}
+
+	public void testBoundBlocksMatchSwitchEngine() throws SimulationException
+	{
+		//Outer loop of 3 passes over an inner loop that stores X into the operand of the 
+		//ADC that follows, later in the same block, so $80,X ends up holding X * 2
+		int[] program = {0xef, 0xef,  // BEGIN
+						 0xa0, 0x03,  // LDY #$03
+						 0xa2, 0x40,  // LDX #$40
+						 0x18, 0x00,  // CLC
+						 0x8a, 0x00,  // TXA
+						 0x85, 0x0d,  // STA $0D
+						 0x69, 0x00,  // ADC #$00
+						 0x9d, 0x80,  // STA $80,X
+						 0xca, 0x00,  // DEX
+						 0xd0, 0xf2,  // BNE $F2
+						 0x88, 0x00,  // DEY
+						 0xd0, 0xec,  // BNE $EC
+						 0xff, 0xff}; // END
+
+		for(int chunk : new int[] {1, 3, 7, 64, 1000})
+		{
+			setUp();
+			switchRam.loadProgram(program);
+			blockRam.loadProgram(program);
+
+			while(blockCpu.getCanStep())
+			{
+				switchCpu.step(chunk);
+				blockCpu.step(chunk);
+				assertSameState("Chunk " + chunk + " step " + switchCpu.getStepCounter());
+			}
+
+			assertFalse(switchCpu.getCanStep());
+			assertEquals(0x80, blockRam.read(0xc0));
+			assertEquals(0x02, blockRam.read(0x81));
+		}
+	}
+
+	public void testBoundBlockInvalidatedByWrite() throws SimulationException
+	{
+		int[] program = {0xa9, 0x01,  // LDA #$01
+						 0x85, 0x80,  // STA $80
+						 0x4c, 0x00}; // JMP $00
+
+		switchRam.loadProgram(program);
+		blockRam.loadProgram(program);
+		switchCpu.step(300);
+		blockCpu.step(300);
+		assertSameState("Before write");
+
+		//Replace LDA #$01 with LDA #$02 while the loop is bound
+		switchRam.write(0x01, 0x02);
+		blockRam.write(0x01, 0x02);
+		switchCpu.step(300);
+		blockCpu.step(300);
+		assertSameState("After write");
+		assertEquals(0x02, blockRam.read(0x80));
+	}
+
+	public void testBoundBlockWritesOwnInstruction() throws SimulationException
+	{
+		//The loop stores X to the address held in a table at $D0,X. Only the entry for X = 2 
+		//points into the loop itself, at the operand of LDA #$00, by which time the loop
+		//has been bound
+		int[] program = {0xa2, 0x0c,  // LDX #$0C
+						 0xbc, 0xd0,  // LDY $D0,X
+						 0x8a, 0x00,  // TXA
+						 0x99, 0x00,  // STA $00,Y
+						 0xa9, 0x00,  // LDA #$00
+						 0x9d, 0xa0,  // STA $A0,X
+						 0xca, 0x00,  // DEX
+						 0xd0, 0xf2,  // BNE $F2
+						 0xff, 0xff}; // END
+
+		switchRam.loadProgram(program);
+		blockRam.loadProgram(program);
+		for(int i = 1; i <= 0x0c; i++)
+		{
+			switchRam.write(0xd0 + i, i == 2 ? 0x09 : 0xc0);
+			blockRam.write(0xd0 + i, i == 2 ? 0x09 : 0xc0);
+		}
+
+		switchCpu.step(1000);
+		blockCpu.step(1000);
+		assertSameState("End");
+		assertFalse(blockCpu.getCanStep());
+		assertEquals(0x00, blockRam.read(0xa3));
+		assertEquals(0x02, blockRam.read(0xa2));
+		assertEquals(0x02, blockRam.read(0xa1));
+	}
+
+	public void testCompiledBlocksMatchSwitchEngine() throws SimulationException
+	{
+		int[] program = {0xef, 0xef,  // BEGIN
+						 0xa0, 0x04,  // LDY #$04
+						 0xa2, 0x50,  // LDX #$50
+						 0x8a, 0x00,  // TXA
+						 0x95, 0x80,  // STA $80,X
+						 0x48, 0x00,  // PHA
+						 0x68, 0x00,  // PLA
+						 0x69, 0x01,  // ADC #$01
+						 0xca, 0x00,  // DEX
+						 0xd0, 0xf2,  // BNE $F2
+						 0x88, 0x00,  // DEY
+						 0xd0, 0xec,  // BNE $EC
+						 0xff, 0xff}; // END
+
+		for(int chunk : new int[] {1, 5, 64, 1000})
+		{
+			setUp();
+			switchRam.loadProgram(program);
+			blockRam.loadProgram(program);
+
+			while(blockCpu.getCanStep())
+			{
+				switchCpu.step(chunk);
+				blockCpu.step(chunk);
+				assertSameState("Chunk " + chunk + " step " + switchCpu.getStepCounter());
+			}
+
+			assertEquals(1, blockCpu.getCompiledBlockCount()); //The inner loop
+			assertEquals(0x50, blockRam.read(0xd0));
+		}
+	}
+
+	public void testCompiledBlockWithBeginAndEnd() throws SimulationException
+	{
+		//The whole program is a single block, run from reset until it is compiled
+		int[] program = {0xef, 0xef,  // BEGIN
+						 0xe6, 0x80,  // INC $80
+						 0xa5, 0x80,  // LDA $80
+						 0xff, 0xff}; // END
+
+		switchRam.loadProgram(program);
+		blockRam.loadProgram(program);
+		for(int run = 0; run < 100; run++)
+		{
+			switchCpu.reset();
+			blockCpu.reset();
+			switchCpu.step(10);
+			blockCpu.step(10);
+			assertSameState("Run " + run);
+		}
+
+		assertEquals(1, blockCpu.getCompiledBlockCount());
+		assertEquals(100, blockCpu.getA());
+	}
+
+	public void testCompiledBlockWritesOwnInstruction() throws SimulationException
+	{
+		//As testBoundBlockWritesOwnInstruction, the loop runs long enough to be compiled 
+		//before the entry for X = 2 stores into the operand of LDA #$00
+		int[] program = {0xa2, 0x60,  // LDX #$60
+						 0xbc, 0x90,  // LDY $90,X
+						 0x8a, 0x00,  // TXA
+						 0x99, 0x00,  // STA $00,Y
+						 0xa9, 0x00,  // LDA #$00
+						 0x85, 0xf9,  // STA $F9
+						 0xca, 0x00,  // DEX
+						 0xd0, 0xf2,  // BNE $F2
+						 0xff, 0xff}; // END
+
+		switchRam.loadProgram(program);
+		blockRam.loadProgram(program);
+		for(int i = 1; i <= 0x60; i++)
+		{
+			switchRam.write(0x90 + i, i == 2 ? 0x09 : 0xf8);
+			blockRam.write(0x90 + i, i == 2 ? 0x09 : 0xf8);
+		}
+
+		//LDX and every pass down to X = 3
+		switchCpu.step(1 + 0x5e * 7);
+		blockCpu.step(1 + 0x5e * 7);
+		assertSameState("Before write");
+		assertEquals(1, blockCpu.getCompiledBlockCount());
+
+		switchCpu.step(1000);
+		blockCpu.step(1000);
+		assertSameState("End");
+		assertFalse(blockCpu.getCanStep());
+		assertEquals(0, blockCpu.getCompiledBlockCount()); //Dropped by the write
+		assertEquals(0x02, blockRam.read(0x09));
+		assertEquals(0x02, blockRam.read(0xf9));
+	}
+
+	public void testCompiledFullModeLoop() throws SimulationException
+	{
+		//16-bit operands and the page crossing penalty of LDA $90F0,X
+		int[] program = {0xef, 0xef,        // BEGIN
+						 0xa2, 0x00,        // LDX #$00
+						 0xbd, 0xf0, 0x90,  // LDA $90F0,X
+						 0x9d, 0x00, 0xa0,  // STA $A000,X
+						 0xe8,              // INX
+						 0xd0, 0xf7,        // BNE $F7
+						 0xff, 0xff};       // END
+
+		MOS6502 switchMachine = new MOS6502(CPU.MODE_FULL, false);
+		MOS6502 blockMachine = new MOS6502(CPU.MODE_FULL, false);
+		blockMachine.setExecutionEngine(CPU.ENGINE_BLOCK_CACHE);
+		for(MOS6502 machine : new MOS6502[] {switchMachine, blockMachine})
+		{
+			machine.loadRAM(program);
+			machine.resetCPU();
+			for(int i = 0; i < 0x100; i++)
+			{
+				machine.getRam().write(0x90f0 + i, i ^ 0x5a);
+			}
+			machine.getCpu().step(10000);
+		}
+
+		CPU switchCpu = switchMachine.getCpu();
+		CPU blockCpu = blockMachine.getCpu();
+		assertFalse(blockCpu.getCanStep());
+		assertEquals(1, blockCpu.getCompiledBlockCount());
+		assertEquals(switchCpu.getStepCounter(), blockCpu.getStepCounter());
+		assertEquals(switchCpu.getCycleCounter(), blockCpu.getCycleCounter());
+		assertEquals(switchCpu.getPc(), blockCpu.getPc());
+		assertEquals(switchCpu.getA(), blockCpu.getA());
+		for(int i = 0; i < 0x100; i++)
+		{
+			assertEquals(i ^ 0x5a, blockMachine.getRam().read(0xa000 + i));
+		}
+	}
+
+	public void testCompiledBlockAfterReload() throws SimulationException
+	{
+		//Reloading drops the compiled loop, the same loop is then compiled again with new data
+		int[] program = {0xa2, 0x50,  // LDX #$50
+						 0xb5, 0xa0,  // LDA $A0,X
+						 0x95, 0x30,  // STA $30,X
+						 0xca, 0x00,  // DEX
+						 0xd0, 0xf8,  // BNE $F8
+						 0xff, 0xff}; // END
+
+		for(int run = 0; run < 3; run++)
+		{
+			switchRam.loadProgram(program);
+			blockRam.loadProgram(program);
+			switchRam.write(0xc0, run);
+			blockRam.write(0xc0, run);
+			switchCpu.reset();
+			blockCpu.reset();
+
+			switchCpu.step(1000);
+			blockCpu.step(1000);
+			assertSameState("Run " + run);
+			assertEquals(1, blockCpu.getCompiledBlockCount());
+			assertEquals(run, blockRam.read(0x50));
+		}
+	}
+
+	public void testCompilationDisabled() throws SimulationException
+	{
+		int[] program = {0xa9, 0x01,  // LDA #$01
+						 0x85, 0x80,  // STA $80
+						 0x4c, 0x00}; // JMP $00
+
+		blockCpu.setBlockCompilation(false);
+		switchRam.loadProgram(program);
+		blockRam.loadProgram(program);
+		switchCpu.step(600);
+		blockCpu.step(600);
+		assertSameState("End");
+		assertEquals(0, blockCpu.getCompiledBlockCount());
+
+		blockCpu.setBlockCompilation(true);
+		blockCpu.step(600);
+		assertEquals(1, blockCpu.getCompiledBlockCount());
+	}
+
+	public void testDeviceMappedOverCachedCode() throws SimulationException
+	{
+		int[] program = new int[0x18];
+		int[] code = {0xef, 0xef,  // BEGIN
+					  0xa0, 0x03,  // LDY #$03
+					  0x4c, 0x10}; // JMP $10
+		int[] loop = {0xe8, 0x00,  // INX
+					  0x88, 0x00,  // DEY
+					  0xd0, 0xfa,  // BNE $FA
+					  0xff, 0xff}; // END
+		System.arraycopy(code, 0, program, 0, code.length);
+		System.arraycopy(loop, 0, program, 0x10, loop.length);
+
+		switchRam.loadProgram(program);
+		blockRam.loadProgram(program);
+		for(int i = 0; i < 8; i++)
+		{
+			switchCpu.step();
+			blockCpu.step();
+		}
+		assertSameState("Before mapping");
+		assertEquals(0x14, blockCpu.getPc());
+
+		//Map a ROM holding LDA #$24, END at $14 over the loop, which is held in the block cache
+		final int[] rom = {0xa9, 0x42, 0xff, 0xff, 0xa9, 0x24, 0xff, 0xff, 0, 0, 0, 0, 0, 0, 0, 0};
+		Device device = new Device() {
+			public int read(int offset)
+			{
+				return rom[offset];
+			}
+
+			public void write(int offset, int data)
+			{
+			}
+		};
+		switchCpu.getBus().registerDevice(device, 0x10, 0x1f);
+		blockCpu.getBus().registerDevice(device, 0x10, 0x1f);
+
+		while(switchCpu.getCanStep())
+		{
+			switchCpu.step();
+			blockCpu.step();
+			assertSameState("Step " + switchCpu.getStepCounter());
+		}
+
+		assertFalse(blockCpu.getCanStep());
+		assertEquals(0x24, blockCpu.getA());
+	}
+
+	private void runBoth(int[] program) throws SimulationException
+	{
+		switchRam.loadProgram(program);
+		blockRam.loadProgram(program);
+
+		while(switchCpu.getCanStep())
+		{
+			switchCpu.step();
+			blockCpu.step();
+			assertSameState("Step " + switchCpu.getStepCounter());
+		}
+
+		assertFalse(blockCpu.getCanStep());
+		assertEquals(switchCpu.getStepCounter(), blockCpu.getStepCounter());
+	}
+
+	private void assertSameState(String msg)
+	{
+		assertEquals(msg + " A", switchCpu.getA(), blockCpu.getA());
+		assertEquals(msg + " X", switchCpu.getX(), blockCpu.getX());
+		assertEquals(msg + " Y", switchCpu.getY(), blockCpu.getY());
+		assertEquals(msg + " SP", switchCpu.getSp(), blockCpu.getSp());
+		assertEquals(msg + " PC", switchCpu.getPc(), blockCpu.getPc());
+		assertEquals(msg + " IR", switchCpu.getIr(), blockCpu.getIr());
+		assertEquals(msg + " IR operand", switchCpu.getIrOperand(), blockCpu.getIrOperand());
+		assertEquals(msg + " PSR", switchCpu.getProcessorStatusFlags(), blockCpu.getProcessorStatusFlags());
+		assertEquals(msg + " Cycles", switchCpu.getCycleCounter(), blockCpu.getCycleCounter());
+		assertEquals(msg + " Steps", switchCpu.getStepCounter(), blockCpu.getStepCounter());
+		assertEquals(msg + " Can step", switchCpu.getCanStep(), blockCpu.getCanStep());
+
+		for(int i = 0; i < 256; i++)
+		{
+			assertEquals(msg + " RAM 0x" + Integer.toHexString(i), switchRam.getAddressContents(i), blockRam.getAddressContents(i));
+		}
+
+		for(int i = 0; i < 64; i++)
+		{
+			assertEquals(msg + " Stack 0x" + Integer.toHexString(i), switchStack.getStackValue(i), blockStack.getStackValue(i));
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package test;
+
+import core.CPU;
+import core.MOS6502;
+import core.Profiler;
+import core.RAM;
+import exceptions.SimulationException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * This JUnit Test checks the cycle counter of the CPU (CPU.getCycleCounter()).
+ *
+ * Base cycle counts come from the InstructionTable, with an extra cycle for indexed
+ * addresses crossing a page boundary, and for branches being taken and crossing a page.
+ */
+
+public class CpuCycleCounterTest extends TestCase {
+
+	private static final int[] PROGRAM = {0xef, 0xef,  // BEGIN        0
+										  0xa2, 0xff,  // LDX #$FF     2
+										  0xbd, 0x10,  // LDA $10,X    5 (page crossed)
+										  0xbd, 0x00,  // LDA $00,X    4
+										  0x18, 0x00,  // CLC          2
+										  0x90, 0x02,  // BCC $02      3 (taken)
+										  0xea, 0x00,  // NOP          skipped
+										  0xb0, 0x10,  // BCS $10      2 (not taken)
+										  0xff, 0xff}; // END          0
+
+	public CpuCycleCounterTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(CpuCycleCounterTest.class);
+	}
+
+	public void testLiteProgramCycles() throws SimulationException
+	{
+		for(int engine : new int[] {CPU.ENGINE_SWITCH, CPU.ENGINE_DISPATCH_TABLE})
+		{
+			MOS6502 machine = new MOS6502(false);
+			machine.setExecutionEngine(engine);
+			machine.loadRAM(PROGRAM);
+			machine.resetCPU();
+			CPU cpu = machine.getCpu();
+
+			assertEquals(0, cpu.getCycleCounter());
+
+			cpu.step(3);
+			assertEquals(7, cpu.getCycleCounter());
+
+			while(cpu.getCanStep())
+			{
+				cpu.step();
+			}
+
+			assertEquals(18, cpu.getCycleCounter());
+			assertEquals(8, cpu.getStepCounter());
+
+			machine.resetCPU();
+			assertEquals(0, cpu.getCycleCounter());
+		}
+	}
+
+	public void testFullModePenalties() throws SimulationException
+	{
+		MOS6502 machine = new MOS6502(CPU.MODE_FULL, false);
+		CPU cpu = machine.getCpu();
+		RAM ram = machine.getRam();
+
+		ram.write(0x10fd, 0xd0); // BNE $05 -> $1104, taken and crosses a page
+		ram.write(0x10fe, 0x05);
+		ram.write(0x1104, 0xb1); // LDA ($40),Y
+		ram.write(0x1105, 0x40);
+		ram.write(0x1106, 0x20); // JSR $2000
+		ram.write(0x1107, 0x00);
+		ram.write(0x1108, 0x20);
+		ram.write(0x40, 0xf0);   // ($40) = $12F0
+		ram.write(0x41, 0x12);
+		cpu.reset();
+		cpu.setPc(0x10fd);
+		cpu.setY(0x20);
+
+		cpu.step();
+		assertEquals(0x1104, cpu.getPc());
+		assertEquals(4, cpu.getCycleCounter());
+
+		cpu.step();
+		assertEquals(10, cpu.getCycleCounter());
+
+		cpu.step();
+		assertEquals(16, cpu.getCycleCounter());
+	}
+
+	public void testIndirectYReadsPointerOnce() throws SimulationException
+	{
+		for(int engine : new int[] {CPU.ENGINE_SWITCH, CPU.ENGINE_DISPATCH_TABLE, CPU.ENGINE_BLOCK_CACHE})
+		{
+			MOS6502 machine = new MOS6502(CPU.MODE_FULL, false);
+			machine.setExecutionEngine(engine);
+			CPU cpu = machine.getCpu();
+			RAM ram = machine.getRam();
+
+			ram.write(0x200, 0xb1); // LDA ($10),Y   6 (page crossed)
+			ram.write(0x201, 0x10);
+			ram.write(0x202, 0xa0); // LDY #$00      2
+			ram.write(0x203, 0x00);
+			ram.write(0x204, 0xb1); // LDA ($10),Y   5
+			ram.write(0x205, 0x10);
+			ram.write(0x10, 0xf0);  // ($10) = $12F0
+			ram.write(0x11, 0x12);
+			cpu.reset();
+			cpu.setPc(0x200);
+			cpu.setY(0x20);
+			machine.setProfiling(true);
+
+			cpu.step(3);
+			assertEquals(13, cpu.getCycleCounter());
+
+			//The pointer is only read by the instructions, not again to count their cycles
+			Profiler profiler = machine.getProfiler();
+			assertEquals(2, profiler.getReadCount(0x10));
+			assertEquals(2, profiler.getReadCount(0x11));
+		}
+	}
+}
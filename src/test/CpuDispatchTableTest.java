@@ -0,0 +1,214 @@
+package test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+import core.CPU;
+import core.RAM;
+import core.Stack;
+import exceptions.SimulationException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * This JUnit Test checks the table-driven execution engine (CPU.ENGINE_DISPATCH_TABLE)
+ * against the switch execution engine (CPU.ENGINE_SWITCH).
+ *
+ * Both CPUs are given identical registers, flags, RAM and stack contents, stepped and
+ * then compared. Every opcode from 0x00 - 0xFF is checked, including the opcodes that
+ * are not part of the instruction set.
+ */
+
+public class CpuDispatchTableTest extends TestCase
+{
+
+	protected CPU switchCpu;
+	protected RAM switchRam;
+	protected Stack switchStack;
+
+	protected CPU tableCpu;
+	protected RAM tableRam;
+	protected Stack tableStack;
+
+	public CpuDispatchTableTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(CpuDispatchTableTest.class);
+	}
+
+	public void setUp()
+	{
+		this.switchCpu = new CPU();
+		this.switchRam = new RAM();
+		this.switchStack = new Stack();
+
+		switchCpu.setRam(switchRam);
+		switchCpu.setStack(switchStack);
+		switchRam.setCpu(switchCpu);
+		switchStack.setCpu(switchCpu);
+
+		this.tableCpu = new CPU();
+		this.tableRam = new RAM();
+		this.tableStack = new Stack();
+
+		tableCpu.setRam(tableRam);
+		tableCpu.setStack(tableStack);
+		tableRam.setCpu(tableCpu);
+		tableStack.setCpu(tableCpu);
+
+		tableCpu.setExecutionEngine(CPU.ENGINE_DISPATCH_TABLE);
+
+		switchCpu.reset();
+		tableCpu.reset();
+	}
+
+	public void testInitialState()
+	{
+		assertEquals(CPU.ENGINE_SWITCH, switchCpu.getExecutionEngine());
+		assertEquals(CPU.ENGINE_DISPATCH_TABLE, tableCpu.getExecutionEngine());
+		assertEquals(0x3f, tableCpu.getSp());
+		assertEquals(0x20, tableCpu.getProcessorStatusFlags());
+	}
+
+	public void testAllOpcodesMatchSwitchEngine() throws SimulationException
+	{
+		Random random = new Random(6502);
+
+		for(int opcode = 0; opcode < 256; opcode++)
+		{
+			for(int trial = 0; trial < 32; trial++)
+			{
+				int pc = random.nextInt(128) * 2; //Instructions are always aligned to 2 bytes
+				int operand = random.nextInt(256);
+				int a = random.nextInt(256);
+				int x = random.nextInt(256);
+				int y = random.nextInt(256);
+				int sp = random.nextInt(64);
+				int status = random.nextInt(256);
+
+				for(int i = 0; i < 256; i++)
+				{
+					int data = random.nextInt(256);
+					switchRam.write(i, data);
+					tableRam.write(i, data);
+				}
+
+				for(int i = 0; i < 64; i++)
+				{
+					int data = random.nextInt(256);
+					switchStack.push(i, data);
+					tableStack.push(i, data);
+				}
+
+				setState(switchCpu, switchRam, pc, opcode, operand, a, x, y, sp, status);
+				setState(tableCpu, tableRam, pc, opcode, operand, a, x, y, sp, status);
+
+				switchCpu.step();
+				tableCpu.step();
+
+				assertSameState("Opcode " + Integer.toHexString(opcode));
+			}
+		}
+	}
+
+	public void testProgramMatchesSwitchEngine() throws SimulationException
+	{
+		int[] program = {0xef, 0xef,  // BEGIN
+						 0xa2, 0x05,  // LDX #$05
+						 0xa9, 0x00,  // LDA #$00
+						 0x18, 0x00,  // CLC
+						 0x69, 0x03,  // ADC #$03
+						 0x9d, 0x80,  // STA $80,X
+						 0x48, 0x00,  // PHA
+						 0x20, 0x18,  // JSR $18
+						 0xca, 0x00,  // DEX
+						 0xd0, 0xf2,  // BNE $F2
+						 0x4c, 0x1c,  // JMP $1C
+						 0x00, 0x00,  // BRK
+						 0xc8, 0x00,  // INY
+						 0x60, 0x00,  // RTS
+						 0xff, 0xff}; // END
+
+		switchRam.loadProgram(program);
+		tableRam.loadProgram(program);
+
+		while(switchCpu.getCanStep())
+		{
+			switchCpu.step();
+			tableCpu.step();
+			assertSameState("Step " + switchCpu.getStepCounter());
+		}
+
+		assertFalse(tableCpu.getCanStep());
+		assertEquals(0x0f, tableRam.read(0x81));
+		assertEquals(0x03, tableRam.read(0x85));
+		assertEquals(0x05, tableCpu.getY());
+	}
+
+	public void testTransferToSpPrintsLikeSwitchEngine() throws SimulationException
+	{
+		//TXS sets the SP directly in both engines, without the console output of CPU.setSp()
+		for(CPU cpu : new CPU[] {switchCpu, tableCpu})
+		{
+			RAM ram = cpu == switchCpu ? switchRam : tableRam;
+			setState(cpu, ram, 0x10, 0x9a, 0x00, 0x00, 0x21, 0x00, 0x3f, 0x20);
+
+			PrintStream console = System.out;
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(out));
+			try
+			{
+				cpu.step();
+			}
+			finally
+			{
+				System.setOut(console);
+			}
+
+			assertEquals(0x21, cpu.getSp());
+			assertFalse(out.toString(), out.toString().contains("SP set to"));
+		}
+	}
+
+	private void setState(CPU cpu, RAM ram, int pc, int opcode, int operand, int a, int x, int y, int sp, int status)
+	{
+		cpu.reset();
+		ram.write(pc, opcode);
+		ram.write(pc + 1, operand);
+		cpu.setPc(pc);
+		cpu.setA(a);
+		cpu.setX(x);
+		cpu.setY(y);
+		cpu.setSp(sp);
+		cpu.setProcessorStatusFlags(status);
+	}
+
+	private void assertSameState(String msg)
+	{
+		assertEquals(msg + " A", switchCpu.getA(), tableCpu.getA());
+		assertEquals(msg + " X", switchCpu.getX(), tableCpu.getX());
+		assertEquals(msg + " Y", switchCpu.getY(), tableCpu.getY());
+		assertEquals(msg + " SP", switchCpu.getSp(), tableCpu.getSp());
+		assertEquals(msg + " PC", switchCpu.getPc(), tableCpu.getPc());
+		assertEquals(msg + " IR", switchCpu.getIr(), tableCpu.getIr());
+		assertEquals(msg + " Next IR", switchCpu.getNextIr(), tableCpu.getNextIr());
+		assertEquals(msg + " PSR", switchCpu.getProcessorStatusFlags(), tableCpu.getProcessorStatusFlags());
+		assertEquals(msg + " Can step", switchCpu.getCanStep(), tableCpu.getCanStep());
+
+		for(int i = 0; i < 256; i++)
+		{
+			assertEquals(msg + " RAM 0x" + Integer.toHexString(i), switchRam.getAddressContents(i), tableRam.getAddressContents(i));
+		}
+
+		for(int i = 0; i < 64; i++)
+		{
+			assertEquals(msg + " Stack 0x" + Integer.toHexString(i), switchStack.getStackValue(i), tableStack.getStackValue(i));
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package test;
+
+import compiler.AssembledProgram;
+import compiler.Compiler;
+import core.CPU;
+import core.MOS6502;
+import core.RAM;
+import exceptions.CompilerException;
+import exceptions.SimulationException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * This JUnit Test checks the full (16-bit) machine configuration, CPU.MODE_FULL.
+ *
+ * Covers the 1-3 byte instruction format, little endian operands, zero-page wraparound,
+ * 16-bit JSR/RTS and the full encoding of the compiler. Each execution engine is run.
+ */
+
+public class CpuFullModeTest extends TestCase {
+
+	private static final String[] PROGRAM = {"BEGIN",
+											 "LDX #03",
+											 "LDA #41",
+											 "STA $1234,X",
+											 "LDA $1237",
+											 "STA $80",
+											 "JSR $0018",
+											 "INY",
+											 "LDA ($20),Y",
+											 "JMP ($0030)",
+											 "INX",
+											 "RTS",
+											 "END",
+											 "dc.b $20 $36",
+											 "dc.b $21 $12",
+											 "dc.b $30 $1A"};
+
+	protected MOS6502 machine;
+	protected CPU cpu;
+	protected RAM ram;
+
+	public CpuFullModeTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(CpuFullModeTest.class);
+	}
+
+	public void setUp()
+	{
+		machine = new MOS6502(CPU.MODE_FULL, false);
+		cpu = machine.getCpu();
+		ram = machine.getRam();
+	}
+
+	public void testInitialState()
+	{
+		assertEquals(CPU.MODE_FULL, cpu.getAddressMode());
+		assertEquals(0x10000, ram.getRamSize());
+		assertEquals(0xff, cpu.getSp());
+		assertEquals(0, cpu.getPc());
+	}
+
+	public void testInstructionLengths() throws SimulationException
+	{
+		ram.loadProgram(new int[] {0xef, 0xef,        // BEGIN
+								   0xe8,              // INX
+								   0xa9, 0x10,        // LDA #$10
+								   0x8d, 0x34, 0x12,  // STA $1234
+								   0xff, 0xff});      // END
+		cpu.reset();
+
+		cpu.step();
+		assertEquals(0x02, cpu.getPc());
+		cpu.step();
+		assertEquals(0x03, cpu.getPc());
+		assertEquals(0x01, cpu.getX());
+		cpu.step();
+		assertEquals(0x05, cpu.getPc());
+		cpu.step();
+		assertEquals(0x08, cpu.getPc());
+		assertEquals(0x1234, cpu.getIrOperand());
+		assertEquals(0x10, ram.read(0x1234));
+		cpu.step();
+		assertFalse(cpu.getCanStep());
+	}
+
+	public void testZeroPageWraparound() throws SimulationException
+	{
+		int[] program = {0xb5, 0xf0,        // LDA $F0,X
+						 0xa1, 0xff,        // LDA ($FF,X)
+						 0xbd, 0xf0, 0x00}; // LDA $00F0,X
+		for(int i = 0; i < program.length; i++)
+		{
+			ram.write(0x400 + i, program[i]);
+		}
+		ram.write(0x0f, 0x11);
+		ram.write(0x10f, 0x22);
+		ram.write(0xff, 0x00); // ($FF) pointer, high byte wraps to $00
+		ram.write(0x00, 0x02);
+		ram.write(0x0200, 0x33);
+		cpu.reset();
+		cpu.setPc(0x400);
+		cpu.setX(0x1f);
+
+		cpu.step();
+		assertEquals(0x11, cpu.getA());
+
+		cpu.setX(0x00);
+		cpu.step();
+		assertEquals(0x33, cpu.getA());
+
+		cpu.setX(0x1f);
+		cpu.step();
+		assertEquals(0x22, cpu.getA());
+	}
+
+	public void testJsrRtsPushesSixteenBitAddress() throws SimulationException
+	{
+		ram.write(0x1000, 0x20); // JSR $2000
+		ram.write(0x1001, 0x00);
+		ram.write(0x1002, 0x20);
+		ram.write(0x2000, 0x60); // RTS
+		cpu.reset();
+		cpu.setPc(0x1000);
+
+		cpu.step();
+		assertEquals(0x2000, cpu.getPc());
+		assertEquals(0xfd, cpu.getSp());
+		assertEquals(0x10, machine.getStack().getStackValue(0xff));
+		assertEquals(0x02, machine.getStack().getStackValue(0xfe));
+
+		cpu.step();
+		assertEquals(0x1003, cpu.getPc());
+		assertEquals(0xff, cpu.getSp());
+	}
+
+	public void testCompilerFullEncoding() throws CompilerException
+	{
+		AssembledProgram program = new Compiler(PROGRAM, false, AssembledProgram.ENCODING_FULL).getProgram();
+		byte[] code = program.getCode();
+
+		assertEquals(AssembledProgram.ENCODING_FULL, program.getEncoding());
+		assertEquals(0x1c, code.length);
+		assertEquals(0x9d, code[0x06] & 0xff); // STA $1234,X little endian
+		assertEquals(0x34, code[0x07] & 0xff);
+		assertEquals(0x12, code[0x08] & 0xff);
+		assertEquals(0xc8, code[0x12] & 0xff); // INY is a single byte
+		assertEquals(0xff, code[0x1b] & 0xff);
+	}
+
+	public void testLiteEncodingRejectsSixteenBitAddress()
+	{
+		try
+		{
+			new Compiler(PROGRAM);
+			fail("16-bit address accepted by the lite encoding");
+		}
+		catch(CompilerException e)
+		{
+		}
+	}
+
+	public void testRunProgramEachEngine() throws CompilerException, SimulationException
+	{
+		AssembledProgram program = new Compiler(PROGRAM, false, AssembledProgram.ENCODING_FULL).getProgram();
+
+		for(int engine : new int[] {CPU.ENGINE_SWITCH, CPU.ENGINE_DISPATCH_TABLE, CPU.ENGINE_BLOCK_CACHE})
+		{
+			setUp();
+			machine.setExecutionEngine(engine);
+			machine.loadProgram(program);
+			machine.resetCPU();
+
+			while(cpu.getCanStep())
+			{
+				cpu.step();
+			}
+
+			assertEquals(0x41, cpu.getA());
+			assertEquals(0x04, cpu.getX());
+			assertEquals(0x01, cpu.getY());
+			assertEquals(0xff, cpu.getSp());
+			assertEquals(0x1c, cpu.getPc());
+			assertEquals(0x41, ram.read(0x1237));
+			assertEquals(0x41, ram.read(0x80));
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package test;
+
+import java.util.Random;
+
+import core.CPU;
+import core.RAM;
+import core.Stack;
+import exceptions.SimulationException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * This JUnit Test checks lazy flag evaluation (CPU.setLazyFlags()) against the eager
+ * flag updates of the default mode.
+ *
+ * ADC and SBC are checked exhaustively for every accumulator, operand and carry input
+ * in binary and decimal mode. Sequences of ALU instructions are also run without reading
+ * the flags in between, so that flags held lazily are carried from one instruction into the next.
+ */
+
+public class CpuLazyFlagsTest extends TestCase
+{
+
+	protected CPU eagerCpu;
+	protected RAM eagerRam;
+
+	protected CPU lazyCpu;
+	protected RAM lazyRam;
+
+	/*
+	 * ALU opcodes with an immediate or implied operand used by the sequence test
+	 */
+	private static final int[] ALU_OPCODES = {
+			0x69, 0xe9, 0xc9, 0xe0, 0xc0, 0x29, 0x09, 0x49, 0x0a, 0x4a, 0x2a, 0x6a,
+			0xa9, 0xa2, 0xa0, 0xaa, 0xa8, 0x8a, 0x98, 0xe8, 0xc8, 0xca, 0x88, 0x18,
+			0x38, 0xb8, 0x08, 0x28, 0x48, 0x68, 0x90, 0xb0, 0xd0, 0xf0, 0x10, 0x30,
+			0x50, 0x70};
+
+	public CpuLazyFlagsTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(CpuLazyFlagsTest.class);
+	}
+
+	public void setUp()
+	{
+		eagerRam = new RAM(false);
+		eagerCpu = createCpu(eagerRam);
+
+		lazyRam = new RAM(false);
+		lazyCpu = createCpu(lazyRam);
+		lazyCpu.setLazyFlags(true);
+	}
+
+	private static CPU createCpu(RAM ram)
+	{
+		CPU cpu = new CPU(false);
+		Stack stack = new Stack(false);
+
+		cpu.setRam(ram);
+		cpu.setStack(stack);
+		ram.setCpu(cpu);
+		stack.setCpu(cpu);
+
+		cpu.reset();
+		return cpu;
+	}
+
+	public void testInitialState()
+	{
+		assertFalse(eagerCpu.isLazyFlags());
+		assertTrue(lazyCpu.isLazyFlags());
+		assertEquals(0x20, lazyCpu.getProcessorStatusFlags());
+	}
+
+	public void testAdcMatchesEager() throws SimulationException
+	{
+		checkAllInputs(0x69);
+	}
+
+	public void testSbcMatchesEager() throws SimulationException
+	{
+		checkAllInputs(0xe9);
+	}
+
+	public void testAluSequencesMatchEager() throws SimulationException
+	{
+		Random random = new Random(6502);
+
+		for(int trial = 0; trial < 2000; trial++)
+		{
+			int status = random.nextInt(256) & ~CPU.PSR_DECIMAL;
+			int a = random.nextInt(256);
+
+			for(int i = 0; i < 32; i += 2)
+			{
+				int opcode = ALU_OPCODES[random.nextInt(ALU_OPCODES.length)];
+				int operand = (opcode & 0x1f) == 0x10 ? 0x00 : random.nextInt(256); //Branches continue with the next instruction
+
+				eagerRam.write(i, opcode);
+				eagerRam.write(i + 1, operand);
+				lazyRam.write(i, opcode);
+				lazyRam.write(i + 1, operand);
+			}
+
+			setState(eagerCpu, a, status);
+			setState(lazyCpu, a, status);
+
+			eagerCpu.step(16);
+			lazyCpu.step(16);
+
+			assertSameState("Trial " + trial);
+		}
+	}
+
+	public void testFlagsSurviveModeChange() throws SimulationException
+	{
+		lazyRam.loadProgram(new int[] {0xa9, 0x7f,  // LDA #$7F
+									   0x69, 0x01}); // ADC #$01
+		lazyCpu.step(2);
+		lazyCpu.setLazyFlags(false);
+
+		assertTrue(lazyCpu.getOverflowFlag());
+		assertTrue(lazyCpu.getNegativeFlag());
+		assertFalse(lazyCpu.getZeroFlag());
+		assertFalse(lazyCpu.getCarryFlag());
+	}
+
+	/*
+	 * Runs the immediate mode opcode for every accumulator, operand, carry and decimal flag input
+	 */
+	private void checkAllInputs(int opcode) throws SimulationException
+	{
+		for(int decimal = 0; decimal < 2; decimal++)
+		{
+			for(int carry = 0; carry < 2; carry++)
+			{
+				for(int a = 0; a < 256; a++)
+				{
+					for(int operand = 0; operand < 256; operand++)
+					{
+						int status = carry * CPU.PSR_CARRY | decimal * CPU.PSR_DECIMAL;
+
+						eagerRam.write(0, opcode);
+						eagerRam.write(1, operand);
+						lazyRam.write(0, opcode);
+						lazyRam.write(1, operand);
+
+						setState(eagerCpu, a, status);
+						setState(lazyCpu, a, status);
+
+						eagerCpu.step();
+						lazyCpu.step();
+
+						if(eagerCpu.getA() != lazyCpu.getA() || eagerCpu.getProcessorStatusFlags() != lazyCpu.getProcessorStatusFlags())
+						{
+							fail("Opcode " + Integer.toHexString(opcode) + " A=" + a + " operand=" + operand + " C=" + carry + " D=" + decimal 
+									+ ": expected A=" + eagerCpu.getA() + " P=" + eagerCpu.getProcessorStatusFlags() 
+									+ " got A=" + lazyCpu.getA() + " P=" + lazyCpu.getProcessorStatusFlags());
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private void setState(CPU cpu, int a, int status)
+	{
+		cpu.setPc(0);
+		cpu.setSp(0x3f);
+		cpu.setA(a);
+		cpu.setX(a ^ 0x5a);
+		cpu.setY(a ^ 0xa5);
+		cpu.setProcessorStatusFlags(status);
+	}
+
+	private void assertSameState(String msg)
+	{
+		assertEquals(msg + " A", eagerCpu.getA(), lazyCpu.getA());
+		assertEquals(msg + " X", eagerCpu.getX(), lazyCpu.getX());
+		assertEquals(msg + " Y", eagerCpu.getY(), lazyCpu.getY());
+		assertEquals(msg + " SP", eagerCpu.getSp(), lazyCpu.getSp());
+		assertEquals(msg + " PC", eagerCpu.getPc(), lazyCpu.getPc());
+		assertEquals(msg + " PSR", eagerCpu.getProcessorStatusFlags(), lazyCpu.getProcessorStatusFlags());
+	}
+}
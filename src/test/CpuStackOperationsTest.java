@@ -225,4 +225,16 @@ public class CpuStackOperationsTest extends TestCase
     	assertEquals(0x2f, cpu.getProcessorStatusFlags());
     }
 
+	public void testStackPositionsWrap()
+	{
+		stack.push(0x40, 0x1ab); //Wraps to position 0x00, only the low byte is held
+		assertEquals(0xab, stack.getStackValue(0x00));
+		assertEquals(0xab, stack.getStackValue(0x40));
+		assertEquals(0xab, stack.pop(0x00));
+		assertEquals(0x00, stack.getStackValue(0x00));
+
+		stack.push(-1, 0x80); //SP below the stack wraps to the top
+		assertEquals(0x80, stack.getStackValue(0x3f));
+	}
+
 }
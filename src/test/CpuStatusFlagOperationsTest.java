@@ -146,5 +146,39 @@ public class CpuStatusFlagOperationsTest extends TestCase {
         cpu.step();
         assertTrue(cpu.getIrqDisableFlag());
     }
+    
+    public void testStatusRegisterRoundTrip()
+    {
+        cpu.setProcessorStatusFlags(0xdf); //Bit 5 clear in the value, it is always set in the register
+        assertEquals(0xff, cpu.getProcessorStatusFlags());
+        assertTrue(cpu.getCarryFlag());
+        assertTrue(cpu.getBreakFlag());
+        assertTrue(cpu.getNegativeFlag());
+        
+        cpu.clearZeroFlag();
+        cpu.setOverflowFlag(false);
+        assertEquals(0xbd, cpu.getProcessorStatusFlags());
+        
+        cpu.setProcessorStatusFlags(0);
+        assertEquals(0x20, cpu.getProcessorStatusFlags());
+        assertEquals(0, cpu.getCarryBit());
+    }
+    
+    public void testPhpPlpPreserveFlags() throws SimulationException
+    {
+        int[] program = {0x38, 0x00,  // SEC
+                         0xf8, 0x00,  // SED
+                         0x08, 0x00,  // PHP
+                         0x18, 0x00,  // CLC
+                         0xd8, 0x00,  // CLD
+                         0x28, 0x00}; // PLP
+        ram.loadProgram(program);
+        
+        cpu.step(5);
+        assertEquals(0x20, cpu.getProcessorStatusFlags());
+        
+        cpu.step();
+        assertEquals(0x39, cpu.getProcessorStatusFlags()); //Break flag set by PHP
+    }
 	
 }
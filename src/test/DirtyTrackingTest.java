@@ -0,0 +1,97 @@
+package test;
+
+import core.CPU;
+import core.MOS6502;
+import core.RAM;
+import core.Stack;
+import exceptions.SimulationException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * This JUnit Test checks the write tracking of RAM and Stack used to redraw only the
+ * changed lines of the memory and stack maps.
+ */
+
+public class DirtyTrackingTest extends TestCase {
+
+	public DirtyTrackingTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(DirtyTrackingTest.class);
+	}
+
+	public void testRamWrites()
+	{
+		RAM ram = new RAM(false);
+		assertEquals(0, ram.nextDirty(0)); //fill() in the constructor marks every address
+		assertEquals(RAM.LITE_SIZE - 1, ram.nextDirty(RAM.LITE_SIZE - 1));
+
+		ram.clearDirty();
+		assertEquals(-1, ram.nextDirty(0));
+
+		ram.write(0x05, 1);
+		ram.write(0x40, 2);
+		ram.write(0xff, 3);
+		ram.write(0x105, 4); //Outside of RAM, wraps around to 0x05
+
+		assertTrue(ram.isDirty(0x40));
+		assertFalse(ram.isDirty(0x41));
+		assertEquals(0x05, ram.nextDirty(0));
+		assertEquals(0x40, ram.nextDirty(0x06));
+		assertEquals(0xff, ram.nextDirty(0x41));
+		assertEquals(-1, ram.nextDirty(0x100));
+		assertEquals(4, ram.read(0x05));
+	}
+
+	public void testFullSizeRam()
+	{
+		RAM ram = new RAM(RAM.FULL_SIZE, false);
+		ram.clearDirty();
+		ram.write(0xd123, 9);
+		assertEquals(0xd123, ram.nextDirty(0));
+		assertEquals(-1, ram.nextDirty(0xd124));
+	}
+
+	public void testStackPushAndPop()
+	{
+		Stack stack = new Stack(false);
+		stack.clearDirty();
+
+		stack.push(0x3f, 7);
+		assertEquals(0x3f, stack.nextDirty(0));
+
+		stack.clearDirty();
+		stack.pop(0x3f);
+		assertTrue(stack.isDirty(0x3f));
+		assertEquals(-1, stack.nextDirty(0x40));
+	}
+
+	public void testProgramMarksOnlyWrittenAddresses() throws SimulationException
+	{
+		MOS6502 machine = new MOS6502(false);
+		machine.loadRAM(new int[] {0xef, 0xef,  // BEGIN
+								   0xa9, 0x42,  // LDA #$42
+								   0x8d, 0x80,  // STA $80
+								   0x48, 0x00,  // PHA
+								   0xff, 0xff}); // END
+		machine.resetCPU();
+		machine.getRam().clearDirty();
+		machine.getStack().clearDirty();
+
+		CPU cpu = machine.getCpu();
+		while(cpu.getCanStep())
+		{
+			cpu.step();
+		}
+
+		assertEquals(0x80, machine.getRam().nextDirty(0));
+		assertEquals(-1, machine.getRam().nextDirty(0x81));
+		assertEquals(0x3f, machine.getStack().nextDirty(0));
+	}
+}
@@ -0,0 +1,121 @@
+package test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import core.ExecutionThread;
+import core.MOS6502;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * This JUnit Test runs programs on an ExecutionThread and checks the reason
+ * each run finishes with.
+ */
+
+public class ExecutionThreadTest extends TestCase {
+
+	private static final int[] END_PROGRAM = {0xef, 0xef,  // BEGIN
+											  0xa2, 0x05,  // LDX #$05
+											  0xca, 0x00,  // DEX
+											  0xd0, 0xfc,  // BNE $FC
+											  0xff, 0xff}; // END
+	
+	private static final int[] ENDLESS_PROGRAM = {0xef, 0xef,  // BEGIN
+												  0xe8, 0x00,  // INX
+												  0x4c, 0x02,  // JMP $02
+												  0xff, 0xff}; // END
+	
+	protected MOS6502 machine;
+	
+	protected CountDownLatch finished;
+	protected int reason;
+	protected int frames;
+	
+	public ExecutionThreadTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(ExecutionThreadTest.class);
+	}
+
+	public void setUp()
+	{
+		machine = new MOS6502(false);
+		finished = new CountDownLatch(1);
+		reason = -1;
+		frames = 0;
+	}
+	
+	private ExecutionThread createThread()
+	{
+		return new ExecutionThread(machine, new ExecutionThread.Listener() {
+			public void frame(ExecutionThread thread)
+			{
+				frames++;
+			}
+			
+			public void finished(ExecutionThread thread, int finishedReason, String message)
+			{
+				reason = finishedReason;
+				finished.countDown();
+			}
+		});
+	}
+	
+	public void testRunToEnd() throws InterruptedException
+	{
+		machine.loadRAM(END_PROGRAM);
+		
+		ExecutionThread thread = createThread();
+		thread.start();
+		
+		assertTrue(finished.await(10, TimeUnit.SECONDS));
+		assertEquals(ExecutionThread.FINISHED_END_REACHED, reason);
+		assertFalse(machine.getCpu().getCanStep());
+		assertEquals(0, machine.getCpu().getX());
+	}
+	
+	public void testStepBudget() throws InterruptedException
+	{
+		machine.loadRAM(ENDLESS_PROGRAM);
+		
+		ExecutionThread thread = createThread();
+		thread.setStepBudget(100000);
+		thread.start();
+		
+		assertTrue(finished.await(10, TimeUnit.SECONDS));
+		assertEquals(ExecutionThread.FINISHED_BUDGET_REACHED, reason);
+		assertEquals(100000, thread.getStepsExecuted());
+		assertTrue(machine.getCpu().getCanStep());
+	}
+	
+	public void testPauseResumeStop() throws InterruptedException
+	{
+		machine.loadRAM(ENDLESS_PROGRAM);
+		
+		ExecutionThread thread = createThread();
+		thread.setStepBudget(0);
+		thread.start();
+		
+		thread.pause();
+		Thread.sleep(100);
+		long paused = thread.getStepsExecuted();
+		Thread.sleep(100);
+		assertEquals(paused, thread.getStepsExecuted());
+		
+		thread.resume();
+		Thread.sleep(100);
+		assertTrue(thread.getStepsExecuted() > paused);
+		
+		thread.stop();
+		assertFalse(thread.isRunning());
+		assertTrue(finished.await(10, TimeUnit.SECONDS));
+		assertEquals(ExecutionThread.FINISHED_STOPPED, reason);
+		assertTrue(frames > 0);
+	}
+}
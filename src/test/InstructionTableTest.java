@@ -0,0 +1,111 @@
+package test;
+
+import compiler.AddressingMode;
+import compiler.Instruction;
+import compiler.InstructionTable;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * This JUnit Test checks the opcode metadata and mnemonic lookup of the InstructionTable 
+ * against the String arrays it is built from.
+ */
+
+public class InstructionTableTest extends TestCase {
+
+	protected InstructionTable table;
+
+	public InstructionTableTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(InstructionTableTest.class);
+	}
+
+	public void setUp()
+	{
+		table = new InstructionTable();
+	}
+
+	public void testMetadataMatchesTable()
+	{
+		String[] opcodes = table.getOpcodes();
+		String[] symbols = table.getSymbols();
+		String[] addressing = table.getAddressing();
+		String[] bytes = table.getBytes();
+		String[] cycles = table.getCycles();
+
+		int legal = 0;
+		for(int opcode = 0; opcode < 256; opcode++)
+		{
+			if(InstructionTable.isLegal(opcode))
+				legal++;
+		}
+		assertEquals(opcodes.length, legal);
+
+		for(int i = 0; i < opcodes.length; i++)
+		{
+			int opcode = Integer.parseInt(opcodes[i], 16);
+
+			assertEquals(symbols[i], InstructionTable.getMnemonic(opcode));
+			assertEquals(addressing[i], InstructionTable.getAddressingMode(opcode).getName());
+			assertEquals(Integer.parseInt(bytes[i]), InstructionTable.getLength(opcode));
+			assertEquals(Integer.parseInt(cycles[i].replace("*", "")), InstructionTable.getBaseCycles(opcode));
+			assertEquals(cycles[i].endsWith("**"), InstructionTable.hasBranchPenalty(opcode));
+			assertEquals(cycles[i].endsWith("*") && !cycles[i].endsWith("**"), InstructionTable.hasPageCrossPenalty(opcode));
+			assertEquals(opcode, InstructionTable.getOpcode(symbols[i], AddressingMode.fromName(addressing[i])));
+
+			Instruction instruction = table.getInstruction(opcodes[i]);
+			assertEquals(symbols[i], instruction.getSymbol());
+			assertEquals(addressing[i], instruction.getAddressing());
+		}
+	}
+
+	public void testIllegalOpcodes()
+	{
+		assertFalse(InstructionTable.isLegal(0x02));
+		assertNull(InstructionTable.getMnemonic(0x02));
+		assertNull(InstructionTable.getAddressingMode(0x02));
+		assertEquals(1, InstructionTable.getLength(0x02));
+		assertNull(table.getInstruction("02"));
+		assertNull(table.getInstruction("ZZ"));
+
+		assertFalse(InstructionTable.isLegal(0xA5)); //Zero-page opcodes are not output by the assembler
+	}
+
+	public void testMnemonicLookup()
+	{
+		assertTrue(InstructionTable.isMnemonic("LDA"));
+		assertTrue(InstructionTable.isMnemonic("TYA"));
+		assertFalse(InstructionTable.isMnemonic("LDZ"));
+		assertFalse(InstructionTable.isMnemonic("LD"));
+		assertFalse(InstructionTable.isMnemonic("LDAX"));
+		assertFalse(InstructionTable.isMnemonic("lda"));
+		assertFalse(InstructionTable.isMnemonic("_LOOP"));
+
+		assertEquals(0xA9, InstructionTable.getOpcode("LDA", AddressingMode.IMMEDIATE));
+		assertEquals(0x6C, InstructionTable.getOpcode("JMP", AddressingMode.INDIRECT));
+		assertEquals(-1, InstructionTable.getOpcode("STA", AddressingMode.IMMEDIATE));
+		assertEquals(-1, InstructionTable.getOpcode("XYZ", AddressingMode.IMPLIED));
+		assertEquals(-1, InstructionTable.getOpcode("LDA", null));
+
+		assertEquals(6, InstructionTable.getAddressingModes("ADC").length);
+		assertEquals(0, InstructionTable.getAddressingModes("XYZ").length);
+		assertEquals("ADC", table.getInstructionBySymbol("adc").getSymbol());
+		assertEquals("69", table.getInstructionBySymbol("adc").getOpcode());
+	}
+
+	public void testAddressingModeNumbers()
+	{
+		for(int number = 1; number <= 10; number++)
+		{
+			assertEquals(number, AddressingMode.fromNumber(number).getNumber());
+		}
+		assertNull(AddressingMode.fromNumber(0));
+		assertNull(AddressingMode.fromNumber(11));
+	}
+}
@@ -0,0 +1,209 @@
+package test;
+
+import core.CPU;
+import core.MOS6502;
+import core.MachineSnapshot;
+import core.RAM;
+import exceptions.SimulationException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * This JUnit Test checks whole machine snapshots, MOS6502.snapshot() and MOS6502.restore().
+ */
+
+public class MachineSnapshotTest extends TestCase {
+
+	private static final int[] PROGRAM = {0xef, 0xef,  // BEGIN
+										  0xa2, 0x05,  // LDX #$05
+										  0xa9, 0x00,  // LDA #$00
+										  0x18, 0x00,  // CLC
+										  0x69, 0x03,  // ADC #$03
+										  0x9d, 0x80,  // STA $80,X
+										  0x48, 0x00,  // PHA
+										  0xca, 0x00,  // DEX
+										  0xd0, 0xf6,  // BNE $F6
+										  0xff, 0xff}; // END
+
+	protected MOS6502 machine;
+	protected CPU cpu;
+	protected RAM ram;
+
+	public MachineSnapshotTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(MachineSnapshotTest.class);
+	}
+
+	public void setUp()
+	{
+		machine = new MOS6502(false);
+		cpu = machine.getCpu();
+		ram = machine.getRam();
+		machine.loadRAM(PROGRAM);
+		machine.resetCPU();
+	}
+
+	public void testRestoreRepeatsExecution() throws SimulationException
+	{
+		cpu.step(8);
+		MachineSnapshot snapshot = machine.snapshot();
+		assertEquals(cpu.getPc(), snapshot.getPc());
+		assertEquals(cpu.getA(), snapshot.getA());
+		assertEquals(8, snapshot.getStepCounter());
+
+		runToEnd();
+		int a = cpu.getA();
+		long cycles = cpu.getCycleCounter();
+		int[] memory = memory();
+		assertFalse(cpu.getCanStep());
+
+		machine.restore(snapshot);
+		assertTrue(cpu.getCanStep());
+		assertEquals(snapshot.getPc(), cpu.getPc());
+		assertEquals(snapshot.getX(), cpu.getX());
+		assertEquals(snapshot.getSp(), cpu.getSp());
+		assertEquals(snapshot.getProcessorStatusFlags(), cpu.getProcessorStatusFlags());
+		assertEquals(snapshot.getCycleCounter(), cpu.getCycleCounter());
+		assertEquals(0, ram.read(0x81)); //Written after the snapshot was taken
+		assertEquals(0x00, machine.getStack().getStackValue(0x3d));
+
+		runToEnd();
+		assertEquals(a, cpu.getA());
+		assertEquals(cycles, cpu.getCycleCounter());
+		for(int i = 0; i < memory.length; i++)
+		{
+			assertEquals("RAM 0x" + Integer.toHexString(i), memory[i], ram.read(i));
+		}
+	}
+
+	public void testSnapshotsAreImmutable() throws SimulationException
+	{
+		MachineSnapshot[] snapshots = new MachineSnapshot[200];
+		for(int i = 0; i < snapshots.length; i++)
+		{
+			ram.write(0x90, i & 0xff);
+			ram.write(0x90 + (i & 0x0f), i & 0xff);
+			snapshots[i] = machine.snapshot();
+		}
+
+		for(int i = 0; i < snapshots.length; i++)
+		{
+			assertEquals(i & 0xff, snapshots[i].getMemory(0x90 + (i & 0x0f)));
+			assertEquals(0xa2, snapshots[i].getMemory(0x02));
+		}
+
+		machine.restore(snapshots[17]);
+		assertEquals(17, ram.read(0x91));
+		assertEquals(7, ram.read(0x97));
+		machine.restore(snapshots[199]);
+		assertEquals(199, ram.read(0x90 + (199 & 0x0f)));
+		assertEquals(193, ram.read(0x91));
+	}
+
+	public void testStackRestored() throws SimulationException
+	{
+		MachineSnapshot empty = machine.snapshot();
+		runToEnd();
+		assertEquals(0x03, machine.getStack().getStackValue(0x3f));
+		assertEquals(0x00, empty.getStackValue(0x3f));
+
+		MachineSnapshot full = machine.snapshot();
+		machine.restore(empty);
+		assertEquals(0x00, machine.getStack().getStackValue(0x3f));
+		assertEquals(0x3f, cpu.getSp());
+		machine.restore(full);
+		assertEquals(0x03, machine.getStack().getStackValue(0x3f));
+		assertEquals(0x0f, machine.getStack().getStackValue(0x3b));
+	}
+
+	public void testStackInRam() throws SimulationException
+	{
+		MOS6502 mapped = new MOS6502(false);
+		mapped.setStackInRam(true);
+		mapped.loadRAM(PROGRAM);
+		mapped.resetCPU();
+
+		MachineSnapshot start = mapped.snapshot();
+		while(mapped.getCpu().getCanStep())
+		{
+			mapped.getCpu().step();
+		}
+		MachineSnapshot end = mapped.snapshot();
+		assertEquals(0x03, end.getStackValue(0x3f));
+		assertEquals(0x03, end.getMemory(0xff));
+
+		mapped.restore(start);
+		assertEquals(0x00, mapped.getRam().read(0xff));
+		assertEquals(0x00, mapped.getStack().getStackValue(0x3f));
+		mapped.restore(end);
+		assertEquals(0x0f, mapped.getRam().read(0xfb));
+	}
+
+	public void testFullModePages()
+	{
+		MOS6502 full = new MOS6502(CPU.MODE_FULL, false);
+		full.getRam().write(0x1234, 0x56);
+		MachineSnapshot before = full.snapshot();
+		assertEquals(0x10000, before.getMemorySize());
+		assertEquals(0x56, before.getMemory(0x1234));
+
+		full.getRam().write(0x1234, 0x78);
+		full.getRam().write(0xfff0, 0x9a);
+		MachineSnapshot after = full.snapshot();
+		assertEquals(0x56, before.getMemory(0x1234));
+		assertEquals(0x78, after.getMemory(0x1234));
+
+		full.restore(before);
+		assertEquals(0x56, full.getRam().read(0x1234));
+		assertEquals(0x00, full.getRam().read(0xfff0));
+	}
+
+	public void testRestoreChecksMachine()
+	{
+		MachineSnapshot snapshot = machine.snapshot();
+
+		try
+		{
+			new MOS6502(CPU.MODE_FULL, false).restore(snapshot);
+			fail("Snapshot restored into a machine of a different size");
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+
+		MOS6502 mapped = new MOS6502(false);
+		mapped.setStackInRam(true);
+		try
+		{
+			mapped.restore(snapshot);
+			fail("Snapshot restored with a different stack mapping");
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+	}
+
+	private void runToEnd() throws SimulationException
+	{
+		while(cpu.getCanStep())
+		{
+			cpu.step();
+		}
+	}
+
+	private int[] memory()
+	{
+		int[] memory = new int[ram.getRamSize()];
+		for(int i = 0; i < memory.length; i++)
+		{
+			memory[i] = ram.read(i);
+		}
+		return memory;
+	}
+}
@@ -0,0 +1,187 @@
+package test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import core.CPU;
+import core.MOS6502;
+import core.Profiler;
+import core.Stack;
+import exceptions.SimulationException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * This JUnit Test checks the counts kept by the Profiler, MOS6502.setProfiling().
+ */
+
+public class ProfilerTest extends TestCase {
+
+	private static final int[] PROGRAM = {0xef, 0xef,  // BEGIN
+										  0xa2, 0x05,  // LDX #$05
+										  0xa9, 0x00,  // LDA #$00
+										  0x18, 0x00,  // CLC
+										  0x69, 0x03,  // ADC #$03
+										  0x9d, 0x80,  // STA $80,X
+										  0x48, 0x00,  // PHA
+										  0x20, 0x18,  // JSR $18
+										  0xca, 0x00,  // DEX
+										  0xd0, 0xf2,  // BNE $F2
+										  0x4c, 0x1e,  // JMP $1E
+										  0x00, 0x00,  // BRK
+										  0x08, 0x00,  // PHP
+										  0x28, 0x00,  // PLP
+										  0x60, 0x00,  // RTS
+										  0xff, 0xff}; // END
+
+	private static final int[] READ_LOOP = {0xef, 0xef,  // BEGIN
+											0xa2, 0x03,  // LDX #$03
+											0xad, 0x20,  // LDA $20
+											0xca, 0x00,  // DEX
+											0xd0, 0xfa,  // BNE $FA
+											0xff, 0xff}; // END
+
+	public ProfilerTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(ProfilerTest.class);
+	}
+
+	public void testCountsOpcodesAndAddresses() throws SimulationException
+	{
+		MOS6502 machine = run(PROGRAM, CPU.ENGINE_SWITCH);
+		Profiler profiler = machine.getProfiler();
+		CPU cpu = machine.getCpu();
+
+		assertEquals(cpu.getStepCounter(), profiler.getStepCount());
+		assertEquals(cpu.getCycleCounter(), profiler.getCycleCount());
+
+		assertEquals(1, profiler.getOpcodeCount(0xef));
+		assertEquals(5, profiler.getOpcodeCount(0xca)); //DEX
+		assertEquals(10, profiler.getOpcodeCycles(0xca));
+		assertEquals(5, profiler.getOpcodeCount(0x9d)); //STA $80,X
+		assertEquals(1, profiler.getOpcodeCount(0xff));
+		assertEquals(0, profiler.getOpcodeCount(0x00)); //BRK is jumped over
+
+		assertEquals(5, profiler.getExecutionCount(0x10));
+		assertEquals(10, profiler.getExecutionCycles(0x10));
+		assertEquals(1, profiler.getExecutionCount(0x02));
+		assertEquals(0, profiler.getExecutionCount(0x16));
+
+		for(int address = 0x81; address <= 0x85; address++)
+		{
+			assertEquals(1, profiler.getWriteCount(address));
+		}
+		assertEquals(0, profiler.getWriteCount(0x80));
+
+		//Instruction fetches are not reads
+		assertEquals(0, profiler.getReadCount(0x10));
+	}
+
+	public void testCountsReads() throws SimulationException
+	{
+		Profiler profiler = run(READ_LOOP, CPU.ENGINE_SWITCH).getProfiler();
+
+		assertEquals(3, profiler.getReadCount(0x20));
+		assertEquals(3, profiler.getHeat(0x20));
+		assertEquals(3 * 4, profiler.getHeat(0x04)); //LDA $20 takes 4 cycles
+	}
+
+	public void testCountsStackInRam() throws SimulationException
+	{
+		MOS6502 machine = new MOS6502(false);
+		machine.setStackInRam(true);
+		machine.loadRAM(PROGRAM);
+		machine.resetCPU();
+		machine.setProfiling(true);
+		while(machine.getCpu().getCanStep())
+		{
+			machine.getCpu().step();
+		}
+
+		//The loop runs 5 times, pushing with PHA, JSR and PHP and pulling with PLP and RTS
+		Profiler profiler = machine.getProfiler();
+		long writes = 0;
+		long reads = 0;
+		for(int address = Stack.LITE_RAM_BASE; address < Stack.LITE_RAM_BASE + 0x40; address++)
+		{
+			writes += profiler.getWriteCount(address);
+			reads += profiler.getReadCount(address);
+		}
+		assertEquals(15, writes);
+		assertEquals(10, reads);
+		assertEquals(1, profiler.getWriteCount(Stack.LITE_RAM_BASE + 0x3f));
+	}
+
+	public void testEnginesProfileAlike() throws SimulationException
+	{
+		Profiler expected = run(PROGRAM, CPU.ENGINE_SWITCH).getProfiler();
+		Profiler table = run(PROGRAM, CPU.ENGINE_DISPATCH_TABLE).getProfiler();
+		Profiler blocks = run(PROGRAM, CPU.ENGINE_BLOCK_CACHE).getProfiler();
+
+		assertEquals(report(expected), report(table));
+		assertEquals(report(expected), report(blocks));
+	}
+
+	public void testReportListsBusiestFirst() throws SimulationException
+	{
+		Profiler profiler = run(PROGRAM, CPU.ENGINE_SWITCH).getProfiler();
+		String[] lines = report(profiler).split("\\r?\\n");
+
+		assertTrue(lines[0].startsWith("profile steps=" + profiler.getStepCount()));
+
+		//Opcodes are listed by count, the loop body runs 5 times and the rest once
+		assertTrue(lines[1], lines[1].startsWith("opcode="));
+		assertTrue(lines[1], lines[1].contains("count=5"));
+		assertTrue(report(profiler).contains("write=0081 count=1"));
+	}
+
+	public void testDisableAndClear() throws SimulationException
+	{
+		MOS6502 machine = run(PROGRAM, CPU.ENGINE_SWITCH);
+		Profiler profiler = machine.getProfiler();
+
+		machine.setProfiling(true);
+		assertSame(profiler, machine.getProfiler());
+
+		profiler.clear();
+		assertEquals(0, profiler.getStepCount());
+		assertEquals(0, profiler.getExecutionCount(0x10));
+		assertEquals(0, profiler.getWriteCount(0x81));
+
+		machine.setProfiling(false);
+		assertNull(machine.getProfiler());
+		machine.resetCPU();
+		machine.getCpu().step(10);
+		assertEquals(0, profiler.getStepCount());
+	}
+
+	private static MOS6502 run(int[] program, int engine) throws SimulationException
+	{
+		MOS6502 machine = new MOS6502(false);
+		machine.setExecutionEngine(engine);
+		machine.loadRAM(program);
+		machine.resetCPU();
+		machine.setProfiling(true);
+
+		CPU cpu = machine.getCpu();
+		for(int i = 0; i < 20 && cpu.getCanStep(); i++)
+		{
+			cpu.step(16);
+		}
+		assertFalse(cpu.getCanStep());
+		return machine;
+	}
+
+	private static String report(Profiler profiler)
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		profiler.report(new PrintStream(out), 10);
+		return out.toString();
+	}
+}
@@ -0,0 +1,120 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import compiler.AssembledProgram;
+import compiler.Compiler;
+import compiler.ObjectFormat;
+import core.ReadBinary;
+import exceptions.CompilerException;
+import exceptions.SimulationException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * This JUnit Test writes programs with OutputBinaryToFile in both the binary object 
+ * format and the original text format, and checks that ReadBinary reads them back.
+ */
+
+public class ReadBinaryTest extends TestCase {
+
+	private static final String[] PROGRAM = {"BEGIN",
+											 "_START LDX #05",
+											 "LDA #01",
+											 "_LOOP STA $80",
+											 "INX",
+											 "END",
+											 "dc.v $90 $2A $2B"};
+	
+	protected Compiler compiler;
+	protected File file;
+	
+	public ReadBinaryTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(ReadBinaryTest.class);
+	}
+
+	public void setUp() throws CompilerException, IOException
+	{
+		compiler = new Compiler(PROGRAM);
+		file = File.createTempFile("readbinarytest", ".obj");
+	}
+	
+	public void tearDown()
+	{
+		file.delete();
+	}
+	
+	public void testObjectRoundTrip() throws SimulationException
+	{
+		compiler.writeObjectToFile(file.getPath());
+		
+		AssembledProgram expected = compiler.getProgram();
+		assertEquals(ObjectFormat.getObjectSize(expected), file.length());
+		assertTrue(ReadBinary.isObjectFile(file.getPath()));
+		
+		ReadBinary rb = new ReadBinary(file.getPath());
+		AssembledProgram program = rb.getAssembledProgram();
+		
+		assertEquals(expected.getCodeLength(), program.getCodeLength());
+		for(int i = 0; i < expected.getCodeLength(); i++)
+		{
+			assertEquals(expected.getCode()[i], program.getCode()[i]);
+			assertEquals(expected.getCode()[i] & 0xff, rb.getProgram()[i]);
+		}
+		
+		assertEquals(2, program.getDirectiveCount());
+		assertEquals(0x91, program.getDirectiveAddresses()[1]);
+		assertEquals(0x2b, program.getDirectiveValues()[1] & 0xff);
+		assertEquals("10010001", rb.getDirectiveValues()[2]);
+		
+		assertEquals(expected.getSymbols(), program.getSymbols());
+		assertEquals(0x06, program.getSymbolAddress("LOOP"));
+	}
+	
+	public void testCorruptObjectRejected() throws IOException
+	{
+		compiler.writeObjectToFile(file.getPath());
+		
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.seek(ObjectFormat.HEADER_SIZE + 2);
+		raf.write(0x00); //Overwrite the LDX opcode
+		raf.close();
+		
+		try
+		{
+			new ReadBinary(file.getPath());
+			fail("Corrupt object file was accepted");
+		}
+		catch(SimulationException ex)
+		{
+			assertTrue(ex.getErrorMessage().contains("checksum"));
+		}
+	}
+	
+	public void testTextFormatStillReadable() throws SimulationException
+	{
+		compiler.setOutputFile(file.getPath());
+		compiler.writeBinaryToFile(false);
+		
+		assertFalse(ReadBinary.isObjectFile(file.getPath()));
+		
+		ReadBinary rb = new ReadBinary(file.getPath());
+		AssembledProgram program = rb.getAssembledProgram();
+		
+		assertEquals(compiler.getProgram().getCodeLength(), rb.getProgram().length);
+		assertEquals(0xa2, rb.getProgram()[2]);
+		assertEquals(2, program.getDirectiveCount());
+		assertEquals(0x90, program.getDirectiveAddresses()[0]);
+		assertEquals(0x2a, program.getDirectiveValues()[0] & 0xff);
+		assertTrue(program.getSymbols().isEmpty());
+	}
+}
@@ -0,0 +1,197 @@
+package test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import compiler.AssembledProgram;
+import compiler.Compiler;
+import core.CPU;
+import core.MOS6502;
+import core.SimulationFarm;
+import exceptions.CompilerException;
+import exceptions.SimulationException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * This JUnit Test runs programs against many inputs on a SimulationFarm and checks each
+ * result against the same program run on its own.
+ */
+
+public class SimulationFarmTest extends TestCase {
+
+	private static final int[] ADD_PROGRAM = {0xef, 0xef,  // BEGIN
+											  0xad, 0x80,  // LDA $80
+											  0x18, 0x00,  // CLC
+											  0x6d, 0x81,  // ADC $81
+											  0x8d, 0x82,  // STA $82
+											  0xff, 0xff}; // END
+
+	private static final int[] COUNT_PROGRAM = {0xef, 0xef,  // BEGIN
+												0xae, 0x80,  // LDX $80
+												0xc8, 0x00,  // INY
+												0xca, 0x00,  // DEX
+												0xd0, 0xfa,  // BNE $FA
+												0xff, 0xff}; // END
+
+	private static final int[] ENDLESS_PROGRAM = {0xef, 0xef,  // BEGIN
+												  0xe8, 0x00,  // INX
+												  0x4c, 0x02,  // JMP $02
+												  0xff, 0xff}; // END
+
+	private static final int INSTANCES = 500;
+
+	public SimulationFarmTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(SimulationFarmTest.class);
+	}
+
+	public void testRunsEachImage() throws InterruptedException
+	{
+		List<int[]> images = new ArrayList<int[]>();
+		for(int i = 0; i < INSTANCES; i++)
+		{
+			int[] image = new int[0x82];
+			System.arraycopy(ADD_PROGRAM, 0, image, 0, ADD_PROGRAM.length);
+			image[0x80] = i & 0xff;
+			image[0x81] = (i * 7) & 0xff;
+			images.add(image);
+		}
+
+		SimulationFarm farm = new SimulationFarm(4);
+		List<SimulationFarm.Result> results = farm.runImages(images);
+
+		assertEquals(INSTANCES, results.size());
+		for(int i = 0; i < INSTANCES; i++)
+		{
+			SimulationFarm.Result result = results.get(i);
+			assertEquals(i, result.getIndex());
+			assertEquals(SimulationFarm.STATUS_END, result.getStatus());
+			assertNull(result.getError());
+			assertEquals((i + i * 7) & 0xff, result.getState().getMemory(0x82));
+		}
+
+		SimulationFarm.Statistics statistics = farm.getStatistics();
+		assertEquals(INSTANCES, statistics.getInstances());
+		assertEquals(0, statistics.getErrors());
+		assertEquals(INSTANCES * 6L, statistics.getSteps());
+		assertEquals(4, statistics.getThreads());
+		assertTrue(statistics.getElapsedNanos() > 0);
+	}
+
+	public void testMatchesSingleMachine() throws InterruptedException, SimulationException
+	{
+		final List<int[]> inputs = new ArrayList<int[]>();
+		for(int i = 0; i < 100; i++)
+		{
+			inputs.add(new int[] {i + 1});
+		}
+
+		int[] engines = {CPU.ENGINE_SWITCH, CPU.ENGINE_DISPATCH_TABLE, CPU.ENGINE_BLOCK_CACHE};
+		for(int engine : engines)
+		{
+			SimulationFarm farm = new SimulationFarm(3);
+			farm.setExecutionEngine(engine);
+			List<SimulationFarm.Result> results = farm.run(inputs.size(), new SimulationFarm.Job() {
+				public void load(MOS6502 machine, int index)
+				{
+					machine.loadRAM(COUNT_PROGRAM);
+					machine.getRam().write(0x80, inputs.get(index)[0]);
+				}
+			});
+
+			for(int i = 0; i < inputs.size(); i++)
+			{
+				MOS6502 machine = new MOS6502(false);
+				machine.loadRAM(COUNT_PROGRAM);
+				machine.getRam().write(0x80, inputs.get(i)[0]);
+				machine.resetCPU();
+				while(machine.getCpu().getCanStep())
+				{
+					machine.getCpu().step();
+				}
+
+				SimulationFarm.Result result = results.get(i);
+				assertEquals(i + 1, result.getState().getY());
+				assertEquals(machine.getCpu().getStepCounter(), result.getState().getStepCounter());
+				assertEquals(machine.getCpu().getCycleCounter(), result.getState().getCycleCounter());
+				assertEquals(machine.getCpu().getProcessorStatusFlags(), result.getState().getProcessorStatusFlags());
+			}
+		}
+	}
+
+	public void testLimitsAndErrors() throws InterruptedException
+	{
+		SimulationFarm farm = new SimulationFarm(2);
+		farm.setStepLimit(1000);
+		List<SimulationFarm.Result> results = farm.run(3, new SimulationFarm.Job() {
+			public void load(MOS6502 machine, int index) throws SimulationException
+			{
+				if(index == 1)
+					throw new SimulationException("No input for instance 1");
+
+				machine.loadRAM(index == 0 ? ENDLESS_PROGRAM : ADD_PROGRAM);
+			}
+		});
+
+		assertEquals(SimulationFarm.STATUS_STEP_LIMIT, results.get(0).getStatus());
+		assertEquals(1000, results.get(0).getState().getStepCounter());
+		assertEquals(SimulationFarm.STATUS_SIMULATION_ERROR, results.get(1).getStatus());
+		assertEquals("No input for instance 1", results.get(1).getError());
+		assertEquals(SimulationFarm.STATUS_END, results.get(2).getStatus());
+		assertEquals(1, farm.getStatistics().getErrors());
+
+		farm.setStepLimit(1000000);
+		farm.setCycleLimit(100);
+		results = farm.run(1, new SimulationFarm.Job() {
+			public void load(MOS6502 machine, int index)
+			{
+				machine.loadRAM(ENDLESS_PROGRAM);
+			}
+		});
+		assertEquals(SimulationFarm.STATUS_CYCLE_LIMIT, results.get(0).getStatus());
+		assertTrue(results.get(0).getState().getCycleCounter() >= 100);
+	}
+
+	public void testAssembledProgramWithInputs() throws InterruptedException, CompilerException
+	{
+		AssembledProgram program = new Compiler(new String[] {"BEGIN", "LDA $80", "CLC", "ADC $81", "STA $82", "END"}).getProgram();
+
+		List<int[]> inputs = new ArrayList<int[]>();
+		for(int i = 0; i < 50; i++)
+		{
+			inputs.add(new int[] {i, 100});
+		}
+
+		List<SimulationFarm.Result> results = new SimulationFarm(2).run(program, 0x80, inputs);
+		for(int i = 0; i < 50; i++)
+		{
+			assertEquals(SimulationFarm.STATUS_END, results.get(i).getStatus());
+			assertEquals(i + 100, results.get(i).getState().getMemory(0x82));
+		}
+	}
+
+	public void testFullModeInstances() throws InterruptedException
+	{
+		SimulationFarm farm = new SimulationFarm(2);
+		farm.setAddressMode(CPU.MODE_FULL);
+		List<SimulationFarm.Result> results = farm.run(4, new SimulationFarm.Job() {
+			public void load(MOS6502 machine, int index)
+			{
+				machine.loadRAM(new int[] {0xa9, index, 0x8d, 0x00, 0x20, 0xff, 0xff}); // LDA #index, STA $2000, END
+			}
+		});
+
+		for(int i = 0; i < 4; i++)
+		{
+			assertEquals(65536, results.get(i).getState().getMemorySize());
+			assertEquals(i, results.get(i).getState().getMemory(0x2000));
+		}
+	}
+}
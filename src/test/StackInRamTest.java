@@ -0,0 +1,162 @@
+package test;
+
+import core.CPU;
+import core.MOS6502;
+import core.RAM;
+import core.Stack;
+import exceptions.SimulationException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * This JUnit Test checks the stack mapped into RAM (MOS6502.setStackInRam()), page 1 of the
+ * full machine and the top 64 bytes of the lite machine's memory.
+ */
+
+public class StackInRamTest extends TestCase {
+
+	private static final int[] LOOP_PROGRAM = {0xef, 0xef,  // BEGIN
+											   0xa2, 0x05,  // LDX #$05
+											   0xa9, 0x00,  // LDA #$00
+											   0x18, 0x00,  // CLC
+											   0x69, 0x03,  // ADC #$03
+											   0x9d, 0x80,  // STA $80,X
+											   0x48, 0x00,  // PHA
+											   0x20, 0x18,  // JSR $18
+											   0xca, 0x00,  // DEX
+											   0xd0, 0xf2,  // BNE $F2
+											   0x4c, 0x1e,  // JMP $1E
+											   0x00, 0x00,  // BRK
+											   0x08, 0x00,  // PHP
+											   0x28, 0x00,  // PLP
+											   0x60, 0x00,  // RTS
+											   0xff, 0xff}; // END
+
+	public StackInRamTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(StackInRamTest.class);
+	}
+
+	public void testLiteProgramMatchesSeparateStack() throws SimulationException
+	{
+		MOS6502 separate = run(false);
+		MOS6502 mapped = run(true);
+
+		assertEquals(separate.getCpu().getA(), mapped.getCpu().getA());
+		assertEquals(separate.getCpu().getX(), mapped.getCpu().getX());
+		assertEquals(separate.getCpu().getSp(), mapped.getCpu().getSp());
+		assertEquals(separate.getCpu().getProcessorStatusFlags(), mapped.getCpu().getProcessorStatusFlags());
+		assertEquals(separate.getCpu().getCycleCounter(), mapped.getCpu().getCycleCounter());
+		for(int i = 0x80; i < 0x86; i++)
+		{
+			assertEquals(separate.getRam().read(i), mapped.getRam().read(i));
+		}
+
+		//The five pushed accumulator values are still on the stack below the top
+		for(int i = 0; i < 5; i++)
+		{
+			assertEquals(separate.getStack().getStackValue(0x3f - i), mapped.getStack().getStackValue(0x3f - i));
+			assertEquals(0x03 * (i + 1), mapped.getRam().read(Stack.LITE_RAM_BASE + 0x3f - i));
+		}
+	}
+
+	public void testFullModePageOne() throws SimulationException
+	{
+		MOS6502 machine = new MOS6502(CPU.MODE_FULL, false);
+		machine.setStackInRam(true);
+		RAM ram = machine.getRam();
+		CPU cpu = machine.getCpu();
+
+		ram.write(0x1000, 0x20); // JSR $2000
+		ram.write(0x1001, 0x00);
+		ram.write(0x1002, 0x20);
+		ram.write(0x2000, 0xad); // LDA $01FF
+		ram.write(0x2001, 0xff);
+		ram.write(0x2002, 0x01);
+		ram.write(0x2003, 0x60); // RTS
+		cpu.reset();
+		cpu.setPc(0x1000);
+
+		cpu.step();
+		assertEquals(0x10, ram.read(0x1ff));
+		assertEquals(0x02, ram.read(0x1fe));
+		assertEquals(0x10, machine.getStack().getStackValue(0xff));
+
+		cpu.step();
+		assertEquals(0x10, cpu.getA()); //The return address is visible to loads
+
+		cpu.step();
+		assertEquals(0x1003, cpu.getPc());
+		assertEquals(0xff, cpu.getSp());
+	}
+
+	public void testMapAndUnmapCopyContents()
+	{
+		MOS6502 machine = new MOS6502(false);
+		Stack stack = machine.getStack();
+		RAM ram = machine.getRam();
+
+		stack.push(0x3f, 0x12);
+		machine.setStackInRam(true);
+		assertTrue(stack.isMappedToRam());
+		assertEquals(Stack.LITE_RAM_BASE, stack.getRamBase());
+		assertEquals(Stack.LITE_RAM_BASE, machine.getCpu().getStackBase());
+		assertEquals(0x12, ram.read(0xff));
+
+		ram.clearDirty();
+		stack.push(0x3e, 0x34);
+		assertEquals(0x34, ram.read(0xfe));
+		assertTrue(stack.isDirty(0x3e));
+		assertEquals(0x3e, stack.nextDirty(0));
+		assertEquals(-1, stack.nextDirty(0x3f));
+
+		assertEquals(0x34, stack.pop(0x3e));
+		assertEquals(0x34, ram.read(0xfe)); //Popped values stay in memory
+
+		machine.setStackInRam(false);
+		assertFalse(stack.isMappedToRam());
+		assertEquals(-1, machine.getCpu().getStackBase());
+		assertEquals(0x12, stack.getStackValue(0x3f));
+		ram.write(0xff, 0x00);
+		assertEquals(0x12, stack.getStackValue(0x3f));
+	}
+
+	public void testMisalignedBaseRejected()
+	{
+		MOS6502 machine = new MOS6502(false);
+
+		try
+		{
+			machine.setStackInRam(true, 0xd0);
+			fail("Misaligned stack base accepted");
+		}
+		catch(IllegalArgumentException e)
+		{
+		}
+
+		machine.setStackInRam(true, 0x40);
+		assertEquals(0x40, machine.getStack().getRamBase());
+	}
+
+	private MOS6502 run(boolean stackInRam) throws SimulationException
+	{
+		MOS6502 machine = new MOS6502(false);
+		machine.setStackInRam(stackInRam);
+		machine.loadRAM(LOOP_PROGRAM);
+		machine.resetCPU();
+
+		CPU cpu = machine.getCpu();
+		while(cpu.getCanStep())
+		{
+			cpu.step();
+		}
+
+		return machine;
+	}
+}
@@ -0,0 +1,202 @@
+package test;
+
+import java.util.ArrayList;
+
+import core.CPU;
+import core.MOS6502;
+import core.MachineSnapshot;
+import exceptions.SimulationException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * This JUnit Test checks stepping backwards with the StepJournal, MOS6502.stepBack().
+ *
+ * Programs are run forwards taking a MachineSnapshot before every step, then taken back 
+ * one step at a time and compared against the snapshots.
+ */
+
+public class StepJournalTest extends TestCase {
+
+	private static final int[] PROGRAM = {0xef, 0xef,  // BEGIN
+										  0xa2, 0x05,  // LDX #$05
+										  0xa9, 0x00,  // LDA #$00
+										  0x18, 0x00,  // CLC
+										  0x69, 0x03,  // ADC #$03
+										  0x9d, 0x80,  // STA $80,X
+										  0x48, 0x00,  // PHA
+										  0x20, 0x18,  // JSR $18
+										  0xca, 0x00,  // DEX
+										  0xd0, 0xf2,  // BNE $F2
+										  0x4c, 0x1e,  // JMP $1E
+										  0x00, 0x00,  // BRK
+										  0x08, 0x00,  // PHP
+										  0x28, 0x00,  // PLP
+										  0x60, 0x00,  // RTS
+										  0xff, 0xff}; // END
+
+	public StepJournalTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(StepJournalTest.class);
+	}
+
+	public void testStepBackToStart() throws SimulationException
+	{
+		runAndTakeBack(machine(false));
+	}
+
+	public void testStepBackWithStackInRam() throws SimulationException
+	{
+		runAndTakeBack(machine(true));
+	}
+
+	public void testStepBackThenForwardAgain() throws SimulationException
+	{
+		MOS6502 machine = machine(false);
+		CPU cpu = machine.getCpu();
+		cpu.step(20);
+		MachineSnapshot after = machine.snapshot();
+
+		for(int i = 0; i < 7; i++)
+		{
+			assertTrue(machine.stepBack());
+		}
+		cpu.step(7);
+		assertSameState("Replayed", after, machine);
+	}
+
+	public void testCapacityIsBounded() throws SimulationException
+	{
+		MOS6502 machine = machine(false);
+		machine.setStepJournal(4);
+		machine.getCpu().step(10);
+
+		assertEquals(4, machine.getStepJournal().getStepCount());
+		for(int i = 0; i < 4; i++)
+		{
+			assertTrue(machine.stepBack());
+		}
+		assertFalse(machine.stepBack());
+		assertEquals(6, machine.getCpu().getStepCounter());
+	}
+
+	public void testChangesOutsideOfStepsClearJournal() throws SimulationException
+	{
+		MOS6502 machine = machine(false);
+		machine.getCpu().step(5);
+		assertEquals(5, machine.getStepJournal().getStepCount());
+
+		machine.getRam().write(0x90, 0x01);
+		assertEquals(0, machine.getStepJournal().getStepCount());
+		assertFalse(machine.stepBack());
+
+		machine.getCpu().step(2);
+		assertEquals(2, machine.getStepJournal().getStepCount());
+		machine.resetCPU();
+		assertFalse(machine.stepBack());
+	}
+
+	public void testStepBackAfterTransferToSp() throws SimulationException
+	{
+		//TXS with X past the top of the lite stack, followed by pops
+		int[] program = {0xef, 0xef,  // BEGIN
+						 0xa2, 0xfe,  // LDX #$FE
+						 0x9a, 0x00,  // TXS
+						 0x68, 0x00,  // PLA
+						 0x68, 0x00,  // PLA
+						 0x68, 0x00,  // PLA
+						 0xba, 0x00,  // TSX
+						 0xff, 0xff}; // END
+
+		for(int engine : new int[] {CPU.ENGINE_SWITCH, CPU.ENGINE_DISPATCH_TABLE, CPU.ENGINE_BLOCK_CACHE})
+		{
+			MOS6502 machine = new MOS6502(false);
+			machine.setExecutionEngine(engine);
+			machine.loadRAM(program);
+			machine.resetCPU();
+			machine.setStepJournal(1000);
+
+			CPU cpu = machine.getCpu();
+			cpu.step(3);
+			assertEquals(0x3e, cpu.getSp()); //The SP is held within the stack
+			cpu.step(4);
+			assertEquals(0x01, cpu.getX());
+
+			machine.resetCPU();
+			machine.setStepJournal(1000);
+			runAndTakeBack(machine);
+		}
+	}
+
+	public void testDisabledJournal() throws SimulationException
+	{
+		MOS6502 machine = new MOS6502(false);
+		machine.loadRAM(PROGRAM);
+		machine.resetCPU();
+		machine.getCpu().step(3);
+
+		assertNull(machine.getStepJournal());
+		assertFalse(machine.stepBack());
+	}
+
+	private MOS6502 machine(boolean stackInRam)
+	{
+		MOS6502 machine = new MOS6502(false);
+		machine.setStackInRam(stackInRam);
+		machine.loadRAM(PROGRAM);
+		machine.resetCPU();
+		machine.setStepJournal(1000);
+		return machine;
+	}
+
+	private void runAndTakeBack(MOS6502 machine) throws SimulationException
+	{
+		CPU cpu = machine.getCpu();
+		ArrayList<MachineSnapshot> history = new ArrayList<MachineSnapshot>();
+
+		while(cpu.getCanStep())
+		{
+			history.add(machine.snapshot());
+			cpu.step();
+		}
+
+		assertEquals(history.size(), machine.getStepJournal().getStepCount());
+		for(int i = history.size() - 1; i >= 0; i--)
+		{
+			assertTrue(machine.stepBack());
+			assertSameState("Step " + i, history.get(i), machine);
+		}
+		assertFalse(machine.stepBack());
+	}
+
+	private void assertSameState(String msg, MachineSnapshot expected, MOS6502 machine)
+	{
+		CPU cpu = machine.getCpu();
+		assertEquals(msg + " A", expected.getA(), cpu.getA());
+		assertEquals(msg + " X", expected.getX(), cpu.getX());
+		assertEquals(msg + " Y", expected.getY(), cpu.getY());
+		assertEquals(msg + " SP", expected.getSp(), cpu.getSp());
+		assertEquals(msg + " PC", expected.getPc(), cpu.getPc());
+		assertEquals(msg + " PSR", expected.getProcessorStatusFlags(), cpu.getProcessorStatusFlags());
+		assertEquals(msg + " IR", expected.getIr(), cpu.getIr());
+		assertEquals(msg + " Steps", expected.getStepCounter(), cpu.getStepCounter());
+		assertEquals(msg + " Cycles", expected.getCycleCounter(), cpu.getCycleCounter());
+		assertEquals(msg + " Can step", expected.getCanStep(), cpu.getCanStep());
+
+		for(int i = 0; i < expected.getMemorySize(); i++)
+		{
+			assertEquals(msg + " RAM 0x" + Integer.toHexString(i), expected.getMemory(i), machine.getRam().read(i));
+		}
+
+		for(int i = 0; i < machine.getStack().getStackSize(); i++)
+		{
+			assertEquals(msg + " Stack 0x" + Integer.toHexString(i), expected.getStackValue(i), machine.getStack().getStackValue(i));
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+
+import core.CPU;
+import core.MOS6502;
+import core.TraceRecorder;
+import exceptions.SimulationException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/*
+ * This JUnit Test checks the binary execution trace written by the TraceRecorder, held in
+ * its ring buffer and spilled to a trace file.
+ */
+
+public class TraceRecorderTest extends TestCase {
+
+	private static final int[] PROGRAM = {0xef, 0xef,  // BEGIN
+										  0xa2, 0x05,  // LDX #$05
+										  0xa9, 0x00,  // LDA #$00
+										  0x18, 0x00,  // CLC
+										  0x69, 0x03,  // ADC #$03
+										  0x9d, 0x80,  // STA $80,X
+										  0x48, 0x00,  // PHA
+										  0x20, 0x18,  // JSR $18
+										  0xca, 0x00,  // DEX
+										  0xd0, 0xf2,  // BNE $F2
+										  0x4c, 0x1e,  // JMP $1E
+										  0x00, 0x00,  // BRK
+										  0x08, 0x00,  // PHP
+										  0x28, 0x00,  // PLP
+										  0x60, 0x00,  // RTS
+										  0xff, 0xff}; // END
+
+	public TraceRecorderTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(TraceRecorderTest.class);
+	}
+
+	public void testRecordsStateBeforeEachStep() throws SimulationException
+	{
+		MOS6502 machine = machine(CPU.ENGINE_SWITCH);
+		TraceRecorder trace = new TraceRecorder(1000);
+		machine.setTraceRecorder(trace);
+		CPU cpu = machine.getCpu();
+
+		int steps = 0;
+		while(cpu.getCanStep())
+		{
+			int pc = cpu.getPc();
+			int a = cpu.getA();
+			int x = cpu.getX();
+			int y = cpu.getY();
+			int sp = cpu.getSp();
+			int status = cpu.getProcessorStatusFlags();
+			long cycle = cpu.getCycleCounter();
+
+			cpu.step();
+
+			assertEquals("pc", pc, trace.getPc(steps));
+			assertEquals("opcode", cpu.getIr(), trace.getOpcode(steps));
+			assertEquals("operand", PROGRAM[pc + 1], trace.getOperand(steps));
+			assertEquals("a", a, trace.getA(steps));
+			assertEquals("x", x, trace.getX(steps));
+			assertEquals("y", y, trace.getY(steps));
+			assertEquals("sp", sp, trace.getSp(steps));
+			assertEquals("p", status, trace.getStatus(steps));
+			assertEquals("cycle", cycle, trace.getCycle(steps));
+			steps++;
+		}
+
+		assertEquals(steps, trace.size());
+		assertEquals(steps, trace.getRecordCount());
+	}
+
+	public void testRingKeepsNewestRecords() throws SimulationException
+	{
+		TraceRecorder full = run(CPU.ENGINE_SWITCH, new TraceRecorder(1000));
+		TraceRecorder ring = run(CPU.ENGINE_SWITCH, new TraceRecorder(7));
+
+		assertEquals(7, ring.size());
+		assertEquals(full.getRecordCount(), ring.getRecordCount());
+		assertSameRecords(full, full.size() - 7, ring);
+	}
+
+	public void testBlockEngineTracesEveryStep() throws SimulationException
+	{
+		TraceRecorder expected = run(CPU.ENGINE_SWITCH, new TraceRecorder(1000));
+		TraceRecorder blocks = run(CPU.ENGINE_BLOCK_CACHE, new TraceRecorder(1000));
+
+		assertEquals(expected.size(), blocks.size());
+		assertSameRecords(expected, 0, blocks);
+	}
+
+	public void testSpillToFile() throws SimulationException, IOException
+	{
+		File file = File.createTempFile("trace", ".trace");
+		try
+		{
+			TraceRecorder expected = run(CPU.ENGINE_SWITCH, new TraceRecorder(1000));
+
+			TraceRecorder spilled = new TraceRecorder(5);
+			spilled.spillTo(file);
+			run(CPU.ENGINE_SWITCH, spilled);
+			spilled.close();
+
+			assertEquals(expected.size(), spilled.getSpilledCount());
+			assertEquals(expected.size() * TraceRecorder.RECORD_SIZE, file.length());
+
+			TraceRecorder opened = TraceRecorder.open(file);
+			assertEquals(expected.size(), opened.size());
+			assertSameRecords(expected, 0, opened);
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	public void testFindAndFormat() throws SimulationException
+	{
+		TraceRecorder trace = run(CPU.ENGINE_SWITCH, new TraceRecorder(1000));
+
+		//DEX at 0x10 runs once for each of the 5 loops
+		int count = 0;
+		for(int i = trace.find(0x10, 0); i >= 0; i = trace.find(0x10, i + 1))
+		{
+			assertEquals(0xca, trace.getOpcode(i));
+			count++;
+		}
+		assertEquals(5, count);
+		assertEquals(-1, trace.find(0x16, 0)); //BRK is jumped over
+
+		int end = trace.findOpcode(0xff, 0);
+		assertEquals(trace.size() - 1, end);
+		assertEquals("pc=0002 op=A2 LDX operand=05 a=00 x=00 y=00 sp=" + String.format("%02X", trace.getSp(1))
+				+ " p=" + String.format("%02X", trace.getStatus(1)) + " cycle=" + trace.getCycle(1), trace.format(1));
+		assertTrue(trace.format(end).contains(" END "));
+	}
+
+	public void testSpillMustStartEmpty() throws SimulationException, IOException
+	{
+		TraceRecorder trace = run(CPU.ENGINE_SWITCH, new TraceRecorder(10));
+		try
+		{
+			trace.spillTo(new File("unused.trace"));
+			fail("Spill file accepted after recording began");
+		}
+		catch(IllegalStateException e)
+		{
+		}
+	}
+
+	private static MOS6502 machine(int engine)
+	{
+		MOS6502 machine = new MOS6502(false);
+		machine.setExecutionEngine(engine);
+		machine.loadRAM(PROGRAM);
+		machine.resetCPU();
+		return machine;
+	}
+
+	/*
+	 * Runs the program to the end in chunks, so that the block engine may run bound blocks
+	 */
+	private static TraceRecorder run(int engine, TraceRecorder trace) throws SimulationException
+	{
+		MOS6502 machine = machine(engine);
+		machine.setTraceRecorder(trace);
+		CPU cpu = machine.getCpu();
+		for(int i = 0; i < 20 && cpu.getCanStep(); i++)
+		{
+			cpu.step(16);
+		}
+		assertFalse(cpu.getCanStep());
+		return trace;
+	}
+
+	private static void assertSameRecords(TraceRecorder expected, int offset, TraceRecorder actual)
+	{
+		for(int i = 0; i < actual.size(); i++)
+		{
+			assertEquals("Record " + i, expected.format(offset + i), actual.format(i));
+		}
+	}
+}